@@ -0,0 +1,42 @@
+#!/usr/bin/env bash
+
+# This checks that erroneous programs are rejected with the right error
+# message: Every program in test/errors is run, and its output (with file
+# paths relative to this directory) and exit code are compared to the
+# .expected file next to it.
+#
+# Requirements:
+# - Run this on Linux
+# - javac 21 (or later)
+
+MAIN_SRC_FILE="src/net/jaraonthe/java/asb/ASB.java"
+OPTIONS="-C"
+
+cd "$(dirname "$0")"
+
+BUILD_DIR=$(mktemp -d) || exit 1
+trap 'rm -r "$BUILD_DIR"' EXIT
+
+echo "Compiling..."
+javac $MAIN_SRC_FILE --source-path "src" -d "$BUILD_DIR/classfiles" --release 21 -Werror || { echo "javac failed"; exit 1; }
+
+FAILED=0
+for f in test/errors/*.asb; do
+    NAME=$(basename "$f" .asb)
+
+    java -cp "$BUILD_DIR/classfiles" net.jaraonthe.java.asb.ASB "$f" $OPTIONS 2>&1 | sed "s|$PWD/||g" > "$BUILD_DIR/$NAME.actual"
+    echo "exit code ${PIPESTATUS[0]}" >> "$BUILD_DIR/$NAME.actual"
+
+    if diff "test/errors/$NAME.expected" "$BUILD_DIR/$NAME.actual"; then
+        echo "OK   $f"
+    else
+        echo "FAIL $f"
+        FAILED=1
+    fi
+done
+
+if [[ $FAILED != "0" ]]; then
+    echo "Some programs are not rejected as expected."
+    exit 1
+fi
+echo "Done."
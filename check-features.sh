@@ -0,0 +1,88 @@
+#!/usr/bin/env bash
+
+# This checks that features produce the output they advertise: Every program
+# in test/features is run, and its output (with file paths relative to this
+# directory) and exit code are compared to the .expected file next to it.
+#
+# Next to a program NAME.asb there may be:
+# - NAME.options: Additional CLI options. Every line is a separate run (in the
+#   given order, e.g. to write a file and then read it); $TMP is replaced with
+#   a temporary directory which is shared by the runs of one program
+# - NAME.input: Standard input of every run
+# - NAME.files: Files (one per line, relative to $TMP) whose content is
+#   appended to the output after all runs
+# - NAME.sed: A sed script (extended syntax) that is applied to the output,
+#   e.g. to mask timings
+# - NAME-extension/: Java sources and resources of a native extension, which
+#   is compiled and put on the classpath
+#
+# Requirements:
+# - Run this on Linux
+# - javac 21 (or later)
+
+MAIN_SRC_FILE="src/net/jaraonthe/java/asb/ASB.java"
+OPTIONS="-C"
+
+cd "$(dirname "$0")"
+
+BUILD_DIR=$(mktemp -d) || exit 1
+trap 'rm -r "$BUILD_DIR"' EXIT
+
+echo "Compiling..."
+javac $MAIN_SRC_FILE --source-path "src" -d "$BUILD_DIR/classfiles" --release 21 -Werror || { echo "javac failed"; exit 1; }
+
+FAILED=0
+for f in test/features/*.asb; do
+    NAME=$(basename "$f" .asb)
+    BASE="test/features/$NAME"
+    TMP="$BUILD_DIR/$NAME"
+    mkdir "$TMP"
+
+    INPUT=/dev/null
+    if [[ -f "$BASE.input" ]]; then
+        INPUT="$BASE.input"
+    fi
+    CLASSPATH="$BUILD_DIR/classfiles"
+    if [[ -d "$BASE-extension" ]]; then
+        find "$BASE-extension" -name "*.java" -print0 \
+            | xargs -0 javac -cp "$CLASSPATH" -d "$TMP-extension" --release 21 -Werror \
+            || { echo "javac failed for $BASE-extension"; exit 1; }
+        cp -r "$BASE-extension/META-INF" "$TMP-extension"
+        CLASSPATH="$CLASSPATH:$TMP-extension"
+    fi
+    RUNS=("")
+    if [[ -f "$BASE.options" ]]; then
+        mapfile -t RUNS < <(tr -d '\r' < "$BASE.options")
+    fi
+
+    for run in "${RUNS[@]}"; do
+        java -cp "$CLASSPATH" net.jaraonthe.java.asb.ASB "$f" $OPTIONS ${run//\$TMP/$TMP} < "$INPUT" 2>&1
+        echo "exit code $?"
+    done > "$TMP.actual"
+
+    if [[ -f "$BASE.files" ]]; then
+        tr -d '\r' < "$BASE.files" | while read -r file; do
+            echo "=== $file ==="
+            cat "$TMP/$file"
+            echo
+        done >> "$TMP.actual"
+    fi
+
+    sed -i "s|$TMP/||g; s|$PWD/||g" "$TMP.actual"
+    if [[ -f "$BASE.sed" ]]; then
+        sed -i -E -f "$BASE.sed" "$TMP.actual"
+    fi
+
+    if diff "$BASE.expected" "$TMP.actual"; then
+        echo "OK   $f"
+    else
+        echo "FAIL $f"
+        FAILED=1
+    fi
+done
+
+if [[ $FAILED != "0" ]]; then
+    echo "Some programs don't produce the expected output."
+    exit 1
+fi
+echo "Done."
@@ -0,0 +1,58 @@
+#!/usr/bin/env bash
+
+# This checks that the optional execution tiers (which are switched on via
+# CLI options) do not change what a program does: Every example program is
+# run with all tiers off, then with each tier on its own, and with all tiers
+# on. The output (incl. statistics, registers and memory) and exit code of
+# each run are compared to the run with all tiers off.
+#
+# The same is done for the programs in test/tiers, which cover what the
+# examples don't (e.g. a program being stopped by its budget). Such a program
+# may have a .options file next to it with additional CLI options.
+#
+# Requirements:
+# - Run this on Linux
+# - javac 21 (or later)
+
+MAIN_SRC_FILE="src/net/jaraonthe/java/asb/ASB.java"
+OPTIONS="-s -r -m -C"
+TIERS=("--fusion" "--jit" "--jit --no-bytecode" "--block-dispatch" "--loop-traces" "--specialization" "--optimization")
+ALL_TIERS="--fusion --jit --loop-traces --specialization --optimization"
+
+cd "$(dirname "$0")"
+
+BUILD_DIR=$(mktemp -d) || exit 1
+trap 'rm -r "$BUILD_DIR"' EXIT
+
+echo "Compiling..."
+javac $MAIN_SRC_FILE --source-path "src" -d "$BUILD_DIR/classfiles" --release 21 -Werror || { echo "javac failed"; exit 1; }
+
+FAILED=0
+for f in asb/example/*.asb test/tiers/*.asb; do
+    NAME=$(basename "$f" .asb)
+    EXTRA_OPTIONS=""
+    if [[ -f "${f%.asb}.options" ]]; then
+        EXTRA_OPTIONS=$(tr -d '\r' < "${f%.asb}.options")
+    fi
+
+    java -cp "$BUILD_DIR/classfiles" net.jaraonthe.java.asb.ASB "$f" $OPTIONS $EXTRA_OPTIONS < /dev/null > "$BUILD_DIR/$NAME.off" 2>&1
+    echo "exit code $?" >> "$BUILD_DIR/$NAME.off"
+
+    for tiers in "${TIERS[@]}" "$ALL_TIERS"; do
+        java -cp "$BUILD_DIR/classfiles" net.jaraonthe.java.asb.ASB "$f" $OPTIONS $EXTRA_OPTIONS $tiers < /dev/null > "$BUILD_DIR/$NAME.on" 2>&1
+        echo "exit code $?" >> "$BUILD_DIR/$NAME.on"
+
+        if diff "$BUILD_DIR/$NAME.off" "$BUILD_DIR/$NAME.on"; then
+            echo "OK   $f $tiers"
+        else
+            echo "FAIL $f $tiers"
+            FAILED=1
+        fi
+    done
+done
+
+if [[ $FAILED != "0" ]]; then
+    echo "Some programs behave differently depending on the tiers."
+    exit 1
+fi
+echo "Done."
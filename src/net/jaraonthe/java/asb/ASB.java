@@ -28,7 +28,8 @@ public class ASB
         + "            print every command invocation\n"
         + "    -s\n"
         + "    --statistics\n"
-        + "            show statistics at the end\n"
+        + "            show statistics at the end (incl. cycle estimates if any\n"
+        + "            command declares a .cost)\n"
         + "    -r\n"
         + "    --registers\n"
         + "            show register values at the end\n"
@@ -39,6 +40,107 @@ public class ASB
         + "    -C\n"
         + "    --no-color\n"
         + "            to switch off colorful output\n"
+        + "    --fusion\n"
+        + "            fuse hot command sequences into superinstructions\n"
+        + "    --fusion-report\n"
+        + "            show the superinstructions that have been created at the end\n"
+        + "    --block-dispatch\n"
+        + "            execute the user program one basic block at a time (not\n"
+        + "            available with --trace, --debug, --checkpoint-at, or a step\n"
+        + "            counter device)\n"
+        + "    --block-report\n"
+        + "            with --block-dispatch: show how often each basic block of the\n"
+        + "            user program has been executed at the end\n"
+        + "    --loop-traces\n"
+        + "            record traces of hot loops in the user program, which are\n"
+        + "            executed as straight lines of commands (implies\n"
+        + "            --block-dispatch)\n"
+        + "    --loop-report\n"
+        + "            with --loop-traces: show the loop traces that have been\n"
+        + "            recorded at the end, and how much of the program has been\n"
+        + "            executed via them\n"
+        + "    --specialization\n"
+        + "            specialize command implementations for invocations with\n"
+        + "            constant immediate arguments\n"
+        + "    --optimization\n"
+        + "            optimize command implementations before running the program\n"
+        + "            (constant and copy propagation, dead code removal, jump\n"
+        + "            threading)\n"
+        + "    --jit\n"
+        + "            compile the implementations of hot commands (to VM code, and\n"
+        + "            later to JVM bytecode)\n"
+        + "    --no-bytecode\n"
+        + "            with --jit: keep compiled implementations in the VM instead\n"
+        + "            of compiling them to JVM bytecode\n"
+        + "    --max-steps <n>\n"
+        + "            stop with an error after executing n commands\n"
+        + "    --timeout <duration>\n"
+        + "            stop with an error after the given time has passed\n"
+        + "            (e.g. 500ms, 10s, 2m, 1h; a plain number is read as seconds)\n"
+        + "    --profile <file>\n"
+        + "            measure time spent per command (incl. commands invoked within\n"
+        + "            implementations), show a summary at the end and write collapsed\n"
+        + "            stacks to the given file (for flame graph tools)\n"
+        + "    --cache <level>:<size>:<line size>:<ways>[:<policy>]\n"
+        + "            simulate a cache (e.g. L1:1024:16:4:lru; sizes in memory words,\n"
+        + "            policy is lru, fifo, or random) and show hits and misses along\n"
+        + "            with --statistics; overrides a .cache of the same level\n"
+        + "    --branch-predictor <type>[:<bits>[:<history bits>]]\n"
+        + "            simulate branch prediction for the user program and show the\n"
+        + "            accuracy per branch at the end; type is static (backward taken,\n"
+        + "            forward not taken), 2bit (saturating counters) or gshare, with\n"
+        + "            2^bits table entries (default: 10 bits)\n"
+        + "    --btb <entries>\n"
+        + "            additionally simulate a branch target buffer with the given\n"
+        + "            amount of entries (a power of 2)\n"
+        + "    --report <file>\n"
+        + "            write a JSON report of the run to the given file (run metadata,\n"
+        + "            timing, command counts, register values, and memory contents)\n"
+        + "    --checkpoint-at <steps|label>\n"
+        + "    --checkpoint-file <file>\n"
+        + "            save the system state (registers, memory, program counter) to\n"
+        + "            the given file after the given amount of steps or when reaching\n"
+        + "            the given label for the first time (both options are required)\n"
+        + "    --restore <file>\n"
+        + "            restore the system state from a checkpoint file and continue\n"
+        + "            from there; the program before the checkpoint must not have\n"
+        + "            changed\n"
+        + "    --debug\n"
+        + "            run the program in an interactive debugger, which pauses before\n"
+        + "            the first command and can also step backwards (type help for a\n"
+        + "            list of debugger commands)\n"
+        + "    --break <label|pc>\n"
+        + "            run the program in the debugger (implies --debug) and stop at\n"
+        + "            the given label or program position (may be given multiple\n"
+        + "            times)\n"
+        + "    --undo-log <size>\n"
+        + "            with --debug, use at most the given amount of memory for\n"
+        + "            recording steps to undo (e.g. 512k, 64m, 1g; default: 32m;\n"
+        + "            0 disables stepping backwards)\n"
+        + "    --batch <file>\n"
+        + "            run one variant of the program per line of the given file, in\n"
+        + "            parallel; a line contains assignments like a0=5 or @0x10=-1\n"
+        + "            (register or memory address) that are applied at the fork point\n"
+        + "    --fork-at <steps|label>\n"
+        + "            with --batch, run the program up to the given amount of steps or\n"
+        + "            label once and fork the variants from there (default: start)\n"
+        + "    --jobs <n>\n"
+        + "            with --batch, run up to n variants at the same time (default:\n"
+        + "            amount of processors)\n"
+        + "    --load-memory <file>@<address>\n"
+        + "            load the raw bytes of the given file into memory, starting at\n"
+        + "            the given address, before the program starts (may be given\n"
+        + "            multiple times)\n"
+        + "    --off-heap-memory\n"
+        + "            keep memory outside the Java heap, which needs far less space\n"
+        + "            for big memories (at most 48 address bits)\n"
+        + "    --memory-backing <file>\n"
+        + "            keep memory off-heap in the given file (overwritten), as a\n"
+        + "            sparse flat image which can be inspected with other tools\n"
+        + "    --verify-native\n"
+        + "            execute both the native override (provided by an extension on\n"
+        + "            the classpath) and the ASB implementation of overridden\n"
+        + "            commands, and stop with an error if their results differ\n"
         + "    -i <file>\n"
         + "    --include <file>\n"
         + "            include the given file before parsing the main files\n"
@@ -77,7 +179,8 @@ public class ASB
 	 * Exit Codes:<br>
 	 * - 0: Normal<br>
 	 * - 1: Error due to user input occurred<br>
-	 * - 2: Internal exception occurred
+	 * - 2: Internal exception occurred<br>
+	 * - Otherwise: The value written to a halt device
 	 * 
 	 * @param args See the {@link #HELP_TEXT}
 	 */
@@ -112,7 +215,10 @@ public class ASB
         	        }
         	        
         	        AST ast = Parser.parse(settings.getFilePaths());
-            	    Interpreter.interpret(ast, settings);
+            	    int status = Interpreter.interpret(ast, settings);
+            	    if (status != 0) {
+            	        System.exit(status);
+            	    }
             	    
         	    } catch (UserError e) {
         	        e.print(settings);
@@ -1,17 +1,26 @@
 package net.jaraonthe.java.asb;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import net.jaraonthe.java.asb.exception.ConstraintException;
 import net.jaraonthe.java.asb.exception.UserError;
+import net.jaraonthe.java.asb.interpret.MemoryImage;
+import net.jaraonthe.java.asb.interpret.ProgramPoint;
+import net.jaraonthe.java.asb.interpret.branch.BranchPredictor;
+import net.jaraonthe.java.asb.interpret.branch.BranchTargetBuffer;
+import net.jaraonthe.java.asb.interpret.cache.CacheConfig;
 
 /**
  * General application settings.
  *
  * @author Jakob Rathbauer <jakob@jaraonthe.net>
  */
-public class Settings
+public class Settings implements Cloneable
 {
     /**
      * Application mode. This represents what is being done.
@@ -68,6 +77,187 @@ public class Settings
      */
     private boolean withColor = true;
     
+    /**
+     * True: Fuse hot invocation sequences within implementations into
+     * superinstructions at runtime.
+     */
+    private boolean fusion = false;
+    
+    /**
+     * True: Print the superinstructions that have been created after
+     * interpretation.
+     */
+    private boolean fusionReport = false;
+    
+    /**
+     * True: Execute the user program one basic block at a time (if nothing
+     * needs to be done between single steps).
+     */
+    private boolean blockDispatch = false;
+    
+    /**
+     * True: Print how often each basic block of the user program has been
+     * executed after interpretation.
+     */
+    private boolean blockReport = false;
+    
+    /**
+     * True: Record traces of hot userland loops and execute them as straight
+     * lines of invocations.
+     */
+    private boolean loopTraces = false;
+    
+    /**
+     * True: Specialize command implementations for invocations with constant
+     * immediate arguments.
+     */
+    private boolean specialization = false;
+    
+    /**
+     * True: Optimize command implementations before interpretation.
+     */
+    private boolean optimization = false;
+    
+    /**
+     * True: Print the loop traces that have been recorded after
+     * interpretation.
+     */
+    private boolean loopReport = false;
+    
+    /**
+     * True: Compile the implementations of hot commands at runtime (executing
+     * them in a VM, and later as JVM bytecode).
+     */
+    private boolean jit = false;
+    
+    /**
+     * True: Compiled implementations that are executed often are compiled to
+     * JVM bytecode (otherwise they stay in the VM).
+     */
+    private boolean bytecode = true;
+    
+    /**
+     * The maximum amount of userland commands that may be executed. 0 means
+     * unlimited.
+     */
+    private long maxSteps = 0;
+    
+    /**
+     * The maximum wall-clock time the interpretation may take. Null means
+     * unlimited.
+     */
+    private Duration timeout = null;
+    
+    /**
+     * The file to write profiling data to. Null means profiling is disabled.
+     */
+    private String profileFilePath = null;
+    
+    /**
+     * Simulated cache configurations given via CLI. These override the
+     * configurations of the same cache level given in the ASB program.
+     */
+    private final List<CacheConfig> caches = new ArrayList<>();
+    
+    /**
+     * The branch predictor specification (see
+     * {@link BranchPredictor#fromString()}). Null means branch prediction is
+     * not simulated.
+     */
+    private String branchPredictor = null;
+    
+    /**
+     * The amount of branch target buffer entries. 0 means no branch target
+     * buffer is simulated.
+     */
+    private int btbEntries = 0;
+    
+    /**
+     * The file to write a JSON report of the run to. Null means no report is
+     * written.
+     */
+    private String reportFilePath = null;
+    
+    /**
+     * The point at which a checkpoint is written. Null means no checkpoint is
+     * written.
+     */
+    private ProgramPoint checkpointAt = null;
+    
+    /**
+     * The file to write the checkpoint to. Null means no checkpoint is
+     * written.
+     */
+    private String checkpointFilePath = null;
+    
+    /**
+     * The checkpoint file to restore the system state from before running the
+     * program. Null means the program starts from the beginning.
+     */
+    private String restoreFilePath = null;
+    
+    /**
+     * The file containing the variants to run in batch mode. Null means batch
+     * mode is not used.
+     */
+    private String batchFilePath = null;
+    
+    /**
+     * The point at which the batch variants are forked. Null means they are
+     * forked at the program start.
+     */
+    private ProgramPoint forkAt = null;
+    
+    /**
+     * The amount of batch variants that are run in parallel. 0 means one per
+     * available processor.
+     */
+    private int jobs = 0;
+    
+    /**
+     * True: Run the interactive debugger.
+     */
+    private boolean debug = false;
+    
+    /**
+     * Breakpoints (label names or program positions) to set before the
+     * program starts.
+     */
+    private final List<String> breakpoints = new ArrayList<>();
+    
+    /**
+     * True: Keep memory words outside the Java heap.
+     */
+    private boolean offHeapMemory = false;
+    
+    /**
+     * The file that memory is stored in (implies off-heap memory). May be
+     * null.
+     */
+    private String memoryBackingFilePath = null;
+    
+    /**
+     * True: Execute both the native override and the implementation of
+     * overridden commands, and compare the results.
+     */
+    private boolean verifyNative = false;
+    
+    /**
+     * Files to load into memory before the program starts.
+     */
+    private final List<MemoryImage> memoryImages = new ArrayList<>();
+    
+    /**
+     * The maximum size of the undo log for reverse execution (in bytes). 0
+     * means reverse execution is disabled.
+     */
+    private long undoLogBytes = 32L * 1024 * 1024;
+    
+    /**
+     * True: --undo-log has been given.
+     */
+    private boolean undoLogGiven = false;
+    
     /**
      * Transitive state.
      * 
@@ -77,6 +267,10 @@ public class Settings
     public boolean printOccurred = false;
     
     
+    private static final Pattern DURATION_PATTERN = Pattern.compile("(\\d+)(ms|s|m|h)?");
+    private static final Pattern SIZE_PATTERN     = Pattern.compile("(\\d+)([kKmMgG])?");
+    
+    
     private Settings()
     {
         // nothing
@@ -166,6 +360,311 @@ public class Settings
         return this.withColor;
     }
     
+    /**
+     * @return True: Fuse hot invocation sequences within implementations into
+     *         superinstructions at runtime
+     */
+    public boolean fusion()
+    {
+        // Superinstructions bypass the profiler, so they would skew its
+        // results. In batch mode variants run in parallel, while fusion
+        // modifies the (shared) implementations
+        return this.fusion && this.profileFilePath == null && this.batchFilePath == null;
+    }
+    
+    /**
+     * @return True: Print the superinstructions that have been created after
+     *         interpretation
+     */
+    public boolean fusionReport()
+    {
+        return this.fusionReport;
+    }
+    
+    /**
+     * @return True: Execute the user program one basic block at a time (if
+     *         nothing needs to be done between single steps)
+     */
+    public boolean blockDispatch()
+    {
+        // Loop traces are recorded and executed on top of block dispatch
+        return this.blockDispatch || this.loopTraces;
+    }
+    
+    /**
+     * @return True: Print how often each basic block of the user program has
+     *         been executed after interpretation
+     */
+    public boolean blockReport()
+    {
+        return this.blockReport;
+    }
+    
+    /**
+     * @return True: Record traces of hot userland loops and execute them as
+     *         straight lines of invocations
+     */
+    public boolean loopTraces()
+    {
+        return this.loopTraces;
+    }
+    
+    /**
+     * @return True: Specialize command implementations for invocations with
+     *         constant immediate arguments
+     */
+    public boolean specialization()
+    {
+        return this.specialization;
+    }
+    
+    /**
+     * @return True: Optimize command implementations before interpretation
+     */
+    public boolean optimization()
+    {
+        return this.optimization;
+    }
+    
+    /**
+     * @return True: Print the loop traces that have been recorded after
+     *         interpretation
+     */
+    public boolean loopReport()
+    {
+        return this.loopReport;
+    }
+    
+    /**
+     * @return True: Compile the implementations of hot commands at runtime
+     *         (executing them in a VM, and later as JVM bytecode)
+     */
+    public boolean jit()
+    {
+        // Compiled code bypasses the profiler, and its writes are not
+        // recorded step by step (as the debugger needs them). In batch mode
+        // variants run in parallel, while compiling modifies the (shared)
+        // implementations
+        return this.jit && !this.debug && this.profileFilePath == null && this.batchFilePath == null;
+    }
+    
+    /**
+     * @return True: Compiled implementations that are executed often are
+     *         compiled to JVM bytecode (otherwise they stay in the VM)
+     */
+    public boolean bytecode()
+    {
+        return this.bytecode;
+    }
+    
+    /**
+     * @return The maximum amount of userland commands that may be executed.
+     *         0 means unlimited
+     */
+    public long maxSteps()
+    {
+        return this.maxSteps;
+    }
+    
+    /**
+     * @return The maximum wall-clock time the interpretation may take. Null
+     *         means unlimited
+     */
+    public Duration timeout()
+    {
+        return this.timeout;
+    }
+    
+    /**
+     * @return True: Profile command invocations
+     */
+    public boolean profile()
+    {
+        return this.profileFilePath != null;
+    }
+    
+    /**
+     * @return The file to write profiling data to (in collapsed stack format).
+     *         Null if profiling is disabled
+     */
+    public String getProfileFilePath()
+    {
+        return this.profileFilePath;
+    }
+    
+    /**
+     * @return Simulated cache configurations given via CLI. These override the
+     *         configurations of the same cache level given in the ASB program
+     */
+    public List<CacheConfig> getCaches()
+    {
+        return Collections.unmodifiableList(this.caches);
+    }
+    
+    /**
+     * @return The branch predictor specification (see
+     *         {@link BranchPredictor#fromString()}). Null if branch prediction
+     *         is not simulated
+     */
+    public String getBranchPredictor()
+    {
+        return this.branchPredictor;
+    }
+    
+    /**
+     * @return The amount of branch target buffer entries. 0 if no branch
+     *         target buffer is simulated
+     */
+    public int getBtbEntries()
+    {
+        return this.btbEntries;
+    }
+    
+    /**
+     * @return The file to write a JSON report of the run to. Null if no report
+     *         is written
+     */
+    public String getReportFilePath()
+    {
+        return this.reportFilePath;
+    }
+    
+    /**
+     * @return The point at which a checkpoint is written. Null if no
+     *         checkpoint is written
+     */
+    public ProgramPoint getCheckpointAt()
+    {
+        return this.checkpointAt;
+    }
+    
+    /**
+     * @return The file to write the checkpoint to. Null if no checkpoint is
+     *         written
+     */
+    public String getCheckpointFilePath()
+    {
+        return this.checkpointFilePath;
+    }
+    
+    /**
+     * @return The checkpoint file to restore the system state from before
+     *         running the program. Null if the program starts from the
+     *         beginning
+     */
+    public String getRestoreFilePath()
+    {
+        return this.restoreFilePath;
+    }
+    
+    /**
+     * @return The file containing the variants to run in batch mode. Null if
+     *         batch mode is not used
+     */
+    public String getBatchFilePath()
+    {
+        return this.batchFilePath;
+    }
+    
+    /**
+     * @return The point at which the batch variants are forked. Null if they
+     *         are forked at the program start
+     */
+    public ProgramPoint getForkAt()
+    {
+        return this.forkAt;
+    }
+    
+    /**
+     * @return The amount of batch variants that are run in parallel
+     */
+    public int getJobs()
+    {
+        if (this.jobs == 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return this.jobs;
+    }
+    
+    /**
+     * @return True: Run the interactive debugger
+     */
+    public boolean debug()
+    {
+        return this.debug;
+    }
+    
+    /**
+     * @return Breakpoints (label names or program positions) to set before
+     *         the program starts
+     */
+    public List<String> getBreakpoints()
+    {
+        return Collections.unmodifiableList(this.breakpoints);
+    }
+    
+    /**
+     * @return True: Keep memory words outside the Java heap
+     */
+    public boolean offHeapMemory()
+    {
+        return this.offHeapMemory;
+    }
+    
+    /**
+     * @return The file that memory is stored in. Null if memory is not backed
+     *         by a file
+     */
+    public String getMemoryBackingFilePath()
+    {
+        return this.memoryBackingFilePath;
+    }
+    
+    /**
+     * @return True: Execute both the native override and the implementation
+     *         of overridden commands, and compare the results
+     */
+    public boolean verifyNative()
+    {
+        return this.verifyNative;
+    }
+    
+    /**
+     * @return Files to load into memory before the program starts (after the
+     *         memory contents given in the ASB program)
+     */
+    public List<MemoryImage> getMemoryImages()
+    {
+        return Collections.unmodifiableList(this.memoryImages);
+    }
+    
+    /**
+     * @return The maximum size of the undo log for reverse execution (in
+     *         bytes). 0 if reverse execution is disabled
+     */
+    public long getUndoLogBytes()
+    {
+        return this.undoLogBytes;
+    }
+    
+    /**
+     * Creates a copy of these settings, with its own transitive state. This
+     * is used for interpreter runs that happen in parallel.
+     * 
+     * @return
+     */
+    public Settings copy()
+    {
+        try {
+            Settings copy     = (Settings) super.clone();
+            copy.printOccurred = false;
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            // Converting exception, as this case should never happen
+            throw new RuntimeException(e);
+        }
+    }
+    
     
     /**
      * Parses CLI args into application settings.
@@ -179,16 +678,16 @@ public class Settings
         Settings settings = new Settings();
         List<String> regularFilePaths = new ArrayList<>();
         
-        boolean expectFile = false;
+        // The option that expects a value as the next arg
+        String expectValueFor = null;
         for (int i = 0; i < args.length; i++) {
             if (args[i].isBlank()) {
                 // Just to be safe
                 continue;
             }
-            if (expectFile) {
-                // After --include flag
-                settings.filePaths.add(args[i]);
-                expectFile = false;
+            if (expectValueFor != null) {
+                settings.setValue(expectValueFor, args[i]);
+                expectValueFor = null;
                 continue;
             }
             
@@ -239,6 +738,58 @@ public class Settings
                         settings.withColor = false;
                         break;
                         
+                    case "--fusion":
+                        settings.fusion = true;
+                        break;
+                        
+                    case "--jit":
+                        settings.jit = true;
+                        break;
+                        
+                    case "--no-bytecode":
+                        settings.bytecode = false;
+                        break;
+                        
+                    case "--off-heap-memory":
+                        settings.offHeapMemory = true;
+                        break;
+                        
+                    case "--verify-native":
+                        settings.verifyNative = true;
+                        break;
+                        
+                    case "--debug":
+                        settings.debug = true;
+                        break;
+                        
+                    case "--fusion-report":
+                        settings.fusionReport = true;
+                        break;
+                        
+                    case "--block-dispatch":
+                        settings.blockDispatch = true;
+                        break;
+                        
+                    case "--block-report":
+                        settings.blockReport = true;
+                        break;
+                        
+                    case "--loop-traces":
+                        settings.loopTraces = true;
+                        break;
+                        
+                    case "--loop-report":
+                        settings.loopReport = true;
+                        break;
+                        
+                    case "--specialization":
+                        settings.specialization = true;
+                        break;
+                        
+                    case "--optimization":
+                        settings.optimization = true;
+                        break;
+                        
                     case "-h":
                     case "--help":
                         settings.setMode(Settings.Mode.HELP, argPart);
@@ -255,7 +806,24 @@ public class Settings
                         
                     case "-i":
                     case "--include":
-                        expectFile = true;
+                    case "--max-steps":
+                    case "--timeout":
+                    case "--profile":
+                    case "--cache":
+                    case "--branch-predictor":
+                    case "--btb":
+                    case "--report":
+                    case "--checkpoint-at":
+                    case "--checkpoint-file":
+                    case "--restore":
+                    case "--batch":
+                    case "--fork-at":
+                    case "--jobs":
+                    case "--undo-log":
+                    case "--break":
+                    case "--load-memory":
+                    case "--memory-backing":
+                        expectValueFor = argPart;
                         break;
                         
                     default:
@@ -265,9 +833,47 @@ public class Settings
                 }
             }
         }
-        if (expectFile) {
+        if (expectValueFor != null) {
+            throw new UserError(
+                "Expected " + (expectValueFor.equals("-i") || expectValueFor.equals("--include") ? "file" : "value")
+                + " after " + args[args.length - 1] + " argument. See asb --help"
+            );
+        }
+        
+        if (settings.btbEntries != 0 && settings.branchPredictor == null) {
+            throw new UserError("Cannot use --btb without --branch-predictor. See asb --help");
+        }
+        
+        if ((settings.checkpointAt != null) != (settings.checkpointFilePath != null)) {
+            throw new UserError(
+                "--checkpoint-at and --checkpoint-file must be used together. See asb --help"
+            );
+        }
+        
+        if (settings.undoLogGiven && !settings.debug) {
+            throw new UserError("Cannot use --undo-log without --debug. See asb --help");
+        }
+        if (settings.debug && settings.batchFilePath != null) {
+            throw new UserError("Cannot use --debug with --batch. See asb --help");
+        }
+        
+        if (settings.batchFilePath == null) {
+            if (settings.forkAt != null || settings.jobs != 0) {
+                throw new UserError("Cannot use --fork-at or --jobs without --batch. See asb --help");
+            }
+        } else if (
+            settings.profileFilePath != null
+            || settings.reportFilePath != null
+            || settings.checkpointFilePath != null
+        ) {
+            throw new UserError(
+                "Cannot use --profile, --report, or --checkpoint-file with --batch. See asb --help"
+            );
+        }
+        
+        if (settings.offHeapMemory && settings.batchFilePath != null) {
             throw new UserError(
-                "Expected file after " + args[args.length - 1] + " argument. See asb --help"
+                "Cannot use --off-heap-memory or --memory-backing with --batch. See asb --help"
             );
         }
         
@@ -278,4 +884,233 @@ public class Settings
         
         return settings;
     }
+    
+    /**
+     * Applies the value given for an option.
+     * 
+     * @param option The option (e.g. "--include")
+     * @param value  The arg following the option
+     * 
+     * @throws UserError if the value is invalid
+     */
+    private void setValue(String option, String value) throws UserError
+    {
+        switch (option) {
+            case "-i":
+            case "--include":
+                this.filePaths.add(value);
+                break;
+                
+            case "--max-steps":
+                try {
+                    this.maxSteps = Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    this.maxSteps = -1;
+                }
+                if (this.maxSteps <= 0) {
+                    throw new UserError(
+                        "Invalid value \"" + value + "\" for " + option + ", expected a positive number. See asb --help"
+                    );
+                }
+                break;
+                
+            case "--timeout":
+                this.timeout = Settings.parseDuration(value);
+                if (this.timeout == null) {
+                    throw new UserError(
+                        "Invalid value \"" + value + "\" for " + option
+                        + ", expected a duration like 500ms, 10s, 2m, or 1h. See asb --help"
+                    );
+                }
+                break;
+                
+            case "--profile":
+                this.profileFilePath = value;
+                break;
+                
+            case "--cache":
+                try {
+                    this.caches.add(CacheConfig.fromString(value));
+                } catch (ConstraintException e) {
+                    throw new UserError(e.getMessage() + " for " + option + ". See asb --help");
+                }
+                break;
+                
+            case "--report":
+                this.reportFilePath = value;
+                break;
+                
+            case "--checkpoint-at":
+                this.checkpointAt = Settings.parseProgramPoint(option, value);
+                break;
+                
+            case "--checkpoint-file":
+                this.checkpointFilePath = value;
+                break;
+                
+            case "--restore":
+                this.restoreFilePath = value;
+                break;
+                
+            case "--batch":
+                this.batchFilePath = value;
+                break;
+                
+            case "--fork-at":
+                this.forkAt = Settings.parseProgramPoint(option, value);
+                break;
+                
+            case "--break":
+                this.breakpoints.add(value);
+                this.debug = true;
+                break;
+                
+            case "--memory-backing":
+                this.memoryBackingFilePath = value;
+                this.offHeapMemory         = true;
+                break;
+                
+            case "--load-memory":
+                try {
+                    this.memoryImages.add(MemoryImage.fromString(value));
+                } catch (ConstraintException e) {
+                    throw new UserError(e.getMessage() + " for " + option + ". See asb --help");
+                }
+                break;
+                
+            case "--undo-log":
+                this.undoLogBytes = Settings.parseSize(value);
+                this.undoLogGiven = true;
+                if (this.undoLogBytes < 0) {
+                    throw new UserError(
+                        "Invalid value \"" + value + "\" for " + option
+                        + ", expected a size like 512k, 64m, or 1g. See asb --help"
+                    );
+                }
+                break;
+                
+            case "--jobs":
+                try {
+                    this.jobs = Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    this.jobs = -1;
+                }
+                if (this.jobs <= 0) {
+                    throw new UserError(
+                        "Invalid value \"" + value + "\" for " + option + ", expected a positive number. See asb --help"
+                    );
+                }
+                break;
+                
+            case "--branch-predictor":
+                try {
+                    // Only validating here, the predictor is created for each run
+                    BranchPredictor.fromString(value);
+                } catch (ConstraintException e) {
+                    throw new UserError(e.getMessage() + " for " + option + ". See asb --help");
+                }
+                this.branchPredictor = value;
+                break;
+                
+            case "--btb":
+                try {
+                    this.btbEntries = Integer.parseInt(value);
+                    new BranchTargetBuffer(this.btbEntries);
+                } catch (NumberFormatException | ConstraintException e) {
+                    throw new UserError(
+                        "Invalid value \"" + value + "\" for " + option + ", expected a power of 2. See asb --help"
+                    );
+                }
+                break;
+                
+            default:
+                throw new IllegalArgumentException("Option " + option + " doesn't take a value");
+        }
+    }
+    
+    /**
+     * @param option
+     * @param value
+     * @return The program point given by value
+     * 
+     * @throws UserError if the value is invalid
+     */
+    private static ProgramPoint parseProgramPoint(String option, String value) throws UserError
+    {
+        try {
+            return ProgramPoint.fromString(value);
+        } catch (ConstraintException e) {
+            throw new UserError(e.getMessage() + " for " + option + ". See asb --help");
+        }
+    }
+    
+    /**
+     * Parses a size like "512k", "64m", or "1g". A number without unit is read
+     * as bytes.
+     * 
+     * @param text
+     * @return The size in bytes, or -1 if text is not a valid size
+     */
+    private static long parseSize(String text)
+    {
+        Matcher matcher = Settings.SIZE_PATTERN.matcher(text);
+        if (!matcher.matches()) {
+            return -1;
+        }
+        
+        int shift = 0;
+        if (matcher.group(2) != null) {
+            shift = switch (Character.toLowerCase(matcher.group(2).charAt(0))) {
+                case 'k' -> 10;
+                case 'm' -> 20;
+                default  -> 30;
+            };
+        }
+        try {
+            long amount = Long.parseLong(matcher.group(1));
+            if (amount > (Long.MAX_VALUE >> shift)) {
+                return -1;
+            }
+            return amount << shift;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    /**
+     * Parses a duration like "500ms", "10s", "2m", or "1h". A number without
+     * unit is read as seconds.
+     * 
+     * @param text
+     * @return The duration, or null if text is not a valid positive duration
+     */
+    private static Duration parseDuration(String text)
+    {
+        Matcher matcher = Settings.DURATION_PATTERN.matcher(text);
+        if (!matcher.matches()) {
+            return null;
+        }
+        
+        long amount;
+        try {
+            amount = Long.parseLong(matcher.group(1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (amount <= 0) {
+            return null;
+        }
+        
+        String unit = matcher.group(2) == null ? "s" : matcher.group(2);
+        try {
+            return switch (unit) {
+                case "ms" -> Duration.ofMillis(amount);
+                case "m"  -> Duration.ofMinutes(amount);
+                case "h"  -> Duration.ofHours(amount);
+                default   -> Duration.ofSeconds(amount);
+            };
+        } catch (ArithmeticException e) {
+            return null;
+        }
+    }
 }
@@ -9,11 +9,15 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import net.jaraonthe.java.asb.ast.command.Command;
 import net.jaraonthe.java.asb.ast.invocation.Invocation;
 import net.jaraonthe.java.asb.ast.variable.Register;
 import net.jaraonthe.java.asb.exception.ConstraintException;
+import net.jaraonthe.java.asb.interpret.MemoryImage;
+import net.jaraonthe.java.asb.interpret.cache.CacheConfig;
+import net.jaraonthe.java.asb.interpret.device.DeviceConfig;
 import net.jaraonthe.java.asb.parse.Constraints;
 
 /**
@@ -34,6 +38,21 @@ public class AST
     private int memoryAddressLength = -1;
     private int pcLength            = AST.DEFAULT_PC_LENGTH;
     
+    /**
+     * Cache level => configuration of the simulated cache
+     */
+    private Map<Integer, CacheConfig> caches = new TreeMap<>();
+    
+    /**
+     * Initial memory contents, in the order they are loaded.
+     */
+    private List<MemoryImage> memoryImages = new ArrayList<>();
+    
+    /**
+     * Devices mapped into memory.
+     */
+    private List<DeviceConfig> devices = new ArrayList<>();
+    
     /**
      * Calculated from pcLength. States how many items program can have at most.
      */
@@ -123,6 +142,47 @@ public class AST
         return this.memoryAddressLength;
     }
     
+    /**
+     * Adds initial memory contents, which are loaded after all earlier added
+     * ones.
+     * 
+     * @param image
+     * @return Fluent interface
+     */
+    public AST addMemoryImage(MemoryImage image)
+    {
+        this.memoryImages.add(image);
+        return this;
+    }
+    
+    /**
+     * @return Initial memory contents, in the order they are loaded
+     */
+    public List<MemoryImage> getMemoryImages()
+    {
+        return Collections.unmodifiableList(this.memoryImages);
+    }
+    
+    /**
+     * Adds a device that is mapped into memory.
+     * 
+     * @param device
+     * @return Fluent interface
+     */
+    public AST addDevice(DeviceConfig device)
+    {
+        this.devices.add(device);
+        return this;
+    }
+    
+    /**
+     * @return The devices mapped into memory
+     */
+    public List<DeviceConfig> getDevices()
+    {
+        return Collections.unmodifiableList(this.devices);
+    }
+    
     /**
      * Sets program counter length.
      * 
@@ -162,6 +222,27 @@ public class AST
         return this.pcLength;
     }
     
+    /**
+     * Sets the configuration of a simulated cache, replacing an earlier
+     * configuration of the same cache level.
+     * 
+     * @param config
+     * @return Fluent interface
+     */
+    public AST setCache(CacheConfig config)
+    {
+        this.caches.put(config.level, config);
+        return this;
+    }
+    
+    /**
+     * @return The configurations of all simulated caches, ordered by level
+     */
+    public Collection<CacheConfig> getCaches()
+    {
+        return Collections.unmodifiableCollection(this.caches.values());
+    }
+    
     
     /**
      * Adds a register.
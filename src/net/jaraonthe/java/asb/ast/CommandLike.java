@@ -29,6 +29,17 @@ abstract public class CommandLike
     {
         this.name = name;
     }
+    
+    /**
+     * Creates a copy of the given CommandLike.
+     * 
+     * @param original
+     */
+    protected CommandLike(CommandLike original)
+    {
+        this.name               = original.name;
+        this.resolvingSignature = original.resolvingSignature;
+    }
 
     /**
      * Adds command symbols to the resolving signature.
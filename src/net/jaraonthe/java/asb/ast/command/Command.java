@@ -34,6 +34,12 @@ public class Command extends CommandLike
     
     private Interpretable interpretable = null;
     
+    /**
+     * The simulated cost of executing this command, in cycles. -1 means that
+     * no cost has been declared.
+     */
+    private int cost = -1;
+    
     
     /**
      * @param name
@@ -150,6 +156,22 @@ public class Command extends CommandLike
         return this;
     }
     
+    /**
+     * Replaces this command's interpretable, which must have been set
+     * before. This is used to bind native overrides.
+     * 
+     * @param interpretable
+     * @return Fluent interface
+     */
+    public Command overrideInterpretable(Interpretable interpretable)
+    {
+        if (this.interpretable == null) {
+            throw new IllegalStateException("Cannot override interpretable before it is set");
+        }
+        this.interpretable = interpretable;
+        return this;
+    }
+    
     /**
      * @return This command's interpretable, or null if not set yet.
      */
@@ -158,6 +180,41 @@ public class Command extends CommandLike
         return this.interpretable;
     }
     
+    /**
+     * Declares the simulated cost of executing this command.
+     * 
+     * @param cost In cycles. Must not be negative
+     * @return Fluent interface
+     */
+    public Command setCost(int cost)
+    {
+        if (cost < 0) {
+            throw new IllegalArgumentException("Cost must not be negative");
+        }
+        this.cost = cost;
+        return this;
+    }
+    
+    /**
+     * @return True if a cost has been declared for this command
+     */
+    public boolean hasCost()
+    {
+        return this.cost >= 0;
+    }
+    
+    /**
+     * @return The simulated cost of executing this command, in cycles. If no
+     *         cost has been declared, this defaults to 1.
+     */
+    public int getCost()
+    {
+        if (this.cost < 0) {
+            return 1;
+        }
+        return this.cost;
+    }
+    
     
     /**
      * The command identity uniquely identifies a command (incl. differentiating
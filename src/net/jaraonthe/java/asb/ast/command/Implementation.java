@@ -1,6 +1,7 @@
 package net.jaraonthe.java.asb.ast.command;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -15,6 +16,10 @@ import net.jaraonthe.java.asb.exception.ConstraintException;
 import net.jaraonthe.java.asb.exception.RuntimeError;
 import net.jaraonthe.java.asb.interpret.Context;
 import net.jaraonthe.java.asb.interpret.Interpretable;
+import net.jaraonthe.java.asb.optimize.Peephole;
+import net.jaraonthe.java.asb.optimize.Specializer;
+import net.jaraonthe.java.asb.optimize.ir.Optimizer;
+import net.jaraonthe.java.asb.optimize.jit.CompiledImplementation;
 import net.jaraonthe.java.asb.parse.Origin;
 
 /**
@@ -43,6 +48,33 @@ public class Implementation implements Interpretable, Iterable<Invocation>
      */
     private Map<String, Integer> labels = HashMap.newHashMap(1);
     
+    /**
+     * The dynamic pair profile of this program: For each program position,
+     * how often the Invocation there has been directly followed by the next
+     * Invocation (i.e. without a jump in between).<br>
+     * 
+     * This is only gathered if superinstruction fusion is enabled, and used to
+     * find fusion candidates. Null until the first pair is counted.
+     * 
+     * @see Peephole
+     */
+    private long[] pairCounts = null;
+    
+    /**
+     * The compiled form of this program, which is used once the command has
+     * become hot. Null while this program is only interpreted.
+     * 
+     * @see CompiledImplementation
+     */
+    private CompiledImplementation compiled = null;
+    
+    /**
+     * Copies of this program which are specialized for constant arguments.
+     * 
+     * @see Specializer
+     */
+    private List<Implementation> specializations = new ArrayList<>(0);
+    
     
     /**
      * @param parameters The parameters of the containing command. May be null
@@ -55,6 +87,29 @@ public class Implementation implements Interpretable, Iterable<Invocation>
             }
         }
     }
+    
+    /**
+     * Creates a copy of the given implementation's variables, labels, and
+     * program (the Invocations themselves are shared). Runtime data (pair
+     * profile, compiled form, specializations) is not copied.
+     * 
+     * @param original
+     */
+    private Implementation(Implementation original)
+    {
+        this.variables.putAll(original.variables);
+        this.labels.putAll(original.labels);
+        this.program.addAll(original.program);
+    }
+    
+    /**
+     * @return A copy of this implementation, which can be modified via
+     *         {@link #replace(int, Invocation)} without affecting this one
+     */
+    public Implementation copy()
+    {
+        return new Implementation(this);
+    }
 
     /**
      * Adds a local variable. This also adds the required
@@ -135,6 +190,59 @@ public class Implementation implements Interpretable, Iterable<Invocation>
         return this.program.iterator();
     }
     
+    /**
+     * @return The amount of Invocations in this implementation program
+     */
+    public int size()
+    {
+        return this.program.size();
+    }
+    
+    /**
+     * @param position
+     * @return The Invocation at the given program position
+     */
+    public Invocation get(int position)
+    {
+        return this.program.get(position);
+    }
+    
+    /**
+     * Replaces the Invocation at the given program position. This does not
+     * affect labels or any other program position.<br>
+     * 
+     * This is used to install superinstructions and specialized Invocations,
+     * which must behave exactly like the Invocation(s) they replace.
+     * 
+     * @param position
+     * @param invocation
+     * @return Fluent interface
+     */
+    public Implementation replace(int position, Invocation invocation)
+    {
+        this.program.set(position, invocation);
+        return this;
+    }
+    
+    /**
+     * Replaces the entire program along with all labels.<br>
+     * 
+     * This is used by the {@link Optimizer}, which must only be done before
+     * this program is interpreted.
+     * 
+     * @param program
+     * @param labels  Label name => program position the label points to
+     * @return Fluent interface
+     */
+    public Implementation setProgram(List<Invocation> program, Map<String, Integer> labels)
+    {
+        if (this.pairCounts != null || this.compiled != null) {
+            throw new IllegalStateException("Cannot set program after it has been interpreted");
+        }
+        this.program = new ArrayList<>(program);
+        this.labels  = new HashMap<>(labels);
+        return this;
+    }
     
     /**
      * Adds a label pointing to the next program position in this implementation.
@@ -177,7 +285,62 @@ public class Implementation implements Interpretable, Iterable<Invocation>
         return position.intValue();
     }
     
+    /**
+     * @return Label name => program position the label points to
+     */
+    public Map<String, Integer> getLabels()
+    {
+        return Collections.unmodifiableMap(this.labels);
+    }
+    
 
+    /**
+     * @return True if this program is compiled (which happens once the command
+     *         has become hot)
+     */
+    public boolean isCompiled()
+    {
+        return this.compiled != null;
+    }
+    
+    /**
+     * Use this once to set this program's compiled form.
+     * 
+     * @param compiled
+     * @return Fluent interface
+     */
+    public Implementation setCompiled(CompiledImplementation compiled)
+    {
+        if (this.compiled != null) {
+            throw new IllegalStateException("Cannot set compiled form more than once");
+        }
+        this.compiled = compiled;
+        return this;
+    }
+    
+    
+    /**
+     * Adds a copy of this program which is specialized for constant arguments.
+     * 
+     * @param specialization
+     * @return Fluent interface
+     */
+    public Implementation addSpecialization(Implementation specialization)
+    {
+        this.specializations.add(specialization);
+        return this;
+    }
+    
+    /**
+     * @return The copies of this program which are specialized for constant
+     *         arguments
+     */
+    public List<Implementation> getSpecializations()
+    {
+        return Collections.unmodifiableList(this.specializations);
+    }
+    
+    
     @Override
     public String toString()
     {
@@ -192,10 +355,33 @@ public class Implementation implements Interpretable, Iterable<Invocation>
     @Override
     public void interpret(Context context) throws RuntimeError
     {
+        if (
+            this.compiled != null
+            && context.frame.programCounter == 0
+            // Compiled code bypasses the profiler
+            && context.profiler == null
+        ) {
+            // Interpretation continues wherever the compiled code stops (if
+            // it stops before the end of the program)
+            this.compiled.run(context);
+            if (
+                context.frame.programCounter < 0
+                || context.frame.programCounter >= this.program.size()
+            ) {
+                return;
+            }
+        }
+        
+        boolean fusion = context.settings.fusion();
         while (true) {
+            if (context.budget != null) {
+                context.budget.tick();
+            }
+            
+            int position = context.frame.programCounter;
             Invocation invocation;
             try {
-                invocation = this.program.get(context.frame.programCounter);
+                invocation = this.program.get(position);
             } catch (IndexOutOfBoundsException e) {
                 break;
             }
@@ -203,6 +389,27 @@ public class Implementation implements Interpretable, Iterable<Invocation>
             
             // This may modify the program counter
             invocation.interpret(context);
+            
+            if (fusion && context.frame.programCounter == position + 1) {
+                this.countPair(position);
+            }
+        }
+    }
+    
+    /**
+     * Counts one execution of the Invocation at the given position being
+     * directly followed by the next one. Once this pair gets hot, an attempt
+     * is made to fuse it into a superinstruction.
+     * 
+     * @param position
+     */
+    private void countPair(int position)
+    {
+        if (this.pairCounts == null) {
+            this.pairCounts = new long[this.program.size()];
+        }
+        if (++this.pairCounts[position] == Peephole.FUSION_THRESHOLD) {
+            Peephole.fuse(this, position);
         }
     }
 }
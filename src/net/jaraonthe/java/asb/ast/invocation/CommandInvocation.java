@@ -1,6 +1,7 @@
 package net.jaraonthe.java.asb.ast.invocation;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -18,6 +19,7 @@ import net.jaraonthe.java.asb.exception.RuntimeError;
 import net.jaraonthe.java.asb.interpret.Context;
 import net.jaraonthe.java.asb.interpret.Frame;
 import net.jaraonthe.java.asb.interpret.value.Value;
+import net.jaraonthe.java.asb.optimize.Specializer;
 import net.jaraonthe.java.asb.parse.Origin;
 
 /**
@@ -50,6 +52,15 @@ public class CommandInvocation extends CommandLike implements Invocation, Compar
     private boolean isResolved = false;
     private Origin origin;
     
+    /**
+     * A copy of the invoked command's implementation which is specialized for
+     * the constant arguments of this invocation. If set, this is executed
+     * instead of the invoked command's interpretable. Null if there is none.
+     * 
+     * @see Specializer
+     */
+    private Implementation specialized = null;
+    
     
     /**
      * @param name of the invoked command
@@ -58,6 +69,24 @@ public class CommandInvocation extends CommandLike implements Invocation, Compar
     {
         super(name);
     }
+    
+    /**
+     * Creates a resolved copy of the given resolved invocation, with other
+     * arguments.
+     * 
+     * @param original
+     * @param arguments Must fit the invoked command's parameters just like
+     *                  the original arguments
+     */
+    private CommandInvocation(CommandInvocation original, List<Argument> arguments)
+    {
+        super(original);
+        this.readableSignature = original.readableSignature;
+        this.invokedCommand    = original.invokedCommand;
+        this.arguments         = new ArrayList<>(arguments);
+        this.isResolved        = true;
+        this.origin            = original.origin;
+    }
 
     
     @Override
@@ -93,6 +122,52 @@ public class CommandInvocation extends CommandLike implements Invocation, Compar
         return this.invokedCommand;
     }
     
+    /**
+     * @return Readonly list of this invocation's arguments. Once resolved,
+     *         these are the actual arguments that fit the invoked command's
+     *         parameters (in the same order).
+     */
+    public List<Argument> getArguments()
+    {
+        return Collections.unmodifiableList(this.arguments);
+    }
+    
+    /**
+     * @param arguments Must fit the invoked command's parameters just like
+     *                  this invocation's arguments
+     * @return A copy of this (resolved) invocation with the given arguments
+     */
+    public CommandInvocation withArguments(List<Argument> arguments)
+    {
+        if (!this.isResolved) {
+            throw new IllegalStateException("Cannot copy an Invocation that isn't resolved yet");
+        }
+        return new CommandInvocation(this, arguments);
+    }
+    
+    /**
+     * @return The implementation copy specialized for this invocation's
+     *         constant arguments. Null if there is none
+     */
+    public Implementation getSpecialized()
+    {
+        return this.specialized;
+    }
+    
+    /**
+     * Sets the implementation copy that is executed instead of the invoked
+     * command's interpretable. It must behave exactly like the latter for this
+     * invocation's arguments.
+     * 
+     * @param specialized
+     * @return Fluent interface
+     */
+    public CommandInvocation setSpecialized(Implementation specialized)
+    {
+        this.specialized = specialized;
+        return this;
+    }
+    
     /**
      * Adds command symbols to this invocation's signature.<br>
      * 
@@ -558,11 +633,36 @@ public class CommandInvocation extends CommandLike implements Invocation, Compar
     
     @Override
     public void interpret(Context context) throws RuntimeError
+    {
+        if (context.profiler != null) {
+            context.profiler.enter(this.invokedCommand);
+            try {
+                this.interpretCommand(context);
+            } finally {
+                context.profiler.exit();
+            }
+            return;
+        }
+        
+        this.interpretCommand(context);
+    }
+    
+    /**
+     * Executes the invoked command.
+     * 
+     * @param context
+     * @throws RuntimeError
+     */
+    private void interpretCommand(Context context) throws RuntimeError
     {
         Context commandContext = this.createCommandContext(context);
         
         try {
-            this.invokedCommand.getInterpretable().interpret(commandContext);
+            if (this.specialized != null) {
+                this.specialized.interpret(commandContext);
+            } else {
+                this.invokedCommand.getInterpretable().interpret(commandContext);
+            }
         } catch (ConstraintException e) {
             throw new RuntimeError(e.getMessage() + " at " + this.getOrigin());
         }
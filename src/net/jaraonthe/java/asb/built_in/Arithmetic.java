@@ -160,15 +160,48 @@ public class Arithmetic implements Interpretable
                 return false;
         }
     }
+    
+    /**
+     * @return The arithmetic operation
+     */
+    public Arithmetic.Type getType()
+    {
+        return this.type;
+    }
 
     
     @Override
     public void interpret(Context context) throws ConstraintException, RuntimeError
     {
-        NumericValue src1 = BuiltInFunction.getNumericValue("src1", context.frame);
-        NumericValue src2 = BuiltInFunction.getNumericValue("src2", context.frame);
-        NumericValue dst  = BuiltInFunction.getNumericValue("dst", context.frame);
-
+        this.calculate(
+            context,
+            BuiltInFunction.getNumericValue("dst", context.frame),
+            BuiltInFunction.getNumericValue("src1", context.frame),
+            BuiltInFunction.getNumericValue("src2", context.frame)
+        );
+    }
+    
+    /**
+     * Executes this arithmetic operation on the given values.<br>
+     * 
+     * This is what {@link #interpret()} does after fetching the operands from
+     * the frame; it can be used directly if the operand values are already
+     * at hand.
+     * 
+     * @param context
+     * @param dst
+     * @param src1
+     * @param src2
+     * 
+     * @throws ConstraintException
+     * @throws RuntimeError
+     */
+    public void calculate(
+        Context context,
+        NumericValue dst,
+        NumericValue src1,
+        NumericValue src2
+    ) throws ConstraintException, RuntimeError {
         BigInteger src1Value = src1.read(context);
         BigInteger src2Value = src2.read(context);
 
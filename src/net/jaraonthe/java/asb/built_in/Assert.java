@@ -93,6 +93,10 @@ public class Assert extends Compare
         if (this.hasMessage) {
             throw new AssertError(BuiltInFunction.getValue("message", context.frame).toString());
         }
+        if (this.operator.signed) {
+            aValue = this.toSigned(this.a, a, aValue);
+            bValue = this.toSigned(this.b, b, bValue);
+        }
         throw new AssertError(
             "Assert failed: " + a.getReferencedName() + " " + this.operator.symbols + " " + b.getReferencedName()
             + " (Values: " + aValue + " " + this.operator.symbols + " " + bValue + ")"
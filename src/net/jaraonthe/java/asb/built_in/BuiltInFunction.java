@@ -74,6 +74,17 @@ public class BuiltInFunction extends Function
         return this.useCallerFrame;
     }
     
+    /**
+     * Built-in functions are not part of the simulated system (those that can
+     * be used in userland are tools for debugging), thus they don't cost
+     * anything.
+     */
+    @Override
+    public int getCost()
+    {
+        return 0;
+    }
+    
     
     /* Common stuff for any bult-in function class */
 
@@ -294,6 +305,12 @@ public class BuiltInFunction extends Function
             ast.addCommand(Mov.create(Mov.OperandType.REGISTER, src));
         }
         
+        // &mov_le, &mov_be
+        for (MovWords.Endianness endianness : MovWords.Endianness.values()) {
+            ast.addCommand(MovWords.create(endianness, MovWords.Direction.LOAD));
+            ast.addCommand(MovWords.create(endianness, MovWords.Direction.STORE));
+        }
+        
         // &movif
         for (Compare.Operator operator : Compare.Operator.values()) {
             for (BuiltInFunction.OperandType a : BuiltInFunction.OperandType.values()) {
@@ -339,6 +356,13 @@ public class BuiltInFunction extends Function
         // &return
         ast.addCommand(Return.create());
         
+        // &shl, &shr, &sar, &rol, &ror
+        for (Shift.Type type : Shift.Type.values()) {
+            for (BuiltInFunction.OperandType amountType : BuiltInFunction.OperandType.values()) {
+                ast.addCommand(Shift.create(type, amountType));
+            }
+        }
+        
         // &sign_extend
         ast.addCommand(SignExtend.create());
         
@@ -18,18 +18,28 @@ abstract public class Compare implements Interpretable
 {
     public enum Operator
     {
-        EQUALS                ("=="),
-        GREATER_THAN          (">"),
-        GREATER_THAN_OR_EQUALS(">="),
-        LESS_THAN             ("<"),
-        LESS_THAN_OR_EQUALS   ("<="),
-        NOT_EQUALS            ("!=");
+        EQUALS                       ("==",  false),
+        GREATER_THAN                 (">",   false),
+        GREATER_THAN_OR_EQUALS       (">=",  false),
+        LESS_THAN                    ("<",   false),
+        LESS_THAN_OR_EQUALS          ("<=",  false),
+        NOT_EQUALS                   ("!=",  false),
+        GREATER_THAN_SIGNED          (">$",  true),
+        GREATER_THAN_OR_EQUALS_SIGNED(">=$", true),
+        LESS_THAN_SIGNED             ("<$",  true),
+        LESS_THAN_OR_EQUALS_SIGNED   ("<=$", true);
         
         public final String symbols;
         
-        private Operator(String symbols)
+        /**
+         * True: Register operands are interpreted as two's complement values.
+         */
+        public final boolean signed;
+        
+        private Operator(String symbols, boolean signed)
         {
             this.symbols = symbols;
+            this.signed  = signed;
         }
     }
     
@@ -84,6 +94,14 @@ abstract public class Compare implements Interpretable
         function.addParameterByType(b, "b");
     }
     
+    /**
+     * @return The comparison operator
+     */
+    public Compare.Operator getOperator()
+    {
+        return this.operator;
+    }
+    
     
     /**
      * Compares a and b parameters.
@@ -119,8 +137,50 @@ abstract public class Compare implements Interpretable
      */
     protected boolean compare(Context context, BigInteger aValue, BigInteger bValue) throws RuntimeError
     {
-        NumericValue a = BuiltInFunction.getNumericValue("a", context.frame);
-        NumericValue b = BuiltInFunction.getNumericValue("b", context.frame);
+        return this.compare(
+            BuiltInFunction.getNumericValue("a", context.frame),
+            BuiltInFunction.getNumericValue("b", context.frame),
+            aValue,
+            bValue
+        );
+    }
+    
+    /**
+     * Compares the given a and b values.<br>
+     * 
+     * This can be used directly if the operand values are already at hand.
+     * 
+     * @param context
+     * @param a
+     * @param b
+     * 
+     * @return True if comparison according to {@link #operator} yields true
+     * 
+     * @throws RuntimeError
+     */
+    public boolean compare(Context context, NumericValue a, NumericValue b) throws RuntimeError
+    {
+        return this.compare(a, b, a.read(context), b.read(context));
+    }
+    
+    /**
+     * Compares a and b, of which the actual BigInteger values have already
+     * been read.
+     * 
+     * @param a
+     * @param b
+     * @param aValue
+     * @param bValue
+     * 
+     * @return True if comparison according to {@link #operator} yields true
+     */
+    private boolean compare(NumericValue a, NumericValue b, BigInteger aValue, BigInteger bValue)
+    {
+        if (this.operator.signed) {
+            return this.evaluate(
+                this.toSigned(this.a, a, aValue).compareTo(this.toSigned(this.b, b, bValue))
+            );
+        }
         
         int cmp          = 0;
         boolean compared = false;
@@ -155,13 +215,41 @@ abstract public class Compare implements Interpretable
             cmp = aValue.compareTo(bValue);
         }
         
+        return this.evaluate(cmp);
+    }
+    
+    /**
+     * @param cmp The result of comparing a to b (as in {@link
+     *            Comparable#compareTo(Object)})
+     * @return True if this yields true according to {@link #operator}
+     */
+    private boolean evaluate(int cmp)
+    {
         return switch (this.operator) {
-            case EQUALS                 -> cmp == 0;
-            case GREATER_THAN           -> cmp > 0;
-            case GREATER_THAN_OR_EQUALS -> cmp >= 0;
-            case LESS_THAN              -> cmp < 0;
-            case LESS_THAN_OR_EQUALS    -> cmp <= 0;
-            case NOT_EQUALS             -> cmp != 0;
+            case EQUALS                                                -> cmp == 0;
+            case GREATER_THAN, GREATER_THAN_SIGNED                     -> cmp > 0;
+            case GREATER_THAN_OR_EQUALS, GREATER_THAN_OR_EQUALS_SIGNED -> cmp >= 0;
+            case LESS_THAN, LESS_THAN_SIGNED                           -> cmp < 0;
+            case LESS_THAN_OR_EQUALS, LESS_THAN_OR_EQUALS_SIGNED       -> cmp <= 0;
+            case NOT_EQUALS                                            -> cmp != 0;
         };
     }
+    
+    /**
+     * Interprets a register operand value as two's complement. Immediates
+     * are used as they are (they may already be negative).
+     * 
+     * @param type  The operand type
+     * @param value The operand
+     * @param read  The value read from the operand
+     * 
+     * @return
+     */
+    protected BigInteger toSigned(BuiltInFunction.OperandType type, NumericValue value, BigInteger read)
+    {
+        if (type == BuiltInFunction.OperandType.IMMEDIATE || !read.testBit(value.length - 1)) {
+            return read;
+        }
+        return read.subtract(BigInteger.ONE.shiftLeft(value.length));
+    }
 }
@@ -75,6 +75,14 @@ public class Logical implements Interpretable
         return function;
     }
     
+    /**
+     * @return The logical operation
+     */
+    public Logical.Type getType()
+    {
+        return this.type;
+    }
+    
     
     @Override
     public void interpret(Context context) throws ConstraintException, RuntimeError
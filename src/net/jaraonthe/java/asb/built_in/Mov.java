@@ -102,6 +102,22 @@ public class Mov implements Interpretable
         }
     }
     
+    /**
+     * @return The destination operand type
+     */
+    public Mov.OperandType getDstType()
+    {
+        return this.dst;
+    }
+    
+    /**
+     * @return The source operand type
+     */
+    public Mov.OperandType getSrcType()
+    {
+        return this.src;
+    }
+    
     
     @Override
     public void interpret(Context context) throws ConstraintException, RuntimeError
@@ -131,9 +147,59 @@ public class Mov implements Interpretable
             throw new ConstraintException("Cannot &mov to/from memory as it is not configured");
         }
         
-        NumericValue srcValue = BuiltInFunction.getNumericValue("src", context.frame);
-        NumericValue dstValue = BuiltInFunction.getNumericValue("dst", context.frame);
+        Mov.move(
+            context,
+            dst,
+            src,
+            BuiltInFunction.getNumericValue("dst", context.frame),
+            BuiltInFunction.getNumericValue("src", context.frame)
+        );
+    }
+    
+    /**
+     * Executes this move on the given values.<br>
+     * 
+     * This can be used directly if the operand values are already at hand.
+     * 
+     * @param context
+     * @param dstValue
+     * @param srcValue
+     * 
+     * @throws ConstraintException
+     * @throws RuntimeError
+     */
+    public void move(Context context, NumericValue dstValue, NumericValue srcValue) throws ConstraintException, RuntimeError
+    {
+        if (
+            (this.dst == Mov.OperandType.ADDRESS || this.src == Mov.OperandType.ADDRESS)
+            && context.memory == null
+        ) {
+            throw new ConstraintException("Cannot &mov to/from memory as it is not configured");
+        }
         
+        Mov.move(context, this.dst, this.src, dstValue, srcValue);
+    }
+    
+    /**
+     * Executes a move on the given values. Memory must be configured if
+     * dst or src is ADDRESS.
+     * 
+     * @param context
+     * @param dst
+     * @param src
+     * @param dstValue
+     * @param srcValue
+     * 
+     * @throws ConstraintException
+     * @throws RuntimeError
+     */
+    private static void move(
+        Context context,
+        Mov.OperandType dst,
+        Mov.OperandType src,
+        NumericValue dstValue,
+        NumericValue srcValue
+    ) throws ConstraintException, RuntimeError {
         if (dst == Mov.OperandType.ADDRESS) {
             Mov.checkAddress(dstValue, context, "to");
         }
@@ -0,0 +1,170 @@
+package net.jaraonthe.java.asb.built_in;
+
+import net.jaraonthe.java.asb.ast.variable.Parameter;
+import net.jaraonthe.java.asb.exception.ConstraintException;
+import net.jaraonthe.java.asb.exception.RuntimeError;
+import net.jaraonthe.java.asb.interpret.Context;
+import net.jaraonthe.java.asb.interpret.Interpretable;
+import net.jaraonthe.java.asb.interpret.value.NumericValue;
+
+/**
+ * The {@code &mov_le} and {@code &mov_be} built-in functions, which move
+ * several consecutive memory words at once.<br>
+ *
+ * {@code &mov_le dstRegister, @srcAddress}<br>
+ * {@code &mov_le @dstAddress, srcRegister}<br>
+ * {@code &mov_be dstRegister, @srcAddress}<br>
+ * {@code &mov_be @dstAddress, srcRegister}<br>
+ *
+ * The amount of memory words is given by the register length, which must be
+ * a multiple of the memory word length.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class MovWords implements Interpretable
+{
+    public enum Endianness
+    {
+        LITTLE ("&mov_le"),
+        BIG    ("&mov_be");
+
+        public final String functionName;
+
+        private Endianness(String functionName)
+        {
+            this.functionName = functionName;
+        }
+    }
+
+    public enum Direction
+    {
+        /**
+         * dstRegister, @srcAddress
+         */
+        LOAD,
+
+        /**
+         * @dstAddress, srcRegister
+         */
+        STORE;
+    }
+
+    private final MovWords.Endianness endianness;
+    private final MovWords.Direction direction;
+
+
+    /**
+     * @param endianness
+     * @param direction
+     */
+    private MovWords(MovWords.Endianness endianness, MovWords.Direction direction)
+    {
+        this.endianness = endianness;
+        this.direction  = direction;
+    }
+
+    /**
+     * Creates a {@code &mov_le} or {@code &mov_be} built-in function as
+     * configured.
+     *
+     * @param endianness
+     * @param direction
+     *
+     * @return
+     */
+    public static BuiltInFunction create(MovWords.Endianness endianness, MovWords.Direction direction)
+    {
+        BuiltInFunction function = new BuiltInFunction(endianness.functionName, false);
+
+        if (direction == MovWords.Direction.STORE) {
+            function.addCommandSymbols("@");
+        }
+        function.addParameterByType(Parameter.Type.REGISTER, "dst");
+        function.addCommandSymbols(",");
+        if (direction == MovWords.Direction.LOAD) {
+            function.addCommandSymbols("@");
+        }
+        function.addParameterByType(Parameter.Type.REGISTER, "src");
+
+        function.setInterpretable(new MovWords(endianness, direction));
+        return function;
+    }
+
+
+    @Override
+    public void interpret(Context context) throws ConstraintException, RuntimeError
+    {
+        this.move(
+            context,
+            BuiltInFunction.getNumericValue("dst", context.frame),
+            BuiltInFunction.getNumericValue("src", context.frame)
+        );
+    }
+
+    /**
+     * Executes this move on the given values.<br>
+     *
+     * This can be used directly if the operand values are already at hand.
+     *
+     * @param context
+     * @param dstValue
+     * @param srcValue
+     *
+     * @throws ConstraintException
+     * @throws RuntimeError
+     */
+    public void move(Context context, NumericValue dstValue, NumericValue srcValue) throws ConstraintException, RuntimeError
+    {
+        if (context.memory == null) {
+            throw new ConstraintException(
+                "Cannot " + this.endianness.functionName + " to/from memory as it is not configured"
+            );
+        }
+
+        NumericValue address;
+        NumericValue register;
+        if (this.direction == MovWords.Direction.LOAD) {
+            address  = srcValue;
+            register = dstValue;
+        } else {
+            address  = dstValue;
+            register = srcValue;
+        }
+
+        if (address.length != context.memory.addressLength) {
+            throw new ConstraintException(
+                "Cannot " + this.endianness.functionName + " "
+                + (this.direction == MovWords.Direction.LOAD ? "from" : "to")
+                + " memory address given in " + address.getReferencedName()
+                + " as it doesn't have the proper length for an address"
+            );
+        }
+        if (register.length % context.memory.wordLength != 0) {
+            throw new ConstraintException(
+                "Cannot " + this.endianness.functionName + " "
+                + (this.direction == MovWords.Direction.LOAD ? "to" : "from")
+                + " " + register.getReferencedName()
+                + " as its length is not a multiple of the memory word length"
+            );
+        }
+        int count = register.length / context.memory.wordLength;
+
+        if (this.direction == MovWords.Direction.LOAD) {
+            register.write(
+                context.memory.readWords(
+                    address.read(context), // @srcAddress
+                    count,
+                    this.endianness == MovWords.Endianness.BIG
+                ),
+                context
+            );
+        } else {
+            context.memory.writeWords(
+                address.read(context),  // @dstAddress
+                count,
+                register.read(context), // srcRegister
+                this.endianness == MovWords.Endianness.BIG
+            );
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package net.jaraonthe.java.asb.built_in;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+import net.jaraonthe.java.asb.ast.AST;
+import net.jaraonthe.java.asb.interpret.Interpretable;
+
+/**
+ * Service provider interface for commands implemented in Java outside of ASB
+ * (native extensions).<br>
+ * 
+ * Implementations are found via {@link ServiceLoader}, i.e. a jar on the
+ * classpath that lists its implementation class in
+ * {@code META-INF/services/net.jaraonthe.java.asb.built_in.NativeExtension}.
+ * A native extension may:
+ * <ul>
+ * <li>add built-in functions, which are created just like those in this
+ *     namespace (see {@link BuiltInFunction})</li>
+ * <li>provide native overrides, i.e. Interpretables that are executed
+ *     instead of the implementation of a command defined in ASB source code
+ *     (see {@link NativeOverride})</li>
+ * </ul>
+ * 
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public interface NativeExtension
+{
+    /**
+     * Adds this extension's built-in functions to the given AST (via
+     * {@link AST#addCommand(net.jaraonthe.java.asb.ast.command.Command)}).
+     * This is called after all built-in functions of this namespace have been
+     * added, and before any ASB source code is parsed.<br>
+     * 
+     * Default: No built-in functions are added.
+     * 
+     * @param ast
+     */
+    public default void addBuiltInFunctions(AST ast)
+    {
+    }
+    
+    /**
+     * Provides native overrides. These are bound after all ASB source code has
+     * been parsed; each command must be defined in ASB source code by then.<br>
+     * 
+     * An override is invoked with the same frame the command's implementation
+     * would be invoked with, i.e. it finds the command's arguments under the
+     * parameter names and must only have the effects the implementation has.<br>
+     * 
+     * Default: No overrides.
+     * 
+     * @return Command identity => native interpretable. The command identity is
+     *         given in its readable form (as shown in error messages, e.g.
+     *         {@code "mulh /register''32 , /register''32 , /register''32"}, see
+     *         {@link net.jaraonthe.java.asb.ast.command.Command#getReadableIdentity()})
+     *         or in its technical form
+     */
+    public default Map<String, Interpretable> getNativeOverrides()
+    {
+        return Map.of();
+    }
+    
+    
+    /**
+     * Loads all native extensions found on the classpath.
+     * 
+     * @return
+     */
+    public static List<NativeExtension> load()
+    {
+        List<NativeExtension> extensions = new ArrayList<>();
+        for (NativeExtension extension : ServiceLoader.load(NativeExtension.class)) {
+            extensions.add(extension);
+        }
+        return extensions;
+    }
+}
@@ -0,0 +1,230 @@
+package net.jaraonthe.java.asb.built_in;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jaraonthe.java.asb.ast.command.Command;
+import net.jaraonthe.java.asb.ast.command.Implementation;
+import net.jaraonthe.java.asb.ast.variable.Parameter;
+import net.jaraonthe.java.asb.ast.variable.Register;
+import net.jaraonthe.java.asb.ast.variable.RegisterAlias;
+import net.jaraonthe.java.asb.exception.ConstraintException;
+import net.jaraonthe.java.asb.exception.RuntimeError;
+import net.jaraonthe.java.asb.interpret.Context;
+import net.jaraonthe.java.asb.interpret.Frame;
+import net.jaraonthe.java.asb.interpret.Interpretable;
+import net.jaraonthe.java.asb.interpret.Memory;
+import net.jaraonthe.java.asb.interpret.value.BitwiseNumericValue;
+import net.jaraonthe.java.asb.interpret.value.NumericValue;
+import net.jaraonthe.java.asb.interpret.value.NumericValueStore;
+import net.jaraonthe.java.asb.interpret.value.VirtualNumericValue;
+
+/**
+ * Executes a native interpretable (provided by a {@link NativeExtension})
+ * instead of the implementation of a command defined in ASB source code.<br>
+ * 
+ * If --verify-native is set, both are executed and their effects are
+ * compared: The native interpretable is executed first, then all registers,
+ * memory words, and the program counter it has changed are restored, and the
+ * implementation is executed. If the results differ, a {@link RuntimeError}
+ * is thrown; otherwise the state left by the implementation is kept.
+ * Devices are not restored, i.e. their side effects occur twice.
+ * 
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class NativeOverride implements Interpretable
+{
+    /**
+     * The overridden command.
+     */
+    public final Command command;
+    
+    /**
+     * The command's implementation as defined in ASB source code.
+     */
+    public final Implementation implementation;
+    
+    public final Interpretable nativeInterpretable;
+    
+    /**
+     * The name of the extension class that provides the native interpretable.
+     * Used in error messages.
+     */
+    public final String provider;
+    
+    /**
+     * @param command             Must have an {@link Implementation}
+     * @param nativeInterpretable
+     * @param provider            The name of the extension class that
+     *                            provides the native interpretable
+     */
+    public NativeOverride(Command command, Interpretable nativeInterpretable, String provider)
+    {
+        if (!(command.getInterpretable() instanceof Implementation)) {
+            throw new IllegalArgumentException(
+                "Cannot override " + command.getReadableIdentity() + " as it has no implementation"
+            );
+        }
+        this.command             = command;
+        this.implementation      = (Implementation) command.getInterpretable();
+        this.nativeInterpretable = nativeInterpretable;
+        this.provider            = provider;
+    }
+    
+    @Override
+    public void interpret(Context context) throws ConstraintException, RuntimeError
+    {
+        if (context.settings.verifyNative()) {
+            this.verify(context);
+            return;
+        }
+        this.nativeInterpretable.interpret(context);
+    }
+    
+    /**
+     * Executes both the native interpretable and the implementation and
+     * compares their effects.
+     * 
+     * @param context
+     * 
+     * @throws ConstraintException
+     * @throws RuntimeError if the effects differ
+     */
+    private void verify(Context context) throws ConstraintException, RuntimeError
+    {
+        Map<NumericValueStore, String> stores = this.getStores(context);
+        Frame rootFrame    = context.frame.getRootParentFrame();
+        int programCounter = rootFrame.programCounter;
+        
+        Map<NumericValueStore, BigInteger> before = new HashMap<>();
+        for (NumericValueStore store : stores.keySet()) {
+            before.put(store, store.read(context));
+        }
+        
+        Memory memory                            = context.memory;
+        Map<BigInteger, BigInteger> outerJournal = null;
+        Map<BigInteger, BigInteger> journal      = new HashMap<>();
+        if (memory != null) {
+            // Overrides may be nested (when the implementation invokes
+            // another overridden command)
+            outerJournal = memory.getWriteJournal();
+            memory.setWriteJournal(journal);
+        }
+        
+        List<String> differences = new ArrayList<>();
+        try {
+            this.nativeInterpretable.interpret(context);
+            
+            Map<NumericValueStore, BigInteger> nativeValues = new HashMap<>();
+            for (NumericValueStore store : stores.keySet()) {
+                nativeValues.put(store, store.read(context));
+                store.write(before.get(store), context);
+            }
+            Map<BigInteger, BigInteger> nativeWords = new HashMap<>();
+            for (Map.Entry<BigInteger, BigInteger> entry : journal.entrySet()) {
+                nativeWords.put(entry.getKey(), memory.peek(entry.getKey()));
+                // This doesn't change the journal, as the address is in it
+                // already
+                memory.poke(entry.getKey(), entry.getValue());
+            }
+            int nativeProgramCounter = rootFrame.programCounter;
+            rootFrame.programCounter = programCounter;
+            context.frame.programCounter = 0;
+            
+            this.implementation.interpret(context);
+            
+            for (Map.Entry<NumericValueStore, String> entry : stores.entrySet()) {
+                BigInteger expected = entry.getKey().read(context);
+                BigInteger actual   = nativeValues.get(entry.getKey());
+                if (!expected.equals(actual)) {
+                    differences.add(entry.getValue() + " is " + actual + " instead of " + expected);
+                }
+            }
+            for (Map.Entry<BigInteger, BigInteger> entry : journal.entrySet()) {
+                BigInteger expected = memory.peek(entry.getKey());
+                BigInteger actual   = nativeWords.getOrDefault(entry.getKey(), entry.getValue());
+                if (!expected.equals(actual)) {
+                    differences.add(
+                        "@0x" + entry.getKey().toString(16) + " is " + actual + " instead of " + expected
+                    );
+                }
+            }
+            if (nativeProgramCounter != rootFrame.programCounter) {
+                differences.add(
+                    "program counter is " + nativeProgramCounter + " instead of " + rootFrame.programCounter
+                );
+            }
+        } finally {
+            if (memory != null) {
+                memory.setWriteJournal(outerJournal);
+                if (outerJournal != null) {
+                    for (Map.Entry<BigInteger, BigInteger> entry : journal.entrySet()) {
+                        outerJournal.putIfAbsent(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+        }
+        
+        if (!differences.isEmpty()) {
+            throw new RuntimeError(
+                "Native override of " + this.command.getReadableIdentity() + " (" + this.provider
+                + ") differs from its implementation: " + String.join(", ", differences)
+            );
+        }
+    }
+    
+    /**
+     * @param context
+     * @return The stores of all values the command may change (i.e. all
+     *         registers and the values passed to register parameters) =>
+     *         name used in error messages
+     */
+    private Map<NumericValueStore, String> getStores(Context context)
+    {
+        Map<NumericValueStore, String> stores = new LinkedHashMap<>();
+        try {
+            for (Parameter parameter : this.command.getParameters()) {
+                if (parameter.type == Parameter.Type.REGISTER) {
+                    NativeOverride.addStore(context.frame.getNumericValue(parameter.name), stores);
+                }
+            }
+            Frame rootFrame = context.frame.getRootParentFrame();
+            for (Register register : context.ast.getRegisters()) {
+                if (!(register instanceof RegisterAlias)) {
+                    NativeOverride.addStore(rootFrame.getNumericValue(register.name), stores);
+                }
+            }
+        } catch (ConstraintException e) {
+            // Converting exception, as this case should never happen (all
+            // parameters and registers have a value)
+            throw new RuntimeException(e);
+        }
+        return stores;
+    }
+    
+    /**
+     * Adds the store that holds the given value (if any). Virtual registers
+     * are not read via their getter, but via their store.
+     * 
+     * @param value
+     * @param stores
+     */
+    private static void addStore(NumericValue value, Map<NumericValueStore, String> stores)
+    {
+        value = value.getReferenced();
+        if (value instanceof BitwiseNumericValue) {
+            NativeOverride.addStore(((BitwiseNumericValue) value).accessed, stores);
+        } else if (value instanceof VirtualNumericValue) {
+            NumericValueStore store = ((VirtualNumericValue) value).getStore();
+            if (store != null) {
+                stores.putIfAbsent(store, value.variable.name);
+            }
+        } else if (value instanceof NumericValueStore) {
+            stores.putIfAbsent((NumericValueStore) value, value.variable.name);
+        }
+    }
+}
@@ -68,6 +68,16 @@ public class ProgramCounter implements Interpretable
     }
     
     
+    /**
+     * @return True if this sets the program counter (rather than reading it)
+     */
+    public boolean setsProgramCounter()
+    {
+        return this.type == ProgramCounter.Type.SET_PROGRAM_COUNTER
+            || this.type == ProgramCounter.Type.SET_PC;
+    }
+    
+    
     @Override
     public void interpret(Context context) throws ConstraintException, RuntimeError
     {
@@ -0,0 +1,176 @@
+package net.jaraonthe.java.asb.built_in;
+
+import java.math.BigInteger;
+
+import net.jaraonthe.java.asb.ast.variable.Parameter;
+import net.jaraonthe.java.asb.exception.ConstraintException;
+import net.jaraonthe.java.asb.exception.RuntimeError;
+import net.jaraonthe.java.asb.interpret.Context;
+import net.jaraonthe.java.asb.interpret.Interpretable;
+import net.jaraonthe.java.asb.interpret.value.NumericValue;
+
+/**
+ * The {@code &shl}, {@code &shr}, {@code &sar}, {@code &rol}, and {@code &ror}
+ * built-in functions.<br>
+ *
+ * {@code &shl dstRegister, srcRegister, amountImm};<br>
+ * {@code &shl dstRegister, srcRegister, amountRegister};<br>
+ * {@code &shr dstRegister, srcRegister, amountImm};<br>
+ * {@code &shr dstRegister, srcRegister, amountRegister};<br>
+ * {@code &sar dstRegister, srcRegister, amountImm};<br>
+ * {@code &sar dstRegister, srcRegister, amountRegister};<br>
+ * {@code &rol dstRegister, srcRegister, amountImm};<br>
+ * {@code &rol dstRegister, srcRegister, amountRegister};<br>
+ * {@code &ror dstRegister, srcRegister, amountImm};<br>
+ * {@code &ror dstRegister, srcRegister, amountRegister};
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class Shift implements Interpretable
+{
+    public enum Type
+    {
+        SHIFT_LEFT            ("&shl"),
+        SHIFT_RIGHT           ("&shr"),
+        SHIFT_RIGHT_ARITHMETIC("&sar"),
+        ROTATE_LEFT           ("&rol"),
+        ROTATE_RIGHT          ("&ror");
+
+        public final String functionName;
+
+        private Type(String functionName)
+        {
+            this.functionName = functionName;
+        }
+    }
+
+    protected final Shift.Type type;
+
+
+    /**
+     * @param type Selects the actual function
+     */
+    private Shift(Shift.Type type)
+    {
+        this.type = type;
+    }
+
+    /**
+     * Creates a {@code &shl}, {@code &shr}, {@code &sar}, {@code &rol}, or
+     * {@code &ror} built-in function with the given operands variant.
+     *
+     * @param type       Selects the actual function
+     * @param amountType Selects the function variant (via the amount type)
+     *
+     * @return
+     */
+    public static BuiltInFunction create(Shift.Type type, BuiltInFunction.OperandType amountType)
+    {
+        BuiltInFunction function = new BuiltInFunction(type.functionName, false);
+
+        function.addParameterByType(Parameter.Type.REGISTER, "dst");
+        function.addCommandSymbols(",");
+        function.addParameterByType(Parameter.Type.REGISTER, "src");
+        function.addCommandSymbols(",");
+        function.addParameterByType(amountType, "amount");
+
+        function.setInterpretable(new Shift(type));
+        return function;
+    }
+
+    /**
+     * @return The shift or rotation
+     */
+    public Shift.Type getType()
+    {
+        return this.type;
+    }
+
+
+    @Override
+    public void interpret(Context context) throws ConstraintException, RuntimeError
+    {
+        this.calculate(
+            context,
+            BuiltInFunction.getNumericValue("dst", context.frame),
+            BuiltInFunction.getNumericValue("src", context.frame),
+            BuiltInFunction.getNumericValue("amount", context.frame)
+        );
+    }
+
+    /**
+     * Executes this shift or rotation on the given values.<br>
+     *
+     * This can be used directly if the operand values are already at hand.
+     *
+     * @param context
+     * @param dst
+     * @param src
+     * @param amount
+     *
+     * @throws ConstraintException
+     * @throws RuntimeError
+     */
+    public void calculate(
+        Context context,
+        NumericValue dst,
+        NumericValue src,
+        NumericValue amount
+    ) throws ConstraintException, RuntimeError {
+        if (src.length != dst.length) {
+            throw new ConstraintException(
+                "Cannot " + this.type.functionName + " variable " + src.getReferencedName()
+                + " that does not have the same length as the destination variable "
+                + dst.getReferencedName()
+            );
+        }
+
+        int length             = dst.length;
+        BigInteger srcValue    = src.read(context);
+        BigInteger amountValue = amount.read(context);
+        BigInteger mask        = BigInteger.ONE.shiftLeft(length).subtract(BigInteger.ONE);
+
+        // Amounts of at least the length shift out everything, so they are
+        // capped here - this also keeps huge amounts within int range
+        int bits;
+        if (amountValue.compareTo(BigInteger.valueOf(length)) >= 0) {
+            bits = length;
+        } else {
+            bits = amountValue.intValue();
+        }
+
+        BigInteger result = null;
+        switch (this.type) {
+            case SHIFT_LEFT:
+                result = srcValue.shiftLeft(bits).and(mask);
+                break;
+
+            case SHIFT_RIGHT:
+                result = srcValue.shiftRight(bits);
+                break;
+
+            case SHIFT_RIGHT_ARITHMETIC:
+                result = srcValue.shiftRight(bits);
+                if (srcValue.testBit(length - 1)) {
+                    // Fill up with the sign bit
+                    result = result.or(
+                        mask.xor(mask.shiftRight(bits))
+                    );
+                }
+                break;
+
+            case ROTATE_LEFT:
+            case ROTATE_RIGHT:
+                bits = amountValue.mod(BigInteger.valueOf(length)).intValue();
+                if (this.type == Shift.Type.ROTATE_RIGHT) {
+                    bits = (length - bits) % length;
+                }
+                result = srcValue.shiftLeft(bits).and(mask).or(
+                    srcValue.shiftRight(length - bits)
+                );
+                break;
+        }
+
+        dst.write(result, context);
+    }
+}
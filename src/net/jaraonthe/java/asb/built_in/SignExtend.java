@@ -1,6 +1,7 @@
 package net.jaraonthe.java.asb.built_in;
 
 import java.math.BigInteger;
+import java.util.Arrays;
 
 import net.jaraonthe.java.asb.ast.variable.Parameter;
 import net.jaraonthe.java.asb.exception.ConstraintException;
@@ -40,8 +41,25 @@ public class SignExtend implements Interpretable
     @Override
     public void interpret(Context context) throws ConstraintException, RuntimeError
     {
-        NumericValue src = BuiltInFunction.getNumericValue("src", context.frame);
-        NumericValue dst = BuiltInFunction.getNumericValue("dst", context.frame);
+        SignExtend.extend(
+            context,
+            BuiltInFunction.getNumericValue("dst", context.frame),
+            BuiltInFunction.getNumericValue("src", context.frame)
+        );
+    }
+    
+    /**
+     * Sign-extends src into dst.
+     * 
+     * @param context
+     * @param dst
+     * @param src
+     * 
+     * @throws ConstraintException
+     * @throws RuntimeError
+     */
+    public static void extend(Context context, NumericValue dst, NumericValue src) throws ConstraintException, RuntimeError
+    {
         if (src.length > dst.length) {
             throw new ConstraintException(
                 "Cannot &sign_extend from bigger variable " + src.getReferencedName()
@@ -70,6 +88,11 @@ public class SignExtend implements Interpretable
         
         // Byte arrays: MSB is in element #0 (big-endian)
         byte[] content = value.toByteArray(); // Minimum length two's-complement
+        if (content.length > 1 && content[0] == 0) {
+            // Drop the sign byte that is added if the high bit is set
+            // (i.e. if src's length is a multiple of 8)
+            content = Arrays.copyOfRange(content, 1, content.length);
+        }
         byte[] extended = new byte[dstTotalBytes];
         System.arraycopy(content, 0, extended, extended.length - content.length, content.length);
         
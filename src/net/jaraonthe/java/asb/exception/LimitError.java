@@ -0,0 +1,29 @@
+package net.jaraonthe.java.asb.exception;
+
+import net.jaraonthe.java.asb.interpret.Budget;
+
+/**
+ * Used when the interpretation exceeds a configured limit (maximum amount of
+ * steps or timeout).
+ *
+ * @see Budget
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class LimitError extends RuntimeError
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param message
+     */
+    public LimitError(String message)
+    {
+        super(message);
+    }
+
+    @Override
+    protected String getTitle()
+    {
+        return "Limit Exceeded";
+    }
+}
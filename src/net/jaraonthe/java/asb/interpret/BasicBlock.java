@@ -0,0 +1,104 @@
+package net.jaraonthe.java.asb.interpret;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jaraonthe.java.asb.ast.AST;
+import net.jaraonthe.java.asb.ast.command.Command;
+import net.jaraonthe.java.asb.ast.invocation.Argument;
+import net.jaraonthe.java.asb.ast.invocation.CommandInvocation;
+import net.jaraonthe.java.asb.ast.invocation.Invocation;
+import net.jaraonthe.java.asb.ast.invocation.LabelArgument;
+import net.jaraonthe.java.asb.interpret.branch.BranchSimulator;
+
+/**
+ * A basic block of the userland program, i.e. a sequence of invocations
+ * which is only entered at its first and only left after its last
+ * invocation.<br>
+ *
+ * A block starts at the beginning of the program, at every position a label
+ * argument points to, and after every branch (see {@link BranchSimulator}).
+ * The program counter may still be set to a position within a block (e.g. via
+ * {@code &set_pc} with a computed value), and a block may be left early (e.g.
+ * via {@code &halt}); the interpreter takes care of this.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class BasicBlock
+{
+    /**
+     * The position of this block within the list of all blocks.
+     */
+    public final int index;
+
+    /**
+     * The program position of the first invocation.
+     */
+    public final int start;
+
+    /**
+     * The program position after the last invocation.
+     */
+    public final int end;
+
+
+    /**
+     * @param index
+     * @param start
+     * @param end
+     */
+    private BasicBlock(int index, int start, int end)
+    {
+        this.index = index;
+        this.start = start;
+        this.end   = end;
+    }
+
+    /**
+     * Partitions the userland program into basic blocks.
+     *
+     * @param ast
+     * @return All blocks, in program order. Empty if the program is empty
+     */
+    public static List<BasicBlock> discover(AST ast)
+    {
+        List<Invocation> program = ast.getProgram();
+        boolean[] starts = new boolean[program.size() + 1];
+        starts[0] = true;
+        Map<Command, Boolean> setsProgramCounter = new HashMap<>();
+        for (int position = 0; position < program.size(); position++) {
+            if (!(program.get(position) instanceof CommandInvocation)) {
+                continue;
+            }
+            CommandInvocation invocation = (CommandInvocation) program.get(position);
+            if (BranchSimulator.isBranch(invocation, setsProgramCounter)) {
+                starts[position + 1] = true;
+            }
+            for (Argument argument : invocation.getArguments()) {
+                if (argument instanceof LabelArgument && ((LabelArgument) argument).hasLabelPosition()) {
+                    starts[((LabelArgument) argument).getLabelPosition()] = true;
+                }
+            }
+        }
+
+        List<BasicBlock> blocks = new ArrayList<>();
+        int start = 0;
+        for (int position = 1; position <= program.size(); position++) {
+            if (starts[position] || position == program.size()) {
+                blocks.add(new BasicBlock(blocks.size(), start, position));
+                start = position;
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * @return The amount of invocations in this block
+     */
+    public int size()
+    {
+        return this.end - this.start;
+    }
+}
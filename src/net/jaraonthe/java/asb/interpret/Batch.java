@@ -0,0 +1,319 @@
+package net.jaraonthe.java.asb.interpret;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.jaraonthe.java.asb.Print;
+import net.jaraonthe.java.asb.Settings;
+import net.jaraonthe.java.asb.ast.AST;
+import net.jaraonthe.java.asb.exception.RuntimeError;
+import net.jaraonthe.java.asb.interpret.value.NumericValueStore;
+
+/**
+ * Runs several variants of the user program in parallel (batch mode).<br>
+ *
+ * The program is run once up to the fork point (warm-up). Then one copy of
+ * the system state is forked for each variant, the variant's register and
+ * memory assignments are applied, and the copies run to the end in parallel.
+ * Forks share memory copy-on-write, so forking is cheap even for big
+ * memories.<br>
+ *
+ * The output of each variant is collected and printed in the order of the
+ * variants once all of them are done.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class Batch
+{
+    /**
+     * One variant, i.e. one line of the batch file.
+     */
+    private static class Variant
+    {
+        /**
+         * The assignments as given in the batch file.
+         */
+        private final String description;
+
+        /**
+         * register name => value
+         */
+        private final Map<String, BigInteger> registers = new LinkedHashMap<>();
+
+        /**
+         * memory address => value
+         */
+        private final Map<BigInteger, BigInteger> memory = new LinkedHashMap<>();
+
+        /**
+         * Everything the variant has printed.
+         */
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        /**
+         * @param description
+         */
+        private Variant(String description)
+        {
+            this.description = description;
+        }
+    }
+
+    /**
+     * Passes written bytes on to the stream that has been set for the current
+     * thread, or to a fallback stream if none is set. This is used to collect
+     * the output of each variant separately.
+     */
+    private static class DispatchingOutputStream extends OutputStream
+    {
+        private final OutputStream fallback;
+
+        private final ThreadLocal<OutputStream> target = new ThreadLocal<>();
+
+        /**
+         * @param fallback
+         */
+        private DispatchingOutputStream(OutputStream fallback)
+        {
+            this.fallback = fallback;
+        }
+
+        private OutputStream getTarget()
+        {
+            OutputStream target = this.target.get();
+            return target != null ? target : this.fallback;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            this.getTarget().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            this.getTarget().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            this.getTarget().flush();
+        }
+    }
+
+
+    /**
+     * Executes batch mode as configured in the given settings.
+     *
+     * @param ast
+     * @param settings
+     *
+     * @throws RuntimeError if the batch file is invalid, the fork point is
+     *                      not reached, or a variant fails
+     */
+    public static void run(AST ast, Settings settings) throws RuntimeError
+    {
+        List<Batch.Variant> variants = Batch.parse(settings.getBatchFilePath());
+
+        // Warm-up
+        Interpreter original = new Interpreter(ast, settings);
+        original.loadMemory();
+        original.restoreCheckpoint();
+        if (settings.getForkAt() != null && !original.runUntil(settings.getForkAt())) {
+            throw new RuntimeError(
+                "Program ended before reaching the fork point " + settings.getForkAt()
+            );
+        }
+        if (settings.printOccurred) {
+            System.out.println();
+            settings.printOccurred = false;
+        }
+
+        // Forking is not thread-safe (the original memory is modified), so
+        // it is done upfront
+        List<Settings> forkSettings = new ArrayList<>(variants.size());
+        List<Interpreter> forks     = new ArrayList<>(variants.size());
+        for (int i = 0; i < variants.size(); i++) {
+            Settings copy = settings.copy();
+            forkSettings.add(copy);
+            forks.add(original.fork(copy));
+        }
+
+        PrintStream out                  = System.out;
+        DispatchingOutputStream dispatch = new DispatchingOutputStream(out);
+        System.setOut(new PrintStream(dispatch, true, out.charset()));
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(settings.getJobs(), variants.size())
+        );
+        int failed = 0;
+        try {
+            List<Future<Boolean>> results = new ArrayList<>(variants.size());
+            for (int i = 0; i < variants.size(); i++) {
+                results.add(executor.submit(Batch.createTask(
+                    variants.get(i),
+                    forks.get(i),
+                    forkSettings.get(i),
+                    dispatch
+                )));
+            }
+            for (Future<Boolean> result : results) {
+                if (!result.get()) {
+                    failed++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeError("Batch has been interrupted");
+        } catch (ExecutionException e) {
+            // Converting exception, as this case should never happen (tasks
+            // only fail with RuntimeErrors, which are caught)
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+            System.setOut(out);
+        }
+
+        for (int i = 0; i < variants.size(); i++) {
+            Batch.Variant variant = variants.get(i);
+            if (i > 0) {
+                System.out.println();
+            }
+            Print.printlnBoldWithColor(
+                "=== VARIANT " + (i + 1) + ": " + variant.description + " ===",
+                Print.Color.GREEN,
+                settings
+            );
+            System.out.print(variant.output.toString(out.charset()));
+        }
+
+        if (failed > 0) {
+            throw new RuntimeError(failed + " of " + variants.size() + " variants failed");
+        }
+    }
+
+    /**
+     * @param variant
+     * @param fork         The system state to run the variant on
+     * @param forkSettings
+     * @param dispatch
+     *
+     * @return A task which returns false if the variant failed
+     */
+    private static Callable<Boolean> createTask(
+        Batch.Variant variant,
+        Interpreter fork,
+        Settings forkSettings,
+        DispatchingOutputStream dispatch
+    ) {
+        return () -> {
+            dispatch.target.set(variant.output);
+            try {
+                for (Map.Entry<String, BigInteger> entry : variant.registers.entrySet()) {
+                    fork.setRegister(entry.getKey(), entry.getValue());
+                }
+                for (Map.Entry<BigInteger, BigInteger> entry : variant.memory.entrySet()) {
+                    fork.setMemory(entry.getKey(), entry.getValue());
+                }
+                fork.run();
+                return true;
+            } catch (RuntimeError e) {
+                if (forkSettings.printOccurred) {
+                    System.out.println();
+                }
+                e.print(forkSettings);
+                return false;
+            } finally {
+                System.out.flush();
+                dispatch.target.remove();
+            }
+        };
+    }
+
+
+    /**
+     * Parses the batch file. Every line contains one variant, given as
+     * whitespace-separated assignments: "register=value" or
+     * "@address=value". Values may be decimal (incl. negative), hexadecimal
+     * (0x), or binary (0b). "#" starts a comment.
+     *
+     * @param filePath
+     * @return
+     *
+     * @throws RuntimeError if the file cannot be read or is invalid
+     */
+    private static List<Batch.Variant> parse(String filePath) throws RuntimeError
+    {
+        Path path = null;
+        List<String> lines;
+        try {
+            path  = Path.of(filePath);
+            lines = Files.readAllLines(path);
+        } catch (IOException | InvalidPathException e) {
+            throw new RuntimeError(
+                "Cannot read batch file " + (path == null ? filePath : path) + ": " + e.getMessage()
+            );
+        }
+
+        List<Batch.Variant> variants = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int comment = line.indexOf('#');
+            if (comment != -1) {
+                line = line.substring(0, comment);
+            }
+            line = line.strip();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            Batch.Variant variant = new Batch.Variant(String.join(" ", line.split("\\s+")));
+            for (String assignment : line.split("\\s+")) {
+                int equals = assignment.indexOf('=');
+                BigInteger value = equals == -1 ? null : NumericValueStore.parseBigInteger(assignment.substring(equals + 1));
+                if (value == null || equals == 0) {
+                    throw new RuntimeError(
+                        "Invalid assignment \"" + assignment + "\" in batch file " + path + " line " + (i + 1)
+                        + ", expected register=value or @address=value"
+                    );
+                }
+
+                String target = assignment.substring(0, equals);
+                if (target.startsWith("@")) {
+                    BigInteger address = NumericValueStore.parseBigInteger(target.substring(1));
+                    if (address == null || address.signum() < 0) {
+                        throw new RuntimeError(
+                            "Invalid memory address \"" + target + "\" in batch file " + path + " line " + (i + 1)
+                        );
+                    }
+                    variant.memory.put(address, value);
+                } else {
+                    variant.registers.put(target, value);
+                }
+            }
+            variants.add(variant);
+        }
+
+        if (variants.isEmpty()) {
+            throw new RuntimeError("Batch file " + path + " contains no variants");
+        }
+        return variants;
+    }
+}
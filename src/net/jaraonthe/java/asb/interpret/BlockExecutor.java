@@ -0,0 +1,140 @@
+package net.jaraonthe.java.asb.interpret;
+
+import java.util.Arrays;
+import java.util.List;
+
+import net.jaraonthe.java.asb.ast.invocation.Invocation;
+import net.jaraonthe.java.asb.exception.RuntimeError;
+
+/**
+ * Executes the user program one basic block at a time, until its end. This
+ * is only used if enabled via --block-dispatch and nothing needs to be done
+ * between single steps (i.e. no tracing, debugging, or counting steps).<br>
+ *
+ * Each block is executed as a unit, which is counted once in the statistics.
+ * Execution of a block stops early if an invocation other than the last one
+ * modifies the program counter (e.g. by halting). If the program counter
+ * points into the middle of a block (e.g. after setting it to a computed
+ * value), the block is executed from there on, with each invocation counted
+ * on its own.<br>
+ *
+ * Once a loop has become hot, its iterations are executed via a trace instead
+ * (see {@link LoopTracer}).
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+class BlockExecutor
+{
+    private final List<Invocation> program;
+
+    /**
+     * Program position => the basic block containing it.
+     */
+    private final BasicBlock[] blocks;
+
+    private final StepExecutor executor;
+
+    /**
+     * Records traces of hot loops. Null if this is disabled.
+     */
+    private final LoopTracer tracer;
+
+    /**
+     * Executes the recorded traces. Null if loop traces are disabled.
+     */
+    private final TraceExecutor traceExecutor;
+
+    /**
+     * True: The program has been executed by this executor.
+     */
+    private boolean executed = false;
+
+
+    /**
+     * @param program  The userland program
+     * @param blocks   All blocks of the program (see
+     *                 {@link BasicBlock#discover})
+     * @param executor Executes the single invocations
+     * @param tracer   May be null (loop traces are disabled then)
+     */
+    BlockExecutor(List<Invocation> program, List<BasicBlock> blocks, StepExecutor executor, LoopTracer tracer)
+    {
+        this.program       = program;
+        this.executor      = executor;
+        this.tracer        = tracer;
+        this.traceExecutor = tracer == null ? null : new TraceExecutor(executor);
+
+        this.blocks = new BasicBlock[program.size()];
+        for (BasicBlock block : blocks) {
+            Arrays.fill(this.blocks, block.start, block.end, block);
+        }
+    }
+
+    /**
+     * @return True if the program has been executed one basic block at a
+     *         time
+     */
+    boolean hasExecuted()
+    {
+        return this.executed;
+    }
+
+    /**
+     * @return Null if loop traces are disabled
+     */
+    LoopTracer getTracer()
+    {
+        return this.tracer;
+    }
+
+    /**
+     * Executes the user program, starting at the current program counter.
+     *
+     * @param context
+     * @throws RuntimeError
+     */
+    void execute(Context context) throws RuntimeError
+    {
+        this.executed = true;
+        while (true) {
+            int start = context.frame.programCounter;
+            if (start < 0 || start >= this.program.size()) {
+                return;
+            }
+            if (this.tracer != null && this.tracer.getTrace(start) != null) {
+                this.tracer.abort();
+                this.traceExecutor.execute(this.tracer.getTrace(start), context);
+                continue;
+            }
+            BasicBlock block = this.blocks[start];
+
+            int position = start;
+            try {
+                while (position < block.end) {
+                    this.executor.startStep(context);
+                    position++;
+                    if (this.executor.step(position - 1, this.program.get(position - 1), context, false) != position) {
+                        break;
+                    }
+                }
+            } finally {
+                // Counting what has been executed, even if an error occurred
+                if (start == block.start && position == block.end) {
+                    this.executor.countBlock(block);
+                } else {
+                    for (int p = start; p < position; p++) {
+                        this.executor.countInvocation(this.program.get(p));
+                    }
+                }
+            }
+
+            if (this.tracer != null) {
+                if (start == block.start && position == block.end) {
+                    this.tracer.record(block, context.frame.programCounter);
+                } else {
+                    this.tracer.abort();
+                }
+            }
+        }
+    }
+}
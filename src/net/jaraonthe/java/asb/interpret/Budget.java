@@ -0,0 +1,196 @@
+package net.jaraonthe.java.asb.interpret;
+
+import java.time.Duration;
+
+import net.jaraonthe.java.asb.Settings;
+import net.jaraonthe.java.asb.exception.LimitError;
+
+/**
+ * Enforces the maximum amount of steps and the timeout of an interpretation.<br>
+ *
+ * To keep this cheap, every step only decrements a countdown. The actual
+ * checks (incl. reading the clock) are only done once the countdown runs
+ * out, which happens every {@link #CHECK_INTERVAL} steps at most.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class Budget
+{
+    /**
+     * The maximum amount of steps between two checks.
+     */
+    private static final int CHECK_INTERVAL = 4096;
+
+    /**
+     * The maximum amount of steps. 0 means unlimited.
+     */
+    private final long maxSteps;
+
+    /**
+     * The timeout. Null means unlimited.
+     */
+    private final Duration timeout;
+
+    /**
+     * The {@link System#nanoTime()} at which the timeout is reached. Only
+     * valid if timeout is not null.
+     */
+    private final long deadline;
+
+    /**
+     * The amount of steps that are still available after the current
+     * countdown has run out.
+     */
+    private long stepsLeft;
+
+    /**
+     * Steps until the next check.
+     */
+    private long stepCountdown = 0;
+
+    /**
+     * Ticks until the next timeout check.
+     */
+    private int tickCountdown = Budget.CHECK_INTERVAL;
+
+
+    /**
+     * @param maxSteps 0 means unlimited
+     * @param timeout  May be null (unlimited)
+     */
+    private Budget(long maxSteps, Duration timeout)
+    {
+        this.maxSteps  = maxSteps;
+        this.timeout   = timeout;
+        this.deadline  = timeout == null ? 0 : System.nanoTime() + Budget.toNanos(timeout);
+        this.stepsLeft = maxSteps == 0 ? Long.MAX_VALUE : maxSteps;
+    }
+
+    /**
+     * Creates a Budget as configured in the given settings. The timeout
+     * starts running now.
+     *
+     * @param settings
+     * @return Null if no limits are configured
+     */
+    public static Budget fromSettings(Settings settings)
+    {
+        if (settings.maxSteps() == 0 && settings.timeout() == null) {
+            return null;
+        }
+        return new Budget(settings.maxSteps(), settings.timeout());
+    }
+
+    /**
+     * Consumes one step. This is to be called before every userland command
+     * is executed.
+     *
+     * @throws LimitError if the maximum amount of steps has already been
+     *                    executed or the timeout has been reached
+     */
+    public void step() throws LimitError
+    {
+        if (--this.stepCountdown < 0) {
+            this.refill();
+        }
+    }
+
+    /**
+     * Indicates that work is being done without consuming a step. This is to
+     * be called in loops that are not userland steps (e.g. within command
+     * implementations), so that the timeout also applies to those.
+     *
+     * @throws LimitError if the timeout has been reached
+     */
+    public void tick() throws LimitError
+    {
+        if (this.countTick()) {
+            this.checkTimeout();
+        }
+    }
+
+    /**
+     * Like {@link #tick()}, but leaves the check to the caller. This is for
+     * callers that have to bring their state up to date before a LimitError
+     * may be thrown (e.g. compiled code that holds register values in local
+     * variables).
+     *
+     * @return True if {@link #checkTick()} has to be called now
+     */
+    public boolean countTick()
+    {
+        if (--this.tickCountdown <= 0) {
+            this.tickCountdown = Budget.CHECK_INTERVAL;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The check that is due once {@link #countTick()} returns true.
+     *
+     * @throws LimitError if the timeout has been reached
+     */
+    public void checkTick() throws LimitError
+    {
+        this.checkTimeout();
+    }
+
+    /**
+     * Checks the limits and starts a new step countdown.
+     *
+     * @throws LimitError
+     */
+    private void refill() throws LimitError
+    {
+        this.checkTimeout();
+
+        if (this.stepsLeft == 0) {
+            throw new LimitError(
+                "Program exceeded the maximum of " + this.maxSteps + " steps"
+            );
+        }
+
+        long chunk          = Math.min(this.stepsLeft, Budget.CHECK_INTERVAL);
+        this.stepsLeft     -= chunk;
+        this.stepCountdown  = chunk - 1; // The current step is part of this chunk
+    }
+
+    /**
+     * @throws LimitError if the timeout has been reached
+     */
+    private void checkTimeout() throws LimitError
+    {
+        if (this.timeout != null && System.nanoTime() - this.deadline >= 0) {
+            throw new LimitError(
+                "Program exceeded the timeout of " + Budget.format(this.timeout)
+            );
+        }
+    }
+
+    /**
+     * @param duration
+     * @return The duration in nanoseconds, capped at Long.MAX_VALUE / 2 so
+     *         that computing the deadline doesn't overflow
+     */
+    private static long toNanos(Duration duration)
+    {
+        try {
+            return Math.min(duration.toNanos(), Long.MAX_VALUE / 2);
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE / 2;
+        }
+    }
+
+    /**
+     * @param duration
+     * @return A human-readable representation of the given duration
+     */
+    private static String format(Duration duration)
+    {
+        if (duration.toMillisPart() != 0) {
+            return duration.toMillis() + "ms";
+        }
+        return duration.toSeconds() + "s";
+    }
+}
@@ -0,0 +1,312 @@
+package net.jaraonthe.java.asb.interpret;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import net.jaraonthe.java.asb.ast.AST;
+import net.jaraonthe.java.asb.ast.invocation.CommandInvocation;
+import net.jaraonthe.java.asb.ast.invocation.Invocation;
+import net.jaraonthe.java.asb.ast.variable.Register;
+import net.jaraonthe.java.asb.ast.variable.RegisterAlias;
+import net.jaraonthe.java.asb.ast.variable.VirtualRegister;
+import net.jaraonthe.java.asb.exception.ConstraintException;
+import net.jaraonthe.java.asb.exception.RuntimeError;
+import net.jaraonthe.java.asb.interpret.value.NumericValue;
+import net.jaraonthe.java.asb.interpret.value.NumericValueStore;
+import net.jaraonthe.java.asb.interpret.value.VirtualNumericValue;
+
+/**
+ * Saves the state of the virtual system (register values incl. virtual
+ * register stores, memory contents, and the program counter) to a file, and
+ * restores it from there.<br>
+ * 
+ * A checkpoint is bound to the system properties, the registers, and the part
+ * of the user program that has been executed before the checkpoint, i.e. the
+ * part of the program after the checkpoint position may change between
+ * writing and restoring the checkpoint. This is validated via a hash.<br>
+ * 
+ * The file format is a gzip-compressed binary stream.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class Checkpoint
+{
+    /**
+     * "ASBC"
+     */
+    private static final int MAGIC = 0x41534243;
+    
+    private static final int FORMAT_VERSION = 1;
+    
+    /**
+     * Register values are written with this tag.
+     */
+    private static final byte TAG_REGISTER = 0;
+    
+    /**
+     * Stores of virtual registers are written with this tag.
+     */
+    private static final byte TAG_STORE = 1;
+    
+    
+    /**
+     * The program position the checkpoint has been taken at.
+     */
+    public final int programCounter;
+    
+    /**
+     * The amount of userland steps that have been executed before the
+     * checkpoint.
+     */
+    public final long steps;
+    
+    
+    /**
+     * @param programCounter
+     * @param steps
+     */
+    private Checkpoint(int programCounter, long steps)
+    {
+        this.programCounter = programCounter;
+        this.steps          = steps;
+    }
+    
+    
+    /**
+     * Writes a checkpoint of the current state of the virtual system.
+     * 
+     * @param filePath
+     * @param ast
+     * @param globalFrame The program counter must point to the next invocation
+     *                    to be executed
+     * @param memory      May be null
+     * @param steps       The amount of userland steps that have been executed
+     *                    so far
+     * 
+     * @throws RuntimeError if the file cannot be written
+     */
+    public static void write(String filePath, AST ast, Frame globalFrame, Memory memory, long steps) throws RuntimeError
+    {
+        Path path = null;
+        try {
+            path = Path.of(filePath);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(path))
+            ))) {
+                out.writeInt(Checkpoint.MAGIC);
+                out.writeInt(Checkpoint.FORMAT_VERSION);
+                out.write(Checkpoint.hash(ast, globalFrame.programCounter));
+                out.writeInt(globalFrame.programCounter);
+                out.writeLong(steps);
+                
+                // Registers
+                List<Register> registers = Checkpoint.getRegisters(ast);
+                out.writeInt(registers.size());
+                for (Register register : registers) {
+                    NumericValue value = globalFrame.getNumericValue(register.name);
+                    out.writeUTF(register.name);
+                    if (value instanceof VirtualNumericValue) {
+                        // The store (if any) is the only state of a virtual register
+                        NumericValueStore store = ((VirtualNumericValue) value).getStore();
+                        out.writeByte(Checkpoint.TAG_STORE);
+                        out.writeBoolean(store != null);
+                        if (store != null) {
+                            Checkpoint.writeBigInteger(out, store.read(null));
+                        }
+                    } else {
+                        out.writeByte(Checkpoint.TAG_REGISTER);
+                        Checkpoint.writeBigInteger(out, value.read(null));
+                    }
+                }
+                
+                // Memory
+                out.writeBoolean(memory != null);
+                if (memory != null) {
+                    Set<BigInteger> addresses = memory.getAddressesInUse();
+                    out.writeInt(addresses.size());
+                    for (BigInteger address : addresses) {
+                        Checkpoint.writeBigInteger(out, address);
+                        Checkpoint.writeBigInteger(out, memory.peek(address));
+                    }
+                }
+            }
+        } catch (IOException | InvalidPathException e) {
+            throw new RuntimeError(
+                "Cannot write checkpoint to " + (path == null ? filePath : path) + ": " + e.getMessage()
+            );
+        } catch (ConstraintException e) {
+            // Converting exception, as this case should never happen
+            throw new RuntimeException(e);
+        }
+    }
+    
+    /**
+     * Restores the state of the virtual system from a checkpoint.
+     * 
+     * @param filePath
+     * @param ast
+     * @param globalFrame Will be modified
+     * @param memory      Will be modified. May be null
+     * 
+     * @return The restored checkpoint (containing information about it)
+     * 
+     * @throws RuntimeError if the file cannot be read or doesn't fit the
+     *                      current program
+     */
+    public static Checkpoint restore(String filePath, AST ast, Frame globalFrame, Memory memory) throws RuntimeError
+    {
+        Path path = null;
+        try {
+            path = Path.of(filePath);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(path))
+            ))) {
+                if (in.readInt() != Checkpoint.MAGIC || in.readInt() != Checkpoint.FORMAT_VERSION) {
+                    throw new RuntimeError("File " + path + " is not a supported checkpoint");
+                }
+                byte[] hash = new byte[32];
+                in.readFully(hash);
+                int programCounter = in.readInt();
+                long steps         = in.readLong();
+                if (
+                    programCounter < 0
+                    || programCounter > ast.getProgram().size()
+                    || !Arrays.equals(hash, Checkpoint.hash(ast, programCounter))
+                ) {
+                    throw new RuntimeError(
+                        "Checkpoint " + path + " doesn't match the current program (system properties, "
+                        + "registers, or the program before the checkpoint position have changed)"
+                    );
+                }
+                
+                // Registers
+                int registerCount = in.readInt();
+                for (int i = 0; i < registerCount; i++) {
+                    NumericValue value = globalFrame.getNumericValue(in.readUTF());
+                    if (in.readByte() == Checkpoint.TAG_STORE) {
+                        if (in.readBoolean()) {
+                            ((VirtualNumericValue) value).getStore().write(Checkpoint.readBigInteger(in), null);
+                        }
+                    } else {
+                        value.write(Checkpoint.readBigInteger(in), null);
+                    }
+                }
+                
+                // Memory
+                if (in.readBoolean()) {
+                    int words = in.readInt();
+                    for (int i = 0; i < words; i++) {
+                        memory.poke(Checkpoint.readBigInteger(in), Checkpoint.readBigInteger(in));
+                    }
+                }
+                
+                globalFrame.programCounter = programCounter;
+                return new Checkpoint(programCounter, steps);
+            }
+        } catch (EOFException | ZipException e) {
+            throw new RuntimeError("Checkpoint " + path + " is corrupt");
+        } catch (IOException | InvalidPathException e) {
+            throw new RuntimeError(
+                "Cannot read checkpoint from " + (path == null ? filePath : path) + ": " + e.getMessage()
+            );
+        } catch (ConstraintException e) {
+            // Converting exception, as this case should never happen (the
+            // hash guarantees that the registers are the same)
+            throw new RuntimeException(e);
+        }
+    }
+    
+    
+    /**
+     * Calculates a hash of the system properties, the registers, and the user
+     * program up to (excluding) the given position.
+     * 
+     * @param ast
+     * @param position
+     * 
+     * @return A SHA-256 hash (32 bytes)
+     */
+    private static byte[] hash(AST ast, int position)
+    {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new RuntimeException(e);
+        }
+        
+        StringBuilder text = new StringBuilder();
+        text.append("memory ").append(ast.getMemoryWordLength())
+            .append(' ').append(ast.getMemoryAddressLength()).append('\n');
+        text.append("pc ").append(ast.getPcLength()).append('\n');
+        for (Register register : Checkpoint.getRegisters(ast)) {
+            text.append(register.getClass().getSimpleName()).append(' ')
+                .append(register.name).append(' ').append(register.getLength());
+            if (register instanceof VirtualRegister && ((VirtualRegister) register).hasStore()) {
+                text.append(" store ").append(((VirtualRegister) register).getStoreLength());
+            }
+            text.append('\n');
+        }
+        List<Invocation> program = ast.getProgram();
+        for (int i = 0; i < position && i < program.size(); i++) {
+            Invocation invocation = program.get(i);
+            text.append(invocation.getOrigin().getContent());
+            if (invocation instanceof CommandInvocation) {
+                text.append(" => ").append(((CommandInvocation) invocation).getInvokedCommand().getIdentity());
+            }
+            text.append('\n');
+        }
+        
+        return digest.digest(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * @param ast
+     * @return All registers that have a state (i.e. no aliases), sorted by
+     *         name
+     */
+    private static List<Register> getRegisters(AST ast)
+    {
+        List<Register> registers = new ArrayList<>();
+        for (Register register : ast.getRegisters()) {
+            if (!(register instanceof RegisterAlias)) {
+                registers.add(register);
+            }
+        }
+        registers.sort((a, b) -> a.name.compareTo(b.name));
+        return registers;
+    }
+    
+    private static void writeBigInteger(DataOutputStream out, BigInteger value) throws IOException
+    {
+        byte[] bytes = value.toByteArray();
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static BigInteger readBigInteger(DataInputStream in) throws IOException
+    {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        return new BigInteger(bytes);
+    }
+}
@@ -28,18 +28,40 @@ public class Context
     public final AST ast;
     
     public final Settings settings;
+    
+    /**
+     * Enforces the configured limits. May be null (if no limits are
+     * configured).
+     */
+    public final Budget budget;
+    
+    /**
+     * Measures where time goes. May be null (if profiling is disabled).
+     */
+    public final Profiler profiler;
 
     /**
      * @param frame
      * @param memory May be null
      * @param ast
+     * @param settings
+     * @param budget   May be null
+     * @param profiler May be null
      */
-    public Context(Frame frame, Memory memory, AST ast, Settings settings)
-    {
+    public Context(
+        Frame frame,
+        Memory memory,
+        AST ast,
+        Settings settings,
+        Budget budget,
+        Profiler profiler
+    ) {
         this.frame    = frame;
         this.memory   = memory;
         this.ast      = ast;
         this.settings = settings;
+        this.budget   = budget;
+        this.profiler = profiler;
     }
     
     /**
@@ -51,6 +73,6 @@ public class Context
      */
     public Context withFrame(Frame frame)
     {
-        return new Context(frame, this.memory, this.ast, this.settings);
+        return new Context(frame, this.memory, this.ast, this.settings, this.budget, this.profiler);
     }
 }
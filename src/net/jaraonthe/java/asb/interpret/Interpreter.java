@@ -1,28 +1,55 @@
 package net.jaraonthe.java.asb.interpret;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.time.Instant;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.Queue;
-import java.util.regex.Pattern;
 
 import net.jaraonthe.java.asb.Print;
 import net.jaraonthe.java.asb.Settings;
 import net.jaraonthe.java.asb.ast.AST;
+import net.jaraonthe.java.asb.ast.command.Command;
+import net.jaraonthe.java.asb.ast.command.Implementation;
 import net.jaraonthe.java.asb.ast.invocation.Invocation;
 import net.jaraonthe.java.asb.ast.variable.Register;
 import net.jaraonthe.java.asb.ast.variable.RegisterAlias;
 import net.jaraonthe.java.asb.ast.variable.VirtualRegister;
 import net.jaraonthe.java.asb.exception.ConstraintException;
+import net.jaraonthe.java.asb.exception.LimitError;
 import net.jaraonthe.java.asb.exception.RuntimeError;
+import net.jaraonthe.java.asb.interpret.branch.BranchPredictor;
+import net.jaraonthe.java.asb.interpret.branch.BranchSimulator;
+import net.jaraonthe.java.asb.interpret.branch.BranchSite;
+import net.jaraonthe.java.asb.interpret.branch.BranchTargetBuffer;
+import net.jaraonthe.java.asb.interpret.cache.Cache;
+import net.jaraonthe.java.asb.interpret.cache.CacheConfig;
+import net.jaraonthe.java.asb.interpret.cache.CacheHierarchy;
+import net.jaraonthe.java.asb.interpret.debug.Debugger;
+import net.jaraonthe.java.asb.interpret.debug.UndoLog;
+import net.jaraonthe.java.asb.interpret.device.Device;
+import net.jaraonthe.java.asb.interpret.device.DeviceConfig;
+import net.jaraonthe.java.asb.interpret.device.HaltRegister;
+import net.jaraonthe.java.asb.interpret.device.StepCounter;
+import net.jaraonthe.java.asb.interpret.device.Uart;
 import net.jaraonthe.java.asb.interpret.value.NumericValue;
 import net.jaraonthe.java.asb.interpret.value.NumericValueReference;
 import net.jaraonthe.java.asb.interpret.value.NumericValueStore;
 import net.jaraonthe.java.asb.interpret.value.VirtualNumericValue;
+import net.jaraonthe.java.asb.optimize.Specializer;
+import net.jaraonthe.java.asb.optimize.Superinstruction;
+import net.jaraonthe.java.asb.optimize.ir.Optimizer;
 import net.jaraonthe.java.asb.parse.Parser;
 
 /**
@@ -55,10 +82,58 @@ public class Interpreter
     /**
      * Statistics for this interpreter run.
      */
-    private Statistics statistics = new Statistics();
+    private Statistics statistics;
     
+    /**
+     * Executes single userland invocations.
+     */
+    private StepExecutor executor;
+    
+    /**
+     * Executes the userland program one basic block at a time.
+     */
+    private BlockExecutor blockExecutor;
+    
+    /**
+     * Measures where time goes. Null if profiling is disabled.
+     */
+    private Profiler profiler = null;
+    
+    /**
+     * The simulated caches. Null if no caches are simulated.
+     */
+    private CacheHierarchy cache = null;
+    
+    /**
+     * Simulates branch prediction. Null if branch prediction is not simulated.
+     */
+    private BranchSimulator branches = null;
     
-    private static final Pattern PRINT_STRING_PATTERN = Pattern.compile(" \"([^\"]|\\\")*\"");
+    /**
+     * The amount of userland steps executed so far. This is only counted if
+     * it is needed (i.e. for checkpoints, forks, and step counter devices).
+     */
+    private long steps = 0;
+    
+    /**
+     * The devices mapped into memory.
+     */
+    private List<Device> devices = new ArrayList<>();
+    
+    /**
+     * True: Steps are always counted (as a device provides them).
+     */
+    private boolean countSteps = false;
+    
+    /**
+     * The halt device. Null if there is none.
+     */
+    private HaltRegister halt = null;
+    
+    /**
+     * The interactive debugger. Null if debugging is disabled.
+     */
+    private Debugger debugger = null;
     
     
     
@@ -69,26 +144,245 @@ public class Interpreter
      * @param ast      The AST that shall be interpreted
      * @param settings General program settings
      * 
+     * @return The exit status (see {@link #getExitStatus()}). Always 0 in
+     *         batch mode
      * @throws RuntimeError
      */
-    public static void interpret(AST ast, Settings settings) throws RuntimeError
+    public static int interpret(AST ast, Settings settings) throws RuntimeError
     {
-        new Interpreter(ast, settings).run();
+        if (settings.optimization()) {
+            Optimizer.run(ast, settings);
+        }
+        if (settings.specialization()) {
+            Specializer.run(ast);
+        }
+        
+        if (settings.getBatchFilePath() != null) {
+            Batch.run(ast, settings);
+            return 0;
+        }
+        
+        Interpreter interpreter = new Interpreter(ast, settings);
+        interpreter.loadMemory();
+        interpreter.restoreCheckpoint();
+        interpreter.run();
+        return interpreter.getExitStatus();
     }
     
     
     /**
      * @param ast      The AST that shall be interpreted by this Interpreter
      * @param settings General program settings
+     * 
+     * @throws RuntimeError if off-heap memory cannot be set up
      */
-    protected Interpreter(AST ast, Settings settings)
+    protected Interpreter(AST ast, Settings settings) throws RuntimeError
     {
         this.ast      = ast;
         this.settings = settings;
         if (ast.hasMemory()) {
-            this.memory = new Memory(ast.getMemoryWordLength(), ast.getMemoryAddressLength());
+            this.memory = new Memory(
+                ast.getMemoryWordLength(),
+                ast.getMemoryAddressLength(),
+                this.createOffHeapStorage()
+            );
+            this.initCache();
         }
+        this.initBranchPrediction();
         this.initGlobalFrame();
+        this.initExecutors();
+        this.initDevices();
+    }
+    
+    /**
+     * Creates a copy of the given interpreter's system state (registers,
+     * memory, and program counter). The memory is shared copy-on-write, so
+     * this is cheap regardless of how much memory is in use.<br>
+     * 
+     * Statistics and simulated caches and branch predictors start out empty.
+     * 
+     * @param original
+     * @param settings General program settings for the copy
+     */
+    private Interpreter(Interpreter original, Settings settings)
+    {
+        this.ast      = original.ast;
+        this.settings = settings;
+        if (original.memory != null) {
+            this.memory = original.memory.fork();
+            this.initCache();
+        }
+        this.initBranchPrediction();
+        this.initGlobalFrame();
+        this.initExecutors();
+        
+        try {
+            this.initDevices();
+            for (Register register : this.ast.getRegisters()) {
+                if (register instanceof RegisterAlias) {
+                    continue;
+                }
+                NumericValue value = original.globalFrame.getNumericValue(register.name);
+                if (value instanceof VirtualNumericValue) {
+                    // The store (if any) is the only state of a virtual register
+                    NumericValueStore store = ((VirtualNumericValue) value).getStore();
+                    if (store != null) {
+                        ((VirtualNumericValue) this.globalFrame.getNumericValue(register.name))
+                            .getStore().write(store.read(null), null);
+                    }
+                } else {
+                    this.globalFrame.getNumericValue(register.name).write(value.read(null), null);
+                }
+            }
+        } catch (ConstraintException | RuntimeError e) {
+            // Converting exception, as this case should never happen (both
+            // frames have the same registers and devices, and plain registers
+            // are read and written without side effects)
+            throw new RuntimeException(e);
+        }
+        this.globalFrame.programCounter = original.globalFrame.programCounter;
+        this.steps                      = original.steps;
+    }
+    
+    /**
+     * Creates a copy of this interpreter's system state.
+     * 
+     * @param settings General program settings for the copy
+     * @return
+     * 
+     * @see #Interpreter(Interpreter, Settings)
+     */
+    Interpreter fork(Settings settings)
+    {
+        return new Interpreter(this, settings);
+    }
+    
+    /**
+     * Creates the storage for keeping memory off-heap (if so configured).
+     * 
+     * @return Null if memory is kept on the heap
+     * @throws RuntimeError if the address length is too big or the backing
+     *                      file cannot be created
+     */
+    private OffHeapStorage createOffHeapStorage() throws RuntimeError
+    {
+        if (!this.settings.offHeapMemory()) {
+            return null;
+        }
+        if (this.ast.getMemoryAddressLength() > OffHeapStorage.MAX_ADDRESS_LENGTH) {
+            throw new RuntimeError(
+                "Cannot keep memory off-heap, as its address length " + this.ast.getMemoryAddressLength()
+                + " exceeds the maximum of " + OffHeapStorage.MAX_ADDRESS_LENGTH
+            );
+        }
+        
+        String filePath = this.settings.getMemoryBackingFilePath();
+        try {
+            return new OffHeapStorage(
+                this.ast.getMemoryWordLength(),
+                this.ast.getMemoryAddressLength(),
+                filePath == null ? null : Path.of(filePath)
+            );
+        } catch (IOException | InvalidPathException e) {
+            throw new RuntimeError("Cannot create memory backing file " + filePath + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Initializes the simulated caches (if any are configured).
+     */
+    private void initCache()
+    {
+        Map<Integer, CacheConfig> configs = new TreeMap<>();
+        for (CacheConfig config : this.ast.getCaches()) {
+            configs.put(config.level, config);
+        }
+        for (CacheConfig config : this.settings.getCaches()) {
+            configs.put(config.level, config);
+        }
+        
+        this.cache = CacheHierarchy.fromConfigs(configs.values());
+        this.memory.setCache(this.cache);
+    }
+    
+    /**
+     * Initializes the branch prediction simulation (if so configured).
+     */
+    private void initBranchPrediction()
+    {
+        if (this.settings.getBranchPredictor() == null) {
+            return;
+        }
+        
+        try {
+            this.branches = new BranchSimulator(
+                this.ast,
+                BranchPredictor.fromString(this.settings.getBranchPredictor()),
+                this.settings.getBtbEntries() == 0 ? null : new BranchTargetBuffer(this.settings.getBtbEntries())
+            );
+        } catch (ConstraintException e) {
+            // Converting exception, as this case should never happen (the
+            // settings have already been validated)
+            throw new RuntimeException(e);
+        }
+    }
+    
+    /**
+     * Discovers the basic blocks of the userland program, and initializes the
+     * statistics and the executors.
+     */
+    private void initExecutors()
+    {
+        List<BasicBlock> blocks = BasicBlock.discover(this.ast);
+        this.statistics = new Statistics(this.ast.getProgram(), blocks);
+        
+        this.executor = new StepExecutor(
+            this.settings,
+            this.ast.getProgram(),
+            this.globalFrame,
+            this.statistics,
+            this.branches
+        );
+        this.blockExecutor = new BlockExecutor(
+            this.ast.getProgram(),
+            blocks,
+            this.executor,
+            this.settings.loopTraces() ? new LoopTracer(this.ast.getProgram()) : null
+        );
+    }
+    
+    /**
+     * Maps the configured devices into memory.
+     * 
+     * @throws RuntimeError if a device doesn't fit into memory
+     */
+    private void initDevices() throws RuntimeError
+    {
+        for (DeviceConfig config : this.ast.getDevices()) {
+            Device device;
+            switch (config.type) {
+                case UART:
+                    device = new Uart(this.settings);
+                    break;
+                case COUNTER:
+                    device = new StepCounter(this.memory.wordLength, () -> this.steps);
+                    this.countSteps = true;
+                    break;
+                case HALT:
+                    this.halt = new HaltRegister(this.ast, this.globalFrame);
+                    device    = this.halt;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown device type " + config.type);
+            }
+            
+            try {
+                this.memory.addDevice(config.address, device);
+            } catch (ConstraintException e) {
+                throw new RuntimeError(e.getMessage() + " (" + config.source + ")");
+            }
+            this.devices.add(device);
+        }
     }
     
     /**
@@ -134,89 +428,488 @@ public class Interpreter
     }
     
     
+    /**
+     * Loads the initial memory contents given in the ASB program and via
+     * settings (if any).
+     * 
+     * @throws RuntimeError if memory is not configured or a memory image
+     *                      cannot be loaded
+     */
+    void loadMemory() throws RuntimeError
+    {
+        List<MemoryImage> images = new ArrayList<>(this.ast.getMemoryImages());
+        images.addAll(this.settings.getMemoryImages());
+        if (images.isEmpty()) {
+            return;
+        }
+        if (this.memory == null) {
+            throw new RuntimeError("Cannot load memory as it is not configured");
+        }
+        
+        for (MemoryImage image : images) {
+            image.load(this.memory);
+        }
+    }
+    
+    /**
+     * Restores the system state from a checkpoint (if so configured).
+     * 
+     * @throws RuntimeError
+     */
+    void restoreCheckpoint() throws RuntimeError
+    {
+        if (this.settings.getRestoreFilePath() == null) {
+            return;
+        }
+        
+        this.steps = Checkpoint.restore(
+            this.settings.getRestoreFilePath(),
+            this.ast,
+            this.globalFrame,
+            this.memory
+        ).steps;
+    }
+    
+    /**
+     * Sets a register to the given value before running this interpreter.
+     * 
+     * @param name  The register name
+     * @param value May be negative (two's complement is used then)
+     * 
+     * @throws RuntimeError if the register doesn't exist or the value
+     *                      doesn't fit
+     */
+    void setRegister(String name, BigInteger value) throws RuntimeError
+    {
+        NumericValue register;
+        try {
+            register = this.globalFrame.getNumericValue(name);
+        } catch (ConstraintException e) {
+            throw new RuntimeError("Unknown register " + name);
+        }
+        
+        value = NumericValueStore.normalizeBigInteger(value, register.length);
+        if (NumericValue.bitLength(value) > register.length) {
+            throw new RuntimeError("Value " + value + " is too big for register " + name);
+        }
+        register.write(
+            value,
+            new Context(this.globalFrame, this.memory, this.ast, this.settings, null, null)
+        );
+    }
+    
+    /**
+     * Sets a memory word to the given value before running this interpreter.
+     * 
+     * @param address
+     * @param value   May be negative (two's complement is used then)
+     * 
+     * @throws RuntimeError if there is no memory, or address or value don't
+     *                      fit
+     */
+    void setMemory(BigInteger address, BigInteger value) throws RuntimeError
+    {
+        if (this.memory == null) {
+            throw new RuntimeError("Cannot set memory as it is not configured");
+        }
+        if (NumericValue.bitLength(address) > this.memory.addressLength) {
+            throw new RuntimeError("Memory address 0x" + address.toString(16) + " is too big");
+        }
+        
+        value = NumericValueStore.normalizeBigInteger(value, this.memory.wordLength);
+        if (NumericValue.bitLength(value) > this.memory.wordLength) {
+            throw new RuntimeError("Value " + value + " is too big for a memory word");
+        }
+        this.memory.poke(address, value);
+    }
+    
+    /**
+     * @return The value last written to the halt device (its lowest 8 bits),
+     *         0 if nothing has been written to it
+     */
+    int getExitStatus()
+    {
+        if (this.halt == null || this.halt.getStatus() == null) {
+            return 0;
+        }
+        return this.halt.getStatus().intValue() & 0xFF;
+    }
+    
+    /**
+     * Runs this interpreter until the given point is reached. Nothing is
+     * printed at the end; the interpreter can be forked afterwards.
+     * 
+     * @param point
+     * @return False if the program ended before the point has been reached
+     * 
+     * @throws RuntimeError
+     */
+    boolean runUntil(ProgramPoint point) throws RuntimeError
+    {
+        return this.execute(this.createContext(), point);
+    }
+    
     /**
      * Runs this interpreter.
      * 
      * @throws RuntimeError
      */
-    private void run() throws RuntimeError
+    void run() throws RuntimeError
     {
-        Context context = new Context(this.globalFrame, this.memory, this.ast, this.settings);
+        Instant startTime = Instant.now();
+        long start        = System.nanoTime();
+        Context context   = this.createContext();
+        if (this.settings.debug()) {
+            this.initDebugger(context);
+        }
+        try {
+            this.execute(context, null);
+        } catch (LimitError e) {
+            // The program has been stopped - still show what it has done so far
+            long wallTime = System.nanoTime() - start;
+            this.printResults(context);
+            this.writeReport(context, startTime, wallTime, e);
+            throw e;
+        } catch (UncheckedIOException e) {
+            // The memory backing file cannot grow any further
+            throw new RuntimeError(e.getMessage() + ": " + e.getCause().getMessage());
+        }
         
-        List<Invocation> program = this.ast.getProgram();
-        int programAddressLength = Math.max( // length in hex
-            (int) Math.ceil(
-                Math.log(program.size()) / Math.log(16)
-            ),
-            1
+        long wallTime = System.nanoTime() - start;
+        this.printResults(context);
+        this.writeReport(context, startTime, wallTime, null);
+    }
+    
+    /**
+     * Initializes the interactive debugger, incl. the undo log for reverse
+     * execution (if enabled).
+     * 
+     * @param context
+     * @throws RuntimeError if an initial breakpoint is invalid
+     */
+    private void initDebugger(Context context) throws RuntimeError
+    {
+        UndoLog undoLog = null;
+        if (this.settings.getUndoLogBytes() > 0) {
+            undoLog = new UndoLog(this.settings.getUndoLogBytes());
+            try {
+                for (Register register : this.ast.getRegisters()) {
+                    if (register instanceof RegisterAlias) {
+                        continue;
+                    }
+                    NumericValue value = this.globalFrame.getNumericValue(register.name);
+                    if (value instanceof VirtualNumericValue) {
+                        // The store (if any) is the only state of a virtual register
+                        value = ((VirtualNumericValue) value).getStore();
+                    }
+                    if (value != null) {
+                        undoLog.attach((NumericValueStore) value);
+                    }
+                }
+            } catch (ConstraintException e) {
+                // Converting exception, as this case should never happen
+                throw new RuntimeException(e);
+            }
+            if (this.memory != null) {
+                undoLog.attach(this.memory);
+            }
+        }
+        
+        this.debugger = new Debugger(this.ast, this.settings, context, undoLog);
+        for (String location : this.settings.getBreakpoints()) {
+            try {
+                this.debugger.addInitialBreakpoint(location);
+            } catch (ConstraintException e) {
+                throw new RuntimeError("Cannot set breakpoint: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Creates the context for a run. This starts the timeout.
+     * 
+     * @return
+     */
+    private Context createContext()
+    {
+        Budget budget = Budget.fromSettings(this.settings);
+        if (this.settings.profile()) {
+            this.profiler = new Profiler();
+        }
+        return new Context(
+            this.globalFrame,
+            this.memory,
+            this.ast,
+            this.settings,
+            budget,
+            this.profiler
         );
+    }
+    
+    /**
+     * Executes the user program, until its end or until the given point is
+     * reached.
+     * 
+     * @param context
+     * @param pauseAt May be null
+     * 
+     * @return True if execution has been paused at pauseAt
+     * @throws RuntimeError
+     */
+    private boolean execute(Context context, ProgramPoint pauseAt) throws RuntimeError
+    {
+        try {
+            return this.executeSteps(context, pauseAt);
+        } finally {
+            // Buffered device output must appear before anything else is
+            // printed
+            for (Device device : this.devices) {
+                device.flush();
+            }
+        }
+    }
+    
+    /**
+     * @param context
+     * @param pauseAt May be null
+     * 
+     * @return True if execution has been paused at pauseAt
+     * @throws RuntimeError
+     * 
+     * @see #execute(Context, ProgramPoint)
+     */
+    private boolean executeSteps(Context context, ProgramPoint pauseAt) throws RuntimeError
+    {
+        ProgramPoint checkpointAt = this.settings.getCheckpointAt();
+        boolean checkpointPending = checkpointAt != null;
+        int checkpointPosition    = this.resolvePosition(checkpointAt, "write checkpoint");
+        int pausePosition         = this.resolvePosition(pauseAt, "fork");
+        boolean countSteps        = checkpointPending || pauseAt != null || this.countSteps;
+        if (
+            this.settings.blockDispatch()
+            && !countSteps
+            && this.debugger == null
+            && !this.settings.trace()
+            && !this.settings.devMode()
+        ) {
+            // Nothing needs to be done between single steps
+            this.blockExecutor.execute(context);
+            return false;
+        }
+        
+        List<Invocation> program = this.ast.getProgram();
         while (true) {
+            if (this.debugger != null && !this.debugger.beforeStep()) {
+                return false;
+            }
             int currentProgramCounter = this.globalFrame.programCounter;
             Invocation invocation;
             try {
                 invocation = program.get(currentProgramCounter);
             } catch (IndexOutOfBoundsException e) {
-                break;
+                return false;
             }
-            // Incrementing pc before execution so that jumps can modify pc
-            // without extra complexity
-            this.globalFrame.programCounter++;
-
-            this.printTrace(invocation, currentProgramCounter, programAddressLength);
-            this.statistics.incrementInvocationsCount(invocation);
-            
-            // This may modify the program Counter
-            try {
-                invocation.interpret(context);
-            } catch (StackOverflowError e) {
-                throw new RuntimeError(
-                    "Infinite recursion triggered by "
-                    + (this.settings.devMode() ? invocation : invocation.getOrigin().getContent())
-                    + " at " + invocation.getOrigin()
-                );
+            if (countSteps) {
+                if (
+                    checkpointPending
+                    && (this.steps == checkpointAt.steps || currentProgramCounter == checkpointPosition)
+                ) {
+                    Checkpoint.write(
+                        this.settings.getCheckpointFilePath(),
+                        this.ast,
+                        this.globalFrame,
+                        this.memory,
+                        this.steps
+                    );
+                    checkpointPending = false;
+                }
+                if (
+                    pauseAt != null
+                    && (this.steps == pauseAt.steps || currentProgramCounter == pausePosition)
+                ) {
+                    return true;
+                }
+                this.steps++;
             }
+            
+            this.executor.startStep(context);
+            this.executor.step(currentProgramCounter, invocation, context, true);
+        }
+    }
+    
+    /**
+     * @param point  May be null
+     * @param action What happens at the point (for the error message)
+     * 
+     * @return The program position of the point's label. -1 if point is null
+     *         or given as an amount of steps
+     * @throws RuntimeError if the label doesn't exist
+     */
+    private int resolvePosition(ProgramPoint point, String action) throws RuntimeError
+    {
+        if (point == null) {
+            return -1;
+        }
+        try {
+            return point.resolvePosition(this.ast);
+        } catch (ConstraintException e) {
+            throw new RuntimeError("Cannot " + action + " at unknown label " + point.label);
+        }
+    }
+    
+    /**
+     * Writes the JSON report (if so configured).
+     * 
+     * @param context
+     * @param startTime  The time the run has started at
+     * @param wallTimeNs The duration of the run (in nanoseconds)
+     * @param limitError The error that stopped the run. Null if the run
+     *                   completed normally
+     * 
+     * @throws RuntimeError
+     */
+    private void writeReport(Context context, Instant startTime, long wallTimeNs, LimitError limitError) throws RuntimeError
+    {
+        if (this.settings.getReportFilePath() == null) {
+            return;
         }
         
+        new RunReport(
+            this.ast,
+            this.settings,
+            this.globalFrame,
+            this.memory,
+            this.statistics,
+            this.cache,
+            this.branches
+        ).write(this.settings.getReportFilePath(), context, startTime, wallTimeNs, limitError);
+    }
+    
+    /**
+     * Prints everything that is configured to be printed at the end of
+     * interpretation.
+     * 
+     * @param context
+     * @throws RuntimeError
+     */
+    private void printResults(Context context) throws RuntimeError
+    {
         this.printStatistics();
+        this.printCacheStatistics();
+        this.printBranchPrediction();
+        this.printProfile();
+        this.printFusions();
+        this.printBlocks();
+        this.printLoopTraces();
         this.printRegisters(context);
         this.printMemory();
     }
     
     
     /**
-     * Prints the current trace (if so configured).
-     * 
-     * @param invocation
-     * @param currentProgramCounter
-     * @param programAddressLength  How many chars to reserve for the pc value
-     *                              output.
+     * Prints the results of the cache simulation (at the end of
+     * interpretation), along with the statistics.
+     */
+    private void printCacheStatistics()
+    {
+        if (!this.settings.statistics() || this.cache == null) {
+            return;
+        }
+        
+        this.printlnIfRequired();
+        System.out.println();
+        Print.printlnBoldWithColor("=== CACHE ===", Print.Color.GREEN, this.settings);
+        
+        for (Cache level : this.cache.getLevels()) {
+            System.out.println(level.config);
+        }
+        System.out.println();
+        
+        Print.printlnWithColor(
+            "Level\tAccesses\tHits\tMisses\tHit rate\tEvictions\tWrite-backs",
+            Print.Color.CYAN,
+            this.settings
+        );
+        for (Cache level : this.cache.getLevels()) {
+            System.out.format(
+                "%s\t%d\t%d\t%d\t%.1f%%\t%d\t%d%n",
+                level.config.getName(),
+                level.getAccesses(),
+                level.getHits(),
+                level.getMisses(),
+                level.getAccesses() == 0 ? 0.0 : level.getHits() * 100.0 / level.getAccesses(),
+                level.getEvictions(),
+                level.getWriteBacks()
+            );
+        }
+    }
+    
+    /**
+     * Prints the results of the branch prediction simulation (at the end of
+     * interpretation).
      */
-    private void printTrace(Invocation invocation, int currentProgramCounter, int programAddressLength)
+    private void printBranchPrediction()
     {
-        if (!this.settings.devMode() && !this.settings.trace()) {
+        if (this.branches == null) {
             return;
         }
         
         this.printlnIfRequired();
+        System.out.println();
+        Print.printlnBoldWithColor("=== BRANCH PREDICTION ===", Print.Color.GREEN, this.settings);
+        
+        System.out.println("Predictor: " + this.branches.getPredictor().getDescription());
+        if (this.branches.getBtb() != null) {
+            System.out.println("Branch target buffer: " + this.branches.getBtb().size() + " entries");
+        }
+        System.out.println();
         
-        String text;
-        if (this.settings.devMode()) {
-            text = invocation.toString(); // incl. technical details
-        } else {
-            text = invocation.getOrigin().getContent(); // as written in ASB source code
-            // Remove &print & &println string arguments, as they are
-            // redundant information (they are printed on the next line)
-            text = Interpreter.PRINT_STRING_PATTERN.matcher(text).replaceFirst(":");
+        List<BranchSite> sites = this.branches.getExecutedSites();
+        int positionLength = 1;
+        for (BranchSite site : sites) {
+            positionLength = Math.max(positionLength, Integer.toHexString(site.position).length());
         }
         
         Print.printlnWithColor(
             String.format(
-                "    %" + programAddressLength + "x: %s",
-                currentProgramCounter,
-                text
+                "%" + positionLength + "s\tExecuted\tTaken\tMispredicted\tAccuracy"
+                + (this.branches.getBtb() != null ? "\tBTB misses" : "")
+                + "\tBranch",
+                "PC"
             ),
-            Print.Color.YELLOW,
-            settings
+            Print.Color.CYAN,
+            this.settings
+        );
+        
+        long executions     = 0;
+        long mispredictions = 0;
+        for (BranchSite site : sites) {
+            executions     += site.getExecutions();
+            mispredictions += site.getMispredictions();
+            
+            System.out.format(
+                "%" + positionLength + "x\t%d\t%d\t%d\t%.1f%%%s\t%s%n",
+                site.position,
+                site.getExecutions(),
+                site.getTaken(),
+                site.getMispredictions(),
+                (site.getExecutions() - site.getMispredictions()) * 100.0 / site.getExecutions(),
+                this.branches.getBtb() != null ? "\t" + site.getTargetMisses() : "",
+                site.invocation.getOrigin().getContent()
+            );
+        }
+        
+        long steps = 0;
+        for (int count : this.statistics.getInvocationsCount().values()) {
+            steps += count;
+        }
+        System.out.println();
+        System.out.format(
+            "Branches: %d\tMispredicted: %d\tAccuracy: %.1f%%\tMispredictions per 1000 commands: %.2f%n",
+            executions,
+            mispredictions,
+            executions == 0 ? 100.0 : (executions - mispredictions) * 100.0 / executions,
+            steps == 0 ? 0.0 : mispredictions * 1000.0 / steps
         );
     }
     
@@ -241,15 +934,24 @@ public class Interpreter
         // Readable identities
         String[] readableIdentities = new String[identities.length];
         int firstColLength = "Command ".length();
+        // The cost model is only used if at least one cost has been declared
+        boolean withCosts = false;
+        long totalInvocations = 0;
+        long totalCycles = 0;
         for (int i = 0; i < identities.length; i++) {
-            readableIdentities[i] = this.ast.getCommand(identities[i]).getReadableIdentity();
+            Command command = this.ast.getCommand(identities[i]);
+            readableIdentities[i] = command.getReadableIdentity();
             firstColLength = Math.max(firstColLength, readableIdentities[i].length());
+            
+            withCosts        = withCosts || command.hasCost();
+            totalInvocations += invocationsCount.get(identities[i]);
+            totalCycles      += (long) command.getCost() * invocationsCount.get(identities[i]);
         }
         
         // Table Header
         Print.printlnWithColor(
             String.format(
-                "%-" + firstColLength + "s\tExecuted",
+                "%-" + firstColLength + "s\tExecuted" + (withCosts ? "\tCycles\tShare" : ""),
                 "Command"
             ),
             Print.Color.CYAN,
@@ -257,12 +959,305 @@ public class Interpreter
         );
         
         for (int i = 0; i < identities.length; i++) {
+            if (!withCosts) {
+                System.out.format(
+                    "%-" + firstColLength + "s\t%d%n",
+                    readableIdentities[i],
+                    invocationsCount.get(identities[i])
+                );
+                continue;
+            }
+            
+            long cycles = (long) this.ast.getCommand(identities[i]).getCost() * invocationsCount.get(identities[i]);
             System.out.format(
-                "%-" + firstColLength + "s\t%d%n",
+                "%-" + firstColLength + "s\t%d\t%d\t%.1f%%%n",
                 readableIdentities[i],
-                invocationsCount.get(identities[i])
+                invocationsCount.get(identities[i]),
+                cycles,
+                totalCycles == 0 ? 0.0 : cycles * 100.0 / totalCycles
             );
         }
+        
+        if (withCosts) {
+            System.out.println();
+            System.out.format(
+                "Cycles: %d\tCPI: %.3f%n",
+                totalCycles,
+                totalInvocations == 0 ? 0.0 : (double) totalCycles / totalInvocations
+            );
+        }
+    }
+    
+    /**
+     * Prints the profile summary and writes the collapsed stacks file (at the
+     * end of interpretation).
+     * 
+     * @throws RuntimeError if the file cannot be written
+     */
+    private void printProfile() throws RuntimeError
+    {
+        if (this.profiler == null) {
+            return;
+        }
+        
+        Path filePath = Path.of(this.settings.getProfileFilePath());
+        try (Writer writer = Files.newBufferedWriter(filePath)) {
+            this.profiler.writeCollapsedStacks(writer);
+        } catch (IOException | InvalidPathException e) {
+            throw new RuntimeError("Cannot write profile to " + filePath + ": " + e.getMessage());
+        }
+        
+        this.printlnIfRequired();
+        System.out.println();
+        Print.printlnBoldWithColor("=== PROFILE ===", Print.Color.GREEN, this.settings);
+        
+        List<Profiler.Edge> edges = this.profiler.getEdges();
+        int callerColLength = "Caller ".length();
+        int calleeColLength = "Command ".length();
+        for (Profiler.Edge edge : edges) {
+            callerColLength = Math.max(callerColLength, edge.caller.length());
+            calleeColLength = Math.max(calleeColLength, edge.callee.length());
+        }
+        double totalTime = Math.max(this.profiler.getTotalTime(), 1);
+        
+        // Table Header
+        Print.printlnWithColor(
+            String.format(
+                "%-" + callerColLength + "s\t%-" + calleeColLength + "s\tCalls\tIncl. ms\tExcl. ms\tExcl. %%",
+                "Caller",
+                "Command"
+            ),
+            Print.Color.CYAN,
+            settings
+        );
+        
+        for (Profiler.Edge edge : edges) {
+            System.out.format(
+                "%-" + callerColLength + "s\t%-" + calleeColLength + "s\t%d\t%.3f\t%.3f\t%.1f%n",
+                edge.caller,
+                edge.callee,
+                edge.count,
+                edge.inclusive / 1e6,
+                edge.exclusive / 1e6,
+                edge.exclusive * 100 / totalTime
+            );
+        }
+        System.out.println("Collapsed stacks written to " + filePath);
+    }
+    
+    /**
+     * Prints the superinstructions that have been created (at the end of
+     * interpretation).
+     */
+    private void printFusions()
+    {
+        if (!this.settings.fusionReport()) {
+            return;
+        }
+        
+        this.printlnIfRequired();
+        System.out.println();
+        Print.printlnBoldWithColor("=== FUSION ===", Print.Color.GREEN, this.settings);
+        
+        List<Implementation> implementations = new ArrayList<>();
+        for (Command command : this.ast.getCommands()) {
+            if (command.getInterpretable() instanceof Implementation) {
+                implementations.add((Implementation) command.getInterpretable());
+            }
+        }
+        for (Register register : this.ast.getRegisters()) {
+            if (register instanceof VirtualRegister) {
+                VirtualRegister vr = (VirtualRegister) register;
+                implementations.add(vr.getGetterImplementation());
+                implementations.add(vr.getSetterImplementation());
+            }
+        }
+        
+        List<Superinstruction> superinstructions = new ArrayList<>();
+        for (Implementation implementation : List.copyOf(implementations)) {
+            if (implementation != null) {
+                implementations.addAll(implementation.getSpecializations());
+            }
+        }
+        for (Implementation implementation : implementations) {
+            if (implementation == null) {
+                continue;
+            }
+            for (Invocation invocation : implementation) {
+                if (invocation instanceof Superinstruction) {
+                    superinstructions.add((Superinstruction) invocation);
+                }
+            }
+        }
+        if (superinstructions.isEmpty()) {
+            System.out.println(
+                this.settings.fusion() ? "(no superinstructions created)" : "(fusion disabled)"
+            );
+            return;
+        }
+        superinstructions.sort(
+            (a, b) -> Long.compare(b.getExecutionCount(), a.getExecutionCount())
+        );
+        
+        int firstColLength = "Superinstruction ".length();
+        for (Superinstruction superinstruction : superinstructions) {
+            firstColLength = Math.max(firstColLength, superinstruction.getName().length());
+        }
+        
+        // Table Header
+        Print.printlnWithColor(
+            String.format(
+                "%-" + firstColLength + "s\tExecuted\tLocation",
+                "Superinstruction"
+            ),
+            Print.Color.CYAN,
+            settings
+        );
+        
+        for (Superinstruction superinstruction : superinstructions) {
+            System.out.format(
+                "%-" + firstColLength + "s\t%d\t%s%n",
+                superinstruction.getName(),
+                superinstruction.getExecutionCount(),
+                superinstruction.getOrigin()
+            );
+        }
+    }
+    
+    /**
+     * Prints how often each basic block of the userland program has been
+     * executed (at the end of interpretation).
+     */
+    private void printBlocks()
+    {
+        if (!this.settings.blockReport()) {
+            return;
+        }
+        
+        this.printlnIfRequired();
+        System.out.println();
+        Print.printlnBoldWithColor("=== BLOCKS ===", Print.Color.GREEN, this.settings);
+        
+        List<BasicBlock> blocks = new ArrayList<>();
+        long totalSteps = 0;
+        for (BasicBlock block : this.statistics.getBlocks()) {
+            if (this.statistics.getBlockCount(block) > 0) {
+                blocks.add(block);
+                totalSteps += this.statistics.getBlockCount(block) * block.size();
+            }
+        }
+        if (blocks.isEmpty()) {
+            System.out.println(
+                this.blockExecutor.hasExecuted() ? "(no blocks executed)" : "(block dispatch disabled)"
+            );
+            return;
+        }
+        blocks.sort(
+            (a, b) -> Long.compare(this.statistics.getBlockCount(b), this.statistics.getBlockCount(a))
+        );
+        
+        int positionLength = 1;
+        for (BasicBlock block : blocks) {
+            positionLength = Math.max(positionLength, Integer.toHexString(block.end - 1).length());
+        }
+        int firstColLength = Math.max(2 * positionLength + 1, "PC".length());
+        
+        // Table Header
+        Print.printlnWithColor(
+            String.format(
+                "%-" + firstColLength + "s\tLength\tExecuted\tSteps\tShare\tLocation",
+                "PC"
+            ),
+            Print.Color.CYAN,
+            this.settings
+        );
+        
+        List<Invocation> program = this.ast.getProgram();
+        for (BasicBlock block : blocks) {
+            long steps = this.statistics.getBlockCount(block) * block.size();
+            System.out.format(
+                "%-" + firstColLength + "s\t%d\t%d\t%d\t%.1f%%\t%s%n",
+                String.format(
+                    "%" + positionLength + "x-%" + positionLength + "x",
+                    block.start,
+                    block.end - 1
+                ),
+                block.size(),
+                this.statistics.getBlockCount(block),
+                steps,
+                steps * 100.0 / totalSteps,
+                program.get(block.start).getOrigin()
+            );
+        }
+    }
+    
+    /**
+     * Prints the loop traces that have been recorded, along with how much of
+     * the program has been executed via them (at the end of interpretation).
+     */
+    private void printLoopTraces()
+    {
+        if (!this.settings.loopReport()) {
+            return;
+        }
+        
+        this.printlnIfRequired();
+        System.out.println();
+        Print.printlnBoldWithColor("=== LOOP TRACES ===", Print.Color.GREEN, this.settings);
+        
+        LoopTracer tracer = this.blockExecutor.getTracer();
+        if (tracer == null || !this.blockExecutor.hasExecuted()) {
+            System.out.println("(loop traces disabled)");
+            return;
+        }
+        List<LoopTrace> traces = tracer.getTraces();
+        if (traces.isEmpty()) {
+            System.out.println("(no loop traces recorded)");
+            return;
+        }
+        
+        int positionLength = 1;
+        for (LoopTrace trace : traces) {
+            positionLength = Math.max(positionLength, Integer.toHexString(trace.header).length());
+        }
+        
+        // Table Header
+        Print.printlnWithColor(
+            String.format(
+                "%" + positionLength + "s\tLength\tBlocks\tEntries\tIterations\tExits\tSteps\tLocation",
+                "PC"
+            ),
+            Print.Color.CYAN,
+            this.settings
+        );
+        
+        List<Invocation> program = this.ast.getProgram();
+        long traceSteps = 0;
+        for (LoopTrace trace : traces) {
+            traceSteps += trace.getSteps();
+            System.out.format(
+                "%" + positionLength + "x\t%d\t%d\t%d\t%d\t%d\t%d\t%s%n",
+                trace.header,
+                trace.size(),
+                trace.getBlockCount(),
+                trace.getEntries(),
+                trace.getIterations(),
+                trace.getExits(),
+                trace.getSteps(),
+                program.get(trace.header).getOrigin()
+            );
+        }
+        
+        long steps = 0;
+        for (int count : this.statistics.getInvocationsCount().values()) {
+            steps += count;
+        }
+        System.out.println();
+        System.out.format(
+            "Coverage: %.1f%% of %d steps executed via traces%n",
+            steps == 0 ? 0.0 : traceSteps * 100.0 / steps,
+            steps
+        );
     }
     
     /**
@@ -376,7 +1371,7 @@ public class Interpreter
         int wordLengthHex    = Math.ceilDiv(this.ast.getMemoryWordLength(), 4);
         
         for (BigInteger address : addresses) {
-            BigInteger value = this.memory.read(address);
+            BigInteger value = this.memory.peek(address);
             if (value.equals(BigInteger.ZERO)) {
                 continue;
             }
@@ -0,0 +1,254 @@
+package net.jaraonthe.java.asb.interpret;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Writes a JSON document to a Writer, piece by piece, so that the document
+ * never has to be kept in memory as a whole.<br>
+ * 
+ * The caller is responsible for a well-formed structure (e.g. every
+ * {@link #beginObject()} must be matched by an {@link #endObject()}, and
+ * within objects every value must be preceded by a {@link #name()}).
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class JsonWriter
+{
+    private final Writer writer;
+    
+    /**
+     * One entry per open object or array: True if no element has been
+     * written to it yet.
+     */
+    private final Deque<Boolean> empty = new ArrayDeque<>();
+    
+    /**
+     * True if a name has just been written (i.e. the next value belongs to
+     * it).
+     */
+    private boolean afterName = false;
+    
+    
+    /**
+     * @param writer
+     */
+    public JsonWriter(Writer writer)
+    {
+        this.writer = writer;
+    }
+    
+    /**
+     * @return Fluent interface
+     * @throws IOException
+     */
+    public JsonWriter beginObject() throws IOException
+    {
+        this.beforeValue();
+        this.writer.write('{');
+        this.empty.push(true);
+        return this;
+    }
+    
+    /**
+     * @return Fluent interface
+     * @throws IOException
+     */
+    public JsonWriter endObject() throws IOException
+    {
+        this.end('}');
+        return this;
+    }
+    
+    /**
+     * @return Fluent interface
+     * @throws IOException
+     */
+    public JsonWriter beginArray() throws IOException
+    {
+        this.beforeValue();
+        this.writer.write('[');
+        this.empty.push(true);
+        return this;
+    }
+    
+    /**
+     * @return Fluent interface
+     * @throws IOException
+     */
+    public JsonWriter endArray() throws IOException
+    {
+        this.end(']');
+        return this;
+    }
+    
+    /**
+     * Writes the name of an object member. Must be followed by the member's
+     * value.
+     * 
+     * @param name
+     * @return Fluent interface
+     * @throws IOException
+     */
+    public JsonWriter name(String name) throws IOException
+    {
+        this.beforeElement();
+        this.writeString(name);
+        this.writer.write(": ");
+        this.afterName = true;
+        return this;
+    }
+    
+    /**
+     * @param value May be null
+     * @return Fluent interface
+     * @throws IOException
+     */
+    public JsonWriter value(String value) throws IOException
+    {
+        this.beforeValue();
+        if (value == null) {
+            this.writer.write("null");
+        } else {
+            this.writeString(value);
+        }
+        return this;
+    }
+    
+    /**
+     * @param value
+     * @return Fluent interface
+     * @throws IOException
+     */
+    public JsonWriter value(long value) throws IOException
+    {
+        this.beforeValue();
+        this.writer.write(Long.toString(value));
+        return this;
+    }
+    
+    /**
+     * @param value Non-finite values are written as null
+     * @return Fluent interface
+     * @throws IOException
+     */
+    public JsonWriter value(double value) throws IOException
+    {
+        this.beforeValue();
+        this.writer.write(Double.isFinite(value) ? Double.toString(value) : "null");
+        return this;
+    }
+    
+    /**
+     * @param value
+     * @return Fluent interface
+     * @throws IOException
+     */
+    public JsonWriter value(boolean value) throws IOException
+    {
+        this.beforeValue();
+        this.writer.write(value ? "true" : "false");
+        return this;
+    }
+    
+    
+    /**
+     * Starts a new element (i.e. array value or object member) in the current
+     * container.
+     * 
+     * @throws IOException
+     */
+    private void beforeElement() throws IOException
+    {
+        if (this.empty.isEmpty()) {
+            return;
+        }
+        if (!this.empty.pop()) {
+            this.writer.write(',');
+        }
+        this.empty.push(false);
+        this.newLine(this.empty.size());
+    }
+    
+    /**
+     * @throws IOException
+     */
+    private void beforeValue() throws IOException
+    {
+        if (this.afterName) {
+            // The element has already been started by name()
+            this.afterName = false;
+            return;
+        }
+        this.beforeElement();
+    }
+    
+    /**
+     * Closes the current container.
+     * 
+     * @param closingChar
+     * @throws IOException
+     */
+    private void end(char closingChar) throws IOException
+    {
+        if (!this.empty.pop()) {
+            this.newLine(this.empty.size());
+        }
+        this.writer.write(closingChar);
+        if (this.empty.isEmpty()) {
+            this.writer.write('\n');
+        }
+    }
+    
+    /**
+     * @param depth The indentation depth of the next line
+     * @throws IOException
+     */
+    private void newLine(int depth) throws IOException
+    {
+        this.writer.write('\n');
+        for (int i = 0; i < depth; i++) {
+            this.writer.write("  ");
+        }
+    }
+    
+    /**
+     * Writes a JSON string literal (incl. escaping).
+     * 
+     * @param text
+     * @throws IOException
+     */
+    private void writeString(String text) throws IOException
+    {
+        this.writer.write('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    this.writer.write("\\\"");
+                    break;
+                case '\\':
+                    this.writer.write("\\\\");
+                    break;
+                case '\n':
+                    this.writer.write("\\n");
+                    break;
+                case '\r':
+                    this.writer.write("\\r");
+                    break;
+                case '\t':
+                    this.writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        this.writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        this.writer.write(c);
+                    }
+            }
+        }
+        this.writer.write('"');
+    }
+}
@@ -0,0 +1,133 @@
+package net.jaraonthe.java.asb.interpret;
+
+import java.util.List;
+
+import net.jaraonthe.java.asb.ast.invocation.Invocation;
+
+/**
+ * One iteration of a hot userland loop, as recorded by the {@link LoopTracer}:
+ * the basic blocks that have been executed from the loop header until
+ * execution returned to it, flattened into a straight line of invocations.
+ * <br>
+ *
+ * Each invocation is guarded by the program position execution has continued
+ * at during recording (i.e. the outcome of each branch). If execution
+ * continues anywhere else, the trace is exited and the interpreter takes over
+ * from there.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class LoopTrace
+{
+    /**
+     * The program position of the loop header (where the trace starts).
+     */
+    public final int header;
+
+    /**
+     * The blocks of one loop iteration, in execution order.
+     */
+    final BasicBlock[] blocks;
+
+    final Invocation[] invocations;
+
+    /**
+     * The program position of each invocation.
+     */
+    final int[] positions;
+
+    /**
+     * The program position execution has to continue at after each
+     * invocation (the guards).
+     */
+    final int[] next;
+
+    /* Statistics */
+    long entries    = 0;
+    long exits      = 0;
+    long iterations = 0;
+    long steps      = 0;
+
+
+    /**
+     * @param header The program position of the loop header
+     * @param blocks The blocks of one loop iteration, in execution order. The
+     *               last one branches back to header
+     * @param next   For each block: the program position execution has
+     *               continued at after it
+     * @param program
+     */
+    LoopTrace(int header, List<BasicBlock> blocks, List<Integer> next, List<Invocation> program)
+    {
+        this.header = header;
+        this.blocks = blocks.toArray(new BasicBlock[blocks.size()]);
+
+        int length = 0;
+        for (BasicBlock block : blocks) {
+            length += block.size();
+        }
+        this.invocations = new Invocation[length];
+        this.positions   = new int[length];
+        this.next        = new int[length];
+
+        int i = 0;
+        for (int b = 0; b < this.blocks.length; b++) {
+            for (int position = this.blocks[b].start; position < this.blocks[b].end; position++) {
+                this.invocations[i] = program.get(position);
+                this.positions[i]   = position;
+                this.next[i]        = position + 1;
+                i++;
+            }
+            this.next[i - 1] = next.get(b);
+        }
+    }
+
+    /**
+     * @return The amount of invocations in one loop iteration
+     */
+    public int size()
+    {
+        return this.invocations.length;
+    }
+
+    /**
+     * @return The amount of blocks in one loop iteration
+     */
+    public int getBlockCount()
+    {
+        return this.blocks.length;
+    }
+
+    /**
+     * @return How often execution has entered this trace
+     */
+    public long getEntries()
+    {
+        return this.entries;
+    }
+
+    /**
+     * @return How often execution has left this trace because a guard failed
+     */
+    public long getExits()
+    {
+        return this.exits;
+    }
+
+    /**
+     * @return How often a whole loop iteration has been executed in this
+     *         trace
+     */
+    public long getIterations()
+    {
+        return this.iterations;
+    }
+
+    /**
+     * @return The amount of steps that have been executed in this trace
+     */
+    public long getSteps()
+    {
+        return this.steps;
+    }
+}
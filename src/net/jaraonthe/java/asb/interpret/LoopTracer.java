@@ -0,0 +1,163 @@
+package net.jaraonthe.java.asb.interpret;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.jaraonthe.java.asb.ast.invocation.Invocation;
+
+/**
+ * Finds hot loops of the userland program and records a {@link LoopTrace} for
+ * each of them.<br>
+ *
+ * The interpreter reports every basic block it has executed as a unit. A
+ * branch back to a position at or before the block is a backward branch, its
+ * target a loop header. Once a header has been branched to
+ * {@link #HOT_THRESHOLD} times, the blocks executed from there on are recorded
+ * until execution returns to the header. Recording is aborted if the loop
+ * iteration is too long or cannot be executed block by block (e.g. if it
+ * enters another trace); after {@link #MAX_ATTEMPTS} aborted recordings the
+ * header is given up.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class LoopTracer
+{
+    /**
+     * How often a loop header has to be branched to before its trace is
+     * recorded.
+     */
+    private static final int HOT_THRESHOLD = 64;
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * The maximum amount of invocations in one trace.
+     */
+    private static final int MAX_LENGTH = 1024;
+
+    private final List<Invocation> program;
+
+    /**
+     * Program position => the trace starting there. Null for all positions
+     * that aren't the header of a recorded trace.
+     */
+    private final LoopTrace[] traces;
+
+    /**
+     * Program position => how often it has been branched to backwards.
+     */
+    private final int[] headerCounts;
+
+    /**
+     * Program position => how often recording a trace starting there has
+     * been aborted.
+     */
+    private final int[] attempts;
+
+    private final List<LoopTrace> recorded = new ArrayList<>();
+
+    /**
+     * The header of the trace that is being recorded. -1 if nothing is being
+     * recorded.
+     */
+    private int recordingHeader = -1;
+
+    private final List<BasicBlock> recordingBlocks = new ArrayList<>();
+
+    private final List<Integer> recordingNext = new ArrayList<>();
+
+    private int recordingLength = 0;
+
+
+    /**
+     * @param program The userland program
+     */
+    public LoopTracer(List<Invocation> program)
+    {
+        this.program      = program;
+        this.traces       = new LoopTrace[program.size()];
+        this.headerCounts = new int[program.size()];
+        this.attempts     = new int[program.size()];
+    }
+
+    /**
+     * @param position
+     * @return The trace starting at the given program position, or null
+     */
+    public LoopTrace getTrace(int position)
+    {
+        return this.traces[position];
+    }
+
+    /**
+     * @return All traces that have been recorded, in recording order
+     */
+    public List<LoopTrace> getTraces()
+    {
+        return this.recorded;
+    }
+
+    /**
+     * Records that the given block has been executed as a unit. This is to be
+     * called after every such block.
+     *
+     * @param block
+     * @param next  The program position execution continues at
+     */
+    public void record(BasicBlock block, int next)
+    {
+        if (this.recordingHeader != -1) {
+            this.recordingBlocks.add(block);
+            this.recordingNext.add(next);
+            this.recordingLength += block.size();
+
+            if (next == this.recordingHeader) {
+                LoopTrace trace = new LoopTrace(
+                    this.recordingHeader,
+                    this.recordingBlocks,
+                    this.recordingNext,
+                    this.program
+                );
+                this.traces[trace.header] = trace;
+                this.recorded.add(trace);
+                this.stopRecording();
+            } else if (this.recordingLength > LoopTracer.MAX_LENGTH) {
+                this.abort();
+            }
+            return;
+        }
+
+        if (
+            next >= 0
+            && next < block.end
+            && this.traces[next] == null
+            && this.attempts[next] < LoopTracer.MAX_ATTEMPTS
+            && ++this.headerCounts[next] >= LoopTracer.HOT_THRESHOLD
+        ) {
+            this.recordingHeader = next;
+        }
+    }
+
+    /**
+     * Aborts recording (if a trace is being recorded). This is to be called
+     * if execution continues other than block by block, i.e. after a block
+     * has not been executed as a unit, or before a trace is executed.
+     */
+    public void abort()
+    {
+        if (this.recordingHeader == -1) {
+            return;
+        }
+        this.attempts[this.recordingHeader]++;
+        this.headerCounts[this.recordingHeader] = 0;
+        this.stopRecording();
+    }
+
+    private void stopRecording()
+    {
+        this.recordingHeader = -1;
+        this.recordingBlocks.clear();
+        this.recordingNext.clear();
+        this.recordingLength = 0;
+    }
+}
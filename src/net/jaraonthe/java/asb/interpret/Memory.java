@@ -1,15 +1,32 @@
 package net.jaraonthe.java.asb.interpret;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import net.jaraonthe.java.asb.exception.ConstraintException;
+import net.jaraonthe.java.asb.interpret.cache.CacheHierarchy;
+import net.jaraonthe.java.asb.interpret.debug.UndoLog;
+import net.jaraonthe.java.asb.interpret.device.Device;
+import net.jaraonthe.java.asb.interpret.debug.Watchpoints;
 import net.jaraonthe.java.asb.interpret.value.NumericValueStore;
 
 /**
- * The data memory of the virtual system.
+ * The data memory of the virtual system.<br>
+ * 
+ * Memory is organized in pages which are instantiated lazily. Pages can be
+ * shared between several memories (see {@link #fork()}), in which case a
+ * page is copied before it is modified.<br>
+ * 
+ * Alternatively, the words can be kept outside the Java heap (see {@link
+ * OffHeapStorage}), which is far more compact for big memories. Such a
+ * memory cannot be forked.
  *
  * @author Jakob Rathbauer <jakob@jaraonthe.net>
  */
@@ -26,20 +43,158 @@ public class Memory
     public final int addressLength;
     
     /**
-     * memory address => word
+     * A set of pages that has been frozen by {@link Memory#fork()}, i.e. it
+     * is shared between several memories and never modified any more.
      */
-    private Map<BigInteger, BigInteger> words;
+    private static class Layer
+    {
+        /**
+         * page number => page
+         */
+        private final Map<BigInteger, BigInteger[]> pages;
+        
+        /**
+         * The layer that has been frozen before this one. May be null.
+         */
+        private final Memory.Layer parent;
+        
+        private Layer(Map<BigInteger, BigInteger[]> pages, Memory.Layer parent)
+        {
+            this.pages  = pages;
+            this.parent = parent;
+        }
+        
+        /**
+         * @param pageNumber
+         * @return The page with the given number, or null if there is none
+         */
+        private BigInteger[] find(BigInteger pageNumber)
+        {
+            for (Memory.Layer layer = this; layer != null; layer = layer.parent) {
+                BigInteger[] page = layer.pages.get(pageNumber);
+                if (page != null) {
+                    return page;
+                }
+            }
+            return null;
+        }
+    }
+    
+    /**
+     * A device that is mapped to a range of addresses.
+     */
+    private static class MappedDevice
+    {
+        private final BigInteger first;
+        private final BigInteger last;
+        private final Device device;
+        
+        private MappedDevice(BigInteger first, Device device)
+        {
+            this.first  = first;
+            this.last   = first.add(BigInteger.valueOf(device.getSize() - 1));
+            this.device = device;
+        }
+    }
+    
+    /**
+     * The maximum amount of address bits that select a word within a page.
+     */
+    private static final int MAX_PAGE_BITS = 8;
+    
+    /**
+     * The amount of address bits that select a word within a page.
+     */
+    private final int pageBits;
+    
+    /**
+     * The pages owned by this memory (i.e. they may be modified).<br>
+     * 
+     * page number => page (address within page => word, null for words that
+     * have never been written)
+     */
+    private Map<BigInteger, BigInteger[]> pages;
+    
+    /**
+     * Pages shared with other memories; these are copied into {@link #pages}
+     * before being modified. May be null.
+     */
+    private Memory.Layer shared = null;
+    
+    /**
+     * Stores the words instead of the pages. Null if the words are kept on
+     * the heap.
+     */
+    private final OffHeapStorage offHeap;
+    
+    /**
+     * The devices mapped into memory. Null if there are none.
+     */
+    private List<Memory.MappedDevice> devices = null;
+    
+    /**
+     * The lowest and the highest address occupied by a device, so that
+     * accesses to other addresses are recognized in constant time.
+     */
+    private BigInteger devicesFirst = null;
+    private BigInteger devicesLast  = null;
+    
+    /**
+     * The simulated caches that are notified of every access. Null if no
+     * caches are simulated.
+     */
+    private CacheHierarchy cache = null;
+    
+    /**
+     * Records writes for reverse execution. Null if writes aren't recorded.
+     */
+    private UndoLog undoLog = null;
+    
+    /**
+     * Is notified of memory writes. Null if no memory range is watched.
+     */
+    private Watchpoints watchpoints = null;
+    
+    /**
+     * address => word before the first write to that address. Null if writes
+     * aren't journaled.
+     */
+    private Map<BigInteger, BigInteger> writeJournal = null;
     
     private static final int INITIAL_CAPACITY_BITS = 8192; // 1KiB
     
+    /**
+     * byte value => word, to avoid creating a BigInteger for every loaded
+     * byte.
+     */
+    static final BigInteger[] BYTE_VALUES = new BigInteger[256];
+    static {
+        for (int i = 0; i < Memory.BYTE_VALUES.length; i++) {
+            Memory.BYTE_VALUES[i] = BigInteger.valueOf(i);
+        }
+    }
+    
     /**
      * @param wordLength    The length of one memory word. Must be a valid length.
      * @param addressLength The length of a memory address. Must be a valid length.
      */
     public Memory(int wordLength, int addressLength)
+    {
+        this(wordLength, addressLength, null);
+    }
+    
+    /**
+     * @param wordLength    The length of one memory word. Must be a valid length.
+     * @param addressLength The length of a memory address. Must be a valid length.
+     * @param offHeap       Stores the words outside the Java heap. May be null
+     *                      (words are kept on the heap)
+     */
+    public Memory(int wordLength, int addressLength, OffHeapStorage offHeap)
     {
         this.wordLength    = wordLength;
         this.addressLength = addressLength;
+        this.pageBits      = Math.min(Memory.MAX_PAGE_BITS, addressLength);
+        this.offHeap       = offHeap;
         
         // Reserving ~1kiB worth of virtual system memory to start with...
         int initialCapacity = Math.ceilDiv(Memory.INITIAL_CAPACITY_BITS, wordLength);
@@ -47,9 +202,137 @@ public class Memory
             // ... but don't reserve more than can be addressed
             initialCapacity = (int)Math.pow(2, addressLength);
         }
-        // Of course, the actual memory cells are lazily instantiated as we go along
+        // Of course, the actual memory pages are lazily instantiated as we go along
         
-        this.words = HashMap.newHashMap(initialCapacity);
+        this.pages = HashMap.newHashMap(Math.ceilDiv(initialCapacity, 1 << this.pageBits));
+    }
+    
+    /**
+     * Creates a copy of this memory in constant time, by sharing all current
+     * pages between this memory and the copy. A shared page is only copied
+     * once it is written to (by either memory).<br>
+     * 
+     * The copy doesn't use the simulated caches of this memory.
+     * 
+     * @return
+     * @throws UnsupportedOperationException if the words are kept off-heap
+     */
+    public Memory fork()
+    {
+        if (this.offHeap != null) {
+            throw new UnsupportedOperationException("Cannot fork off-heap memory");
+        }
+        
+        if (!this.pages.isEmpty()) {
+            // Freezing the own pages
+            this.shared = new Memory.Layer(this.pages, this.shared);
+            this.pages  = new HashMap<>();
+        }
+        
+        Memory copy = new Memory(this.wordLength, this.addressLength);
+        copy.shared = this.shared;
+        return copy;
+    }
+    
+    /**
+     * Maps a device to the addresses starting at the given address. Accesses
+     * of the virtual system to these addresses are passed on to the device
+     * (and are not seen by the simulated caches). Inspecting and loading
+     * memory is not affected by devices.
+     * 
+     * @param address The first address the device occupies
+     * @param device
+     * @return Fluent interface
+     * 
+     * @throws ConstraintException if the device doesn't fit into the address
+     *                             space or overlaps another device
+     */
+    public Memory addDevice(BigInteger address, Device device) throws ConstraintException
+    {
+        Memory.MappedDevice mapped = new Memory.MappedDevice(address, device);
+        if (address.signum() < 0 || mapped.last.bitLength() > this.addressLength) {
+            throw new ConstraintException(
+                "Device at address 0x" + address.toString(16) + " exceeds the memory address space"
+            );
+        }
+        
+        if (this.devices == null) {
+            this.devices      = new ArrayList<>();
+            this.devicesFirst = mapped.first;
+            this.devicesLast  = mapped.last;
+        }
+        for (Memory.MappedDevice other : this.devices) {
+            if (mapped.first.compareTo(other.last) <= 0 && other.first.compareTo(mapped.last) <= 0) {
+                throw new ConstraintException(
+                    "Device at address 0x" + address.toString(16) + " overlaps the device at address 0x"
+                    + other.first.toString(16)
+                );
+            }
+        }
+        this.devices.add(mapped);
+        this.devicesFirst = this.devicesFirst.min(mapped.first);
+        this.devicesLast  = this.devicesLast.max(mapped.last);
+        
+        return this;
+    }
+    
+    /**
+     * Sets the simulated caches that shall be notified of every memory access.
+     * 
+     * @param cache May be null (no caches are simulated)
+     * @return Fluent interface
+     */
+    public Memory setCache(CacheHierarchy cache)
+    {
+        this.cache = cache;
+        return this;
+    }
+    
+    /**
+     * Sets the undo log that shall record every memory write.
+     * 
+     * @param undoLog May be null (writes aren't recorded)
+     * @return Fluent interface
+     */
+    public Memory setUndoLog(UndoLog undoLog)
+    {
+        this.undoLog = undoLog;
+        return this;
+    }
+    
+    /**
+     * Sets the watchpoints that shall be notified of every memory write.
+     * 
+     * @param watchpoints May be null (no memory range is watched)
+     * @return Fluent interface
+     */
+    public Memory setWatchpoints(Watchpoints watchpoints)
+    {
+        this.watchpoints = watchpoints;
+        return this;
+    }
+    
+    /**
+     * Sets the journal that shall record the old word of every address that is
+     * written to (only the first write to an address is recorded). Unlike the
+     * undo log, this is meant for short stretches of execution.
+     * 
+     * @param writeJournal address => old word. May be null (writes aren't
+     *                     journaled)
+     * @return Fluent interface
+     */
+    public Memory setWriteJournal(Map<BigInteger, BigInteger> writeJournal)
+    {
+        this.writeJournal = writeJournal;
+        return this;
+    }
+    
+    /**
+     * @return The journal set via {@link #setWriteJournal(Map)}. May be null
+     */
+    public Map<BigInteger, BigInteger> getWriteJournal()
+    {
+        return this.writeJournal;
     }
     
     /**
@@ -61,12 +344,32 @@ public class Memory
     public BigInteger read(BigInteger address)
     {
         address = this.checkAddress(address);
-        
-        BigInteger word = this.words.get(address);
-        if (word == null) {
-            return BigInteger.ZERO;
+        if (this.devices != null) {
+            Memory.MappedDevice mapped = this.findDevice(address);
+            if (mapped != null) {
+                return mapped.device.read(address.subtract(mapped.first).intValue());
+            }
         }
-        return word;
+        if (this.cache != null) {
+            this.cache.read(address);
+        }
+        
+        return this.peek(address);
+    }
+    
+    /**
+     * Reads the memory word at given address, without this counting as a
+     * memory access of the virtual system (i.e. simulated caches are not
+     * affected). This is meant for inspecting the memory.
+     * 
+     * @param address
+     * @return
+     */
+    public BigInteger peek(BigInteger address)
+    {
+        address = this.checkAddress(address);
+        
+        return this.get(address);
     }
     
     /**
@@ -76,6 +379,34 @@ public class Memory
      * @param word
      */
     public void write(BigInteger address, BigInteger word)
+    {
+        address = this.checkAddress(address);
+        if (this.devices != null) {
+            Memory.MappedDevice mapped = this.findDevice(address);
+            if (mapped != null) {
+                if (word.signum() < 0) {
+                    word = NumericValueStore.normalizeBigInteger(word, this.wordLength);
+                }
+                mapped.device.write(address.subtract(mapped.first).intValue(), word);
+                return;
+            }
+        }
+        if (this.cache != null) {
+            this.cache.write(address);
+        }
+        
+        this.poke(address, word);
+    }
+    
+    /**
+     * Overwrites the memory word at the given address, without this counting
+     * as a memory access of the virtual system (i.e. simulated caches are not
+     * affected). This is meant for loading memory contents.
+     * 
+     * @param address
+     * @param word
+     */
+    public void poke(BigInteger address, BigInteger word)
     {
         address = this.checkAddress(address);
         
@@ -86,7 +417,205 @@ public class Memory
             throw new IllegalArgumentException("Value is too big for memory: " + word);
         }
         
-        this.words.put(address, word);
+        this.put(address, word);
+    }
+    
+    /**
+     * Reads count consecutive memory words, starting at the given address, and
+     * combines them into one value.<br>
+     * 
+     * Addresses wrap around at the end of the address space.
+     * 
+     * @param address   The address of the first word
+     * @param count     The amount of words to read. Must be at least 1
+     * @param bigEndian True: The first word is the most significant one;
+     *                  False: The first word is the least significant one
+     * 
+     * @return A value with a length of count * {@link #wordLength}
+     */
+    public BigInteger readWords(BigInteger address, int count, boolean bigEndian)
+    {
+        address = this.checkAddress(address);
+        
+        BigInteger value = BigInteger.ZERO;
+        for (int i = 0; i < count; i++) {
+            BigInteger word;
+            Memory.MappedDevice mapped = this.devices == null ? null : this.findDevice(address);
+            if (mapped != null) {
+                word = mapped.device.read(address.subtract(mapped.first).intValue());
+            } else {
+                if (this.cache != null) {
+                    this.cache.read(address);
+                }
+                word = this.get(address);
+            }
+            if (word.signum() != 0) {
+                int shift = (bigEndian ? count - 1 - i : i) * this.wordLength;
+                value = value.or(word.shiftLeft(shift));
+            }
+            address = this.nextAddress(address);
+        }
+        return value;
+    }
+    
+    /**
+     * Splits the given value into count memory words and writes them to
+     * consecutive memory addresses, starting at the given address.<br>
+     * 
+     * Addresses wrap around at the end of the address space.
+     * 
+     * @param address   The address of the first word
+     * @param count     The amount of words to write. Must be at least 1
+     * @param value     Must not be negative and must fit into
+     *                  count * {@link #wordLength}
+     * @param bigEndian True: The first word is the most significant one;
+     *                  False: The first word is the least significant one
+     */
+    public void writeWords(BigInteger address, int count, BigInteger value, boolean bigEndian)
+    {
+        address = this.checkAddress(address);
+        
+        if (value.signum() < 0 || NumericValueStore.bitLength(value) > count * this.wordLength) {
+            throw new IllegalArgumentException("Value is too big for " + count + " memory words: " + value);
+        }
+        
+        BigInteger wordMask = BigInteger.ONE.shiftLeft(this.wordLength).subtract(BigInteger.ONE);
+        for (int i = 0; i < count; i++) {
+            int shift       = (bigEndian ? count - 1 - i : i) * this.wordLength;
+            BigInteger word = value.shiftRight(shift).and(wordMask);
+            Memory.MappedDevice mapped = this.devices == null ? null : this.findDevice(address);
+            if (mapped != null) {
+                mapped.device.write(address.subtract(mapped.first).intValue(), word);
+            } else {
+                if (this.cache != null) {
+                    this.cache.write(address);
+                }
+                this.put(address, word);
+            }
+            address = this.nextAddress(address);
+        }
+    }
+    
+    /**
+     * @return The amount of bytes a memory word is loaded from by {@link
+     *         #load(BigInteger, ByteBuffer)}
+     */
+    public int bytesPerWord()
+    {
+        return Math.ceilDiv(this.wordLength, 8);
+    }
+    
+    /**
+     * Loads raw bytes into consecutive memory words, starting at the given
+     * address. Each word is taken from {@link #bytesPerWord()} bytes in
+     * little-endian order; a trailing partial word is padded with zero
+     * bytes.<br>
+     * 
+     * The pages are filled directly, so this is much faster than writing one
+     * word at a time. Like {@link #poke(BigInteger, BigInteger)}, this doesn't
+     * count as a memory access of the virtual system; it isn't recorded or
+     * watched either.
+     * 
+     * @param address The address of the first word. Must be valid
+     * @param data    The bytes from its position up to its limit are loaded
+     * 
+     * @return The address following the last loaded word (this may be outside
+     *         the address space)
+     * 
+     * @throws ConstraintException if the data exceeds the address space or
+     *                             contains a value that is too big for a
+     *                             memory word
+     */
+    public BigInteger load(BigInteger address, ByteBuffer data) throws ConstraintException
+    {
+        address = this.checkAddress(address);
+        
+        int bytesPerWord = this.bytesPerWord();
+        long wordCount   = Math.ceilDiv((long) data.remaining(), bytesPerWord);
+        if (wordCount == 0) {
+            return address;
+        }
+        BigInteger end = address.add(BigInteger.valueOf(wordCount));
+        if (end.subtract(BigInteger.ONE).bitLength() > this.addressLength) {
+            throw new ConstraintException(
+                wordCount + " words starting at address 0x" + address.toString(16)
+                + " exceed the memory address space"
+            );
+        }
+        
+        boolean checkLength   = this.wordLength < bytesPerWord * 8;
+        if (this.offHeap != null) {
+            if (checkLength) {
+                this.checkLoadedWords(address, data.slice());
+            }
+            this.offHeap.load(address.longValueExact(), data);
+            return end;
+        }
+        
+        BigInteger pageNumber = address.shiftRight(this.pageBits);
+        int index             = this.indexInPage(address);
+        BigInteger[] page     = null;
+        for (long i = 0; i < wordCount; i++) {
+            BigInteger word;
+            if (bytesPerWord == 1) {
+                word = Memory.BYTE_VALUES[data.get() & 0xFF];
+            } else if (bytesPerWord < 8) {
+                long value = 0;
+                for (int b = 0; b < bytesPerWord && data.hasRemaining(); b++) {
+                    value |= (long) (data.get() & 0xFF) << (b * 8);
+                }
+                word = BigInteger.valueOf(value);
+            } else {
+                byte[] bytes = new byte[bytesPerWord];
+                for (int b = bytesPerWord - 1; b >= 0 && data.hasRemaining(); b--) {
+                    bytes[b] = data.get();
+                }
+                word = new BigInteger(1, bytes);
+            }
+            if (checkLength && word.bitLength() > this.wordLength) {
+                throw new ConstraintException(
+                    "Value 0x" + word.toString(16) + " for address 0x"
+                    + address.add(BigInteger.valueOf(i)).toString(16)
+                    + " is too big for a memory word"
+                );
+            }
+            
+            if (page == null) {
+                page = this.getPageForWriting(pageNumber);
+            }
+            if (word.signum() != 0 || page[index] != null) {
+                // Never-written zero words stay unused
+                page[index] = word;
+            }
+            if (++index == page.length) {
+                pageNumber = pageNumber.add(BigInteger.ONE);
+                index      = 0;
+                page       = null;
+            }
+        }
+        return end;
+    }
+    
+    /**
+     * Checks that each word in the given data fits into the word length.
+     * 
+     * @param address The address of the first word
+     * @param data    As given to {@link #load(BigInteger, ByteBuffer)}
+     * 
+     * @throws ConstraintException if a word is too big
+     */
+    private void checkLoadedWords(BigInteger address, ByteBuffer data) throws ConstraintException
+    {
+        int bytesPerWord = this.bytesPerWord();
+        int topMask      = 0xFF << (this.wordLength - (bytesPerWord - 1) * 8) & 0xFF;
+        for (int i = bytesPerWord - 1; i < data.limit(); i += bytesPerWord) {
+            if ((data.get(i) & topMask) != 0) {
+                throw new ConstraintException(
+                    "Value for address 0x" + address.add(BigInteger.valueOf(i / bytesPerWord)).toString(16)
+                    + " is too big for a memory word"
+                );
+            }
+        }
     }
     
     /**
@@ -97,7 +626,139 @@ public class Memory
      */
     public Set<BigInteger> getAddressesInUse()
     {
-        return Collections.unmodifiableSet(this.words.keySet());
+        if (this.offHeap != null) {
+            // Off-heap storage cannot tell which words have been written, so
+            // this is limited to words that are not 0
+            return Collections.unmodifiableSet(this.offHeap.getAddressesInUse());
+        }
+        
+        // Own pages take precedence over shared ones, as do younger layers
+        // over older ones
+        Map<BigInteger, BigInteger[]> visible = new HashMap<>();
+        List<Map<BigInteger, BigInteger[]>> layers = new ArrayList<>();
+        for (Memory.Layer layer = this.shared; layer != null; layer = layer.parent) {
+            layers.add(layer.pages);
+        }
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            visible.putAll(layers.get(i));
+        }
+        visible.putAll(this.pages);
+        
+        Set<BigInteger> addresses = new HashSet<>();
+        for (Map.Entry<BigInteger, BigInteger[]> entry : visible.entrySet()) {
+            BigInteger base   = entry.getKey().shiftLeft(this.pageBits);
+            BigInteger[] page = entry.getValue();
+            for (int i = 0; i < page.length; i++) {
+                if (page[i] != null) {
+                    addresses.add(base.add(BigInteger.valueOf(i)));
+                }
+            }
+        }
+        return Collections.unmodifiableSet(addresses);
+    }
+    
+    
+    /**
+     * Must only be called if there are devices.
+     * 
+     * @param address Must be valid
+     * @return The device the given address belongs to, or null if it doesn't
+     *         belong to a device
+     */
+    private Memory.MappedDevice findDevice(BigInteger address)
+    {
+        if (address.compareTo(this.devicesFirst) < 0 || address.compareTo(this.devicesLast) > 0) {
+            return null;
+        }
+        for (Memory.MappedDevice mapped : this.devices) {
+            if (address.compareTo(mapped.first) >= 0 && address.compareTo(mapped.last) <= 0) {
+                return mapped;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * @param address Must be valid
+     * @return The word at the given address, without notifying the caches
+     */
+    private BigInteger get(BigInteger address)
+    {
+        if (this.offHeap != null) {
+            return this.offHeap.read(address.longValue());
+        }
+        
+        BigInteger pageNumber = address.shiftRight(this.pageBits);
+        BigInteger[] page     = this.pages.get(pageNumber);
+        if (page == null && this.shared != null) {
+            page = this.shared.find(pageNumber);
+        }
+        if (page == null) {
+            return BigInteger.ZERO;
+        }
+        
+        BigInteger word = page[this.indexInPage(address)];
+        if (word == null) {
+            return BigInteger.ZERO;
+        }
+        return word;
+    }
+    
+    /**
+     * Stores the given word, copying a shared page first if necessary.
+     * 
+     * @param address Must be valid
+     * @param word    Must be valid
+     */
+    private void put(BigInteger address, BigInteger word)
+    {
+        if (this.undoLog != null || this.watchpoints != null || this.writeJournal != null) {
+            BigInteger oldWord = this.get(address);
+            if (this.undoLog != null) {
+                this.undoLog.recordMemory(address, oldWord);
+            }
+            if (this.watchpoints != null) {
+                this.watchpoints.memoryWritten(address, oldWord, word);
+            }
+            if (this.writeJournal != null) {
+                this.writeJournal.putIfAbsent(address, oldWord);
+            }
+        }
+        
+        if (this.offHeap != null) {
+            this.offHeap.write(address.longValue(), word);
+            return;
+        }
+        this.getPageForWriting(address.shiftRight(this.pageBits))[this.indexInPage(address)] = word;
+    }
+    
+    /**
+     * @param pageNumber
+     * @return The own page with the given number, which is created or copied
+     *         from a shared page if necessary
+     */
+    private BigInteger[] getPageForWriting(BigInteger pageNumber)
+    {
+        BigInteger[] page = this.pages.get(pageNumber);
+        if (page == null) {
+            BigInteger[] sharedPage = this.shared == null ? null : this.shared.find(pageNumber);
+            if (sharedPage != null) {
+                page = sharedPage.clone();
+            } else {
+                page = new BigInteger[1 << this.pageBits];
+            }
+            this.pages.put(pageNumber, page);
+        }
+        return page;
+    }
+    
+    /**
+     * @param address Must be valid
+     * @return The index of the given address within its page
+     */
+    private int indexInPage(BigInteger address)
+    {
+        return address.intValue() & ((1 << this.pageBits) - 1);
     }
     
     
@@ -117,4 +778,18 @@ public class Memory
         }
         return address;
     }
+    
+    /**
+     * @param address Must be valid
+     * @return The address following the given one, wrapping around at the end
+     *         of the address space
+     */
+    private BigInteger nextAddress(BigInteger address)
+    {
+        address = address.add(BigInteger.ONE);
+        if (address.bitLength() > this.addressLength) {
+            return BigInteger.ZERO;
+        }
+        return address;
+    }
 }
@@ -0,0 +1,226 @@
+package net.jaraonthe.java.asb.interpret;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+
+import net.jaraonthe.java.asb.exception.ConstraintException;
+import net.jaraonthe.java.asb.exception.RuntimeError;
+import net.jaraonthe.java.asb.interpret.value.NumericValueStore;
+
+/**
+ * Initial memory contents which are loaded in bulk before the user program
+ * starts, given either as a file of raw bytes (.incbin directive or
+ * --load-memory) or as a list of values (.data directive).<br>
+ *
+ * A file is split into memory words as configured via .memory .word: each
+ * word is taken from as many bytes as needed to hold a word, in little-endian
+ * order (see {@link Memory#load(BigInteger, ByteBuffer)}). Regular files are
+ * memory-mapped, so that big files are not copied onto the heap first.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class MemoryImage
+{
+    /**
+     * Files are mapped in chunks of at most this many bytes (a mapping cannot
+     * exceed 2GiB).
+     */
+    private static final long MAX_CHUNK_SIZE = 1 << 30;
+
+    /**
+     * The address of the first word.
+     */
+    public final BigInteger address;
+
+    /**
+     * Null if this image is given as values.
+     */
+    public final Path filePath;
+
+    /**
+     * Null if this image is given as a file. Values may be negative (two's
+     * complement is used then).
+     */
+    private final List<BigInteger> values;
+
+    /**
+     * Where this image has been defined. Used in error messages.
+     */
+    private final String source;
+
+
+    /**
+     * @param address
+     * @param filePath
+     * @param values
+     * @param source
+     */
+    private MemoryImage(BigInteger address, Path filePath, List<BigInteger> values, String source)
+    {
+        this.address  = address;
+        this.filePath = filePath;
+        this.values   = values;
+        this.source   = source;
+    }
+
+    /**
+     * @param address  The address of the first word. Must not be negative
+     * @param filePath The file containing the raw bytes
+     * @param source   Where this image has been defined. Used in error
+     *                 messages
+     * @return
+     */
+    public static MemoryImage fromFile(BigInteger address, Path filePath, String source)
+    {
+        return new MemoryImage(address, filePath, null, source);
+    }
+
+    /**
+     * @param address The address of the first word. Must not be negative
+     * @param values  One value per word. May be negative (two's complement is
+     *                used then)
+     * @param source  Where this image has been defined. Used in error
+     *                messages
+     * @return
+     */
+    public static MemoryImage fromValues(BigInteger address, List<BigInteger> values, String source)
+    {
+        return new MemoryImage(address, null, List.copyOf(values), source);
+    }
+
+    /**
+     * Parses a --load-memory value, i.e. "file@address". The file path is
+     * resolved against the working directory.
+     *
+     * @param text
+     * @return
+     *
+     * @throws ConstraintException if text is not a valid value
+     */
+    public static MemoryImage fromString(String text) throws ConstraintException
+    {
+        int at = text.lastIndexOf('@');
+        BigInteger address = at == -1 ? null : NumericValueStore.parseBigInteger(text.substring(at + 1));
+        if (at < 1 || address == null || address.signum() < 0) {
+            throw new ConstraintException(
+                "Invalid value \"" + text + "\", expected file@address"
+            );
+        }
+
+        Path filePath;
+        try {
+            filePath = Path.of(text.substring(0, at));
+        } catch (InvalidPathException e) {
+            throw new ConstraintException("Invalid file path in \"" + text + "\"");
+        }
+        return MemoryImage.fromFile(address, filePath, "--load-memory " + text);
+    }
+
+
+    /**
+     * Writes this image into the given memory.
+     *
+     * @param memory
+     *
+     * @throws RuntimeError if the file cannot be read, or the image doesn't
+     *                      fit into memory
+     */
+    public void load(Memory memory) throws RuntimeError
+    {
+        try {
+            if (this.address.bitLength() > memory.addressLength) {
+                throw new ConstraintException("Memory address 0x" + this.address.toString(16) + " is too big");
+            }
+
+            if (this.filePath == null) {
+                this.loadValues(memory);
+            } else {
+                this.loadFile(memory);
+            }
+        } catch (ConstraintException e) {
+            throw new RuntimeError(e.getMessage() + " (" + this.source + ")");
+        } catch (NoSuchFileException e) {
+            throw new RuntimeError("Cannot find memory image " + this.filePath + " (" + this.source + ")");
+        } catch (IOException e) {
+            throw new RuntimeError(
+                "Cannot read memory image " + this.filePath + ": " + e.getMessage() + " (" + this.source + ")"
+            );
+        }
+    }
+
+    /**
+     * @param memory
+     * @param wordCount
+     *
+     * @throws ConstraintException if the given amount of words, starting at
+     *                             this image's address, exceeds the address
+     *                             space
+     */
+    private void checkFits(Memory memory, long wordCount) throws ConstraintException
+    {
+        BigInteger last = this.address.add(BigInteger.valueOf(wordCount - 1));
+        if (wordCount > 0 && last.bitLength() > memory.addressLength) {
+            throw new ConstraintException(
+                wordCount + " words starting at address 0x" + this.address.toString(16)
+                + " exceed the memory address space"
+            );
+        }
+    }
+
+    /**
+     * @param memory
+     * @throws ConstraintException if the values don't fit into memory
+     */
+    private void loadValues(Memory memory) throws ConstraintException
+    {
+        this.checkFits(memory, this.values.size());
+
+        BigInteger address = this.address;
+        for (BigInteger value : this.values) {
+            value = NumericValueStore.normalizeBigInteger(value, memory.wordLength);
+            if (NumericValueStore.bitLength(value) > memory.wordLength) {
+                throw new ConstraintException("Value " + value + " is too big for a memory word");
+            }
+            memory.poke(address, value);
+            address = address.add(BigInteger.ONE);
+        }
+    }
+
+    /**
+     * @param memory
+     *
+     * @throws IOException
+     * @throws ConstraintException if the file content doesn't fit into memory
+     */
+    private void loadFile(Memory memory) throws IOException, ConstraintException
+    {
+        if (!Files.isRegularFile(this.filePath)) {
+            // E.g. a pipe, which cannot be mapped
+            memory.load(this.address, ByteBuffer.wrap(Files.readAllBytes(this.filePath)));
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(this.filePath)) {
+            long size = channel.size();
+            this.checkFits(memory, Math.ceilDiv(size, memory.bytesPerWord()));
+
+            // Chunks must contain whole words
+            long chunkSize = MemoryImage.MAX_CHUNK_SIZE / memory.bytesPerWord() * memory.bytesPerWord();
+
+            BigInteger address = this.address;
+            for (long position = 0; position < size; position += chunkSize) {
+                address = memory.load(
+                    address,
+                    channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(chunkSize, size - position))
+                );
+            }
+        }
+    }
+}
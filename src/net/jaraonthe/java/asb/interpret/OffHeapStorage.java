@@ -0,0 +1,323 @@
+package net.jaraonthe.java.asb.interpret;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores memory words outside the Java heap, as a flat image: the word at
+ * address a occupies {@link #bytesPerWord} bytes (little-endian) at offset
+ * a * {@link #bytesPerWord}.<br>
+ *
+ * The image is split into segments which are allocated on first write.
+ * Without a backing file, segments are direct buffers. With a backing file,
+ * segments are mapped regions of that file; the file is a sparse file that
+ * grows up to the end of the highest segment in use (words beyond its end are
+ * 0), so that it only uses disk space for segments that have been written to,
+ * and it can be inspected with external tools after (or during) the run.<br>
+ *
+ * Additionally, the blocks of {@link #BLOCK_SIZE} words that have been
+ * written to are tracked, so that the addresses in use can be determined
+ * without scanning the entire address space.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class OffHeapStorage
+{
+    /**
+     * The maximum address length supported by off-heap storage.
+     */
+    public static final int MAX_ADDRESS_LENGTH = 48;
+
+    /**
+     * The maximum size of a mapped file segment (in bytes).
+     */
+    private static final long MAX_FILE_SEGMENT_SIZE = 1L << 30;
+
+    /**
+     * The amount of address bits that select a word within a segment that is
+     * not backed by a file.
+     */
+    private static final int DIRECT_SEGMENT_BITS = 16;
+
+    private static final int BLOCK_BITS = 12;
+    private static final int BLOCK_SIZE = 1 << OffHeapStorage.BLOCK_BITS;
+
+    /**
+     * The amount of bytes that store one word.
+     */
+    public final int bytesPerWord;
+
+    /**
+     * The amount of words in the address space.
+     */
+    private final long wordCount;
+
+    /**
+     * The amount of address bits that select a word within a segment.
+     */
+    private final int segmentBits;
+
+    /**
+     * The backing file. Null if segments are direct buffers.
+     */
+    private final FileChannel channel;
+
+    /**
+     * segment number => segment
+     */
+    private final Map<Long, ByteBuffer> segments = new HashMap<>();
+
+    /**
+     * The most recently accessed segment and its number, as consecutive
+     * accesses usually hit the same segment.
+     */
+    private long lastSegmentNumber = -1;
+    private ByteBuffer lastSegment = null;
+
+    /**
+     * The blocks (address >> {@link #BLOCK_BITS}) that have been written to.
+     */
+    private final Set<Long> usedBlocks = new HashSet<>();
+    private long lastUsedBlock = -1;
+
+
+    /**
+     * @param wordLength    The length of one memory word. Must be a valid length
+     * @param addressLength The length of a memory address. Must not be greater
+     *                      than {@link #MAX_ADDRESS_LENGTH}
+     * @param backingFile   The file to store the memory image in. Its former
+     *                      content is discarded. May be null (memory is kept
+     *                      in direct buffers)
+     *
+     * @throws IOException if the backing file cannot be opened
+     */
+    public OffHeapStorage(int wordLength, int addressLength, Path backingFile) throws IOException
+    {
+        if (addressLength > OffHeapStorage.MAX_ADDRESS_LENGTH) {
+            throw new IllegalArgumentException("Address length is too big for off-heap storage: " + addressLength);
+        }
+        this.bytesPerWord = Math.ceilDiv(wordLength, 8);
+        this.wordCount    = 1L << addressLength;
+
+        if (backingFile == null) {
+            this.channel     = null;
+            this.segmentBits = Math.min(OffHeapStorage.DIRECT_SEGMENT_BITS, addressLength);
+            return;
+        }
+
+        int segmentBits = 63 - Long.numberOfLeadingZeros(OffHeapStorage.MAX_FILE_SEGMENT_SIZE / this.bytesPerWord);
+        this.segmentBits = Math.min(segmentBits, addressLength);
+        this.channel     = FileChannel.open(
+            backingFile,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING
+        );
+        // The file is grown segment by segment (see getSegment()), as a file
+        // of the full memory size may exceed what the file system supports
+    }
+
+    /**
+     * @param address
+     * @return The word at the given address
+     */
+    public BigInteger read(long address)
+    {
+        ByteBuffer segment = this.getSegment(address >>> this.segmentBits, false);
+        if (segment == null) {
+            return BigInteger.ZERO;
+        }
+        int offset = this.offsetInSegment(address);
+
+        if (this.bytesPerWord == 1) {
+            return Memory.BYTE_VALUES[segment.get(offset) & 0xFF];
+        }
+        if (this.bytesPerWord < 8) {
+            long value = 0;
+            for (int b = 0; b < this.bytesPerWord; b++) {
+                value |= (long) (segment.get(offset + b) & 0xFF) << (b * 8);
+            }
+            return BigInteger.valueOf(value);
+        }
+        byte[] bytes = new byte[this.bytesPerWord];
+        for (int b = 0; b < this.bytesPerWord; b++) {
+            bytes[this.bytesPerWord - 1 - b] = segment.get(offset + b);
+        }
+        return new BigInteger(1, bytes);
+    }
+
+    /**
+     * @param address
+     * @param word    Must not be negative and must fit into
+     *                {@link #bytesPerWord} bytes
+     */
+    public void write(long address, BigInteger word)
+    {
+        ByteBuffer segment = this.getSegment(address >>> this.segmentBits, true);
+        int offset         = this.offsetInSegment(address);
+
+        if (this.bytesPerWord <= 8) {
+            long value = word.longValue();
+            for (int b = 0; b < this.bytesPerWord; b++) {
+                segment.put(offset + b, (byte) (value >>> (b * 8)));
+            }
+        } else {
+            byte[] bytes = word.toByteArray(); // big-endian, may have a leading sign byte
+            for (int b = 0; b < this.bytesPerWord; b++) {
+                segment.put(offset + b, b < bytes.length ? bytes[bytes.length - 1 - b] : 0);
+            }
+        }
+        this.markUsed(address);
+    }
+
+    /**
+     * Copies raw bytes into consecutive words, starting at the given address.
+     * A trailing partial word is padded with zero bytes.
+     *
+     * @param address The address of the first word. The words must fit into
+     *                the address space
+     * @param data    The bytes from its position up to its limit are copied.
+     *                Every word must fit into the memory word length
+     */
+    public void load(long address, ByteBuffer data)
+    {
+        long wordCount   = Math.ceilDiv((long) data.remaining(), this.bytesPerWord);
+        long position    = address * this.bytesPerWord;
+        long end         = position + wordCount * this.bytesPerWord;
+        long segmentSize = (long) this.bytesPerWord << this.segmentBits;
+        while (position < end) {
+            ByteBuffer segment = this.getSegment(position / segmentSize, true);
+            int offset         = (int) (position % segmentSize);
+            int length         = (int) Math.min(segmentSize - offset, end - position);
+
+            int copied = Math.min(length, data.remaining());
+            segment.put(offset, data, data.position(), copied);
+            data.position(data.position() + copied);
+            for (int i = copied; i < length; i++) {
+                // Padding
+                segment.put(offset + i, (byte) 0);
+            }
+            position += length;
+        }
+
+        for (long a = address; a < address + wordCount; a += OffHeapStorage.BLOCK_SIZE) {
+            this.markUsed(a);
+        }
+        this.markUsed(address + wordCount - 1);
+    }
+
+    /**
+     * @return The addresses of all words that have a value other than 0
+     */
+    public Set<BigInteger> getAddressesInUse()
+    {
+        Set<BigInteger> addresses = new HashSet<>();
+        for (long block : this.usedBlocks) {
+            long first = block << OffHeapStorage.BLOCK_BITS;
+            long end   = Math.min(first + OffHeapStorage.BLOCK_SIZE, this.wordCount);
+            for (long address = first; address < end; address++) {
+                if (!this.isZero(address)) {
+                    addresses.add(BigInteger.valueOf(address));
+                }
+            }
+        }
+        return addresses;
+    }
+
+
+    /**
+     * @param number
+     * @param create True: Create (or map) the segment if it doesn't exist yet
+     *
+     * @return The segment with the given number. Null if it doesn't exist and
+     *         create is false
+     *
+     * @throws UncheckedIOException if the backing file cannot be grown to
+     *                              hold the segment
+     */
+    private ByteBuffer getSegment(long number, boolean create)
+    {
+        if (number == this.lastSegmentNumber) {
+            return this.lastSegment;
+        }
+
+        ByteBuffer segment = this.segments.get(number);
+        if (segment == null) {
+            if (!create) {
+                return null;
+            }
+            int size = this.bytesPerWord << this.segmentBits;
+            if (this.channel == null) {
+                segment = ByteBuffer.allocateDirect(size);
+            } else {
+                long position = number * size;
+                try {
+                    if (this.channel.size() < position + size) {
+                        // Writing the last byte grows the (sparse) file
+                        this.channel.write(ByteBuffer.allocate(1), position + size - 1);
+                    }
+                    segment = this.channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(
+                        "Cannot grow memory backing file to " + (position + size) + " bytes",
+                        e
+                    );
+                }
+            }
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+            this.segments.put(number, segment);
+        }
+
+        this.lastSegmentNumber = number;
+        this.lastSegment       = segment;
+        return segment;
+    }
+
+    /**
+     * @param address
+     * @return The offset of the given word within its segment (in bytes)
+     */
+    private int offsetInSegment(long address)
+    {
+        return (int) (address & ((1L << this.segmentBits) - 1)) * this.bytesPerWord;
+    }
+
+    private void markUsed(long address)
+    {
+        long block = address >>> OffHeapStorage.BLOCK_BITS;
+        if (block != this.lastUsedBlock) {
+            this.usedBlocks.add(block);
+            this.lastUsedBlock = block;
+        }
+    }
+
+    /**
+     * @param address Must be within a used block
+     * @return True if the word at the given address is 0
+     */
+    private boolean isZero(long address)
+    {
+        ByteBuffer segment = this.getSegment(address >>> this.segmentBits, false);
+        if (segment == null) {
+            return true;
+        }
+        int offset = this.offsetInSegment(address);
+        for (int b = 0; b < this.bytesPerWord; b++) {
+            if (segment.get(offset + b) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
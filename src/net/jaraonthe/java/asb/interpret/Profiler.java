@@ -0,0 +1,271 @@
+package net.jaraonthe.java.asb.interpret;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jaraonthe.java.asb.ast.command.Command;
+import net.jaraonthe.java.asb.ast.variable.VirtualRegister;
+
+/**
+ * Measures where time goes during interpretation. This records a call tree
+ * of command invocations (and virtual register accesses), with invocation
+ * counts as well as inclusive and exclusive time of each tree node.<br>
+ *
+ * Time is measured via {@link System#nanoTime()} when entering and leaving
+ * an invocation, so this has some overhead of its own. It is only used if
+ * profiling is enabled.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class Profiler
+{
+    /**
+     * A node in the call tree, i.e. one call stack.<br>
+     *
+     * A node can only be active once at any given time (recursive invocations
+     * create new child nodes), thus the data of the current activation is
+     * kept here as well.
+     */
+    public static class Node
+    {
+        /**
+         * The name of the invoked command or register accessor.
+         */
+        public final String name;
+
+        /**
+         * Null for the root node.
+         */
+        public final Node parent;
+
+        /**
+         * Key => child node. The key is the invoked command or the virtual
+         * register's implementation.
+         */
+        private final Map<Object, Node> children = new LinkedHashMap<>();
+
+        /**
+         * How often this has been invoked.
+         */
+        public long count = 0;
+
+        /**
+         * Total time spent in this node, incl. child nodes (in nanoseconds).
+         */
+        public long inclusive = 0;
+
+        /**
+         * Total time spent in this node, excl. child nodes (in nanoseconds).
+         */
+        public long exclusive = 0;
+
+        /**
+         * The start time of the current activation.
+         */
+        private long start;
+
+        /**
+         * The time spent in child nodes during the current activation.
+         */
+        private long childTime = 0;
+
+
+        /**
+         * @param name
+         * @param parent
+         */
+        private Node(String name, Node parent)
+        {
+            this.name   = name;
+            this.parent = parent;
+        }
+    }
+
+    /**
+     * Aggregated data of one (caller, callee) edge.
+     */
+    public static class Edge
+    {
+        public final String caller;
+        public final String callee;
+        public long count     = 0;
+        public long inclusive = 0;
+        public long exclusive = 0;
+
+        /**
+         * @param caller
+         * @param callee
+         */
+        private Edge(String caller, String callee)
+        {
+            this.caller = caller;
+            this.callee = callee;
+        }
+    }
+
+    /**
+     * Used as caller name for userland invocations.
+     */
+    public static final String USERLAND = "(userland)";
+
+    private final Node root = new Node(Profiler.USERLAND, null);
+
+    /**
+     * The currently active node.
+     */
+    private Node current = this.root;
+
+
+    /**
+     * Enters an invocation of the given command. Must be followed by {@link
+     * #exit()} once the invocation is done.
+     *
+     * @param command
+     */
+    public void enter(Command command)
+    {
+        Node node = this.current.children.get(command);
+        if (node == null) {
+            node = this.addChild(command, command.getReadableIdentity());
+        }
+        this.activate(node);
+    }
+
+    /**
+     * Enters an invocation of the given virtual register's getter. Must be
+     * followed by {@link #exit()} once the getter is done.
+     *
+     * @param register
+     */
+    public void enterGetter(VirtualRegister register)
+    {
+        Node node = this.current.children.get(register.getGetterImplementation());
+        if (node == null) {
+            node = this.addChild(register.getGetterImplementation(), register.name + " .get");
+        }
+        this.activate(node);
+    }
+
+    /**
+     * Enters an invocation of the given virtual register's setter. Must be
+     * followed by {@link #exit()} once the setter is done.
+     *
+     * @param register
+     */
+    public void enterSetter(VirtualRegister register)
+    {
+        Node node = this.current.children.get(register.getSetterImplementation());
+        if (node == null) {
+            node = this.addChild(register.getSetterImplementation(), register.name + " .set");
+        }
+        this.activate(node);
+    }
+
+    /**
+     * Leaves the most recently entered invocation.
+     */
+    public void exit()
+    {
+        Node node    = this.current;
+        long elapsed = System.nanoTime() - node.start;
+
+        node.count++;
+        node.inclusive += elapsed;
+        node.exclusive += elapsed - node.childTime;
+        node.childTime  = 0;
+
+        this.current = node.parent;
+        this.current.childTime += elapsed;
+    }
+
+    private Node addChild(Object key, String name)
+    {
+        Node node = new Node(name, this.current);
+        this.current.children.put(key, node);
+        return node;
+    }
+
+    private void activate(Node node)
+    {
+        this.current = node;
+        node.start   = System.nanoTime();
+    }
+
+
+    /**
+     * @return The total time spent in profiled invocations (in nanoseconds)
+     */
+    public long getTotalTime()
+    {
+        long total = 0;
+        for (Node node : this.root.children.values()) {
+            total += node.inclusive;
+        }
+        return total;
+    }
+
+    /**
+     * Aggregates the call tree into (caller, callee) edges.<br>
+     *
+     * Note that for recursive invocations inclusive time is counted once per
+     * recursion level.
+     *
+     * @return The edges, sorted by exclusive time (descending)
+     */
+    public List<Edge> getEdges()
+    {
+        Map<String, Edge> edges = new HashMap<>();
+        this.collectEdges(this.root, edges);
+
+        List<Edge> sorted = new ArrayList<>(edges.values());
+        sorted.sort((a, b) -> Long.compare(b.exclusive, a.exclusive));
+        return sorted;
+    }
+
+    private void collectEdges(Node parent, Map<String, Edge> edges)
+    {
+        for (Node node : parent.children.values()) {
+            String key = parent.name + "\n" + node.name;
+            Edge edge  = edges.get(key);
+            if (edge == null) {
+                edge = new Edge(parent.name, node.name);
+                edges.put(key, edge);
+            }
+            edge.count     += node.count;
+            edge.inclusive += node.inclusive;
+            edge.exclusive += node.exclusive;
+
+            this.collectEdges(node, edges);
+        }
+    }
+
+    /**
+     * Writes the call tree in collapsed stack format (as used by flame graph
+     * tools), i.e. one line per call stack: the frames separated by ";",
+     * followed by a space and the exclusive time in nanoseconds.
+     *
+     * @param writer
+     * @throws IOException
+     */
+    public void writeCollapsedStacks(Writer writer) throws IOException
+    {
+        for (Node node : this.root.children.values()) {
+            this.writeCollapsedStacks(node, node.name, writer);
+        }
+    }
+
+    private void writeCollapsedStacks(Node node, String stack, Writer writer) throws IOException
+    {
+        if (node.exclusive > 0) {
+            writer.write(stack + " " + node.exclusive + "\n");
+        }
+        for (Node child : node.children.values()) {
+            this.writeCollapsedStacks(child, stack + ";" + child.name, writer);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package net.jaraonthe.java.asb.interpret;
+
+import net.jaraonthe.java.asb.ast.AST;
+import net.jaraonthe.java.asb.exception.ConstraintException;
+
+/**
+ * A point during the execution of the user program, given either as an amount
+ * of executed steps or as a label (i.e. when the label is reached for the
+ * first time).
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class ProgramPoint
+{
+    /**
+     * The amount of steps. -1 if this point is given as a label.
+     */
+    public final long steps;
+    
+    /**
+     * The label name. Null if this point is given as an amount of steps.
+     */
+    public final String label;
+    
+    
+    /**
+     * @param steps
+     * @param label
+     */
+    private ProgramPoint(long steps, String label)
+    {
+        this.steps = steps;
+        this.label = label;
+    }
+    
+    /**
+     * @param text Either an amount of steps or a label name
+     * @return
+     * 
+     * @throws ConstraintException if text starts with a digit but is not a
+     *                             valid amount of steps
+     */
+    public static ProgramPoint fromString(String text) throws ConstraintException
+    {
+        if (!text.isEmpty() && Character.isDigit(text.charAt(0))) {
+            long steps;
+            try {
+                steps = Long.parseLong(text);
+            } catch (NumberFormatException e) {
+                steps = -1;
+            }
+            if (steps < 0) {
+                throw new ConstraintException(
+                    "Invalid value \"" + text + "\", expected an amount of steps or a label"
+                );
+            }
+            return new ProgramPoint(steps, null);
+        }
+        return new ProgramPoint(-1, text);
+    }
+    
+    /**
+     * @param ast
+     * @return The program position of the label. -1 if this point is given as
+     *         an amount of steps
+     * 
+     * @throws ConstraintException if the label doesn't exist
+     */
+    public int resolvePosition(AST ast) throws ConstraintException
+    {
+        if (this.label == null) {
+            return -1;
+        }
+        int position = ast.getLabel(this.label);
+        if (position == -1) {
+            throw new ConstraintException("Unknown label " + this.label);
+        }
+        return position;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return this.label != null ? this.label : this.steps + " steps";
+    }
+}
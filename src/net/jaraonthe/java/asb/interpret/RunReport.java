@@ -0,0 +1,292 @@
+package net.jaraonthe.java.asb.interpret;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import net.jaraonthe.java.asb.ASB;
+import net.jaraonthe.java.asb.Settings;
+import net.jaraonthe.java.asb.ast.AST;
+import net.jaraonthe.java.asb.ast.command.Command;
+import net.jaraonthe.java.asb.ast.variable.Register;
+import net.jaraonthe.java.asb.ast.variable.RegisterAlias;
+import net.jaraonthe.java.asb.exception.ConstraintException;
+import net.jaraonthe.java.asb.exception.LimitError;
+import net.jaraonthe.java.asb.exception.RuntimeError;
+import net.jaraonthe.java.asb.interpret.branch.BranchSimulator;
+import net.jaraonthe.java.asb.interpret.branch.BranchSite;
+import net.jaraonthe.java.asb.interpret.cache.Cache;
+import net.jaraonthe.java.asb.interpret.cache.CacheHierarchy;
+import net.jaraonthe.java.asb.interpret.value.NumericValue;
+
+/**
+ * Writes a machine-readable (JSON) report of an interpreter run, containing
+ * run metadata, statistics, register values, and memory contents.<br>
+ * 
+ * The report is written as a stream, so even huge memory contents are never
+ * kept in memory as a whole (apart from the sorted list of used addresses).
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class RunReport
+{
+    private final AST ast;
+    private final Settings settings;
+    private final Frame globalFrame;
+    
+    /**
+     * May be null.
+     */
+    private final Memory memory;
+    
+    private final Statistics statistics;
+    
+    /**
+     * May be null.
+     */
+    private final CacheHierarchy cache;
+    
+    /**
+     * May be null.
+     */
+    private final BranchSimulator branches;
+    
+    
+    /**
+     * @param ast
+     * @param settings
+     * @param globalFrame
+     * @param memory      May be null
+     * @param statistics
+     * @param cache       May be null
+     * @param branches    May be null
+     */
+    public RunReport(
+        AST ast,
+        Settings settings,
+        Frame globalFrame,
+        Memory memory,
+        Statistics statistics,
+        CacheHierarchy cache,
+        BranchSimulator branches
+    ) {
+        this.ast         = ast;
+        this.settings    = settings;
+        this.globalFrame = globalFrame;
+        this.memory      = memory;
+        this.statistics  = statistics;
+        this.cache       = cache;
+        this.branches    = branches;
+    }
+    
+    /**
+     * Writes the report to the given file.
+     * 
+     * @param filePath
+     * @param context
+     * @param startTime  The time the run has started at
+     * @param wallTimeNs The duration of the run (in nanoseconds)
+     * @param limitError The error that stopped the run. Null if the run
+     *                   completed normally
+     * 
+     * @throws RuntimeError if the file cannot be written
+     */
+    public void write(
+        String filePath,
+        Context context,
+        Instant startTime,
+        long wallTimeNs,
+        LimitError limitError
+    ) throws RuntimeError {
+        Path path = null;
+        try {
+            path = Path.of(filePath);
+            try (Writer writer = Files.newBufferedWriter(path)) {
+                JsonWriter json = new JsonWriter(writer);
+                json.beginObject();
+                this.writeRun(json, startTime, wallTimeNs, limitError);
+                this.writeCommands(json);
+                this.writeRegisters(json, context);
+                this.writeMemory(json);
+                this.writeCache(json);
+                this.writeBranches(json);
+                json.endObject();
+            }
+        } catch (IOException | InvalidPathException e) {
+            throw new RuntimeError(
+                "Cannot write report to " + (path == null ? filePath : path) + ": " + e.getMessage()
+            );
+        }
+    }
+    
+    private void writeRun(JsonWriter json, Instant startTime, long wallTimeNs, LimitError limitError) throws IOException
+    {
+        long steps = 0;
+        for (int count : this.statistics.getInvocationsCount().values()) {
+            steps += count;
+        }
+        
+        json.name("run").beginObject();
+        json.name("version").value(ASB.VERSION);
+        json.name("files").beginArray();
+        for (String filePath : this.settings.getFilePaths()) {
+            json.value(filePath);
+        }
+        json.endArray();
+        json.name("started").value(startTime.toString());
+        json.name("status").value(limitError == null ? "completed" : "limit_exceeded");
+        if (limitError != null) {
+            json.name("message").value(limitError.getMessage());
+        }
+        json.name("wallTimeMs").value(wallTimeNs / 1_000_000.0);
+        json.name("steps").value(steps);
+        json.name("stepsPerSecond").value(wallTimeNs == 0 ? 0.0 : steps * 1_000_000_000.0 / wallTimeNs);
+        json.endObject();
+    }
+    
+    private void writeCommands(JsonWriter json) throws IOException
+    {
+        Map<String, Integer> invocationsCount = this.statistics.getInvocationsCount();
+        String[] identities = invocationsCount.keySet().toArray(new String[invocationsCount.size()]);
+        Arrays.sort(identities);
+        
+        json.name("commands").beginArray();
+        for (String identity : identities) {
+            Command command = this.ast.getCommand(identity);
+            json.beginObject();
+            json.name("command").value(command.getReadableIdentity());
+            json.name("executed").value(invocationsCount.get(identity));
+            json.name("cycles").value((long) command.getCost() * invocationsCount.get(identity));
+            json.endObject();
+        }
+        json.endArray();
+    }
+    
+    private void writeRegisters(JsonWriter json, Context context) throws IOException
+    {
+        List<Register> registers = new ArrayList<>();
+        for (Register register : this.ast.getRegisters()) {
+            if (!(register instanceof RegisterAlias)) {
+                registers.add(register);
+            }
+        }
+        registers.sort((a, b) -> a.name.compareTo(b.name));
+        
+        json.name("registers").beginArray();
+        for (Register register : registers) {
+            BigInteger content;
+            try {
+                NumericValue value = this.globalFrame.getNumericValue(register.name);
+                content = value.read(context);
+            } catch (ConstraintException | RuntimeError e) {
+                // Virtual registers may fail to be read - the report is
+                // written anyway
+                content = null;
+            }
+            json.beginObject();
+            json.name("name").value(register.name);
+            json.name("length").value(register.getLength());
+            json.name("value").value(content == null ? null : "0x" + content.toString(16));
+            json.endObject();
+        }
+        json.endArray();
+    }
+    
+    private void writeMemory(JsonWriter json) throws IOException
+    {
+        json.name("memory");
+        if (this.memory == null) {
+            json.value((String) null);
+            return;
+        }
+        
+        List<BigInteger> addresses = new ArrayList<>(this.memory.getAddressesInUse());
+        addresses.sort(null);
+        
+        json.beginObject();
+        json.name("wordLength").value(this.memory.wordLength);
+        json.name("addressLength").value(this.memory.addressLength);
+        
+        // Consecutive non-zero words are grouped into ranges
+        json.name("ranges").beginArray();
+        BigInteger next = null; // The address that would continue the current range
+        for (BigInteger address : addresses) {
+            BigInteger word = this.memory.peek(address);
+            if (word.signum() == 0) {
+                continue;
+            }
+            if (!address.equals(next)) {
+                if (next != null) {
+                    json.endArray().endObject();
+                }
+                json.beginObject();
+                json.name("start").value("0x" + address.toString(16));
+                json.name("words").beginArray();
+            }
+            json.value("0x" + word.toString(16));
+            next = address.add(BigInteger.ONE);
+        }
+        if (next != null) {
+            json.endArray().endObject();
+        }
+        json.endArray();
+        json.endObject();
+    }
+    
+    private void writeCache(JsonWriter json) throws IOException
+    {
+        if (this.cache == null) {
+            return;
+        }
+        
+        json.name("cache").beginArray();
+        for (Cache level : this.cache.getLevels()) {
+            json.beginObject();
+            json.name("level").value(level.config.getName());
+            json.name("size").value(level.config.size);
+            json.name("lineSize").value(level.config.lineSize);
+            json.name("ways").value(level.config.ways);
+            json.name("policy").value(level.config.policy.name().toLowerCase(Locale.ROOT));
+            json.name("accesses").value(level.getAccesses());
+            json.name("hits").value(level.getHits());
+            json.name("misses").value(level.getMisses());
+            json.name("evictions").value(level.getEvictions());
+            json.name("writeBacks").value(level.getWriteBacks());
+            json.endObject();
+        }
+        json.endArray();
+    }
+    
+    private void writeBranches(JsonWriter json) throws IOException
+    {
+        if (this.branches == null) {
+            return;
+        }
+        
+        json.name("branchPrediction").beginObject();
+        json.name("predictor").value(this.branches.getPredictor().getDescription());
+        json.name("btbEntries").value(this.branches.getBtb() == null ? 0 : this.branches.getBtb().size());
+        json.name("sites").beginArray();
+        for (BranchSite site : this.branches.getExecutedSites()) {
+            json.beginObject();
+            json.name("pc").value(site.position);
+            json.name("source").value(site.invocation.getOrigin().getContent());
+            json.name("executed").value(site.getExecutions());
+            json.name("taken").value(site.getTaken());
+            json.name("mispredicted").value(site.getMispredictions());
+            json.name("targetMisses").value(site.getTargetMisses());
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+    }
+}
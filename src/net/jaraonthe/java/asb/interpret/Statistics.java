@@ -2,13 +2,18 @@ package net.jaraonthe.java.asb.interpret;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import net.jaraonthe.java.asb.ast.invocation.CommandInvocation;
 import net.jaraonthe.java.asb.ast.invocation.Invocation;
 
 /**
- * Gathers statistics during the interpretation phase.
+ * Gathers statistics during the interpretation phase.<br>
+ * 
+ * Invocations are counted either one at a time, or (if a basic block is
+ * executed as a unit) by counting executions of the whole block. The
+ * invocation counts of the blocks are only added up when they are requested.
  *
  * @author Jakob Rathbauer <jakob@jaraonthe.net>
  */
@@ -21,24 +26,84 @@ public class Statistics
      */
     private final Map<String, Integer> invocationsCount = new HashMap<>();
     
+    /**
+     * The userland program.
+     */
+    private final List<Invocation> program;
+    
+    /**
+     * The basic blocks of the userland program.
+     */
+    private final List<BasicBlock> blocks;
+    
+    /**
+     * How often each basic block has been executed as a unit.<br>
+     * 
+     * block index => count for this block
+     */
+    private final long[] blockCounts;
+    
+    
+    /**
+     * @param program The userland program
+     * @param blocks  The basic blocks of program
+     */
+    public Statistics(List<Invocation> program, List<BasicBlock> blocks)
+    {
+        this.program     = program;
+        this.blocks      = blocks;
+        this.blockCounts = new long[blocks.size()];
+    }
+    
     /**
      * Increments the command invocation counter. This should be called every
      * time a userland invocation is executed.
      * 
      * @param invocation
+     * @return How often the invoked command has been invoked now (0 if
+     *         invocation doesn't invoke a command)
      */
-    public void incrementInvocationsCount(Invocation invocation)
+    public int incrementInvocationsCount(Invocation invocation)
     {
         if (!(invocation instanceof CommandInvocation)) {
-            return;
+            return 0;
         }
         CommandInvocation ci = (CommandInvocation) invocation;
         String commandIdentity = ci.getInvokedCommand().getIdentity();
         
-        this.invocationsCount.put(
-            commandIdentity,
-            this.invocationsCount.getOrDefault(commandIdentity, 0) + 1
-        );
+        int count = this.invocationsCount.getOrDefault(commandIdentity, 0) + 1;
+        this.invocationsCount.put(commandIdentity, count);
+        return count;
+    }
+    
+    /**
+     * Increments the execution counter of the given block. This should be
+     * called every time the block is executed as a unit, instead of
+     * incrementing the invocation counter for each of its invocations.
+     * 
+     * @param block
+     * @return How often the block has been executed as a unit now
+     */
+    public long incrementBlockCount(BasicBlock block)
+    {
+        return ++this.blockCounts[block.index];
+    }
+    
+    /**
+     * @param block
+     * @return How often the given block has been executed as a unit
+     */
+    public long getBlockCount(BasicBlock block)
+    {
+        return this.blockCounts[block.index];
+    }
+    
+    /**
+     * @return The basic blocks of the userland program
+     */
+    public List<BasicBlock> getBlocks()
+    {
+        return Collections.unmodifiableList(this.blocks);
     }
     
     /**
@@ -49,6 +114,22 @@ public class Statistics
      */
     public Map<String, Integer> getInvocationsCount()
     {
-        return Collections.unmodifiableMap(this.invocationsCount);
+        Map<String, Integer> invocationsCount = new HashMap<>(this.invocationsCount);
+        for (BasicBlock block : this.blocks) {
+            long count = this.blockCounts[block.index];
+            if (count == 0) {
+                continue;
+            }
+            for (int position = block.start; position < block.end; position++) {
+                if (this.program.get(position) instanceof CommandInvocation) {
+                    invocationsCount.merge(
+                        ((CommandInvocation) this.program.get(position)).getInvokedCommand().getIdentity(),
+                        (int) count,
+                        Integer::sum
+                    );
+                }
+            }
+        }
+        return Collections.unmodifiableMap(invocationsCount);
     }
 }
@@ -0,0 +1,217 @@
+package net.jaraonthe.java.asb.interpret;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import net.jaraonthe.java.asb.Print;
+import net.jaraonthe.java.asb.Settings;
+import net.jaraonthe.java.asb.ast.invocation.CommandInvocation;
+import net.jaraonthe.java.asb.ast.invocation.Invocation;
+import net.jaraonthe.java.asb.exception.LimitError;
+import net.jaraonthe.java.asb.exception.RuntimeError;
+import net.jaraonthe.java.asb.interpret.branch.BranchSimulator;
+import net.jaraonthe.java.asb.optimize.jit.CompiledImplementation;
+
+/**
+ * Executes single invocations of the userland program, and counts them in
+ * the statistics.<br>
+ *
+ * Every way of executing the user program (step by step in the
+ * {@link Interpreter}, block by block in the {@link BlockExecutor}, or via
+ * the {@link TraceExecutor}) runs each invocation through
+ * {@link #startStep(Context)} and {@link #step(int, Invocation, Context,
+ * boolean)}. Thus everything that has to happen around each invocation
+ * (budget, trace output, branch prediction simulation) is done in this one
+ * place.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+class StepExecutor
+{
+    private static final Pattern PRINT_STRING_PATTERN = Pattern.compile(" \"([^\"]|\\\")*\"");
+
+    private final Settings settings;
+
+    private final List<Invocation> program;
+
+    private final Frame globalFrame;
+
+    private final Statistics statistics;
+
+    /**
+     * Simulates branch prediction. Null if branch prediction is not simulated.
+     */
+    private final BranchSimulator branches;
+
+    /**
+     * True: Every invocation is printed before it is executed.
+     */
+    private final boolean trace;
+
+    /**
+     * How many chars to reserve for the pc value in the trace output.
+     */
+    private final int programAddressLength;
+
+
+    /**
+     * @param settings
+     * @param program     The userland program
+     * @param globalFrame
+     * @param statistics
+     * @param branches    May be null
+     */
+    StepExecutor(
+        Settings settings,
+        List<Invocation> program,
+        Frame globalFrame,
+        Statistics statistics,
+        BranchSimulator branches
+    ) {
+        this.settings    = settings;
+        this.program     = program;
+        this.globalFrame = globalFrame;
+        this.statistics  = statistics;
+        this.branches    = branches;
+        this.trace       = settings.devMode() || settings.trace();
+
+        this.programAddressLength = Math.max( // length in hex
+            (int) Math.ceil(
+                Math.log(program.size()) / Math.log(16)
+            ),
+            1
+        );
+    }
+
+    /**
+     * Starts a step, i.e. checks whether another step may be executed. This
+     * must be called before each {@link #step(int, Invocation, Context,
+     * boolean) step()}; a step which cannot be started is not counted in the
+     * statistics.
+     *
+     * @param context
+     * @throws LimitError if the budget is exhausted
+     */
+    void startStep(Context context) throws LimitError
+    {
+        if (context.budget != null) {
+            context.budget.step();
+        }
+    }
+
+    /**
+     * Executes the given invocation. Afterwards the program counter points to
+     * where execution continues.
+     *
+     * @param position   The program position of the invocation
+     * @param invocation
+     * @param context
+     * @param count      True: Count the invocation in the statistics. False if
+     *                   the caller counts it (e.g. as part of a block)
+     *
+     * @return The program counter after execution
+     * @throws RuntimeError
+     *
+     * @see #startStep(Context)
+     */
+    int step(int position, Invocation invocation, Context context, boolean count) throws RuntimeError
+    {
+        // Incrementing pc before execution so that jumps can modify pc
+        // without extra complexity
+        this.globalFrame.programCounter = position + 1;
+
+        if (this.trace) {
+            this.printTrace(invocation, position);
+        }
+        if (count) {
+            this.countInvocation(invocation);
+        }
+
+        try {
+            // This may modify the program Counter
+            invocation.interpret(context);
+        } catch (StackOverflowError e) {
+            throw new RuntimeError(
+                "Infinite recursion triggered by "
+                + (this.settings.devMode() ? invocation : invocation.getOrigin().getContent())
+                + " at " + invocation.getOrigin()
+            );
+        }
+
+        if (this.branches != null) {
+            this.branches.record(position, this.globalFrame.programCounter);
+        }
+        return this.globalFrame.programCounter;
+    }
+
+    /**
+     * Counts a userland invocation in the statistics, and compiles the
+     * invoked command once it has become hot.
+     *
+     * @param invocation
+     */
+    void countInvocation(Invocation invocation)
+    {
+        if (
+            this.statistics.incrementInvocationsCount(invocation) == CompiledImplementation.COMPILE_THRESHOLD
+            && this.settings.jit()
+        ) {
+            CompiledImplementation.enable(((CommandInvocation) invocation).getInvokedCommand());
+        }
+    }
+
+    /**
+     * Counts an execution of the given block in the statistics, and compiles
+     * the commands it invokes once it has become hot.
+     *
+     * @param block
+     */
+    void countBlock(BasicBlock block)
+    {
+        if (
+            this.statistics.incrementBlockCount(block) != CompiledImplementation.COMPILE_THRESHOLD
+            || !this.settings.jit()
+        ) {
+            return;
+        }
+        for (int position = block.start; position < block.end; position++) {
+            if (this.program.get(position) instanceof CommandInvocation) {
+                CompiledImplementation.enable(((CommandInvocation) this.program.get(position)).getInvokedCommand());
+            }
+        }
+    }
+
+    /**
+     * Prints the given invocation as part of the trace.
+     *
+     * @param invocation
+     * @param position
+     */
+    private void printTrace(Invocation invocation, int position)
+    {
+        if (this.settings.printOccurred) {
+            System.out.println();
+            this.settings.printOccurred = false;
+        }
+
+        String text;
+        if (this.settings.devMode()) {
+            text = invocation.toString(); // incl. technical details
+        } else {
+            text = invocation.getOrigin().getContent(); // as written in ASB source code
+            // Remove &print & &println string arguments, as they are
+            // redundant information (they are printed on the next line)
+            text = StepExecutor.PRINT_STRING_PATTERN.matcher(text).replaceFirst(":");
+        }
+
+        Print.printlnWithColor(
+            String.format(
+                "    %" + this.programAddressLength + "x: %s",
+                position,
+                text
+            ),
+            Print.Color.YELLOW,
+            this.settings
+        );
+    }
+}
@@ -0,0 +1,81 @@
+package net.jaraonthe.java.asb.interpret;
+
+import net.jaraonthe.java.asb.ast.invocation.Invocation;
+import net.jaraonthe.java.asb.exception.RuntimeError;
+
+/**
+ * Executes loop iterations via a {@link LoopTrace}, until a guard fails (i.e.
+ * execution continues at a position other than during recording). The
+ * program counter then points to where execution has to continue.<br>
+ *
+ * Each whole iteration counts each of the trace's blocks once in the
+ * statistics; the invocations of the last (incomplete) iteration are counted
+ * on their own.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+class TraceExecutor
+{
+    private final StepExecutor executor;
+
+
+    /**
+     * @param executor Executes the single invocations
+     */
+    TraceExecutor(StepExecutor executor)
+    {
+        this.executor = executor;
+    }
+
+    /**
+     * @param trace
+     * @param context
+     *
+     * @throws RuntimeError
+     */
+    void execute(LoopTrace trace, Context context) throws RuntimeError
+    {
+        trace.entries++;
+        Invocation[] invocations = trace.invocations;
+        int[] positions          = trace.positions;
+        int[] next               = trace.next;
+        while (true) {
+            int executed  = 0;
+            boolean exits = false;
+            try {
+                while (executed < invocations.length) {
+                    this.executor.startStep(context);
+                    executed++;
+                    int programCounter = this.executor.step(
+                        positions[executed - 1],
+                        invocations[executed - 1],
+                        context,
+                        false
+                    );
+                    if (programCounter != next[executed - 1]) {
+                        exits = true;
+                        break;
+                    }
+                }
+            } finally {
+                // Counting what has been executed, even if an error occurred
+                trace.steps += executed;
+                if (executed == invocations.length) {
+                    trace.iterations++;
+                    for (BasicBlock block : trace.blocks) {
+                        this.executor.countBlock(block);
+                    }
+                } else {
+                    for (int i = 0; i < executed; i++) {
+                        this.executor.countInvocation(invocations[i]);
+                    }
+                }
+            }
+
+            if (exits) {
+                trace.exits++;
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package net.jaraonthe.java.asb.interpret.branch;
+
+import net.jaraonthe.java.asb.exception.ConstraintException;
+
+/**
+ * Predicts whether a branch is taken.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public abstract class BranchPredictor
+{
+    /**
+     * The default amount of index bits for predictors with a counter table.
+     */
+    private static final int DEFAULT_TABLE_BITS = 10;
+    
+    /**
+     * The maximum amount of index bits for predictors with a counter table.
+     */
+    private static final int MAX_TABLE_BITS = 24;
+    
+    
+    /**
+     * Creates a branch predictor from a specification like {@code static},
+     * {@code 2bit:12}, or {@code gshare:12:8}, i.e. the predictor type
+     * followed by the amount of table index bits (defaults to 10) and for
+     * gshare the amount of global history bits (defaults to the amount of
+     * table index bits).
+     * 
+     * @param specification
+     * @return
+     * 
+     * @throws ConstraintException if the specification is invalid
+     */
+    public static BranchPredictor fromString(String specification) throws ConstraintException
+    {
+        String[] parts = specification.split(":");
+        try {
+            switch (parts[0]) {
+                case "static":
+                    if (parts.length == 1) {
+                        return new StaticPredictor();
+                    }
+                    break;
+                
+                case "2bit":
+                    if (parts.length <= 2) {
+                        return new TwoBitPredictor(
+                            BranchPredictor.parseBits(parts, 1, BranchPredictor.DEFAULT_TABLE_BITS)
+                        );
+                    }
+                    break;
+                
+                case "gshare":
+                    if (parts.length <= 3) {
+                        int tableBits = BranchPredictor.parseBits(parts, 1, BranchPredictor.DEFAULT_TABLE_BITS);
+                        return new GsharePredictor(
+                            tableBits,
+                            BranchPredictor.parseBits(parts, 2, tableBits)
+                        );
+                    }
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            // Handled below
+        }
+        throw new ConstraintException(
+            "Invalid branch predictor \"" + specification
+            + "\", expected static, 2bit[:<bits>], or gshare[:<bits>[:<history bits>]]"
+        );
+    }
+    
+    /**
+     * @param parts
+     * @param index        The index of the part to parse
+     * @param defaultValue Used if there is no such part
+     * 
+     * @return
+     * 
+     * @throws NumberFormatException if the part is not a valid amount of bits
+     */
+    private static int parseBits(String[] parts, int index, int defaultValue)
+    {
+        if (parts.length <= index) {
+            return defaultValue;
+        }
+        int bits = Integer.parseInt(parts[index]);
+        if (bits < 1 || bits > BranchPredictor.MAX_TABLE_BITS) {
+            throw new NumberFormatException();
+        }
+        return bits;
+    }
+    
+    
+    /**
+     * @param site
+     * @return True if the branch is predicted to be taken
+     */
+    public abstract boolean predict(BranchSite site);
+    
+    /**
+     * Informs this predictor about the actual outcome of a branch. This is
+     * called after {@link #predict()} for the same branch.
+     * 
+     * @param site
+     * @param taken True if the branch has actually been taken
+     */
+    public abstract void update(BranchSite site, boolean taken);
+    
+    /**
+     * @return A human-readable description of this predictor
+     */
+    public abstract String getDescription();
+}
@@ -0,0 +1,225 @@
+package net.jaraonthe.java.asb.interpret.branch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jaraonthe.java.asb.ast.AST;
+import net.jaraonthe.java.asb.ast.command.Command;
+import net.jaraonthe.java.asb.ast.command.Implementation;
+import net.jaraonthe.java.asb.ast.invocation.Argument;
+import net.jaraonthe.java.asb.ast.invocation.CommandInvocation;
+import net.jaraonthe.java.asb.ast.invocation.Invocation;
+import net.jaraonthe.java.asb.ast.invocation.LabelArgument;
+import net.jaraonthe.java.asb.built_in.Jump;
+import net.jaraonthe.java.asb.built_in.Jumpif;
+import net.jaraonthe.java.asb.built_in.NativeOverride;
+import net.jaraonthe.java.asb.built_in.ProgramCounter;
+import net.jaraonthe.java.asb.interpret.Interpretable;
+
+/**
+ * Simulates branch prediction for the userland program.<br>
+ * 
+ * A branch is any userland invocation that may change the program counter,
+ * i.e. {@code &jump} and {@code &jumpif} used directly in the user program, as
+ * well as {@code &set_pc} and all commands that (directly or indirectly)
+ * invoke {@code &set_pc}. These are determined before interpretation. A branch
+ * is taken if it continues anywhere other than at the next program position.<br>
+ * 
+ * Jumps within command implementations are not branches of the userland
+ * program and are therefore not taken into account.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class BranchSimulator
+{
+    /**
+     * Program position => branch site. Null for all positions that don't
+     * contain a branch.
+     */
+    private final BranchSite[] sites;
+    
+    private final BranchPredictor predictor;
+    
+    /**
+     * May be null (the branch target is assumed to be always known).
+     */
+    private final BranchTargetBuffer btb;
+    
+    
+    /**
+     * @param ast       Containing the userland program
+     * @param predictor
+     * @param btb       May be null
+     */
+    public BranchSimulator(AST ast, BranchPredictor predictor, BranchTargetBuffer btb)
+    {
+        this.predictor = predictor;
+        this.btb       = btb;
+        
+        List<Invocation> program = ast.getProgram();
+        this.sites = new BranchSite[program.size()];
+        Map<Command, Boolean> setsProgramCounter = new HashMap<>();
+        for (int position = 0; position < program.size(); position++) {
+            if (!(program.get(position) instanceof CommandInvocation)) {
+                continue;
+            }
+            CommandInvocation invocation = (CommandInvocation) program.get(position);
+            if (BranchSimulator.isBranch(invocation, setsProgramCounter)) {
+                this.sites[position] = new BranchSite(
+                    position,
+                    invocation,
+                    BranchSimulator.getStaticTarget(invocation),
+                    invocation.getInvokedCommand().getInterpretable() instanceof Jump
+                );
+            }
+        }
+    }
+    
+    /**
+     * @param invocation A userland invocation
+     * @param known      Command => whether it may set the userland program
+     *                   counter, for all commands that have already been
+     *                   examined. This is filled in as needed
+     * 
+     * @return True if the given invocation is a branch (i.e. it may change
+     *         the program counter)
+     */
+    public static boolean isBranch(CommandInvocation invocation, Map<Command, Boolean> known)
+    {
+        Interpretable interpretable = invocation.getInvokedCommand().getInterpretable();
+        return interpretable instanceof Jump
+            || interpretable instanceof Jumpif
+            || BranchSimulator.setsProgramCounter(invocation.getInvokedCommand(), known);
+    }
+    
+    /**
+     * @param command
+     * @param known   Command => result for all commands that have already been
+     *                examined
+     * 
+     * @return True if the given command may set the userland program counter
+     */
+    private static boolean setsProgramCounter(Command command, Map<Command, Boolean> known)
+    {
+        Boolean result = known.get(command);
+        if (result != null) {
+            return result;
+        }
+        // Guarding against recursive commands
+        known.put(command, false);
+        
+        result = false;
+        Interpretable interpretable = command.getInterpretable();
+        if (interpretable instanceof NativeOverride) {
+            // The native override has the same effects as the implementation
+            interpretable = ((NativeOverride) interpretable).implementation;
+        }
+        if (interpretable instanceof ProgramCounter) {
+            result = ((ProgramCounter) interpretable).setsProgramCounter();
+        } else if (interpretable instanceof Implementation) {
+            for (Invocation invocation : (Implementation) interpretable) {
+                if (
+                    invocation instanceof CommandInvocation
+                    && BranchSimulator.setsProgramCounter(
+                        ((CommandInvocation) invocation).getInvokedCommand(),
+                        known
+                    )
+                ) {
+                    result = true;
+                    break;
+                }
+            }
+        }
+        
+        known.put(command, result);
+        return result;
+    }
+    
+    /**
+     * @param invocation
+     * @return The position of the first label given as argument, or -1 if
+     *         there is none
+     */
+    private static int getStaticTarget(CommandInvocation invocation)
+    {
+        for (Argument argument : invocation.getArguments()) {
+            if (argument instanceof LabelArgument && ((LabelArgument) argument).hasLabelPosition()) {
+                return ((LabelArgument) argument).getLabelPosition();
+            }
+        }
+        return -1;
+    }
+    
+    
+    /**
+     * Records the execution of a userland invocation. This is to be called
+     * after every userland invocation (it returns immediately for invocations
+     * that aren't branches).
+     * 
+     * @param position     The program position of the executed invocation
+     * @param nextPosition The program position at which execution continues
+     */
+    public void record(int position, int nextPosition)
+    {
+        BranchSite site = this.sites[position];
+        if (site == null) {
+            return;
+        }
+        
+        boolean taken          = nextPosition != position + 1;
+        boolean predictedTaken = this.predictor.predict(site);
+        boolean mispredicted   = predictedTaken != taken;
+        
+        site.executions++;
+        if (taken) {
+            site.taken++;
+            if (this.btb != null) {
+                if (this.btb.lookup(position) != nextPosition) {
+                    site.targetMisses++;
+                    // Without the correct target a taken prediction is of no use
+                    mispredicted = true;
+                }
+                this.btb.update(position, nextPosition);
+            }
+        }
+        if (mispredicted) {
+            site.mispredictions++;
+        }
+        
+        this.predictor.update(site, taken);
+    }
+    
+    /**
+     * @return All branch sites that have been executed at least once, sorted
+     *         by mispredictions (descending)
+     */
+    public List<BranchSite> getExecutedSites()
+    {
+        List<BranchSite> executed = new ArrayList<>();
+        for (BranchSite site : this.sites) {
+            if (site != null && site.executions > 0) {
+                executed.add(site);
+            }
+        }
+        executed.sort((a, b) -> {
+            int result = Long.compare(b.mispredictions, a.mispredictions);
+            return result != 0 ? result : Integer.compare(a.position, b.position);
+        });
+        return executed;
+    }
+    
+    public BranchPredictor getPredictor()
+    {
+        return this.predictor;
+    }
+    
+    /**
+     * @return May be null
+     */
+    public BranchTargetBuffer getBtb()
+    {
+        return this.btb;
+    }
+}
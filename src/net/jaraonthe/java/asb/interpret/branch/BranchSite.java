@@ -0,0 +1,85 @@
+package net.jaraonthe.java.asb.interpret.branch;
+
+import net.jaraonthe.java.asb.ast.invocation.Invocation;
+
+/**
+ * A userland invocation that may change the program counter, i.e. a branch,
+ * along with the prediction results of this branch.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class BranchSite
+{
+    /**
+     * The program position of this branch.
+     */
+    public final int position;
+    
+    public final Invocation invocation;
+    
+    /**
+     * The branch target as far as it is known statically (i.e. the position of
+     * the label given as argument). -1 if unknown.
+     */
+    public final int staticTarget;
+    
+    /**
+     * True if this branch is always taken (i.e. {@code &jump}).
+     */
+    public final boolean unconditional;
+    
+    /* Statistics */
+    long executions     = 0;
+    long taken          = 0;
+    long mispredictions = 0;
+    long targetMisses   = 0;
+    
+    
+    /**
+     * @param position      The program position of this branch
+     * @param invocation
+     * @param staticTarget  -1 if unknown
+     * @param unconditional True if this branch is always taken
+     */
+    BranchSite(int position, Invocation invocation, int staticTarget, boolean unconditional)
+    {
+        this.position      = position;
+        this.invocation    = invocation;
+        this.staticTarget  = staticTarget;
+        this.unconditional = unconditional;
+    }
+    
+    /**
+     * @return How often this branch has been executed
+     */
+    public long getExecutions()
+    {
+        return this.executions;
+    }
+    
+    /**
+     * @return How often this branch has been taken
+     */
+    public long getTaken()
+    {
+        return this.taken;
+    }
+    
+    /**
+     * @return How often this branch has been mispredicted (incl. taken
+     *         branches with a wrong target prediction)
+     */
+    public long getMispredictions()
+    {
+        return this.mispredictions;
+    }
+    
+    /**
+     * @return How often the branch target buffer didn't provide the correct
+     *         target for this branch when it was taken
+     */
+    public long getTargetMisses()
+    {
+        return this.targetMisses;
+    }
+}
@@ -0,0 +1,74 @@
+package net.jaraonthe.java.asb.interpret.branch;
+
+import java.util.Arrays;
+
+import net.jaraonthe.java.asb.exception.ConstraintException;
+
+/**
+ * A direct-mapped branch target buffer, i.e. a cache of the most recent target
+ * of taken branches.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class BranchTargetBuffer
+{
+    /**
+     * The program position of the branch each entry belongs to. -1 for empty
+     * entries.
+     */
+    private final int[] positions;
+    
+    private final int[] targets;
+    
+    private final int mask;
+    
+    
+    /**
+     * @param entries Must be a power of 2
+     * @throws ConstraintException if entries is not a power of 2
+     */
+    public BranchTargetBuffer(int entries) throws ConstraintException
+    {
+        if (entries <= 0 || Integer.bitCount(entries) != 1) {
+            throw new ConstraintException("Branch target buffer size must be a power of 2, is " + entries);
+        }
+        this.positions = new int[entries];
+        this.targets   = new int[entries];
+        this.mask      = entries - 1;
+        Arrays.fill(this.positions, -1);
+    }
+    
+    /**
+     * @param position The program position of a branch
+     * @return The predicted target of the branch, or -1 if there is none
+     */
+    public int lookup(int position)
+    {
+        int index = position & this.mask;
+        if (this.positions[index] != position) {
+            return -1;
+        }
+        return this.targets[index];
+    }
+    
+    /**
+     * Stores the target of a taken branch.
+     * 
+     * @param position The program position of the branch
+     * @param target
+     */
+    public void update(int position, int target)
+    {
+        int index = position & this.mask;
+        this.positions[index] = position;
+        this.targets[index]   = target;
+    }
+    
+    /**
+     * @return The amount of entries
+     */
+    public int size()
+    {
+        return this.positions.length;
+    }
+}
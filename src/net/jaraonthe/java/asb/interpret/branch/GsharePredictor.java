@@ -0,0 +1,51 @@
+package net.jaraonthe.java.asb.interpret.branch;
+
+/**
+ * Predicts via a table of 2-bit saturating counters, indexed by the branch's
+ * program position XORed with the global history of recent branch outcomes.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class GsharePredictor extends TwoBitPredictor
+{
+    private final int historyBits;
+    
+    private final int historyMask;
+    
+    /**
+     * The outcomes of the most recent branches, the latest one in the least
+     * significant bit (1 = taken).
+     */
+    private int history = 0;
+    
+    
+    /**
+     * @param tableBits   The amount of table index bits
+     * @param historyBits The amount of global history bits
+     */
+    public GsharePredictor(int tableBits, int historyBits)
+    {
+        super(tableBits);
+        this.historyBits = historyBits;
+        this.historyMask = (1 << historyBits) - 1;
+    }
+    
+    @Override
+    protected int index(BranchSite site)
+    {
+        return (site.position ^ this.history) & this.mask;
+    }
+    
+    @Override
+    public void update(BranchSite site, boolean taken)
+    {
+        super.update(site, taken);
+        this.history = ((this.history << 1) | (taken ? 1 : 0)) & this.historyMask;
+    }
+    
+    @Override
+    public String getDescription()
+    {
+        return "gshare (" + this.counters.length + " entries, " + this.historyBits + " history bits)";
+    }
+}
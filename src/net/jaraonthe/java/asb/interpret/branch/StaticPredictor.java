@@ -0,0 +1,30 @@
+package net.jaraonthe.java.asb.interpret.branch;
+
+/**
+ * Predicts backward branches as taken and forward branches as not taken
+ * (BTFN), based on the label that the branch uses. Branches without a known
+ * target are predicted as not taken, unconditional jumps as taken.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class StaticPredictor extends BranchPredictor
+{
+    @Override
+    public boolean predict(BranchSite site)
+    {
+        return site.unconditional
+            || (site.staticTarget != -1 && site.staticTarget <= site.position);
+    }
+    
+    @Override
+    public void update(BranchSite site, boolean taken)
+    {
+        // Nothing to learn
+    }
+    
+    @Override
+    public String getDescription()
+    {
+        return "static (backward taken, forward not taken)";
+    }
+}
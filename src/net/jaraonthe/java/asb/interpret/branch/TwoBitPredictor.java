@@ -0,0 +1,65 @@
+package net.jaraonthe.java.asb.interpret.branch;
+
+import java.util.Arrays;
+
+/**
+ * Predicts via a table of 2-bit saturating counters, indexed by the branch's
+ * program position.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class TwoBitPredictor extends BranchPredictor
+{
+    /**
+     * Counter values 0 and 1 predict not taken, 2 and 3 predict taken.
+     */
+    protected final byte[] counters;
+    
+    protected final int mask;
+    
+    
+    /**
+     * @param tableBits The amount of table index bits
+     */
+    public TwoBitPredictor(int tableBits)
+    {
+        this.counters = new byte[1 << tableBits];
+        this.mask     = this.counters.length - 1;
+        // Start out as "weakly not taken"
+        Arrays.fill(this.counters, (byte) 1);
+    }
+    
+    /**
+     * @param site
+     * @return The index of the counter used for the given branch
+     */
+    protected int index(BranchSite site)
+    {
+        return site.position & this.mask;
+    }
+    
+    @Override
+    public boolean predict(BranchSite site)
+    {
+        return this.counters[this.index(site)] >= 2;
+    }
+    
+    @Override
+    public void update(BranchSite site, boolean taken)
+    {
+        int index = this.index(site);
+        if (taken) {
+            if (this.counters[index] < 3) {
+                this.counters[index]++;
+            }
+        } else if (this.counters[index] > 0) {
+            this.counters[index]--;
+        }
+    }
+    
+    @Override
+    public String getDescription()
+    {
+        return "2-bit saturating counters (" + this.counters.length + " entries)";
+    }
+}
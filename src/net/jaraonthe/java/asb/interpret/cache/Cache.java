@@ -0,0 +1,186 @@
+package net.jaraonthe.java.asb.interpret.cache;
+
+/**
+ * One simulated set-associative cache level. This only tracks which memory
+ * lines are cached (the actual data is still kept in the memory), so that
+ * hits, misses, and evictions can be counted.<br>
+ * 
+ * Writes use write-back and write-allocate, i.e. a written line is loaded into
+ * the cache and marked dirty; evicting a dirty line counts as a write-back.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class Cache
+{
+    public final CacheConfig config;
+    
+    /**
+     * The amount of address bits used for the offset within a line.
+     */
+    private final int offsetBits;
+    
+    /**
+     * The amount of address bits used for the set index.
+     */
+    private final int setBits;
+    
+    private final int setMask;
+    
+    /*
+     * The lines of all sets, stored one set after the other, i.e. line i of
+     * set s is stored at index s * ways + i.
+     */
+    private final long[] tags;
+    private final boolean[] valid;
+    private final boolean[] dirty;
+    
+    /**
+     * When a line was last used (LRU) or loaded (FIFO), based on
+     * {@link #clock}.
+     */
+    private final long[] stamps;
+    
+    /**
+     * Incremented with every access.
+     */
+    private long clock = 0;
+    
+    /**
+     * State of the pseudo-random generator used for the RANDOM policy.
+     */
+    private long randomState = 0x2545F4914F6CDD1DL;
+    
+    /* Statistics */
+    private long hits       = 0;
+    private long misses     = 0;
+    private long evictions  = 0;
+    private long writeBacks = 0;
+    
+    
+    /**
+     * @param config
+     */
+    public Cache(CacheConfig config)
+    {
+        this.config     = config;
+        this.offsetBits = Integer.numberOfTrailingZeros(config.lineSize);
+        this.setBits    = Integer.numberOfTrailingZeros(config.getSets());
+        this.setMask    = config.getSets() - 1;
+        
+        int lines   = config.getSets() * config.ways;
+        this.tags   = new long[lines];
+        this.valid  = new boolean[lines];
+        this.dirty  = new boolean[lines];
+        this.stamps = new long[lines];
+    }
+    
+    /**
+     * Accesses the line containing the given address, loading it into the
+     * cache if it isn't cached yet.
+     * 
+     * @param address The memory address. For address spaces larger than 64
+     *                bits only the lowest 64 bits are taken into account
+     * @param write   True if the access is a write access
+     * 
+     * @return True on a hit, false on a miss
+     */
+    public boolean access(long address, boolean write)
+    {
+        this.clock++;
+        int  set   = (int) (address >>> this.offsetBits) & this.setMask;
+        long tag   = address >>> this.offsetBits >>> this.setBits;
+        int  first = set * this.config.ways;
+        int  end   = first + this.config.ways;
+        
+        for (int i = first; i < end; i++) {
+            if (this.valid[i] && this.tags[i] == tag) {
+                this.hits++;
+                if (this.config.policy == CacheConfig.Policy.LRU) {
+                    this.stamps[i] = this.clock;
+                }
+                this.dirty[i] |= write;
+                return true;
+            }
+        }
+        
+        this.misses++;
+        int victim = this.selectVictim(first, end);
+        if (this.valid[victim]) {
+            this.evictions++;
+            if (this.dirty[victim]) {
+                this.writeBacks++;
+            }
+        }
+        this.tags[victim]   = tag;
+        this.valid[victim]  = true;
+        this.dirty[victim]  = write;
+        this.stamps[victim] = this.clock;
+        return false;
+    }
+    
+    /**
+     * @param first The index of the first line in the set
+     * @param end   The index after the last line in the set
+     * 
+     * @return The index of the line that shall be replaced
+     */
+    private int selectVictim(int first, int end)
+    {
+        for (int i = first; i < end; i++) {
+            if (!this.valid[i]) {
+                return i;
+            }
+        }
+        
+        if (this.config.policy == CacheConfig.Policy.RANDOM) {
+            // xorshift64
+            this.randomState ^= this.randomState << 13;
+            this.randomState ^= this.randomState >>> 7;
+            this.randomState ^= this.randomState << 17;
+            return first + (int) Long.remainderUnsigned(this.randomState, this.config.ways);
+        }
+        
+        // LRU and FIFO: the line with the oldest stamp
+        int victim = first;
+        for (int i = first + 1; i < end; i++) {
+            if (this.stamps[i] < this.stamps[victim]) {
+                victim = i;
+            }
+        }
+        return victim;
+    }
+    
+    /**
+     * @return The amount of accesses
+     */
+    public long getAccesses()
+    {
+        return this.hits + this.misses;
+    }
+    
+    public long getHits()
+    {
+        return this.hits;
+    }
+    
+    public long getMisses()
+    {
+        return this.misses;
+    }
+    
+    /**
+     * @return The amount of valid lines that have been replaced
+     */
+    public long getEvictions()
+    {
+        return this.evictions;
+    }
+    
+    /**
+     * @return The amount of evicted lines that were dirty
+     */
+    public long getWriteBacks()
+    {
+        return this.writeBacks;
+    }
+}
@@ -0,0 +1,215 @@
+package net.jaraonthe.java.asb.interpret.cache;
+
+import java.util.Locale;
+
+import net.jaraonthe.java.asb.exception.ConstraintException;
+
+/**
+ * The configuration of one simulated cache level.<br>
+ * 
+ * All sizes are given in memory words, as memory words are the smallest
+ * addressable unit of the virtual system.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class CacheConfig
+{
+    /**
+     * Selects which line of a set is evicted when a new line is loaded into a
+     * full set.
+     */
+    public enum Policy
+    {
+        /**
+         * Least recently used
+         */
+        LRU,
+        
+        /**
+         * First in, first out
+         */
+        FIFO,
+        
+        /**
+         * A (pseudo-)random line. This is deterministic, i.e. several runs of
+         * the same program lead to the same results.
+         */
+        RANDOM;
+        
+        /**
+         * @param text
+         * @return The policy with the given name (case-insensitive), or null
+         *         if there is no such policy
+         */
+        public static CacheConfig.Policy fromString(String text)
+        {
+            for (CacheConfig.Policy policy : CacheConfig.Policy.values()) {
+                if (policy.name().equalsIgnoreCase(text)) {
+                    return policy;
+                }
+            }
+            return null;
+        }
+    }
+    
+    /**
+     * The maximum amount of supported cache levels.
+     */
+    public static final int MAX_LEVEL = 2;
+    
+    /**
+     * The cache level (1 is closest to the CPU).
+     */
+    public final int level;
+    
+    /**
+     * The total size of the cache (in memory words).
+     */
+    public final int size;
+    
+    /**
+     * The size of one cache line (in memory words).
+     */
+    public final int lineSize;
+    
+    /**
+     * The associativity, i.e. the amount of lines per set.
+     */
+    public final int ways;
+    
+    public final CacheConfig.Policy policy;
+    
+    
+    /**
+     * @param level    The cache level (1 is closest to the CPU)
+     * @param size     The total size of the cache (in memory words). Must be a
+     *                 power of 2
+     * @param lineSize The size of one cache line (in memory words). Must be a
+     *                 power of 2
+     * @param ways     The amount of lines per set. Must be a power of 2
+     * @param policy
+     * 
+     * @throws ConstraintException if any of the values is invalid
+     */
+    public CacheConfig(int level, int size, int lineSize, int ways, CacheConfig.Policy policy) throws ConstraintException
+    {
+        if (level < 1 || level > CacheConfig.MAX_LEVEL) {
+            throw new ConstraintException(
+                "Cache level must be between 1 and " + CacheConfig.MAX_LEVEL + ", is " + level
+            );
+        }
+        CacheConfig.checkPowerOf2("Cache size", size);
+        CacheConfig.checkPowerOf2("Cache line size", lineSize);
+        CacheConfig.checkPowerOf2("Cache associativity", ways);
+        if ((long) lineSize * ways > size) {
+            throw new ConstraintException(
+                "Cache size (" + size + ") must be at least line size (" + lineSize
+                + ") times associativity (" + ways + ")"
+            );
+        }
+        
+        this.level    = level;
+        this.size     = size;
+        this.lineSize = lineSize;
+        this.ways     = ways;
+        this.policy   = policy;
+    }
+    
+    /**
+     * Creates a cache configuration from a specification like
+     * {@code L1:1024:16:4:lru}, i.e. level, size, line size, associativity,
+     * and (optionally) replacement policy. The policy defaults to LRU.
+     * 
+     * @param specification
+     * @return
+     * 
+     * @throws ConstraintException if the specification is invalid
+     */
+    public static CacheConfig fromString(String specification) throws ConstraintException
+    {
+        String[] parts = specification.split(":");
+        if (parts.length < 4 || parts.length > 5) {
+            throw new ConstraintException(
+                "Invalid cache specification \"" + specification
+                + "\", expected <level>:<size>:<line size>:<ways>[:<policy>]"
+            );
+        }
+        
+        CacheConfig.Policy policy = CacheConfig.Policy.LRU;
+        if (parts.length == 5) {
+            policy = CacheConfig.Policy.fromString(parts[4]);
+            if (policy == null) {
+                throw new ConstraintException("Unknown cache replacement policy \"" + parts[4] + "\"");
+            }
+        }
+        
+        try {
+            return new CacheConfig(
+                CacheConfig.parseLevel(parts[0]),
+                Integer.parseInt(parts[1]),
+                Integer.parseInt(parts[2]),
+                Integer.parseInt(parts[3]),
+                policy
+            );
+        } catch (NumberFormatException e) {
+            throw new ConstraintException(
+                "Invalid cache specification \"" + specification + "\", expected numbers for sizes"
+            );
+        }
+    }
+    
+    /**
+     * @param text E.g. "L1"
+     * @return The cache level given by text
+     * 
+     * @throws ConstraintException if text is not a valid cache level
+     */
+    public static int parseLevel(String text) throws ConstraintException
+    {
+        if (text.length() == 2 && Character.toUpperCase(text.charAt(0)) == 'L') {
+            int level = text.charAt(1) - '0';
+            if (level >= 1 && level <= CacheConfig.MAX_LEVEL) {
+                return level;
+            }
+        }
+        throw new ConstraintException(
+            "Invalid cache level \"" + text + "\", expected L1 to L" + CacheConfig.MAX_LEVEL
+        );
+    }
+    
+    /**
+     * @param name  Used in the error message
+     * @param value
+     * 
+     * @throws ConstraintException if value is not a positive power of 2
+     */
+    private static void checkPowerOf2(String name, int value) throws ConstraintException
+    {
+        if (value <= 0 || Integer.bitCount(value) != 1) {
+            throw new ConstraintException(name + " must be a power of 2, is " + value);
+        }
+    }
+    
+    /**
+     * @return The amount of sets
+     */
+    public int getSets()
+    {
+        return this.size / (this.lineSize * this.ways);
+    }
+    
+    /**
+     * @return E.g. "L1"
+     */
+    public String getName()
+    {
+        return "L" + this.level;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return this.getName() + ": " + this.size + " words, " + this.lineSize + " words/line, "
+            + this.ways + "-way, " + this.policy.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,86 @@
+package net.jaraonthe.java.asb.interpret.cache;
+
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The simulated caches between the CPU and the memory. The memory notifies
+ * this of every access; an access goes to the first level and on a miss
+ * continues to the next level (to load the line from there).
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class CacheHierarchy
+{
+    /**
+     * Ordered by level, starting with the one closest to the CPU.
+     */
+    private final List<Cache> levels;
+    
+    
+    /**
+     * @param configs Must not contain the same level more than once
+     */
+    private CacheHierarchy(Collection<CacheConfig> configs)
+    {
+        this.levels = configs.stream()
+            .sorted((a, b) -> Integer.compare(a.level, b.level))
+            .map(Cache::new)
+            .toList();
+    }
+    
+    /**
+     * @param configs Must not contain the same level more than once
+     * @return Null if configs is empty (i.e. no caches are simulated)
+     */
+    public static CacheHierarchy fromConfigs(Collection<CacheConfig> configs)
+    {
+        if (configs.isEmpty()) {
+            return null;
+        }
+        return new CacheHierarchy(configs);
+    }
+    
+    /**
+     * Simulates reading the memory word at the given address.
+     * 
+     * @param address
+     */
+    public void read(BigInteger address)
+    {
+        this.access(address.longValue(), false);
+    }
+    
+    /**
+     * Simulates writing the memory word at the given address.
+     * 
+     * @param address
+     */
+    public void write(BigInteger address)
+    {
+        this.access(address.longValue(), true);
+    }
+    
+    private void access(long address, boolean write)
+    {
+        if (this.levels.get(0).access(address, write)) {
+            return;
+        }
+        // Lower levels only see the line being loaded into the level above
+        for (int i = 1; i < this.levels.size(); i++) {
+            if (this.levels.get(i).access(address, false)) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * @return The simulated caches, ordered by level
+     */
+    public List<Cache> getLevels()
+    {
+        return Collections.unmodifiableList(this.levels);
+    }
+}
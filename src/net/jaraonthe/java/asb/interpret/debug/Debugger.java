@@ -0,0 +1,635 @@
+package net.jaraonthe.java.asb.interpret.debug;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import net.jaraonthe.java.asb.Print;
+import net.jaraonthe.java.asb.Settings;
+import net.jaraonthe.java.asb.ast.AST;
+import net.jaraonthe.java.asb.ast.invocation.Invocation;
+import net.jaraonthe.java.asb.ast.variable.Register;
+import net.jaraonthe.java.asb.ast.variable.RegisterAlias;
+import net.jaraonthe.java.asb.exception.ConstraintException;
+import net.jaraonthe.java.asb.exception.RuntimeError;
+import net.jaraonthe.java.asb.interpret.Context;
+import net.jaraonthe.java.asb.interpret.Frame;
+import net.jaraonthe.java.asb.interpret.Memory;
+import net.jaraonthe.java.asb.interpret.value.NumericValue;
+import net.jaraonthe.java.asb.interpret.value.NumericValueStore;
+
+/**
+ * An interactive debugger for the user program. It pauses before userland
+ * steps and reads commands from stdin.<br>
+ *
+ * Breakpoints are kept as a BitSet over the user program, so checking them
+ * costs one bit lookup per step. Watchpoints are flagged on the watched
+ * values themselves (see {@link Watchpoints}).<br>
+ *
+ * If an {@link UndoLog} is given, steps can also be undone (reverse
+ * execution).
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class Debugger
+{
+    private static final String HELP_TEXT =
+        "Commands:\n"
+        + "    s, step [n]                  execute the next n steps (default: 1)\n"
+        + "    c, continue                  run until a breakpoint, watchpoint, or the end\n"
+        + "    sb, step-back [n]            undo the last n steps (default: 1)\n"
+        + "    rc, reverse-continue         undo steps until a breakpoint, watchpoint, or\n"
+        + "                                 the start of the recorded history\n"
+        + "    b, break <label|pc>          set a breakpoint\n"
+        + "    d, delete <label|pc>         remove a breakpoint\n"
+        + "    watch <register|@address>    stop when the register or memory changes;\n"
+        + "                                 use @from..to for a memory range\n"
+        + "    unwatch <register|@address>  remove a watchpoint\n"
+        + "    info                         list breakpoints and watchpoints\n"
+        + "    p, print <register|@address> show a register or memory (also @from..to)\n"
+        + "    r, registers                 show all registers\n"
+        + "    w, where                     show the next command\n"
+        + "    history                      show how many steps can be undone\n"
+        + "    q, quit                      stop the program\n"
+        + "    h, help                      show this help";
+
+    /**
+     * The maximum amount of memory words printed at once.
+     */
+    private static final int MAX_PRINTED_WORDS = 1024;
+
+    private final AST ast;
+
+    private final Settings settings;
+
+    /**
+     * Used to read register values (which may invoke virtual register
+     * getters).
+     */
+    private final Context context;
+
+    /**
+     * The global frame of the interpreted program.
+     */
+    private final Frame frame;
+
+    /**
+     * May be null.
+     */
+    private final Memory memory;
+
+    /**
+     * Null if steps cannot be undone.
+     */
+    private final UndoLog undoLog;
+
+    /**
+     * The program positions that have a breakpoint.
+     */
+    private final BitSet breakpoints = new BitSet();
+
+    private final Watchpoints watchpoints;
+
+    private final BufferedReader input = new BufferedReader(new InputStreamReader(System.in));
+
+    /**
+     * The amount of steps to execute before pausing. -1 means no pausing
+     * (except at breakpoints and watchpoints).
+     */
+    private long remainingSteps = 0;
+
+
+    /**
+     * @param ast
+     * @param settings
+     * @param context  The context of the interpreted program
+     * @param undoLog  May be null (steps cannot be undone)
+     */
+    public Debugger(AST ast, Settings settings, Context context, UndoLog undoLog)
+    {
+        this.ast         = ast;
+        this.settings    = settings;
+        this.context     = context;
+        this.frame       = context.frame;
+        this.memory      = context.memory;
+        this.undoLog     = undoLog;
+        this.watchpoints = new Watchpoints(context.memory);
+    }
+
+    /**
+     * Sets a breakpoint before the program starts. If any breakpoint is set
+     * this way, the debugger doesn't pause at the start of the program.
+     *
+     * @param location A label name or program position
+     * @throws ConstraintException if the location is invalid
+     */
+    public void addInitialBreakpoint(String location) throws ConstraintException
+    {
+        this.breakpoints.set(this.resolveLocation(location));
+        this.remainingSteps = -1;
+    }
+
+    /**
+     * This is to be called before every userland step, as well as when the
+     * program has ended. Pauses and reads commands if required; this may
+     * change the system state (when steps are undone).
+     *
+     * @return False if the interpretation shall end
+     */
+    public boolean beforeStep()
+    {
+        boolean pause = this.isAtEnd() || this.remainingSteps == 0;
+        if (this.watchpoints.hasHits()) {
+            this.endPrintedLine();
+            this.printHits();
+            pause = true;
+        }
+        if (!pause && this.breakpoints.get(this.frame.programCounter)) {
+            this.endPrintedLine();
+            Print.printlnWithColor("Breakpoint", Print.Color.CYAN, this.settings);
+            pause = true;
+        }
+
+        if (pause) {
+            if (!this.pause()) {
+                return false;
+            }
+            if (this.isAtEnd()) {
+                return false;
+            }
+        }
+
+        if (this.remainingSteps > 0) {
+            this.remainingSteps--;
+        }
+        if (this.undoLog != null) {
+            this.undoLog.beginStep(this.frame.programCounter);
+        }
+        return true;
+    }
+
+    /**
+     * Reads and executes commands until the program shall continue.
+     *
+     * @return False if the interpretation shall end
+     */
+    private boolean pause()
+    {
+        this.endPrintedLine();
+        this.printLocation();
+
+        while (true) {
+            System.out.print("(asb) ");
+            System.out.flush();
+            String line;
+            try {
+                line = this.input.readLine();
+            } catch (IOException e) {
+                line = null;
+            }
+            if (line == null) {
+                // stdin is closed
+                System.out.println();
+                return false;
+            }
+
+            String[] parts  = line.strip().split("\\s+", 2);
+            String argument = parts.length > 1 ? parts[1] : null;
+            try {
+                switch (parts[0]) {
+                    case "s":
+                    case "step":
+                        if (this.isAtEnd()) {
+                            throw new ConstraintException("The program has ended");
+                        }
+                        this.remainingSteps = Debugger.parseAmount(argument);
+                        return true;
+
+                    case "c":
+                    case "continue":
+                        this.remainingSteps = -1;
+                        return true;
+
+                    case "sb":
+                    case "step-back":
+                        this.stepBack(Debugger.parseAmount(argument), false);
+                        continue;
+
+                    case "rc":
+                    case "reverse-continue":
+                        this.stepBack(Long.MAX_VALUE, true);
+                        continue;
+
+                    case "b":
+                    case "break":
+                        this.breakpoints.set(this.resolveLocation(Debugger.require(argument)));
+                        continue;
+
+                    case "d":
+                    case "delete":
+                        int position = this.resolveLocation(Debugger.require(argument));
+                        if (!this.breakpoints.get(position)) {
+                            throw new ConstraintException("There is no breakpoint at " + argument);
+                        }
+                        this.breakpoints.clear(position);
+                        continue;
+
+                    case "watch":
+                        this.watch(Debugger.require(argument), true);
+                        continue;
+
+                    case "unwatch":
+                        this.watch(Debugger.require(argument), false);
+                        continue;
+
+                    case "info":
+                        this.printInfo();
+                        continue;
+
+                    case "p":
+                    case "print":
+                        this.print(Debugger.require(argument));
+                        continue;
+
+                    case "r":
+                    case "registers":
+                        this.printRegisters();
+                        continue;
+
+                    case "w":
+                    case "where":
+                        this.printLocation();
+                        continue;
+
+                    case "history":
+                        if (this.undoLog == null) {
+                            System.out.println("Reverse execution is disabled");
+                        } else {
+                            System.out.println(
+                                this.undoLog.getSteps() + " steps can be undone ("
+                                + this.undoLog.getUsedBytes() / 1024 + " of "
+                                + this.undoLog.getMaxBytes() / 1024 + " KiB used)"
+                            );
+                        }
+                        continue;
+
+                    case "q":
+                    case "quit":
+                        return false;
+
+                    case "h":
+                    case "help":
+                        System.out.println(Debugger.HELP_TEXT);
+                        continue;
+
+                    case "":
+                        continue;
+
+                    default:
+                        throw new ConstraintException(
+                            "Unknown command \"" + parts[0] + "\". Type help for a list of commands"
+                        );
+                }
+            } catch (ConstraintException | RuntimeError e) {
+                this.printError(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Undoes up to the given amount of steps.
+     *
+     * @param amount
+     * @param stopAtBreakpoints True: Stop at breakpoints and watchpoints
+     *
+     * @throws ConstraintException if reverse execution is disabled
+     */
+    private void stepBack(long amount, boolean stopAtBreakpoints) throws ConstraintException
+    {
+        if (this.undoLog == null) {
+            throw new ConstraintException("Reverse execution is disabled");
+        }
+
+        long undone = 0;
+        while (undone < amount) {
+            int programCounter = this.undoLog.stepBack();
+            if (programCounter == -1) {
+                break;
+            }
+            this.frame.programCounter = programCounter;
+            undone++;
+
+            if (stopAtBreakpoints) {
+                if (this.watchpoints.hasHits()) {
+                    this.printHits();
+                    break;
+                }
+                if (this.breakpoints.get(programCounter)) {
+                    Print.printlnWithColor("Breakpoint", Print.Color.CYAN, this.settings);
+                    break;
+                }
+            }
+        }
+        // Changes caused by undoing are only relevant while searching
+        this.watchpoints.takeHits();
+
+        if (undone < amount && this.undoLog.getSteps() == 0) {
+            System.out.println(
+                (undone == 0 ? "Already at" : "Reached")
+                + " the start of the recorded history"
+            );
+        }
+        if (undone > 0) {
+            this.printLocation();
+        }
+    }
+
+    /**
+     * Adds or removes a watchpoint.
+     *
+     * @param target A register name or memory address (range)
+     * @param add    True: add, False: remove
+     *
+     * @throws ConstraintException if the target is invalid
+     */
+    private void watch(String target, boolean add) throws ConstraintException
+    {
+        if (target.startsWith("@")) {
+            BigInteger[] range = this.resolveRange(target);
+            if (add) {
+                this.watchpoints.watchMemory(range[0], range[1]);
+            } else if (!this.watchpoints.unwatchMemory(range[0], range[1])) {
+                throw new ConstraintException(target + " is not watched");
+            }
+            return;
+        }
+
+        if (!add) {
+            if (!this.watchpoints.unwatchRegister(target)) {
+                throw new ConstraintException(target + " is not watched");
+            }
+            return;
+        }
+        NumericValue value = this.getRegister(target).getReferenced();
+        if (!(value instanceof NumericValueStore)) {
+            throw new ConstraintException("Cannot watch virtual register " + target);
+        }
+        this.watchpoints.watchRegister(target, (NumericValueStore) value);
+    }
+
+    /**
+     * @param name
+     * @return The value of the register with the given name
+     *
+     * @throws ConstraintException if the register doesn't exist
+     */
+    private NumericValue getRegister(String name) throws ConstraintException
+    {
+        if (!this.frame.valueExists(name)) {
+            throw new ConstraintException("Unknown register " + name);
+        }
+        return this.frame.getNumericValue(name);
+    }
+
+    /**
+     * @param location A label name or program position
+     * @return The program position
+     *
+     * @throws ConstraintException if the location is invalid
+     */
+    private int resolveLocation(String location) throws ConstraintException
+    {
+        int size = this.ast.getProgram().size();
+        if (!location.isEmpty() && Character.isDigit(location.charAt(0))) {
+            BigInteger position = NumericValueStore.parseBigInteger(location);
+            if (position == null || position.compareTo(BigInteger.valueOf(size)) >= 0) {
+                throw new ConstraintException(
+                    "Invalid program position " + location + " (the program has " + size + " commands)"
+                );
+            }
+            return position.intValue();
+        }
+
+        int position = this.ast.getLabel(location);
+        if (position == -1) {
+            throw new ConstraintException("Unknown label " + location);
+        }
+        if (position >= size) {
+            throw new ConstraintException("Label " + location + " points to the end of the program");
+        }
+        return position;
+    }
+
+    /**
+     * @param text "@address" or "@from..to"
+     * @return {from, to} (inclusive)
+     *
+     * @throws ConstraintException if the text is invalid
+     */
+    private BigInteger[] resolveRange(String text) throws ConstraintException
+    {
+        if (this.memory == null) {
+            throw new ConstraintException("Memory is not configured");
+        }
+
+        String[] parts  = text.substring(1).split("\\.\\.", 2);
+        BigInteger from = NumericValueStore.parseBigInteger(parts[0]);
+        BigInteger to   = parts.length > 1 ? NumericValueStore.parseBigInteger(parts[1]) : from;
+        if (
+            from == null || to == null
+            || from.signum() < 0 || to.compareTo(from) < 0
+            || to.bitLength() > this.memory.addressLength
+        ) {
+            throw new ConstraintException("Invalid memory address (range) " + text);
+        }
+        return new BigInteger[] {from, to};
+    }
+
+    /**
+     * @param argument May be null
+     * @return The amount given as argument, 1 if there is no argument
+     *
+     * @throws ConstraintException if the argument is not a positive number
+     */
+    private static long parseAmount(String argument) throws ConstraintException
+    {
+        if (argument == null) {
+            return 1;
+        }
+        long amount;
+        try {
+            amount = Long.parseLong(argument);
+        } catch (NumberFormatException e) {
+            amount = 0;
+        }
+        if (amount <= 0) {
+            throw new ConstraintException("Invalid amount \"" + argument + "\"");
+        }
+        return amount;
+    }
+
+    /**
+     * @param argument May be null
+     * @return The argument
+     *
+     * @throws ConstraintException if there is no argument
+     */
+    private static String require(String argument) throws ConstraintException
+    {
+        if (argument == null) {
+            throw new ConstraintException("This command requires an argument. Type help for details");
+        }
+        return argument;
+    }
+
+
+    /**
+     * Prints a register or memory.
+     *
+     * @param target A register name or memory address (range)
+     *
+     * @throws ConstraintException
+     * @throws RuntimeError
+     */
+    private void print(String target) throws ConstraintException, RuntimeError
+    {
+        if (!target.startsWith("@")) {
+            NumericValue value = this.getRegister(target);
+            this.printValue(target, value.read(this.context), value.length);
+            return;
+        }
+
+        BigInteger[] range = this.resolveRange(target);
+        if (range[1].subtract(range[0]).compareTo(BigInteger.valueOf(Debugger.MAX_PRINTED_WORDS)) >= 0) {
+            throw new ConstraintException("Cannot print more than " + Debugger.MAX_PRINTED_WORDS + " memory words at once");
+        }
+        int addressLengthHex = Math.ceilDiv(this.memory.addressLength, 4);
+        for (
+            BigInteger address = range[0];
+            address.compareTo(range[1]) <= 0;
+            address = address.add(BigInteger.ONE)
+        ) {
+            this.printValue(
+                String.format("0x%0" + addressLengthHex + "x", address),
+                this.memory.peek(address),
+                this.memory.wordLength
+            );
+        }
+    }
+
+    /**
+     * Prints all registers (excl. aliases).
+     *
+     * @throws ConstraintException
+     * @throws RuntimeError
+     */
+    private void printRegisters() throws ConstraintException, RuntimeError
+    {
+        List<String> names = new ArrayList<>();
+        for (Register register : this.ast.getRegisters()) {
+            if (!(register instanceof RegisterAlias)) {
+                names.add(register.name);
+            }
+        }
+        names.sort(null);
+
+        for (String name : names) {
+            NumericValue value = this.frame.getNumericValue(name);
+            this.printValue(name, value.read(this.context), value.length);
+        }
+    }
+
+    private void printValue(String name, BigInteger value, int length)
+    {
+        System.out.format("%s\t%d\t(0x%0" + Math.ceilDiv(length, 4) + "x)%n", name, value, value);
+    }
+
+    /**
+     * Prints all breakpoints and watchpoints.
+     */
+    private void printInfo()
+    {
+        if (
+            this.breakpoints.isEmpty()
+            && this.watchpoints.getRegisterNames().isEmpty()
+            && this.watchpoints.getRanges().isEmpty()
+        ) {
+            System.out.println("No breakpoints or watchpoints");
+            return;
+        }
+
+        List<Invocation> program = this.ast.getProgram();
+        for (int i = this.breakpoints.nextSetBit(0); i >= 0; i = this.breakpoints.nextSetBit(i + 1)) {
+            System.out.format("Breakpoint %x: %s%n", i, program.get(i).getOrigin().getContent());
+        }
+        for (String name : this.watchpoints.getRegisterNames()) {
+            System.out.println("Watchpoint " + name);
+        }
+        for (BigInteger[] range : this.watchpoints.getRanges()) {
+            System.out.println(
+                "Watchpoint @0x" + range[0].toString(16)
+                + (range[0].equals(range[1]) ? "" : "..0x" + range[1].toString(16))
+            );
+        }
+    }
+
+    private void printHits()
+    {
+        for (String hit : this.watchpoints.takeHits()) {
+            Print.printlnWithColor(hit, Print.Color.CYAN, this.settings);
+        }
+    }
+
+    /**
+     * @return True if the program counter points behind the user program
+     */
+    private boolean isAtEnd()
+    {
+        return this.frame.programCounter >= this.ast.getProgram().size();
+    }
+
+    /**
+     * Prints the command that is executed next.
+     */
+    private void printLocation()
+    {
+        if (this.isAtEnd()) {
+            Print.printlnWithColor("=> (program has ended)", Print.Color.CYAN, this.settings);
+            return;
+        }
+
+        List<Invocation> program = this.ast.getProgram();
+        Invocation invocation    = program.get(this.frame.programCounter);
+        Print.printlnWithColor(
+            String.format(
+                "=> %x: %s    (%s)",
+                this.frame.programCounter,
+                this.settings.devMode() ? invocation : invocation.getOrigin().getContent(),
+                invocation.getOrigin()
+            ),
+            Print.Color.CYAN,
+            this.settings
+        );
+    }
+
+    /**
+     * Terminates the line the user program has printed (if any), so that
+     * debugger output starts on a new line.
+     */
+    private void endPrintedLine()
+    {
+        if (this.settings.printOccurred) {
+            System.out.println();
+            this.settings.printOccurred = false;
+        }
+    }
+
+    private void printError(String message)
+    {
+        Print.printlnWithColor(message, Print.Color.RED, this.settings);
+    }
+}
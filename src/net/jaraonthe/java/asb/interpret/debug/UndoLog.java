@@ -0,0 +1,379 @@
+package net.jaraonthe.java.asb.interpret.debug;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.jaraonthe.java.asb.interpret.Memory;
+import net.jaraonthe.java.asb.interpret.value.NumericValueStore;
+
+/**
+ * Records how every userland step changes the system state, so that steps
+ * can be undone (reverse execution).<br>
+ *
+ * For every step the old program counter is recorded, followed by the old
+ * value of every register write and the old word of every memory write. The
+ * entries are stored in a ring buffer of primitive longs, which is split into
+ * chunks that are allocated as needed. Once the configured size is used up,
+ * the oldest steps are discarded.<br>
+ *
+ * Entry layout (in longs): {@code header [address limbs] [value limbs]
+ * header}, or only {@code header} for the start of a step. Values are split
+ * into 64-bit limbs (least significant first), so that values of any length
+ * can be stored. The header is stored at both ends so that the buffer can be
+ * walked in both directions.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class UndoLog
+{
+    private static final int KIND_STEP     = 0;
+    private static final int KIND_REGISTER = 1;
+    private static final int KIND_MEMORY   = 2;
+
+    private static final int CHUNK_BITS = 13; // 8192 longs = 64KiB
+    private static final int CHUNK_SIZE = 1 << UndoLog.CHUNK_BITS;
+    private static final int CHUNK_MASK = UndoLog.CHUNK_SIZE - 1;
+
+    /**
+     * The size of the ring buffer (in longs).
+     */
+    private final long capacity;
+
+    private final long[][] chunks;
+
+    /**
+     * The absolute position of the oldest entry.
+     */
+    private long head = 0;
+
+    /**
+     * The absolute position following the newest entry.
+     */
+    private long tail = 0;
+
+    /**
+     * The amount of steps in this log.
+     */
+    private long steps = 0;
+
+    /**
+     * True: The current step didn't fit into this log, so its remaining
+     * writes are not recorded.
+     */
+    private boolean stepDropped = false;
+
+    /**
+     * True while a step is undone, so that the undoing writes aren't recorded.
+     */
+    private boolean replaying = false;
+
+    /**
+     * The registers whose writes are recorded; a register's index in this list
+     * is its slot.
+     */
+    private final List<NumericValueStore> registers = new ArrayList<>();
+
+    /**
+     * The memory whose writes are recorded. May be null.
+     */
+    private Memory memory = null;
+
+
+    /**
+     * @param maxBytes The maximum amount of memory this log may use. At least
+     *                 one chunk (64KiB) is used
+     */
+    public UndoLog(long maxBytes)
+    {
+        long chunkCount = Math.max(maxBytes / 8 / UndoLog.CHUNK_SIZE, 1);
+        if (chunkCount > Integer.MAX_VALUE) {
+            chunkCount = Integer.MAX_VALUE;
+        }
+        this.chunks   = new long[(int) chunkCount][];
+        this.capacity = chunkCount * UndoLog.CHUNK_SIZE;
+    }
+
+    /**
+     * Records all writes to the given register from now on.
+     *
+     * @param register
+     * @return Fluent interface
+     */
+    public UndoLog attach(NumericValueStore register)
+    {
+        register.setUndoLog(this, this.registers.size());
+        this.registers.add(register);
+        return this;
+    }
+
+    /**
+     * Records all writes to the given memory from now on.
+     *
+     * @param memory
+     * @return Fluent interface
+     */
+    public UndoLog attach(Memory memory)
+    {
+        memory.setUndoLog(this);
+        this.memory = memory;
+        return this;
+    }
+
+
+    /**
+     * Starts recording a new step. This is to be called before every userland
+     * command is executed.
+     *
+     * @param programCounter The program counter before the step is executed
+     */
+    public void beginStep(int programCounter)
+    {
+        this.stepDropped = false;
+        this.reserve(1, true);
+
+        this.set(this.tail++, UndoLog.header(UndoLog.KIND_STEP, 0, 0, programCounter));
+        this.steps++;
+    }
+
+    /**
+     * Records a register write.
+     *
+     * @param slot     The register slot
+     * @param oldValue The register value before the write
+     */
+    public void recordRegister(int slot, BigInteger oldValue)
+    {
+        if (this.replaying || this.stepDropped || this.steps == 0) {
+            return;
+        }
+
+        int valueLimbs = UndoLog.limbCount(oldValue);
+        if (!this.reserve(2 + valueLimbs, false)) {
+            return;
+        }
+
+        long header = UndoLog.header(UndoLog.KIND_REGISTER, 0, valueLimbs, slot);
+        this.set(this.tail++, header);
+        this.writeLimbs(oldValue, valueLimbs);
+        this.set(this.tail++, header);
+    }
+
+    /**
+     * Records a memory write.
+     *
+     * @param address
+     * @param oldWord The memory word before the write
+     */
+    public void recordMemory(BigInteger address, BigInteger oldWord)
+    {
+        if (this.replaying || this.stepDropped || this.steps == 0) {
+            return;
+        }
+
+        int addressLimbs = UndoLog.limbCount(address);
+        int valueLimbs   = UndoLog.limbCount(oldWord);
+        if (!this.reserve(2 + addressLimbs + valueLimbs, false)) {
+            return;
+        }
+
+        long header = UndoLog.header(UndoLog.KIND_MEMORY, addressLimbs, valueLimbs, 0);
+        this.set(this.tail++, header);
+        this.writeLimbs(address, addressLimbs);
+        this.writeLimbs(oldWord, valueLimbs);
+        this.set(this.tail++, header);
+    }
+
+    /**
+     * Undoes the most recent step, i.e. restores the registers and memory to
+     * the state before the step.
+     *
+     * @return The program counter before the step (which the caller has to
+     *         restore). -1 if there is no step to undo
+     */
+    public int stepBack()
+    {
+        if (this.steps == 0) {
+            return -1;
+        }
+
+        this.replaying = true;
+        try {
+            while (true) {
+                long header = this.get(this.tail - 1);
+                int kind    = UndoLog.kind(header);
+                if (kind == UndoLog.KIND_STEP) {
+                    this.tail--;
+                    this.steps--;
+                    return (int) header;
+                }
+
+                int addressLimbs = UndoLog.addressLimbs(header);
+                int valueLimbs   = UndoLog.valueLimbs(header);
+                long start       = this.tail - 2 - addressLimbs - valueLimbs;
+                BigInteger value = this.readLimbs(start + 1 + addressLimbs, valueLimbs);
+                if (kind == UndoLog.KIND_REGISTER) {
+                    this.registers.get((int) header).write(value, null);
+                } else {
+                    this.memory.poke(this.readLimbs(start + 1, addressLimbs), value);
+                }
+                this.tail = start;
+            }
+        } finally {
+            this.replaying = false;
+        }
+    }
+
+    /**
+     * @return The amount of steps that can be undone
+     */
+    public long getSteps()
+    {
+        return this.steps;
+    }
+
+    /**
+     * @return The amount of memory currently used by entries (in bytes)
+     */
+    public long getUsedBytes()
+    {
+        return (this.tail - this.head) * 8;
+    }
+
+    /**
+     * @return The maximum amount of memory used by entries (in bytes)
+     */
+    public long getMaxBytes()
+    {
+        return this.capacity * 8;
+    }
+
+
+    /**
+     * Makes room for an entry of the given size, discarding the oldest steps
+     * if necessary.
+     *
+     * @param size    In longs
+     * @param newStep True if the entry starts a new step
+     * 
+     * @return False if the entry doesn't fit, in which case the current step
+     *         is dropped
+     */
+    private boolean reserve(long size, boolean newStep)
+    {
+        while (this.tail - this.head + size > this.capacity) {
+            if (!newStep && this.steps == 1) {
+                // The current step alone doesn't fit
+                this.head        = this.tail;
+                this.steps       = 0;
+                this.stepDropped = true;
+                return false;
+            }
+            this.discardOldestStep();
+        }
+        return true;
+    }
+
+    /**
+     * Discards the oldest step. The head must point to the start of a step.
+     */
+    private void discardOldestStep()
+    {
+        this.head++;
+        this.steps--;
+        while (this.head < this.tail) {
+            long header = this.get(this.head);
+            if (UndoLog.kind(header) == UndoLog.KIND_STEP) {
+                break;
+            }
+            this.head += 2 + UndoLog.addressLimbs(header) + UndoLog.valueLimbs(header);
+        }
+    }
+
+    private long get(long position)
+    {
+        long index = position % this.capacity;
+        return this.chunks[(int) (index >>> UndoLog.CHUNK_BITS)][(int) (index & UndoLog.CHUNK_MASK)];
+    }
+
+    private void set(long position, long value)
+    {
+        long index   = position % this.capacity;
+        long[] chunk = this.chunks[(int) (index >>> UndoLog.CHUNK_BITS)];
+        if (chunk == null) {
+            chunk = new long[UndoLog.CHUNK_SIZE];
+            this.chunks[(int) (index >>> UndoLog.CHUNK_BITS)] = chunk;
+        }
+        chunk[(int) (index & UndoLog.CHUNK_MASK)] = value;
+    }
+
+    /**
+     * Appends the given value as the given amount of limbs.
+     *
+     * @param value Must not be negative
+     * @param limbs
+     */
+    private void writeLimbs(BigInteger value, int limbs)
+    {
+        for (int i = 0; i < limbs; i++) {
+            this.set(this.tail++, i == 0 ? value.longValue() : value.shiftRight(i * 64).longValue());
+        }
+    }
+
+    /**
+     * @param position
+     * @param limbs
+     * @return The value stored in the given amount of limbs at the given
+     *         position
+     */
+    private BigInteger readLimbs(long position, int limbs)
+    {
+        BigInteger value = BigInteger.ZERO;
+        for (int i = limbs - 1; i >= 0; i--) {
+            long limb = this.get(position + i);
+            BigInteger unsigned = BigInteger.valueOf(limb);
+            if (limb < 0) {
+                unsigned = unsigned.add(BigInteger.ONE.shiftLeft(64));
+            }
+            value = value.shiftLeft(64).or(unsigned);
+        }
+        return value;
+    }
+
+
+    /**
+     * @param value Must not be negative
+     * @return The amount of 64-bit limbs needed to store the value
+     */
+    private static int limbCount(BigInteger value)
+    {
+        return (value.bitLength() + 63) / 64;
+    }
+
+    /**
+     * Header layout: kind (4 bits), value limbs (14 bits), address limbs (14
+     * bits), slot or program counter (32 bits).
+     */
+    private static long header(int kind, int addressLimbs, int valueLimbs, int data)
+    {
+        return ((long) kind << 60)
+            | ((long) valueLimbs << 46)
+            | ((long) addressLimbs << 32)
+            | (data & 0xFFFFFFFFL);
+    }
+
+    private static int kind(long header)
+    {
+        return (int) (header >>> 60);
+    }
+
+    private static int valueLimbs(long header)
+    {
+        return (int) ((header >>> 46) & 0x3FFF);
+    }
+
+    private static int addressLimbs(long header)
+    {
+        return (int) ((header >>> 32) & 0x3FFF);
+    }
+}
@@ -0,0 +1,250 @@
+package net.jaraonthe.java.asb.interpret.debug;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.jaraonthe.java.asb.exception.ConstraintException;
+import net.jaraonthe.java.asb.interpret.Memory;
+import net.jaraonthe.java.asb.interpret.value.NumericValueStore;
+
+/**
+ * Watches registers and memory ranges for changes.<br>
+ *
+ * Watched registers and the memory carry a reference to this, so that writes
+ * to unwatched values only cost a null check. For memory, the blocks of
+ * {@link #BLOCK_SIZE} words that contain watched addresses are flagged, so
+ * that the watched ranges are only checked for writes to these blocks.<br>
+ *
+ * Changes are collected as hits, which the {@link Debugger} takes after each
+ * step.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class Watchpoints
+{
+    private static final int BLOCK_BITS = 8;
+    private static final int BLOCK_SIZE = 1 << Watchpoints.BLOCK_BITS;
+
+    /**
+     * The maximum amount of blocks a watched memory range may cover.
+     */
+    private static final int MAX_BLOCKS = 1 << 16;
+
+    /**
+     * register name => watched register value
+     */
+    private final Map<String, NumericValueStore> registers = new LinkedHashMap<>();
+
+    /**
+     * Watched memory ranges, each given as {from, to} (inclusive).
+     */
+    private final List<BigInteger[]> ranges = new ArrayList<>();
+
+    /**
+     * The blocks (address >> {@link #BLOCK_BITS}) containing watched
+     * addresses.
+     */
+    private final Set<BigInteger> blocks = new HashSet<>();
+
+    /**
+     * May be null.
+     */
+    private final Memory memory;
+
+    /**
+     * The changes that have been observed since the hits were last taken.
+     */
+    private final List<String> hits = new ArrayList<>();
+
+
+    /**
+     * @param memory May be null
+     */
+    public Watchpoints(Memory memory)
+    {
+        this.memory = memory;
+    }
+
+    /**
+     * Watches a register.
+     *
+     * @param name  The name the register has been given as
+     * @param value The register's value
+     */
+    public void watchRegister(String name, NumericValueStore value)
+    {
+        value.setWatchpoints(this);
+        this.registers.put(name, value);
+    }
+
+    /**
+     * @param name The name the register has been given as
+     * @return False if the register is not watched
+     */
+    public boolean unwatchRegister(String name)
+    {
+        NumericValueStore value = this.registers.remove(name);
+        if (value == null) {
+            return false;
+        }
+        if (!this.registers.containsValue(value)) {
+            // Not watched under another (alias) name
+            value.setWatchpoints(null);
+        }
+        return true;
+    }
+
+    /**
+     * Watches a memory range.
+     *
+     * @param from First address
+     * @param to   Last address (inclusive)
+     *
+     * @throws ConstraintException if there is no memory or the range is too
+     *                             big
+     */
+    public void watchMemory(BigInteger from, BigInteger to) throws ConstraintException
+    {
+        if (this.memory == null) {
+            throw new ConstraintException("Cannot watch memory as it is not configured");
+        }
+        BigInteger blockCount = to.shiftRight(Watchpoints.BLOCK_BITS)
+            .subtract(from.shiftRight(Watchpoints.BLOCK_BITS))
+            .add(BigInteger.ONE);
+        if (blockCount.compareTo(BigInteger.valueOf(Watchpoints.MAX_BLOCKS)) > 0) {
+            throw new ConstraintException(
+                "Cannot watch more than " + (Watchpoints.MAX_BLOCKS * Watchpoints.BLOCK_SIZE) + " memory words at once"
+            );
+        }
+
+        this.ranges.add(new BigInteger[] {from, to});
+        this.addBlocks(from, to);
+        this.memory.setWatchpoints(this);
+    }
+
+    /**
+     * @param from First address
+     * @param to   Last address (inclusive)
+     *
+     * @return False if the range is not watched
+     */
+    public boolean unwatchMemory(BigInteger from, BigInteger to)
+    {
+        boolean removed = this.ranges.removeIf(r -> r[0].equals(from) && r[1].equals(to));
+        if (!removed) {
+            return false;
+        }
+
+        this.blocks.clear();
+        for (BigInteger[] range : this.ranges) {
+            this.addBlocks(range[0], range[1]);
+        }
+        if (this.ranges.isEmpty()) {
+            this.memory.setWatchpoints(null);
+        }
+        return true;
+    }
+
+    private void addBlocks(BigInteger from, BigInteger to)
+    {
+        BigInteger last = to.shiftRight(Watchpoints.BLOCK_BITS);
+        for (
+            BigInteger block = from.shiftRight(Watchpoints.BLOCK_BITS);
+            block.compareTo(last) <= 0;
+            block = block.add(BigInteger.ONE)
+        ) {
+            this.blocks.add(block);
+        }
+    }
+
+    /**
+     * @return The names of the watched registers
+     */
+    public Set<String> getRegisterNames()
+    {
+        return this.registers.keySet();
+    }
+
+    /**
+     * @return The watched memory ranges, each given as {from, to} (inclusive)
+     */
+    public List<BigInteger[]> getRanges()
+    {
+        return this.ranges;
+    }
+
+
+    /**
+     * Called when a watched register is written to.
+     *
+     * @param value    The register's value
+     * @param oldValue
+     * @param newValue
+     */
+    public void registerWritten(NumericValueStore value, BigInteger oldValue, BigInteger newValue)
+    {
+        if (oldValue.equals(newValue)) {
+            return;
+        }
+        for (Map.Entry<String, NumericValueStore> entry : this.registers.entrySet()) {
+            if (entry.getValue() == value) {
+                this.hits.add(
+                    "Watchpoint " + entry.getKey() + ": " + oldValue + " -> " + newValue
+                    + " (0x" + newValue.toString(16) + ")"
+                );
+                return;
+            }
+        }
+    }
+
+    /**
+     * Called when memory is written to while any memory range is watched.
+     *
+     * @param address
+     * @param oldWord
+     * @param newWord
+     */
+    public void memoryWritten(BigInteger address, BigInteger oldWord, BigInteger newWord)
+    {
+        if (
+            oldWord.equals(newWord)
+            || !this.blocks.contains(address.shiftRight(Watchpoints.BLOCK_BITS))
+        ) {
+            return;
+        }
+        for (BigInteger[] range : this.ranges) {
+            if (address.compareTo(range[0]) >= 0 && address.compareTo(range[1]) <= 0) {
+                this.hits.add(
+                    "Watchpoint @0x" + address.toString(16) + ": " + oldWord + " -> " + newWord
+                    + " (0x" + newWord.toString(16) + ")"
+                );
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return True if changes have been observed since the hits were last
+     *         taken
+     */
+    public boolean hasHits()
+    {
+        return !this.hits.isEmpty();
+    }
+
+    /**
+     * @return The changes that have been observed since the hits were last
+     *         taken. Clears the hits
+     */
+    public List<String> takeHits()
+    {
+        List<String> hits = new ArrayList<>(this.hits);
+        this.hits.clear();
+        return hits;
+    }
+}
@@ -0,0 +1,42 @@
+package net.jaraonthe.java.asb.interpret.device;
+
+import java.math.BigInteger;
+
+/**
+ * A device that is mapped to a range of memory addresses. Memory accesses of
+ * the user program to these addresses are passed on to the device instead of
+ * reaching memory.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public interface Device
+{
+    /**
+     * @return The amount of memory words this device occupies
+     */
+    public int getSize();
+    
+    /**
+     * Reads from this device.
+     * 
+     * @param offset The accessed word (0 is the first word of this device)
+     * @return Must fit into the memory word length
+     */
+    public BigInteger read(int offset);
+    
+    /**
+     * Writes to this device.
+     * 
+     * @param offset The accessed word (0 is the first word of this device)
+     * @param word
+     */
+    public void write(int offset, BigInteger word);
+    
+    /**
+     * Called once the program has ended (incl. when it has been stopped by
+     * an error). Devices that buffer anything shall pass it on now.
+     */
+    public default void flush()
+    {
+    }
+}
@@ -0,0 +1,80 @@
+package net.jaraonthe.java.asb.interpret.device;
+
+import java.math.BigInteger;
+import java.util.Locale;
+
+/**
+ * The configuration of one memory-mapped device, as given via the .device
+ * directive.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class DeviceConfig
+{
+    /**
+     * The kinds of available devices.
+     */
+    public enum Type
+    {
+        /**
+         * Console output (see {@link Uart})
+         */
+        UART,
+        
+        /**
+         * The amount of executed steps (see {@link StepCounter})
+         */
+        COUNTER,
+        
+        /**
+         * Ends the program (see {@link HaltRegister})
+         */
+        HALT;
+        
+        /**
+         * @param text
+         * @return The device type with the given name (case-insensitive), or
+         *         null if there is no such type
+         */
+        public static DeviceConfig.Type fromString(String text)
+        {
+            for (DeviceConfig.Type type : DeviceConfig.Type.values()) {
+                if (type.name().equalsIgnoreCase(text)) {
+                    return type;
+                }
+            }
+            return null;
+        }
+        
+        @Override
+        public String toString()
+        {
+            return this.name().toLowerCase(Locale.ROOT);
+        }
+    }
+    
+    public final DeviceConfig.Type type;
+    
+    /**
+     * The address of the first memory word the device occupies.
+     */
+    public final BigInteger address;
+    
+    /**
+     * Where the device has been defined. Used in error messages.
+     */
+    public final String source;
+    
+    
+    /**
+     * @param type
+     * @param address Must not be negative
+     * @param source  Where the device has been defined
+     */
+    public DeviceConfig(DeviceConfig.Type type, BigInteger address, String source)
+    {
+        this.type    = type;
+        this.address = address;
+        this.source  = source;
+    }
+}
@@ -0,0 +1,67 @@
+package net.jaraonthe.java.asb.interpret.device;
+
+import java.math.BigInteger;
+
+import net.jaraonthe.java.asb.ast.AST;
+import net.jaraonthe.java.asb.interpret.Frame;
+
+/**
+ * A device occupying one memory word. Writing to it ends the program (like
+ * {@code &halt}) once the current step is done; the written value becomes the
+ * exit status of asb. Reading returns the last written value.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class HaltRegister implements Device
+{
+    private final AST ast;
+    
+    /**
+     * The global frame, whose program counter is modified.
+     */
+    private final Frame frame;
+    
+    /**
+     * The last written value. Null if nothing has been written yet.
+     */
+    private BigInteger status = null;
+    
+    
+    /**
+     * @param ast
+     * @param frame The global frame
+     */
+    public HaltRegister(AST ast, Frame frame)
+    {
+        this.ast   = ast;
+        this.frame = frame;
+    }
+    
+    @Override
+    public int getSize()
+    {
+        return 1;
+    }
+    
+    @Override
+    public BigInteger read(int offset)
+    {
+        return this.status == null ? BigInteger.ZERO : this.status;
+    }
+    
+    @Override
+    public void write(int offset, BigInteger word)
+    {
+        this.status = word;
+        // Let's point to right after the last invocation in userland program
+        this.frame.programCounter = this.ast.getProgram().size();
+    }
+    
+    /**
+     * @return The last written value. Null if nothing has been written
+     */
+    public BigInteger getStatus()
+    {
+        return this.status;
+    }
+}
@@ -0,0 +1,53 @@
+package net.jaraonthe.java.asb.interpret.device;
+
+import java.math.BigInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * A read-only device that provides the amount of userland steps executed so
+ * far (incl. the current one), as a 64-bit value split into as many memory
+ * words as needed. The first word is the least significant one. Writes are
+ * ignored.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class StepCounter implements Device
+{
+    private final int wordLength;
+    
+    private final LongSupplier steps;
+    
+    
+    /**
+     * @param wordLength The memory word length
+     * @param steps      Provides the amount of executed steps
+     */
+    public StepCounter(int wordLength, LongSupplier steps)
+    {
+        this.wordLength = wordLength;
+        this.steps      = steps;
+    }
+    
+    @Override
+    public int getSize()
+    {
+        return Math.ceilDiv(64, this.wordLength);
+    }
+    
+    @Override
+    public BigInteger read(int offset)
+    {
+        long value = this.steps.getAsLong();
+        int shift  = offset * this.wordLength;
+        if (this.wordLength < 64) {
+            value = (value >>> shift) & ((1L << this.wordLength) - 1);
+        }
+        return BigInteger.valueOf(value);
+    }
+    
+    @Override
+    public void write(int offset, BigInteger word)
+    {
+        // Read-only
+    }
+}
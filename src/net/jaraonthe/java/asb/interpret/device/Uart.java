@@ -0,0 +1,72 @@
+package net.jaraonthe.java.asb.interpret.device;
+
+import java.math.BigInteger;
+
+import net.jaraonthe.java.asb.Settings;
+
+/**
+ * A console output device occupying one memory word. The lowest 8 bits of
+ * every written word are output as one byte; reading returns 0.<br>
+ * 
+ * Output is collected in a buffer, which is written to {@link System#out}
+ * at once when a line is complete, when the buffer is full, and when the
+ * program has ended.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class Uart implements Device
+{
+    private static final int BUFFER_SIZE = 8192;
+    
+    private final byte[] buffer = new byte[Uart.BUFFER_SIZE];
+    
+    /**
+     * The amount of bytes in the buffer.
+     */
+    private int length = 0;
+    
+    private final Settings settings;
+    
+    
+    /**
+     * @param settings
+     */
+    public Uart(Settings settings)
+    {
+        this.settings = settings;
+    }
+    
+    @Override
+    public int getSize()
+    {
+        return 1;
+    }
+    
+    @Override
+    public BigInteger read(int offset)
+    {
+        return BigInteger.ZERO;
+    }
+    
+    @Override
+    public void write(int offset, BigInteger word)
+    {
+        byte b = (byte) word.intValue();
+        this.buffer[this.length++] = b;
+        if (b == '\n' || this.length == this.buffer.length) {
+            this.flush();
+        }
+    }
+    
+    @Override
+    public void flush()
+    {
+        if (this.length == 0) {
+            return;
+        }
+        System.out.write(this.buffer, 0, this.length);
+        System.out.flush();
+        this.settings.printOccurred = this.buffer[this.length - 1] != '\n';
+        this.length = 0;
+    }
+}
@@ -7,6 +7,8 @@ import net.jaraonthe.java.asb.ast.variable.Parameter;
 import net.jaraonthe.java.asb.ast.variable.Variable;
 import net.jaraonthe.java.asb.exception.ConstraintException;
 import net.jaraonthe.java.asb.interpret.Context;
+import net.jaraonthe.java.asb.interpret.debug.UndoLog;
+import net.jaraonthe.java.asb.interpret.debug.Watchpoints;
 
 /**
  * A numeric value that stores the value directly.
@@ -25,6 +27,21 @@ public class NumericValueStore extends NumericValue
      */
     private final boolean isImmediate;
     
+    /**
+     * Records writes for reverse execution. Null if writes aren't recorded.
+     */
+    private UndoLog undoLog = null;
+    
+    /**
+     * The slot of this value within the undo log.
+     */
+    private int undoSlot;
+    
+    /**
+     * Is notified of changes of this value. Null if this value isn't watched.
+     */
+    private Watchpoints watchpoints = null;
+    
     /**
      * Creates a new numeric value. The value is initialized to 0.
      * 
@@ -153,6 +170,69 @@ public class NumericValueStore extends NumericValue
         return new BigInteger(extended);
     }
     
+    /**
+     * @param text
+     * @return The number given as text (decimal, 0x, or 0b; optionally
+     *         negative), or null if text is not a valid number
+     */
+    public static BigInteger parseBigInteger(String text)
+    {
+        boolean negative = text.startsWith("-");
+        if (negative) {
+            text = text.substring(1);
+        }
+        
+        int radix = 10;
+        if (text.startsWith("0x") || text.startsWith("0X")) {
+            radix = 16;
+            text  = text.substring(2);
+        } else if (text.startsWith("0b") || text.startsWith("0B")) {
+            radix = 2;
+            text  = text.substring(2);
+        }
+        if (text.isEmpty() || text.startsWith("-") || text.startsWith("+")) {
+            return null;
+        }
+        
+        try {
+            BigInteger value = new BigInteger(text, radix);
+            return negative ? value.negate() : value;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Records all writes to this value in the given undo log from now on.
+     * 
+     * @param undoLog
+     * @param slot    The slot of this value within the undo log
+     */
+    public void setUndoLog(UndoLog undoLog, int slot)
+    {
+        this.undoLog  = undoLog;
+        this.undoSlot = slot;
+    }
+    
+    /**
+     * Notifies the given watchpoints of all changes of this value from now on.
+     * 
+     * @param watchpoints May be null (this value isn't watched)
+     */
+    public void setWatchpoints(Watchpoints watchpoints)
+    {
+        this.watchpoints = watchpoints;
+    }
+    
+    /**
+     * @return True if this is the value of an /immediate parameter, which is
+     *         stored as it is given (i.e. it may be negative)
+     */
+    public boolean isImmediate()
+    {
+        return this.isImmediate;
+    }
+    
     @Override
     public BigInteger read(Context context)
     {
@@ -163,11 +243,19 @@ public class NumericValueStore extends NumericValue
     public void write(BigInteger value, Context context)
     {
         this.checkValueLength(value);
+        BigInteger oldValue = this.value;
+        if (this.undoLog != null) {
+            this.undoLog.recordRegister(this.undoSlot, oldValue);
+        }
         
         this.value = value;
         if (!this.isImmediate) {
             this.value = NumericValueStore.normalizeBigInteger(value, this.length);
         }
+        
+        if (this.watchpoints != null) {
+            this.watchpoints.registerWritten(this, oldValue, this.value);
+        }
     }
 
     @Override
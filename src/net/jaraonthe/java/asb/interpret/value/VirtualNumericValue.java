@@ -56,6 +56,15 @@ public class VirtualNumericValue extends NumericValue
         }
     }
     
+    /**
+     * @return The value stored in this register. Null if this virtual register
+     *         has no store
+     */
+    public NumericValueStore getStore()
+    {
+        return this.store;
+    }
+    
     @Override
     public BigInteger read(Context context) throws RuntimeError
     {
@@ -71,7 +80,16 @@ public class VirtualNumericValue extends NumericValue
             newFrame.addValue(this.store);
         }
         
-        this.register.getGetterImplementation().interpret(context.withFrame(newFrame));
+        if (context.profiler == null) {
+            this.register.getGetterImplementation().interpret(context.withFrame(newFrame));
+        } else {
+            context.profiler.enterGetter(this.register);
+            try {
+                this.register.getGetterImplementation().interpret(context.withFrame(newFrame));
+            } finally {
+                context.profiler.exit();
+            }
+        }
         
         return this.lastRead = out.read(context);
     }
@@ -94,7 +112,16 @@ public class VirtualNumericValue extends NumericValue
             newFrame.addValue(this.store);
         }
         
-        this.register.getSetterImplementation().interpret(context.withFrame(newFrame));
+        if (context.profiler == null) {
+            this.register.getSetterImplementation().interpret(context.withFrame(newFrame));
+        } else {
+            context.profiler.enterSetter(this.register);
+            try {
+                this.register.getSetterImplementation().interpret(context.withFrame(newFrame));
+            } finally {
+                context.profiler.exit();
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,196 @@
+package net.jaraonthe.java.asb.optimize;
+
+import net.jaraonthe.java.asb.ast.command.Command;
+import net.jaraonthe.java.asb.ast.invocation.Argument;
+import net.jaraonthe.java.asb.ast.invocation.CommandInvocation;
+import net.jaraonthe.java.asb.ast.invocation.ImmediateArgument;
+import net.jaraonthe.java.asb.ast.invocation.Invocation;
+import net.jaraonthe.java.asb.built_in.Arithmetic;
+import net.jaraonthe.java.asb.built_in.BuiltInFunction;
+import net.jaraonthe.java.asb.built_in.Mov;
+import net.jaraonthe.java.asb.built_in.MovWords;
+import net.jaraonthe.java.asb.built_in.Shift;
+import net.jaraonthe.java.asb.built_in.SignExtend;
+import net.jaraonthe.java.asb.exception.ConstraintException;
+import net.jaraonthe.java.asb.exception.RuntimeError;
+import net.jaraonthe.java.asb.interpret.Context;
+import net.jaraonthe.java.asb.interpret.value.NumericValue;
+import net.jaraonthe.java.asb.interpret.value.NumericValueStore;
+import net.jaraonthe.java.asb.interpret.value.Value;
+
+/**
+ * A resolved built-in function invocation that is executed directly on the
+ * caller's frame, i.e. without creating a new frame for the invoked function.
+ * This is what superinstructions are made of.<br>
+ *
+ * Only a handful of built-in functions (those that only operate on numeric
+ * values and don't affect program flow) can be executed directly, see
+ * {@link #isExecutable()}. For all others this only provides the argument
+ * values.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+class DirectInvocation
+{
+    /**
+     * The invocation that is executed directly.
+     */
+    public final CommandInvocation invocation;
+
+    /**
+     * The invoked built-in function.
+     */
+    public final Command function;
+
+    /**
+     * Immediate argument values, which are computed once when this is created.
+     * Null for all other arguments.
+     */
+    private final NumericValue[] immediates;
+
+
+    /**
+     * @param invocation
+     * @throws ConstraintException if an immediate argument doesn't fit its
+     *                             parameter
+     */
+    private DirectInvocation(CommandInvocation invocation) throws ConstraintException
+    {
+        this.invocation = invocation;
+        this.function   = invocation.getInvokedCommand();
+        this.immediates = new NumericValue[invocation.getArguments().size()];
+
+        int i = 0;
+        for (Argument argument : invocation.getArguments()) {
+            if (argument instanceof ImmediateArgument) {
+                this.immediates[i] = new NumericValueStore(
+                    this.function.getParameterAt(i),
+                    (ImmediateArgument) argument
+                );
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Creates a DirectInvocation from the given invocation, if possible.
+     *
+     * @param invocation
+     * @return Null if the given invocation cannot be executed directly
+     */
+    public static DirectInvocation from(Invocation invocation)
+    {
+        if (!(invocation instanceof CommandInvocation)) {
+            return null;
+        }
+        CommandInvocation ci = (CommandInvocation) invocation;
+        if (!ci.isResolved() || !(ci.getInvokedCommand() instanceof BuiltInFunction)) {
+            return null;
+        }
+
+        try {
+            return new DirectInvocation(ci);
+        } catch (ConstraintException e) {
+            // This will be reported when executing the invocation normally
+            return null;
+        }
+    }
+
+    /**
+     * @return True if the invoked built-in function can be executed directly
+     *         via {@link #interpret(Context)}
+     */
+    public boolean isExecutable()
+    {
+        return this.function.getInterpretable() instanceof Arithmetic
+            || this.function.getInterpretable() instanceof Mov
+            || this.function.getInterpretable() instanceof MovWords
+            || this.function.getInterpretable() instanceof Shift
+            || this.function.getInterpretable() instanceof SignExtend;
+    }
+
+
+    /**
+     * Executes the invocation, which has the same effect as
+     * {@link CommandInvocation#interpret(Context)}.<br>
+     * 
+     * Must only be used if {@link #isExecutable()} is true.
+     *
+     * @param context The caller's context
+     * @throws RuntimeError
+     */
+    public void interpret(Context context) throws RuntimeError
+    {
+        try {
+            if (this.function.getInterpretable() instanceof Arithmetic) {
+                ((Arithmetic) this.function.getInterpretable()).calculate(
+                    context,
+                    this.value(0, context),
+                    this.value(1, context),
+                    this.value(2, context)
+                );
+            } else if (this.function.getInterpretable() instanceof Mov) {
+                ((Mov) this.function.getInterpretable()).move(
+                    context,
+                    this.value(0, context),
+                    this.value(1, context)
+                );
+            } else if (this.function.getInterpretable() instanceof MovWords) {
+                ((MovWords) this.function.getInterpretable()).move(
+                    context,
+                    this.value(0, context),
+                    this.value(1, context)
+                );
+            } else if (this.function.getInterpretable() instanceof Shift) {
+                ((Shift) this.function.getInterpretable()).calculate(
+                    context,
+                    this.value(0, context),
+                    this.value(1, context),
+                    this.value(2, context)
+                );
+            } else {
+                SignExtend.extend(
+                    context,
+                    this.value(0, context),
+                    this.value(1, context)
+                );
+            }
+        } catch (ConstraintException e) {
+            throw this.error(e);
+        }
+    }
+
+    /**
+     * Provides the value of the argument at the given index, seen from the
+     * caller's context.
+     *
+     * @param index
+     * @param context The caller's context
+     *
+     * @return
+     *
+     * @throws ConstraintException
+     * @throws RuntimeError
+     */
+    public NumericValue value(int index, Context context) throws ConstraintException, RuntimeError
+    {
+        if (this.immediates[index] != null) {
+            return this.immediates[index];
+        }
+        return (NumericValue) Value.fromArgument(
+            this.invocation.getArguments().get(index),
+            this.function.getParameterAt(index),
+            context
+        );
+    }
+
+    /**
+     * @param e
+     * @return A RuntimeError that points to the invocation, just like the
+     *         invocation itself would report the error
+     */
+    public RuntimeError error(ConstraintException e)
+    {
+        return new RuntimeError(e.getMessage() + " at " + this.invocation.getOrigin());
+    }
+}
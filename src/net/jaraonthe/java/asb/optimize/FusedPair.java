@@ -0,0 +1,47 @@
+package net.jaraonthe.java.asb.optimize;
+
+import java.util.List;
+
+import net.jaraonthe.java.asb.exception.RuntimeError;
+import net.jaraonthe.java.asb.interpret.Context;
+
+/**
+ * Two consecutive built-in function invocations that are executed in one go,
+ * directly on the caller's frame.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+class FusedPair extends Superinstruction
+{
+    private final DirectInvocation first;
+    private final DirectInvocation second;
+
+
+    /**
+     * Both invocations must be {@link DirectInvocation#isExecutable()
+     * executable}.
+     *
+     * @param first
+     * @param second
+     */
+    public FusedPair(DirectInvocation first, DirectInvocation second)
+    {
+        super(List.of(first.invocation, second.invocation));
+        this.first  = first;
+        this.second = second;
+    }
+
+    @Override
+    public String getName()
+    {
+        return this.first.function.name + "+" + this.second.function.name;
+    }
+
+    @Override
+    protected void execute(Context context) throws RuntimeError
+    {
+        this.first.interpret(context);
+        this.second.interpret(context);
+        context.frame.programCounter++;
+    }
+}
@@ -0,0 +1,143 @@
+package net.jaraonthe.java.asb.optimize;
+
+import net.jaraonthe.java.asb.ast.command.Implementation;
+import net.jaraonthe.java.asb.ast.invocation.Argument;
+import net.jaraonthe.java.asb.ast.invocation.CommandInvocation;
+import net.jaraonthe.java.asb.ast.invocation.Invocation;
+import net.jaraonthe.java.asb.ast.invocation.LabelArgument;
+import net.jaraonthe.java.asb.built_in.Jump;
+import net.jaraonthe.java.asb.built_in.Jumpif;
+import net.jaraonthe.java.asb.built_in.Mov;
+
+/**
+ * Fuses hot Invocation sequences within implementation programs into
+ * {@link Superinstruction superinstructions}.<br>
+ *
+ * This is driven by the dynamic pair profile gathered by {@link
+ * Implementation}: Once an Invocation has been directly followed by the next
+ * one {@link #FUSION_THRESHOLD} times, fusing the sequence around this pair is
+ * attempted. Sequences that cannot be fused are left as they are.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class Peephole
+{
+    /**
+     * How often a pair of Invocations has to be executed in sequence before
+     * it is fused.
+     */
+    public static final int FUSION_THRESHOLD = 64;
+
+
+    /**
+     * Attempts to fuse the sequence around the given hot pair.
+     *
+     * @param implementation
+     * @param position       The program position of the first Invocation of
+     *                       the hot pair
+     */
+    public static void fuse(Implementation implementation, int position)
+    {
+        // The pair may be part of a select pattern, either as
+        // &jumpif+&mov (start at position), &mov+&jump (start at position-1),
+        // or &mov+<end> (start at position-3)
+        for (int start : new int[]{position, position - 1, position - 3}) {
+            Superinstruction select = Peephole.matchSelect(implementation, start);
+            if (select != null) {
+                implementation.replace(start, select);
+                return;
+            }
+        }
+
+        Superinstruction pair = Peephole.matchPair(implementation, position);
+        if (pair != null) {
+            implementation.replace(position, pair);
+        }
+    }
+
+    /**
+     * @param implementation
+     * @param position
+     * @return A FusedPair made of the Invocations at the given position and
+     *         the next one, or null if they cannot be fused
+     */
+    private static Superinstruction matchPair(Implementation implementation, int position)
+    {
+        if (position + 1 >= implementation.size()) {
+            return null;
+        }
+
+        DirectInvocation first  = DirectInvocation.from(implementation.get(position));
+        DirectInvocation second = DirectInvocation.from(implementation.get(position + 1));
+        if (
+            first == null || !first.isExecutable()
+            || second == null || !second.isExecutable()
+        ) {
+            return null;
+        }
+
+        return new FusedPair(first, second);
+    }
+
+    /**
+     * @param implementation
+     * @param start
+     * @return A Select made of the Invocations at the given position and the
+     *         three following ones, or null if they don't form the select
+     *         pattern
+     */
+    private static Superinstruction matchSelect(Implementation implementation, int start)
+    {
+        if (start < 0 || start + 3 >= implementation.size()) {
+            return null;
+        }
+
+        DirectInvocation jumpif   = DirectInvocation.from(implementation.get(start));
+        DirectInvocation movFalse = DirectInvocation.from(implementation.get(start + 1));
+        Invocation jump           = implementation.get(start + 2);
+        DirectInvocation movTrue  = DirectInvocation.from(implementation.get(start + 3));
+        if (
+            jumpif == null || !(jumpif.function.getInterpretable() instanceof Jumpif)
+            || movFalse == null || !(movFalse.function.getInterpretable() instanceof Mov)
+            || movTrue == null || !(movTrue.function.getInterpretable() instanceof Mov)
+            || !Peephole.isJump(jump)
+        ) {
+            return null;
+        }
+
+        if (
+            Peephole.getLabelPosition(jumpif.invocation, 2) != start + 3
+            || Peephole.getLabelPosition((CommandInvocation) jump, 0) != start + 4
+        ) {
+            return null;
+        }
+
+        return new Select(jumpif, movFalse, jump, movTrue);
+    }
+
+    /**
+     * @param invocation
+     * @return True if invocation is a resolved {@code &jump}
+     */
+    private static boolean isJump(Invocation invocation)
+    {
+        return invocation instanceof CommandInvocation
+            && invocation.isResolved()
+            && ((CommandInvocation) invocation).getInvokedCommand().getInterpretable() instanceof Jump;
+    }
+
+    /**
+     * @param invocation
+     * @param index
+     * @return The label position given by the argument at the given index,
+     *         or -1 if this argument is not a label
+     */
+    private static int getLabelPosition(CommandInvocation invocation, int index)
+    {
+        Argument argument = invocation.getArguments().get(index);
+        if (!(argument instanceof LabelArgument)) {
+            return -1;
+        }
+        return ((LabelArgument) argument).getLabelPosition();
+    }
+}
@@ -0,0 +1,79 @@
+package net.jaraonthe.java.asb.optimize;
+
+import java.util.List;
+
+import net.jaraonthe.java.asb.ast.invocation.Invocation;
+import net.jaraonthe.java.asb.built_in.Jumpif;
+import net.jaraonthe.java.asb.exception.ConstraintException;
+import net.jaraonthe.java.asb.exception.RuntimeError;
+import net.jaraonthe.java.asb.interpret.Context;
+
+/**
+ * A conditional move, which replaces this common sequence:<br>
+ * <pre>
+ *     &jumpif a OP b, true
+ *     &mov dst, falseValue
+ *     &jump end
+ *   true:
+ *     &mov dst, trueValue
+ *   end:
+ * </pre>
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+class Select extends Superinstruction
+{
+    private final DirectInvocation jumpif;
+    private final DirectInvocation movFalse;
+    private final DirectInvocation movTrue;
+
+
+    /**
+     * The invocations must form the pattern described in the class doc. This
+     * is checked by {@link Peephole}.
+     *
+     * @param jumpif
+     * @param movFalse
+     * @param jump
+     * @param movTrue
+     */
+    public Select(
+        DirectInvocation jumpif,
+        DirectInvocation movFalse,
+        Invocation jump,
+        DirectInvocation movTrue
+    ) {
+        super(List.of(jumpif.invocation, movFalse.invocation, jump, movTrue.invocation));
+        this.jumpif   = jumpif;
+        this.movFalse = movFalse;
+        this.movTrue  = movTrue;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "&select";
+    }
+
+    @Override
+    protected void execute(Context context) throws RuntimeError
+    {
+        boolean condition;
+        try {
+            condition = ((Jumpif) this.jumpif.function.getInterpretable()).compare(
+                context,
+                this.jumpif.value(0, context),
+                this.jumpif.value(1, context)
+            );
+        } catch (ConstraintException e) {
+            throw this.jumpif.error(e);
+        }
+
+        if (condition) {
+            this.movTrue.interpret(context);
+        } else {
+            this.movFalse.interpret(context);
+        }
+        context.frame.programCounter += 3;
+    }
+}
@@ -0,0 +1,297 @@
+package net.jaraonthe.java.asb.optimize;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jaraonthe.java.asb.ast.AST;
+import net.jaraonthe.java.asb.ast.command.Command;
+import net.jaraonthe.java.asb.ast.command.Implementation;
+import net.jaraonthe.java.asb.ast.invocation.Argument;
+import net.jaraonthe.java.asb.ast.invocation.CommandInvocation;
+import net.jaraonthe.java.asb.ast.invocation.ImmediateArgument;
+import net.jaraonthe.java.asb.ast.invocation.Invocation;
+import net.jaraonthe.java.asb.ast.invocation.VariableArgument;
+import net.jaraonthe.java.asb.ast.variable.Parameter;
+import net.jaraonthe.java.asb.ast.variable.Register;
+import net.jaraonthe.java.asb.ast.variable.Variable;
+import net.jaraonthe.java.asb.ast.variable.VirtualRegister;
+import net.jaraonthe.java.asb.exception.ConstraintException;
+import net.jaraonthe.java.asb.exception.RuntimeError;
+import net.jaraonthe.java.asb.interpret.Frame;
+import net.jaraonthe.java.asb.interpret.value.NumericValueStore;
+import net.jaraonthe.java.asb.optimize.ir.Instruction;
+import net.jaraonthe.java.asb.optimize.ir.Optimizer;
+import net.jaraonthe.java.asb.parse.Constraints;
+
+/**
+ * Specializes command implementations for the constant arguments they are
+ * invoked with.<br>
+ *
+ * An invocation which passes immediates to /immediate parameters of a command
+ * gets its own copy of the command's implementation, in which the values of
+ * these parameters are folded in (unless the implementation may write to
+ * them): Bitwise access with such a parameter as position uses a static
+ * position instead (if it is known to be within the accessed variable), and
+ * the copy is run through the {@link Optimizer} with these parameters being
+ * constant (so that e.g. {@code &jumpif} which only compares constants
+ * becomes {@code &jump}, or disappears).<br>
+ *
+ * Invocations with the same constant arguments share the same copy. At most
+ * {@link #MAX_SPECIALIZATIONS} copies are made per implementation, and none
+ * if nothing can be folded.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class Specializer
+{
+    /**
+     * The maximum amount of specialized copies per implementation.
+     */
+    public static final int MAX_SPECIALIZATIONS = 8;
+
+    private final AST ast;
+
+    /**
+     * Implementation => constant argument values (null for all other
+     * arguments) => specialized copy, or null if nothing can be folded.
+     */
+    private final Map<Implementation, Map<List<BigInteger>, Implementation>> copies = new HashMap<>();
+
+
+    /**
+     * @param ast
+     */
+    private Specializer(AST ast)
+    {
+        this.ast = ast;
+    }
+
+    /**
+     * Specializes all invocations in the given AST (in the userland program
+     * and in implementations) that pass constant arguments to a command
+     * implementation.<br>
+     *
+     * This must be run after the AST has been resolved completely, and before
+     * it is interpreted.
+     *
+     * @param ast
+     */
+    public static void run(AST ast)
+    {
+        List<Implementation> implementations = new ArrayList<>();
+        for (Command command : ast.getCommands()) {
+            if (command.getInterpretable() instanceof Implementation) {
+                implementations.add((Implementation) command.getInterpretable());
+            }
+        }
+        for (Register register : ast.getRegisters()) {
+            if (register instanceof VirtualRegister) {
+                VirtualRegister vr = (VirtualRegister) register;
+                implementations.add(vr.getGetterImplementation());
+                implementations.add(vr.getSetterImplementation());
+            }
+        }
+
+        Specializer specializer = new Specializer(ast);
+        for (Invocation invocation : ast.getProgram()) {
+            specializer.specialize(invocation);
+        }
+        for (Implementation implementation : implementations) {
+            if (implementation == null) {
+                continue;
+            }
+            for (Invocation invocation : implementation) {
+                specializer.specialize(invocation);
+            }
+        }
+    }
+
+    /**
+     * Specializes the given invocation (if possible).
+     *
+     * @param invocation
+     */
+    private void specialize(Invocation invocation)
+    {
+        if (!(invocation instanceof CommandInvocation) || !invocation.isResolved()) {
+            return;
+        }
+        CommandInvocation ci = (CommandInvocation) invocation;
+        Command command      = ci.getInvokedCommand();
+        if (!(command.getInterpretable() instanceof Implementation) || command.useCallerFrame()) {
+            return;
+        }
+        Implementation implementation = (Implementation) command.getInterpretable();
+
+        // The values of the constant parameters
+        Frame constants      = new Frame();
+        List<BigInteger> key = new ArrayList<>(ci.getArguments().size());
+        boolean hasConstants = false;
+        int i = 0;
+        for (Argument argument : ci.getArguments()) {
+            Parameter parameter = command.getParameterAt(i);
+            i++;
+            if (
+                parameter.type != Parameter.Type.IMMEDIATE
+                || !(argument instanceof ImmediateArgument)
+                || Specializer.mayWrite(implementation, parameter)
+            ) {
+                key.add(null);
+                continue;
+            }
+            try {
+                constants.addValue(new NumericValueStore(parameter, (ImmediateArgument) argument));
+            } catch (ConstraintException e) {
+                // This will be reported when executing the invocation
+                return;
+            }
+            key.add(((ImmediateArgument) argument).immediate);
+            hasConstants = true;
+        }
+        if (!hasConstants) {
+            return;
+        }
+
+        Map<List<BigInteger>, Implementation> copies = this.copies.computeIfAbsent(
+            implementation,
+            k -> new HashMap<>()
+        );
+        if (!copies.containsKey(key)) {
+            if (implementation.getSpecializations().size() >= Specializer.MAX_SPECIALIZATIONS) {
+                return;
+            }
+            Implementation copy = this.fold(implementation, constants);
+            if (copy != null) {
+                implementation.addSpecialization(copy);
+            }
+            copies.put(key, copy);
+        }
+        ci.setSpecialized(copies.get(key));
+    }
+
+    /**
+     * @param implementation
+     * @param constants      Contains the values of the constant parameters
+     *
+     * @return A copy of implementation with the constants folded in. Null if
+     *         nothing can be folded
+     */
+    private Implementation fold(Implementation implementation, Frame constants)
+    {
+        Implementation copy = implementation.copy();
+        boolean folded      = false;
+        for (int position = 0; position < copy.size(); position++) {
+            if (!(copy.get(position) instanceof CommandInvocation) || !copy.get(position).isResolved()) {
+                continue;
+            }
+            CommandInvocation original = (CommandInvocation) copy.get(position);
+            CommandInvocation ci       = this.foldPositions(original, constants);
+            if (ci != original) {
+                copy.replace(position, ci);
+                folded = true;
+            }
+        }
+        folded |= Optimizer.optimize(this.ast, copy, constants);
+        return folded ? copy : null;
+    }
+
+    /**
+     * @param ci
+     * @param constants
+     *
+     * @return A copy of ci in which constant bitwise access positions are
+     *         static. ci itself if there are none
+     */
+    private CommandInvocation foldPositions(CommandInvocation ci, Frame constants)
+    {
+        List<Argument> arguments = new ArrayList<>(ci.getArguments());
+        boolean folded           = false;
+        for (int i = 0; i < arguments.size(); i++) {
+            if (!(arguments.get(i) instanceof VariableArgument)) {
+                continue;
+            }
+            VariableArgument va = (VariableArgument) arguments.get(i);
+            if (!va.hasDynamicPosition()) {
+                continue;
+            }
+            int from = va.fromPosition != -1 ? va.fromPosition : this.getPosition(va, va.fromPositionVariable, constants);
+            int to   = va.toPosition != -1 ? va.toPosition : this.getPosition(va, va.toPositionVariable, constants);
+
+            VariableArgument replacement;
+            if (from != -1 && to != -1) {
+                replacement = new VariableArgument(va.variable, from, to);
+            } else if (from != -1 && va.fromPosition == -1) {
+                replacement = new VariableArgument(va.variable, from, va.toPositionVariable);
+            } else if (to != -1 && va.toPosition == -1) {
+                replacement = new VariableArgument(va.variable, va.fromPositionVariable, to);
+            } else {
+                continue;
+            }
+            arguments.set(i, replacement);
+            folded = true;
+        }
+        return folded ? ci.withArguments(arguments) : ci;
+    }
+
+    /**
+     * @param va       Accessing a variable bitwise
+     * @param variable A position variable of va
+     * @param constants
+     *
+     * @return The position given by variable, if it is a constant parameter
+     *         and the position is known to be within va's variable (so that
+     *         accessing it cannot fail). -1 otherwise
+     */
+    private int getPosition(VariableArgument va, Variable variable, Frame constants)
+    {
+        if (
+            !constants.valueExistsLocally(variable.name)
+            || va.variable.minLength != va.variable.maxLength
+            || va.variable.maxLength < 1
+        ) {
+            return -1;
+        }
+        try {
+            int position = constants.getNumericValue(variable.name).read(null).intValueExact();
+            if (!Constraints.isValidPosition(position) || position >= va.variable.maxLength) {
+                return -1;
+            }
+            return position;
+        } catch (ConstraintException | RuntimeError | ArithmeticException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param implementation
+     * @param parameter
+     *
+     * @return True if the given implementation may write to the given
+     *         parameter (i.e. it is passed to anything else than a read-only
+     *         parameter of a built-in function)
+     */
+    private static boolean mayWrite(Implementation implementation, Parameter parameter)
+    {
+        for (Invocation invocation : implementation) {
+            if (!(invocation instanceof CommandInvocation)) {
+                continue;
+            }
+            CommandInvocation ci = (CommandInvocation) invocation;
+            int i = 0;
+            for (Argument argument : ci.getArguments()) {
+                if (
+                    argument instanceof VariableArgument
+                    && ((VariableArgument) argument).variable == parameter
+                    && (!ci.isResolved() || !Instruction.isReadOnly(ci, i))
+                ) {
+                    return true;
+                }
+                i++;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,103 @@
+package net.jaraonthe.java.asb.optimize;
+
+import java.util.List;
+
+import net.jaraonthe.java.asb.ast.AST;
+import net.jaraonthe.java.asb.ast.command.Implementation;
+import net.jaraonthe.java.asb.ast.invocation.Invocation;
+import net.jaraonthe.java.asb.exception.RuntimeError;
+import net.jaraonthe.java.asb.interpret.Context;
+import net.jaraonthe.java.asb.parse.Origin;
+
+/**
+ * A superinstruction replaces a sequence of Invocations within an
+ * implementation program. It executes the whole sequence at once and then
+ * sets the program counter just like the sequence would have done.<br>
+ *
+ * Only the first Invocation of the sequence is replaced in the program, all
+ * other Invocations stay where they are. This way labels and jumps into the
+ * middle of the sequence still work as before.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public abstract class Superinstruction implements Invocation
+{
+    /**
+     * The Invocations this superinstruction is made of (in program order).
+     */
+    public final List<Invocation> replaced;
+
+    /**
+     * How often this superinstruction has been executed.
+     */
+    private long executionCount = 0;
+
+
+    /**
+     * @param replaced The Invocations this superinstruction is made of
+     */
+    protected Superinstruction(List<Invocation> replaced)
+    {
+        this.replaced = List.copyOf(replaced);
+    }
+
+    /**
+     * @return A short, human-readable name, e.g. "&add+&mov"
+     */
+    public abstract String getName();
+
+    /**
+     * @return How often this superinstruction has been executed
+     */
+    public long getExecutionCount()
+    {
+        return this.executionCount;
+    }
+
+    @Override
+    public Origin getOrigin()
+    {
+        return this.replaced.getFirst().getOrigin();
+    }
+
+    @Override
+    public boolean isResolved()
+    {
+        return true;
+    }
+
+    @Override
+    public Invocation resolve(AST ast, Implementation implementation)
+    {
+        return this;
+    }
+
+    @Override
+    public Invocation resolveLabelNames(AST ast, Implementation implementation)
+    {
+        return this;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.getName() + this.replaced;
+    }
+
+    @Override
+    public void interpret(Context context) throws RuntimeError
+    {
+        this.executionCount++;
+        this.execute(context);
+    }
+
+    /**
+     * Executes the replaced Invocations. When this is called, the program
+     * counter already points to the Invocation directly after the first
+     * replaced one.
+     *
+     * @param context
+     * @throws RuntimeError
+     */
+    protected abstract void execute(Context context) throws RuntimeError;
+}
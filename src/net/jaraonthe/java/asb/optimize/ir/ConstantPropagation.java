@@ -0,0 +1,130 @@
+package net.jaraonthe.java.asb.optimize.ir;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.jaraonthe.java.asb.ast.invocation.Argument;
+import net.jaraonthe.java.asb.ast.invocation.CommandInvocation;
+import net.jaraonthe.java.asb.ast.invocation.ImmediateArgument;
+import net.jaraonthe.java.asb.ast.invocation.VariableArgument;
+import net.jaraonthe.java.asb.ast.variable.LocalVariable;
+import net.jaraonthe.java.asb.built_in.Mov;
+import net.jaraonthe.java.asb.exception.ConstraintException;
+import net.jaraonthe.java.asb.interpret.Frame;
+
+/**
+ * Constant and copy propagation, based on {@link LocalValues}:<br>
+ * - {@code &jumpif} which only compares constants becomes {@code &jump} if
+ *   taken, or is removed otherwise.<br>
+ * - {@code &mov}, arithmetic, logical, {@code &not}, and shift functions
+ *   which only operate on constants become {@code &mov} of the result into
+ *   the destination (if that is a local variable).<br>
+ * - A local variable read by a built-in function is replaced by the local
+ *   variable it is a copy of.
+ *
+ * Instructions which fail when executed are left as they are.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+class ConstantPropagation
+{
+    /**
+     * @param program
+     * @param parameters Contains the values of constant parameters. May be
+     *                   null
+     *
+     * @return True if the program has been changed
+     */
+    static boolean run(Program program, Frame parameters)
+    {
+        LocalValues values = LocalValues.analyze(program, parameters);
+        boolean changed    = false;
+        for (Instruction instruction : List.copyOf(program.instructions)) {
+            LocalValues.State state = values.getState(instruction);
+            if (state == null || !(instruction.invocation instanceof CommandInvocation)) {
+                continue;
+            }
+            try {
+                if (instruction.kind == Instruction.Kind.BRANCH) {
+                    Boolean taken = values.evaluateCondition(instruction, state);
+                    if (taken != null) {
+                        if (taken) {
+                            program.replaceWithJump(instruction, instruction.getTarget());
+                        } else {
+                            program.remove(instruction);
+                        }
+                        changed = true;
+                        continue;
+                    }
+                }
+
+                BigInteger value = values.evaluate(instruction, state);
+                if (value != null && !ConstantPropagation.isMovImmediate(instruction)) {
+                    program.replace(
+                        instruction,
+                        program.invoke(
+                            "&mov",
+                            instruction.invocation,
+                            new VariableArgument(instruction.getDestination()),
+                            new ImmediateArgument(value, value.toString())
+                        )
+                    );
+                    changed = true;
+                    continue;
+                }
+            } catch (ConstraintException e) {
+                // Cannot be replaced - leaving it as it is
+                continue;
+            }
+
+            changed |= ConstantPropagation.propagateCopies(program, instruction, state);
+        }
+        return changed;
+    }
+
+    /**
+     * @param instruction
+     * @return True if the given instruction is {@code &mov} of an immediate
+     */
+    private static boolean isMovImmediate(Instruction instruction)
+    {
+        return instruction.getInterpretable() instanceof Mov
+            && ((Mov) instruction.getInterpretable()).getSrcType() == Mov.OperandType.IMMEDIATE;
+    }
+
+    /**
+     * Replaces local variables read by the given instruction by the local
+     * variables they are copies of.
+     *
+     * @param program
+     * @param instruction
+     * @param state       The state before the instruction
+     *
+     * @return True if the instruction has been changed
+     */
+    private static boolean propagateCopies(Program program, Instruction instruction, LocalValues.State state)
+    {
+        CommandInvocation ci     = (CommandInvocation) instruction.invocation;
+        List<Argument> arguments = new ArrayList<>(ci.getArguments());
+        boolean changed          = false;
+        for (int i = 0; i < arguments.size(); i++) {
+            if (!(arguments.get(i) instanceof VariableArgument) || !Instruction.isReadOnly(ci, i)) {
+                continue;
+            }
+            VariableArgument va = (VariableArgument) arguments.get(i);
+            if (va.hasPosition() || !(va.variable instanceof LocalVariable)) {
+                continue;
+            }
+            LocalVariable original = state.copies.get(va.variable);
+            if (original != null) {
+                arguments.set(i, new VariableArgument(original));
+                changed = true;
+            }
+        }
+        if (changed) {
+            program.replace(instruction, ci.withArguments(arguments));
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,158 @@
+package net.jaraonthe.java.asb.optimize.ir;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.jaraonthe.java.asb.ast.invocation.Argument;
+import net.jaraonthe.java.asb.ast.invocation.CommandInvocation;
+import net.jaraonthe.java.asb.ast.invocation.ImmediateArgument;
+import net.jaraonthe.java.asb.ast.invocation.LocalVariableInitialization;
+import net.jaraonthe.java.asb.ast.invocation.VariableArgument;
+import net.jaraonthe.java.asb.ast.variable.LocalVariable;
+import net.jaraonthe.java.asb.built_in.Mov;
+import net.jaraonthe.java.asb.interpret.value.NumericValue;
+
+/**
+ * Removes {@code &mov}s into local variables which are not read afterwards
+ * (as determined by a liveness analysis), as well as local variables which
+ * are not used at all.<br>
+ *
+ * Only stores which cannot fail are removed, i.e. {@code &mov}s of an
+ * immediate that fits into the destination, or of another initialized local
+ * variable of the same length.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+class DeadStoreElimination
+{
+    /**
+     * @param program
+     * @return True if the program has been changed
+     */
+    static boolean run(Program program)
+    {
+        Map<Instruction, Set<LocalVariable>> liveOut = DeadStoreElimination.analyzeLiveness(program);
+        LocalValues values                           = LocalValues.analyze(program, null);
+
+        Set<LocalVariable> used = new HashSet<>();
+        for (Instruction instruction : program.instructions) {
+            used.addAll(DeadStoreElimination.getUses(instruction));
+            if (instruction.getDestination() != null) {
+                used.add(instruction.getDestination());
+            }
+        }
+
+        boolean changed = false;
+        for (Instruction instruction : List.copyOf(program.instructions)) {
+            LocalValues.State state = values.getState(instruction);
+            if (
+                instruction.invocation instanceof LocalVariableInitialization
+                && !used.contains(((LocalVariableInitialization) instruction.invocation).localVariable)
+                && Instruction.isFixedLocal(((LocalVariableInitialization) instruction.invocation).localVariable)
+            ) {
+                program.remove(instruction);
+                changed = true;
+
+            } else if (
+                state != null
+                && DeadStoreElimination.isSafeMov(instruction, state)
+                && !liveOut.get(instruction).contains(instruction.getDestination())
+            ) {
+                program.remove(instruction);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @param instruction
+     * @param state       The state before the instruction
+     *
+     * @return True if the given instruction is a {@code &mov} into an
+     *         initialized local variable which cannot fail
+     */
+    private static boolean isSafeMov(Instruction instruction, LocalValues.State state)
+    {
+        if (!(instruction.getInterpretable() instanceof Mov)) {
+            return false;
+        }
+        LocalVariable dst = instruction.getDestination();
+        if (dst == null || !Instruction.isFixedLocal(dst) || !state.initialized.contains(dst)) {
+            return false;
+        }
+
+        Argument src = ((CommandInvocation) instruction.invocation).getArguments().get(1);
+        if (src instanceof ImmediateArgument) {
+            return NumericValue.bitLength(((ImmediateArgument) src).immediate) <= dst.maxLength;
+        }
+        LocalVariable copied = LocalValues.getCopySource(instruction);
+        return copied != null && state.initialized.contains(copied);
+    }
+
+    /**
+     * @param program
+     * @return Instruction => the local variables which may be read after it
+     *         (before they are overwritten)
+     */
+    private static Map<Instruction, Set<LocalVariable>> analyzeLiveness(Program program)
+    {
+        Map<Instruction, Set<LocalVariable>> liveIn  = new HashMap<>();
+        Map<Instruction, Set<LocalVariable>> liveOut = new HashMap<>();
+        for (Instruction instruction : program.instructions) {
+            liveIn.put(instruction, new HashSet<>());
+            liveOut.put(instruction, new HashSet<>());
+        }
+        liveIn.put(program.end, new HashSet<>());
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int p = program.size() - 1; p >= 0; p--) {
+                Instruction instruction = program.instructions.get(p);
+                Set<LocalVariable> out  = liveOut.get(instruction);
+                for (Instruction successor : program.successors(instruction)) {
+                    out.addAll(liveIn.get(successor));
+                }
+
+                Set<LocalVariable> in = new HashSet<>(out);
+                in.remove(instruction.getDestination());
+                in.addAll(DeadStoreElimination.getUses(instruction));
+                if (!in.equals(liveIn.get(instruction))) {
+                    liveIn.put(instruction, in);
+                    changed = true;
+                }
+            }
+        }
+        return liveOut;
+    }
+
+    /**
+     * @param instruction
+     * @return The local variables the given instruction may read
+     */
+    private static Set<LocalVariable> getUses(Instruction instruction)
+    {
+        Set<LocalVariable> uses = new HashSet<>();
+        if (instruction.invocation instanceof LocalVariableInitialization) {
+            LocalVariable variable = ((LocalVariableInitialization) instruction.invocation).localVariable;
+            if (variable.lengthVariable instanceof LocalVariable) {
+                uses.add((LocalVariable) variable.lengthVariable);
+            }
+            return uses;
+        }
+
+        List<Argument> arguments = ((CommandInvocation) instruction.invocation).getArguments();
+        for (int i = 0; i < arguments.size(); i++) {
+            if (i == 0 && instruction.getDestination() != null) {
+                // Only written
+                continue;
+            }
+            uses.addAll(Instruction.getLocalVariables(arguments.get(i)));
+        }
+        return uses;
+    }
+}
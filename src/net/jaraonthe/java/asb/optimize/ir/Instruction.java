@@ -0,0 +1,288 @@
+package net.jaraonthe.java.asb.optimize.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.jaraonthe.java.asb.ast.invocation.Argument;
+import net.jaraonthe.java.asb.ast.invocation.CommandInvocation;
+import net.jaraonthe.java.asb.ast.invocation.Invocation;
+import net.jaraonthe.java.asb.ast.invocation.LabelArgument;
+import net.jaraonthe.java.asb.ast.invocation.VariableArgument;
+import net.jaraonthe.java.asb.ast.variable.LocalVariable;
+import net.jaraonthe.java.asb.ast.variable.Variable;
+import net.jaraonthe.java.asb.built_in.Arithmetic;
+import net.jaraonthe.java.asb.built_in.Jump;
+import net.jaraonthe.java.asb.built_in.Jumpif;
+import net.jaraonthe.java.asb.built_in.Logical;
+import net.jaraonthe.java.asb.built_in.Mov;
+import net.jaraonthe.java.asb.built_in.Not;
+import net.jaraonthe.java.asb.built_in.Return;
+import net.jaraonthe.java.asb.built_in.Shift;
+import net.jaraonthe.java.asb.interpret.Interpretable;
+
+/**
+ * One node of a {@link Program}: an Invocation of the implementation
+ * program, along with the instructions its local label arguments point to.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class Instruction
+{
+    /**
+     * How execution continues after an instruction.
+     */
+    public enum Kind
+    {
+        /**
+         * {@code &jump}: at the target.
+         */
+        JUMP,
+
+        /**
+         * {@code &jumpif}: at the target or at the next instruction.
+         */
+        BRANCH,
+
+        /**
+         * {@code &return}: nowhere, the program is left.
+         */
+        RETURN,
+
+        /**
+         * Anything else: at the next instruction (or at any target, if the
+         * invocation has local label arguments).
+         */
+        OTHER;
+    }
+
+    Invocation invocation;
+
+    Instruction.Kind kind;
+
+    /**
+     * For each argument of the invocation: the instruction a local label
+     * argument points to ({@link Program#end} for the end of the program).
+     * Null for all other arguments.
+     */
+    Instruction[] targets;
+
+    /**
+     * The position within the program. This is kept up to date by the
+     * Program.
+     */
+    int position;
+
+
+    /**
+     * @param invocation Null for the end of the program
+     * @param position
+     */
+    Instruction(Invocation invocation, int position)
+    {
+        this.position = position;
+        this.setInvocation(invocation);
+    }
+
+    /**
+     * Sets the invocation. All targets are reset.
+     *
+     * @param invocation
+     */
+    void setInvocation(Invocation invocation)
+    {
+        this.invocation = invocation;
+        this.kind       = Instruction.kindOf(invocation);
+        this.targets    = new Instruction[
+            invocation instanceof CommandInvocation ? ((CommandInvocation) invocation).getArguments().size() : 0
+        ];
+    }
+
+    /**
+     * @return The Invocation this instruction consists of
+     */
+    public Invocation getInvocation()
+    {
+        return this.invocation;
+    }
+
+    /**
+     * @return How execution continues after this instruction
+     */
+    public Instruction.Kind getKind()
+    {
+        return this.kind;
+    }
+
+    /**
+     * @return The instruction a {@code &jump} or {@code &jumpif} jumps to
+     */
+    public Instruction getTarget()
+    {
+        return this.targets[this.getTargetIndex()];
+    }
+
+    /**
+     * @param target The instruction a {@code &jump} or {@code &jumpif} shall
+     *               jump to
+     */
+    void setTarget(Instruction target)
+    {
+        this.targets[this.getTargetIndex()] = target;
+    }
+
+    /**
+     * @return The argument index of the label of a {@code &jump} or
+     *         {@code &jumpif}
+     */
+    private int getTargetIndex()
+    {
+        switch (this.kind) {
+            case JUMP:
+                return 0;
+            case BRANCH:
+                return 2;
+            default:
+                throw new IllegalStateException("Instruction " + this.invocation + " has no target");
+        }
+    }
+
+    /**
+     * @return The invoked built-in function's or command's interpretable. Null
+     *         if this isn't a CommandInvocation
+     */
+    Interpretable getInterpretable()
+    {
+        if (!(this.invocation instanceof CommandInvocation)) {
+            return null;
+        }
+        return ((CommandInvocation) this.invocation).getInvokedCommand().getInterpretable();
+    }
+
+    /**
+     * @return The local variable this instruction overwrites completely
+     *         without reading it (i.e. the plain destination of a
+     *         {@code &mov} to a register, or of an arithmetic, logical,
+     *         {@code &not}, or shift function). Null if there is none
+     */
+    LocalVariable getDestination()
+    {
+        Interpretable interpretable = this.getInterpretable();
+        if (
+            !(
+                (interpretable instanceof Mov && ((Mov) interpretable).getDstType() == Mov.OperandType.REGISTER)
+                || interpretable instanceof Arithmetic
+                || interpretable instanceof Logical
+                || interpretable instanceof Not
+                || interpretable instanceof Shift
+            )
+        ) {
+            return null;
+        }
+        Argument dst = ((CommandInvocation) this.invocation).getArguments().get(0);
+        if (
+            !(dst instanceof VariableArgument)
+            || ((VariableArgument) dst).hasPosition()
+            || !(((VariableArgument) dst).variable instanceof LocalVariable)
+        ) {
+            return null;
+        }
+        return (LocalVariable) ((VariableArgument) dst).variable;
+    }
+
+    /**
+     * @param invocation
+     * @return The kind of the given invocation
+     */
+    static Instruction.Kind kindOf(Invocation invocation)
+    {
+        if (!(invocation instanceof CommandInvocation)) {
+            return Instruction.Kind.OTHER;
+        }
+        Interpretable interpretable = ((CommandInvocation) invocation).getInvokedCommand().getInterpretable();
+        if (interpretable instanceof Jump) {
+            return Instruction.Kind.JUMP;
+        }
+        if (interpretable instanceof Jumpif) {
+            return Instruction.Kind.BRANCH;
+        }
+        if (interpretable instanceof Return) {
+            return Instruction.Kind.RETURN;
+        }
+        return Instruction.Kind.OTHER;
+    }
+
+    /**
+     * @param ci
+     * @param index
+     *
+     * @return True if the argument at the given index is a local label, i.e.
+     *         a program position within the implementation
+     */
+    static boolean isLocalLabel(CommandInvocation ci, int index)
+    {
+        return ci.getArguments().get(index) instanceof LabelArgument
+            && ci.getInvokedCommand().getParameterAt(index).localLabel;
+    }
+
+    /**
+     * @param ci    A resolved invocation
+     * @param index
+     *
+     * @return True if the variable passed as argument at the given index is
+     *         only read (i.e. it is passed to a read-only parameter of a
+     *         built-in function). False if it may be written
+     */
+    public static boolean isReadOnly(CommandInvocation ci, int index)
+    {
+        Interpretable interpretable = ci.getInvokedCommand().getInterpretable();
+        return interpretable instanceof Jumpif
+            || (
+                index > 0
+                && (
+                    interpretable instanceof Arithmetic
+                    || interpretable instanceof Logical
+                    || interpretable instanceof Mov
+                    || interpretable instanceof Not
+                    || interpretable instanceof Shift
+                )
+            );
+    }
+
+    /**
+     * @param argument
+     * @return The local variables the given argument refers to (incl.
+     *         position variables)
+     */
+    static List<LocalVariable> getLocalVariables(Argument argument)
+    {
+        if (!(argument instanceof VariableArgument)) {
+            return List.of();
+        }
+        VariableArgument va        = (VariableArgument) argument;
+        List<LocalVariable> locals = new ArrayList<>(1);
+        for (Variable variable : new Variable[]{va.variable, va.fromPositionVariable, va.toPositionVariable}) {
+            if (variable instanceof LocalVariable) {
+                locals.add((LocalVariable) variable);
+            }
+        }
+        return locals;
+    }
+
+    /**
+     * @param variable
+     * @return True if the given variable is a local variable with a fixed
+     *         length
+     */
+    static boolean isFixedLocal(Variable variable)
+    {
+        return variable instanceof LocalVariable
+            && variable.minLength == variable.maxLength
+            && variable.maxLength >= 1;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.invocation == null ? "(end)" : this.invocation.toString();
+    }
+}
@@ -0,0 +1,51 @@
+package net.jaraonthe.java.asb.optimize.ir;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Lets {@code &jump} and {@code &jumpif} which jump to a {@code &jump} jump
+ * to the latter's target directly, and removes {@code &jump}s to the next
+ * instruction.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+class JumpThreading
+{
+    /**
+     * @param program
+     * @return True if the program has been changed
+     */
+    static boolean run(Program program)
+    {
+        boolean changed = false;
+        for (Instruction instruction : program.instructions) {
+            if (instruction.kind != Instruction.Kind.JUMP && instruction.kind != Instruction.Kind.BRANCH) {
+                continue;
+            }
+            Instruction target       = instruction.getTarget();
+            Set<Instruction> visited = new HashSet<>();
+            while (
+                target != program.end
+                && target.kind == Instruction.Kind.JUMP
+                && target != instruction
+                && visited.add(target)
+            ) {
+                target = target.getTarget();
+            }
+            if (target != instruction.getTarget()) {
+                instruction.setTarget(target);
+                changed = true;
+            }
+        }
+
+        for (Instruction instruction : List.copyOf(program.instructions)) {
+            if (instruction.kind == Instruction.Kind.JUMP && instruction.getTarget() == program.next(instruction)) {
+                program.remove(instruction);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,419 @@
+package net.jaraonthe.java.asb.optimize.ir;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.jaraonthe.java.asb.ast.invocation.Argument;
+import net.jaraonthe.java.asb.ast.invocation.CommandInvocation;
+import net.jaraonthe.java.asb.ast.invocation.ImmediateArgument;
+import net.jaraonthe.java.asb.ast.invocation.LocalVariableInitialization;
+import net.jaraonthe.java.asb.ast.invocation.VariableArgument;
+import net.jaraonthe.java.asb.ast.variable.LocalVariable;
+import net.jaraonthe.java.asb.ast.variable.Variable;
+import net.jaraonthe.java.asb.built_in.Jumpif;
+import net.jaraonthe.java.asb.built_in.Mov;
+import net.jaraonthe.java.asb.exception.ConstraintException;
+import net.jaraonthe.java.asb.exception.RuntimeError;
+import net.jaraonthe.java.asb.interpret.Context;
+import net.jaraonthe.java.asb.interpret.Frame;
+import net.jaraonthe.java.asb.interpret.Interpretable;
+import net.jaraonthe.java.asb.interpret.value.NumericValue;
+import net.jaraonthe.java.asb.interpret.value.NumericValueStore;
+import net.jaraonthe.java.asb.interpret.value.Value;
+
+/**
+ * A forward data flow analysis of a {@link Program}, which determines for
+ * each instruction which local variables are initialized, and which of them
+ * hold a constant or the same value as another local variable, whenever
+ * execution reaches the instruction.<br>
+ *
+ * Only local variables with a fixed length are tracked. Parameters may be
+ * given constant values as well (see {@link Optimizer#optimize}).
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+class LocalValues
+{
+    /**
+     * What is known about the local variables at one point of the program.
+     */
+    static class State
+    {
+        /**
+         * Local variables that are initialized on all paths.
+         */
+        final Set<LocalVariable> initialized = new HashSet<>();
+
+        /**
+         * Local variables that are initialized on any path.
+         */
+        final Set<LocalVariable> maybeInitialized = new HashSet<>();
+
+        final Map<LocalVariable, BigInteger> constants = new HashMap<>();
+
+        /**
+         * Local variable => local variable of the same length holding the
+         * same value
+         */
+        final Map<LocalVariable, LocalVariable> copies = new HashMap<>();
+
+
+        State()
+        {
+        }
+
+        /**
+         * @param original
+         */
+        private State(State original)
+        {
+            this.initialized.addAll(original.initialized);
+            this.maybeInitialized.addAll(original.maybeInitialized);
+            this.constants.putAll(original.constants);
+            this.copies.putAll(original.copies);
+        }
+
+        /**
+         * Merges the given state (of another path) into this one.
+         *
+         * @param other
+         * @return True if this state has changed
+         */
+        private boolean meet(State other)
+        {
+            int size = this.initialized.size() + this.maybeInitialized.size()
+                + this.constants.size() + this.copies.size();
+
+            this.initialized.retainAll(other.initialized);
+            this.maybeInitialized.addAll(other.maybeInitialized);
+            this.constants.entrySet().removeIf(e -> !e.getValue().equals(other.constants.get(e.getKey())));
+            this.copies.entrySet().removeIf(e -> e.getValue() != other.copies.get(e.getKey()));
+
+            return size != this.initialized.size() + this.maybeInitialized.size()
+                + this.constants.size() + this.copies.size();
+        }
+
+        /**
+         * Forgets everything about the value of the given local variable.
+         *
+         * @param variable
+         */
+        private void kill(LocalVariable variable)
+        {
+            this.constants.remove(variable);
+            this.copies.remove(variable);
+            this.copies.values().removeIf(v -> v == variable);
+        }
+    }
+
+    private final Program program;
+
+    /**
+     * Contains the values of constant parameters. May be null.
+     */
+    private final Frame parameters;
+
+    /**
+     * Instruction => the state whenever execution reaches it. Missing for
+     * unreachable instructions.
+     */
+    private final Map<Instruction, State> states = new HashMap<>();
+
+
+    /**
+     * @param program
+     * @param parameters Contains the values of constant parameters. May be
+     *                   null
+     */
+    private LocalValues(Program program, Frame parameters)
+    {
+        this.program    = program;
+        this.parameters = parameters;
+    }
+
+    /**
+     * @param program
+     * @param parameters Contains the values of constant parameters (which the
+     *                   program must not write to). May be null
+     *
+     * @return The analysis of the given program
+     */
+    static LocalValues analyze(Program program, Frame parameters)
+    {
+        LocalValues values = new LocalValues(program, parameters);
+        if (program.size() == 0) {
+            return values;
+        }
+
+        Deque<Instruction> worklist = new ArrayDeque<>();
+        values.states.put(program.instructions.get(0), new State());
+        worklist.add(program.instructions.get(0));
+        while (!worklist.isEmpty()) {
+            Instruction instruction = worklist.poll();
+            State out               = values.transfer(instruction, values.states.get(instruction));
+            for (Instruction successor : program.successors(instruction)) {
+                if (successor == program.end) {
+                    continue;
+                }
+                State state = values.states.get(successor);
+                if (state == null) {
+                    values.states.put(successor, new State(out));
+                } else if (!state.meet(out)) {
+                    continue;
+                }
+                if (!worklist.contains(successor)) {
+                    worklist.add(successor);
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @param instruction
+     * @return The state whenever execution reaches the given instruction.
+     *         Null if it is unreachable
+     */
+    State getState(Instruction instruction)
+    {
+        return this.states.get(instruction);
+    }
+
+    /**
+     * @param instruction
+     * @param in          The state before the instruction
+     *
+     * @return The state after the instruction
+     */
+    private State transfer(Instruction instruction, State in)
+    {
+        State out = new State(in);
+        if (instruction.invocation instanceof LocalVariableInitialization) {
+            // Initializes the variable to 0, but only if it doesn't exist yet
+            LocalVariable variable = ((LocalVariableInitialization) instruction.invocation).localVariable;
+            if (!in.maybeInitialized.contains(variable) && Instruction.isFixedLocal(variable)) {
+                out.constants.put(variable, BigInteger.ZERO);
+            } else if (!in.initialized.contains(variable)) {
+                out.kill(variable);
+            }
+            out.initialized.add(variable);
+            out.maybeInitialized.add(variable);
+            return out;
+        }
+
+        CommandInvocation ci = (CommandInvocation) instruction.invocation;
+        for (int i = 0; i < ci.getArguments().size(); i++) {
+            Argument argument = ci.getArguments().get(i);
+            if (
+                argument instanceof VariableArgument
+                && ((VariableArgument) argument).variable instanceof LocalVariable
+                && !Instruction.isReadOnly(ci, i)
+            ) {
+                out.kill((LocalVariable) ((VariableArgument) argument).variable);
+            }
+        }
+
+        LocalVariable dst = instruction.getDestination();
+        if (dst != null && Instruction.isFixedLocal(dst)) {
+            BigInteger value = this.evaluate(instruction, in);
+            if (value != null) {
+                out.constants.put(dst, value);
+            }
+            LocalVariable src = LocalValues.getCopySource(instruction);
+            if (src != null && src != dst) {
+                LocalVariable original = in.copies.getOrDefault(src, src);
+                if (original != dst) {
+                    out.copies.put(dst, original);
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * @param instruction
+     * @return The source of a {@code &mov} between two distinct local
+     *         variables of the same fixed length, which is a plain copy. Null
+     *         if the instruction is no such copy
+     */
+    static LocalVariable getCopySource(Instruction instruction)
+    {
+        if (!(instruction.getInterpretable() instanceof Mov)) {
+            return null;
+        }
+        LocalVariable dst = instruction.getDestination();
+        Argument src      = ((CommandInvocation) instruction.invocation).getArguments().get(1);
+        if (
+            dst == null
+            || !(src instanceof VariableArgument)
+            || ((VariableArgument) src).hasPosition()
+            || !Instruction.isFixedLocal(((VariableArgument) src).variable)
+            || !Instruction.isFixedLocal(dst)
+            || ((VariableArgument) src).variable.maxLength != dst.maxLength
+        ) {
+            return null;
+        }
+        return (LocalVariable) ((VariableArgument) src).variable;
+    }
+
+    /**
+     * Executes the given instruction on constants, if it is a {@code &mov},
+     * arithmetic, logical, {@code &not}, or shift function whose sources are
+     * all constant.
+     *
+     * @param instruction
+     * @param state       The state before the instruction
+     *
+     * @return The value of the destination after the instruction. Null if
+     *         the instruction doesn't only operate on constants, or if it
+     *         fails
+     */
+    BigInteger evaluate(Instruction instruction, State state)
+    {
+        LocalVariable dst = instruction.getDestination();
+        if (
+            dst == null
+            || !Instruction.isFixedLocal(dst)
+            || (
+                instruction.getInterpretable() instanceof Mov
+                && ((Mov) instruction.getInterpretable()).getSrcType() == Mov.OperandType.ADDRESS
+            )
+        ) {
+            return null;
+        }
+        CommandInvocation ci = (CommandInvocation) instruction.invocation;
+        for (int i = 1; i < ci.getArguments().size(); i++) {
+            if (!this.isConstant(ci.getArguments().get(i), state)) {
+                return null;
+            }
+        }
+
+        try {
+            Frame frame = this.createFrame(state);
+            NumericValueStore dstValue;
+            if (frame.valueExistsLocally(dst.name)) {
+                dstValue = (NumericValueStore) frame.getValue(dst.name);
+            } else {
+                dstValue = new NumericValueStore(dst);
+                frame.addValue(dstValue);
+            }
+            Context context = new Context(frame, null, this.program.ast, null, null, null);
+            instruction.getInterpretable().interpret(context.withFrame(this.createFunctionFrame(ci, context)));
+            return dstValue.read(context);
+
+        } catch (ConstraintException | RuntimeError | RuntimeException e) {
+            // The instruction fails (at runtime)
+            return null;
+        }
+    }
+
+    /**
+     * @param instruction A {@code &jumpif}
+     * @param state       The state before the instruction
+     *
+     * @return The result of the comparison, if it only compares constants.
+     *         Null otherwise
+     */
+    Boolean evaluateCondition(Instruction instruction, State state)
+    {
+        CommandInvocation ci = (CommandInvocation) instruction.invocation;
+        if (!this.isConstant(ci.getArguments().get(0), state) || !this.isConstant(ci.getArguments().get(1), state)) {
+            return null;
+        }
+        try {
+            Context context = new Context(this.createFrame(state), null, this.program.ast, null, null, null);
+            Frame functionFrame = this.createFunctionFrame(ci, context);
+            return ((Jumpif) instruction.getInterpretable()).compare(
+                context,
+                (NumericValue) functionFrame.getValue(ci.getInvokedCommand().getParameterAt(0).name),
+                (NumericValue) functionFrame.getValue(ci.getInvokedCommand().getParameterAt(1).name)
+            );
+        } catch (ConstraintException | RuntimeError | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param argument
+     * @param state
+     *
+     * @return True if the given argument only refers to constants
+     */
+    boolean isConstant(Argument argument, State state)
+    {
+        if (argument instanceof ImmediateArgument) {
+            return true;
+        }
+        if (!(argument instanceof VariableArgument)) {
+            return false;
+        }
+        VariableArgument va = (VariableArgument) argument;
+        return this.isConstant(va.variable, state)
+            && (va.fromPositionVariable == null || this.isConstant(va.fromPositionVariable, state))
+            && (va.toPositionVariable == null || this.isConstant(va.toPositionVariable, state));
+    }
+
+    /**
+     * @param variable
+     * @param state
+     *
+     * @return True if the given variable is a constant local variable or
+     *         parameter
+     */
+    private boolean isConstant(Variable variable, State state)
+    {
+        if (variable instanceof LocalVariable) {
+            return state.constants.containsKey(variable);
+        }
+        try {
+            return this.parameters != null
+                && this.parameters.valueExistsLocally(variable.name)
+                && this.parameters.getValue(variable.name).variable == variable;
+        } catch (ConstraintException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param state
+     * @return A frame containing the values of all constants
+     */
+    private Frame createFrame(State state)
+    {
+        Frame frame = this.parameters == null ? new Frame() : new Frame(this.parameters);
+        for (Map.Entry<LocalVariable, BigInteger> constant : state.constants.entrySet()) {
+            NumericValueStore value = new NumericValueStore(constant.getKey());
+            value.write(constant.getValue(), null);
+            frame.addValue(value);
+        }
+        return frame;
+    }
+
+    /**
+     * @param ci
+     * @param context Containing the constants
+     *
+     * @return The frame a built-in function is executed in, containing its
+     *         arguments
+     *
+     * @throws ConstraintException
+     * @throws RuntimeError
+     */
+    private Frame createFunctionFrame(CommandInvocation ci, Context context) throws ConstraintException, RuntimeError
+    {
+        Frame functionFrame      = new Frame();
+        List<Argument> arguments = ci.getArguments();
+        for (int i = 0; i < arguments.size(); i++) {
+            functionFrame.addValue(
+                Value.fromArgument(arguments.get(i), ci.getInvokedCommand().getParameterAt(i), context)
+            );
+        }
+        return functionFrame;
+    }
+}
@@ -0,0 +1,159 @@
+package net.jaraonthe.java.asb.optimize.ir;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.jaraonthe.java.asb.Print;
+import net.jaraonthe.java.asb.Settings;
+import net.jaraonthe.java.asb.ast.AST;
+import net.jaraonthe.java.asb.ast.command.Command;
+import net.jaraonthe.java.asb.ast.command.Implementation;
+import net.jaraonthe.java.asb.ast.variable.Register;
+import net.jaraonthe.java.asb.ast.variable.VirtualRegister;
+import net.jaraonthe.java.asb.interpret.Frame;
+
+/**
+ * Optimizes implementation programs before they are interpreted. Each
+ * program is translated into a {@link Program} IR, on which the following
+ * passes are run until none of them changes anything:<br>
+ * - {@link JumpThreading}<br>
+ * - {@link ConstantPropagation} (incl. copy propagation)<br>
+ * - {@link DeadStoreElimination}<br>
+ * - {@link UnreachableCodeElimination}<br>
+ *
+ * Afterwards the IR is lowered back into the implementation. The optimized
+ * program behaves exactly like the original one, incl. any errors it causes.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class Optimizer
+{
+    /**
+     * The maximum amount of times all passes are run on one program.
+     */
+    private static final int MAX_ROUNDS = 16;
+
+
+    /**
+     * Optimizes all implementations in the given AST (of commands and
+     * virtual registers). In dev mode, the amount of Invocations of each
+     * changed implementation before and after optimization are printed.<br>
+     *
+     * This must be run after the AST has been resolved completely, and before
+     * it is interpreted.
+     *
+     * @param ast
+     * @param settings
+     */
+    public static void run(AST ast, Settings settings)
+    {
+        Map<String, Implementation> implementations = new LinkedHashMap<>();
+        for (Command command : ast.getCommands()) {
+            if (command.getInterpretable() instanceof Implementation) {
+                implementations.put(command.getReadableIdentity(), (Implementation) command.getInterpretable());
+            }
+        }
+        for (Register register : ast.getRegisters()) {
+            if (register instanceof VirtualRegister) {
+                VirtualRegister vr = (VirtualRegister) register;
+                implementations.put(register.name + " .get", vr.getGetterImplementation());
+                implementations.put(register.name + " .set", vr.getSetterImplementation());
+            }
+        }
+
+        Map<String, int[]> counts = new LinkedHashMap<>();
+        for (Map.Entry<String, Implementation> entry : implementations.entrySet()) {
+            Implementation implementation = entry.getValue();
+            if (implementation == null) {
+                continue;
+            }
+            int before = implementation.size();
+            if (Optimizer.optimize(ast, implementation, null)) {
+                counts.put(entry.getKey(), new int[]{before, implementation.size()});
+            }
+        }
+
+        if (settings.devMode()) {
+            Optimizer.printCounts(counts, settings);
+        }
+    }
+
+    /**
+     * Optimizes the given implementation program.
+     *
+     * @param ast
+     * @param implementation A resolved implementation, which hasn't been
+     *                       interpreted yet
+     * @param parameters     Contains the values of constant parameters, which
+     *                       the program must not write to (see
+     *                       {@link Instruction#isReadOnly}). May be null
+     *
+     * @return True if the program has been changed
+     */
+    public static boolean optimize(AST ast, Implementation implementation, Frame parameters)
+    {
+        Program program = Program.build(ast, implementation);
+        if (program == null) {
+            return false;
+        }
+
+        boolean optimized = false;
+        for (int round = 0; round < Optimizer.MAX_ROUNDS; round++) {
+            boolean changed = JumpThreading.run(program);
+            changed |= ConstantPropagation.run(program, parameters);
+            changed |= DeadStoreElimination.run(program);
+            changed |= UnreachableCodeElimination.run(program);
+            if (!changed) {
+                break;
+            }
+            optimized = true;
+        }
+
+        if (optimized) {
+            program.lower();
+        }
+        return optimized;
+    }
+
+    /**
+     * @param counts   Implementation name => amount of Invocations before and
+     *                 after optimization
+     * @param settings
+     */
+    private static void printCounts(Map<String, int[]> counts, Settings settings)
+    {
+        Print.printlnBoldWithColor("=== OPTIMIZATION ===", Print.Color.GREEN, settings);
+        if (counts.isEmpty()) {
+            System.out.println("(no implementation changed)");
+            System.out.println();
+            return;
+        }
+
+        int firstColLength = "Command ".length();
+        for (String name : counts.keySet()) {
+            firstColLength = Math.max(firstColLength, name.length());
+        }
+
+        // Table Header
+        Print.printlnWithColor(
+            String.format("%-" + firstColLength + "s\tBefore\tAfter", "Command"),
+            Print.Color.CYAN,
+            settings
+        );
+
+        int totalBefore = 0;
+        int totalAfter  = 0;
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            System.out.format(
+                "%-" + firstColLength + "s\t%d\t%d%n",
+                entry.getKey(),
+                entry.getValue()[0],
+                entry.getValue()[1]
+            );
+            totalBefore += entry.getValue()[0];
+            totalAfter  += entry.getValue()[1];
+        }
+        System.out.format("%-" + firstColLength + "s\t%d\t%d%n", "Total", totalBefore, totalAfter);
+        System.out.println();
+    }
+}
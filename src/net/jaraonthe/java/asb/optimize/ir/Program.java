@@ -0,0 +1,328 @@
+package net.jaraonthe.java.asb.optimize.ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jaraonthe.java.asb.ast.AST;
+import net.jaraonthe.java.asb.ast.command.Command;
+import net.jaraonthe.java.asb.ast.command.Implementation;
+import net.jaraonthe.java.asb.ast.invocation.Argument;
+import net.jaraonthe.java.asb.ast.invocation.CommandInvocation;
+import net.jaraonthe.java.asb.ast.invocation.Invocation;
+import net.jaraonthe.java.asb.ast.invocation.LabelArgument;
+import net.jaraonthe.java.asb.ast.invocation.LocalVariableInitialization;
+import net.jaraonthe.java.asb.built_in.Return;
+import net.jaraonthe.java.asb.exception.ConstraintException;
+
+/**
+ * The intermediate representation of an implementation program, on which the
+ * {@link Optimizer} passes operate.<br>
+ *
+ * This is a list of {@link Instruction instructions}, in which jumps and
+ * labels refer to instructions instead of program positions. Thus
+ * instructions can be removed without keeping track of positions. Once the
+ * passes are done, the program is lowered back into the implementation,
+ * which is when label arguments are updated to the new positions.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class Program
+{
+    final AST ast;
+
+    final Implementation implementation;
+
+    final List<Instruction> instructions;
+
+    /**
+     * Stands for the end of the program, i.e. the position after the last
+     * instruction. Jumping there leaves the program.
+     */
+    final Instruction end;
+
+    /**
+     * Label name => the instruction the label points to
+     */
+    final Map<String, Instruction> labels = new LinkedHashMap<>();
+
+
+    /**
+     * @param ast
+     * @param implementation
+     */
+    private Program(AST ast, Implementation implementation)
+    {
+        this.ast            = ast;
+        this.implementation = implementation;
+        this.instructions   = new ArrayList<>(implementation.size());
+        this.end            = new Instruction(null, implementation.size());
+    }
+
+    /**
+     * Builds the IR of the given implementation program.
+     *
+     * @param ast
+     * @param implementation A resolved implementation
+     *
+     * @return Null if the program cannot be represented (i.e. it contains
+     *         unresolved Invocations or superinstructions, or invokes a
+     *         function which operates on its caller's frame)
+     */
+    public static Program build(AST ast, Implementation implementation)
+    {
+        Program program = new Program(ast, implementation);
+        for (Invocation invocation : implementation) {
+            if (invocation instanceof CommandInvocation && invocation.isResolved()) {
+                Command command = ((CommandInvocation) invocation).getInvokedCommand();
+                if (command.useCallerFrame() && !(command.getInterpretable() instanceof Return)) {
+                    return null;
+                }
+            } else if (!(invocation instanceof LocalVariableInitialization)) {
+                return null;
+            }
+            program.instructions.add(new Instruction(invocation, program.instructions.size()));
+        }
+
+        for (Instruction instruction : program.instructions) {
+            if (!(instruction.invocation instanceof CommandInvocation)) {
+                continue;
+            }
+            CommandInvocation ci = (CommandInvocation) instruction.invocation;
+            for (int i = 0; i < ci.getArguments().size(); i++) {
+                if (Instruction.isLocalLabel(ci, i)) {
+                    instruction.targets[i] = program.at(((LabelArgument) ci.getArguments().get(i)).getLabelPosition());
+                }
+            }
+        }
+        for (Map.Entry<String, Integer> label : implementation.getLabels().entrySet()) {
+            program.labels.put(label.getKey(), program.at(label.getValue()));
+        }
+        return program;
+    }
+
+    /**
+     * @return The amount of instructions
+     */
+    public int size()
+    {
+        return this.instructions.size();
+    }
+
+    /**
+     * @param position
+     * @return The instruction at the given position, or {@link #end}
+     */
+    private Instruction at(int position)
+    {
+        return position < this.instructions.size() ? this.instructions.get(position) : this.end;
+    }
+
+    /**
+     * @param instruction
+     * @return The instruction after the given one, or {@link #end}
+     */
+    Instruction next(Instruction instruction)
+    {
+        return this.at(instruction.position + 1);
+    }
+
+    /**
+     * @param instruction
+     * @return All instructions (incl. {@link #end}) execution may continue at
+     *         after the given one
+     */
+    List<Instruction> successors(Instruction instruction)
+    {
+        List<Instruction> successors = new ArrayList<>(2);
+        switch (instruction.kind) {
+            case JUMP:
+                successors.add(instruction.getTarget());
+                break;
+
+            case BRANCH:
+                successors.add(instruction.getTarget());
+                successors.add(this.next(instruction));
+                break;
+
+            case RETURN:
+                break;
+
+            case OTHER:
+                successors.add(this.next(instruction));
+                for (Instruction target : instruction.targets) {
+                    if (target != null) {
+                        successors.add(target);
+                    }
+                }
+                break;
+        }
+        return successors;
+    }
+
+    /**
+     * Removes the given instruction. Jumps and labels pointing to it point to
+     * the next instruction afterwards.
+     *
+     * @param instruction
+     */
+    void remove(Instruction instruction)
+    {
+        Instruction next = this.next(instruction);
+        for (Instruction i : this.instructions) {
+            for (int t = 0; t < i.targets.length; t++) {
+                if (i.targets[t] == instruction) {
+                    i.targets[t] = next;
+                }
+            }
+        }
+        for (Map.Entry<String, Instruction> label : this.labels.entrySet()) {
+            if (label.getValue() == instruction) {
+                label.setValue(next);
+            }
+        }
+
+        this.instructions.remove(instruction.position);
+        for (int p = instruction.position; p < this.instructions.size(); p++) {
+            this.instructions.get(p).position = p;
+        }
+        this.end.position = this.instructions.size();
+    }
+
+    /**
+     * Replaces the given instruction's invocation by an invocation with the
+     * same arguments (apart from label arguments), keeping its targets.
+     *
+     * @param instruction
+     * @param invocation
+     */
+    void replace(Instruction instruction, CommandInvocation invocation)
+    {
+        Instruction[] targets = instruction.targets;
+        instruction.setInvocation(invocation);
+        instruction.targets = targets;
+    }
+
+    /**
+     * Replaces the given instruction's invocation by {@code &jump} to the
+     * given target.
+     *
+     * @param instruction
+     * @param target
+     *
+     * @throws ConstraintException if the invocation cannot be created
+     */
+    void replaceWithJump(Instruction instruction, Instruction target) throws ConstraintException
+    {
+        CommandInvocation jump = this.invoke(
+            "&jump",
+            instruction.invocation,
+            this.createLabelArgument(null, target.position)
+        );
+        instruction.setInvocation(jump);
+        instruction.setTarget(target);
+    }
+
+    /**
+     * Creates a resolved invocation of a built-in function.
+     *
+     * @param name      The name of the built-in function
+     * @param replaced  The invocation that is replaced (providing the origin)
+     * @param arguments Separated by ","
+     *
+     * @return
+     * @throws ConstraintException if the invocation cannot be resolved
+     */
+    CommandInvocation invoke(String name, Invocation replaced, Argument... arguments) throws ConstraintException
+    {
+        CommandInvocation invocation = new CommandInvocation(name);
+        for (int i = 0; i < arguments.length; i++) {
+            if (i > 0) {
+                invocation.addCommandSymbols(",");
+            }
+            invocation.addArgument(arguments[i]);
+        }
+        invocation.setOrigin(replaced.getOrigin());
+        invocation.resolve(this.ast, this.implementation);
+        invocation.resolveLabelNames(this.ast, this.implementation);
+        return invocation;
+    }
+
+    /**
+     * Lowers this program back into the implementation it has been built from.
+     */
+    public void lower()
+    {
+        Map<String, Integer> labels = new HashMap<>();
+        for (Map.Entry<String, Instruction> label : this.labels.entrySet()) {
+            labels.put(label.getKey(), label.getValue().position);
+        }
+
+        List<Invocation> invocations = new ArrayList<>(this.instructions.size());
+        for (Instruction instruction : this.instructions) {
+            Invocation invocation = instruction.invocation;
+            if (invocation instanceof CommandInvocation) {
+                CommandInvocation ci     = (CommandInvocation) invocation;
+                List<Argument> arguments = new ArrayList<>(ci.getArguments());
+                boolean moved            = false;
+                for (int i = 0; i < arguments.size(); i++) {
+                    if (instruction.targets[i] == null) {
+                        continue;
+                    }
+                    LabelArgument la = (LabelArgument) arguments.get(i);
+                    int position     = instruction.targets[i].position;
+                    if (la.getLabelPosition() != position) {
+                        arguments.set(i, this.createLabelArgument(la.name, position));
+                        moved = true;
+                    }
+                }
+                if (moved) {
+                    invocation = ci.withArguments(arguments);
+                }
+            }
+            invocations.add(invocation);
+        }
+
+        this.implementation.setProgram(invocations, labels);
+    }
+
+    /**
+     * @param name     The preferred label name. May be null
+     * @param position
+     *
+     * @return A label argument pointing to the given position, named after a
+     *         label pointing there (or after the position, if there is none)
+     */
+    private LabelArgument createLabelArgument(String name, int position)
+    {
+        if (name == null || this.labels.get(name) == null || this.labels.get(name).position != position) {
+            name = String.valueOf(position);
+            for (Map.Entry<String, Instruction> label : this.labels.entrySet()) {
+                if (label.getValue().position == position) {
+                    name = label.getKey();
+                    break;
+                }
+            }
+        }
+        LabelArgument la = new LabelArgument(name);
+        la.setLabelPosition(position);
+        return la;
+    }
+
+    @Override
+    public String toString()
+    {
+        String text = "";
+        for (Instruction instruction : this.instructions) {
+            for (Map.Entry<String, Instruction> label : this.labels.entrySet()) {
+                if (label.getValue() == instruction) {
+                    text += label.getKey() + ":\n";
+                }
+            }
+            text += "    " + instruction + "\n";
+        }
+        return text;
+    }
+}
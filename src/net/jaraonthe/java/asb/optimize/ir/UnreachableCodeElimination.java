@@ -0,0 +1,47 @@
+package net.jaraonthe.java.asb.optimize.ir;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Removes instructions which cannot be reached from the start of the program,
+ * e.g. code after {@code &jump} or {@code &return} that no label points to.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+class UnreachableCodeElimination
+{
+    /**
+     * @param program
+     * @return True if the program has been changed
+     */
+    static boolean run(Program program)
+    {
+        if (program.size() == 0) {
+            return false;
+        }
+
+        Set<Instruction> reachable  = new HashSet<>();
+        Deque<Instruction> worklist = new ArrayDeque<>();
+        worklist.add(program.instructions.get(0));
+        while (!worklist.isEmpty()) {
+            Instruction instruction = worklist.pop();
+            if (instruction == program.end || !reachable.add(instruction)) {
+                continue;
+            }
+            worklist.addAll(program.successors(instruction));
+        }
+
+        boolean changed = false;
+        for (Instruction instruction : List.copyOf(program.instructions)) {
+            if (!reachable.contains(instruction)) {
+                program.remove(instruction);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,492 @@
+package net.jaraonthe.java.asb.optimize.jit;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.jaraonthe.java.asb.built_in.Compare;
+
+/**
+ * Compiles a lowered implementation program (see {@link Lowering}) into a JVM
+ * class (a subclass of {@link CompiledCode}).<br>
+ *
+ * Every class of variables is kept in a long local, labels become JVM
+ * branches, and native operations are translated into bytecode. Every other
+ * Invocation is interpreted from within the generated code (see
+ * {@link CompiledCode#fallback()}). If that changes the program counter, the
+ * generated code stops and the interpreter takes over.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+class BytecodeCompiler
+{
+    /**
+     * Programs with more Invocations than this are not compiled.
+     */
+    static final int MAX_PROGRAM_SIZE = 4096;
+
+    /**
+     * At most this many long locals are used.
+     */
+    private static final int MAX_CLASSES = 120;
+
+    private static final int MAX_STACK = 8;
+
+    private static final String CLASS_NAME    = "net/jaraonthe/java/asb/optimize/jit/Compiled";
+    private static final String COMPILED_CODE = "net/jaraonthe/java/asb/optimize/jit/CompiledCode";
+    private static final String CONTEXT       = "net/jaraonthe/java/asb/interpret/Context";
+    private static final String FRAME         = "net/jaraonthe/java/asb/interpret/Frame";
+    private static final String STORE         = "net/jaraonthe/java/asb/interpret/value/NumericValueStore";
+    private static final String LONG          = "java/lang/Long";
+
+    private static final String RUN_DESCRIPTOR = "(L" + BytecodeCompiler.CONTEXT + ";[L" + BytecodeCompiler.STORE + ";)V";
+
+    private final Lowering lowering;
+
+
+    /**
+     * @param lowering
+     */
+    private BytecodeCompiler(Lowering lowering)
+    {
+        this.lowering = lowering;
+    }
+
+    /**
+     * Compiles the given lowered program.
+     *
+     * @param lowering
+     * @return Null if the program cannot be compiled (e.g. it is too big)
+     */
+    static CompiledCode compile(Lowering lowering)
+    {
+        if (
+            lowering.program.length > BytecodeCompiler.MAX_PROGRAM_SIZE
+            || lowering.classSlot.length > BytecodeCompiler.MAX_CLASSES
+        ) {
+            return null;
+        }
+
+        byte[] bytes;
+        try {
+            bytes = new BytecodeCompiler(lowering).generate();
+        } catch (IllegalStateException e) {
+            // Code or constant pool too big
+            return null;
+        }
+
+        try {
+            Class<?> compiledClass = MethodHandles.lookup().defineHiddenClass(bytes, true).lookupClass();
+            CompiledCode code      = (CompiledCode) compiledClass.getDeclaredConstructor().newInstance();
+            code.init(lowering.program);
+            return code;
+        } catch (ReflectiveOperationException e) {
+            // Converting exception, as the generated class always has a
+            // public no-args constructor
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    /**
+     * @return The class file
+     */
+    private byte[] generate()
+    {
+        ClassWriter writer = new ClassWriter(BytecodeCompiler.CLASS_NAME, BytecodeCompiler.COMPILED_CODE);
+
+        List<String> frameLocals = new ArrayList<>();
+        frameLocals.add(BytecodeCompiler.COMPILED_CODE);
+        frameLocals.add(BytecodeCompiler.CONTEXT);
+        frameLocals.add("[L" + BytecodeCompiler.STORE + ";");
+        for (int c = 0; c < this.lowering.classSlot.length; c++) {
+            frameLocals.add(null);
+        }
+        ClassWriter.Code code = writer.new Code(
+            BytecodeCompiler.MAX_STACK,
+            BytecodeCompiler.local(this.lowering.classSlot.length),
+            frameLocals
+        );
+
+        this.emitReload(code);
+
+        ClassWriter.Label[] positions = new ClassWriter.Label[this.lowering.program.length + 1];
+        for (int p = 0; p < positions.length; p++) {
+            positions[p] = code.newLabel();
+        }
+        ClassWriter.Label returned = code.newLabel();
+        ClassWriter.Label stopped  = code.newLabel();
+
+        for (int p = 0; p < this.lowering.program.length; p++) {
+            code.bind(positions[p]);
+            this.emit(code, p, positions, returned, stopped);
+        }
+
+        code.bind(positions[this.lowering.program.length]);
+        this.emitEnd(code, this.lowering.program.length);
+        code.bind(returned);
+        this.emitEnd(code, -1);
+        code.bind(stopped);
+        code.op(ClassWriter.RETURN);
+
+        writer.addMethod("run", BytecodeCompiler.RUN_DESCRIPTOR, code);
+        return writer.toByteArray();
+    }
+
+    /**
+     * @param code
+     * @param position
+     * @param positions The label of every program position
+     * @param returned  Where to go on {@code &return}
+     * @param stopped   Where to go when the interpreter has to take over
+     */
+    private void emit(
+        ClassWriter.Code code,
+        int position,
+        ClassWriter.Label[] positions,
+        ClassWriter.Label returned,
+        ClassWriter.Label stopped
+    ) {
+        Lowering.Op op = this.lowering.ops[position];
+        switch (op.kind) {
+            case FALLBACK:
+                this.emitFallback(code, position, stopped);
+                return;
+
+            case INIT_LOCAL:
+                this.emitFlush(code);
+                code.aload(0);
+                code.aload(1);
+                code.aload(2);
+                code.iconst(position);
+                code.iconst(op.dst);
+                code.iconst(this.lowering.slotLength[op.dst]);
+                code.invoke(
+                    ClassWriter.INVOKEVIRTUAL,
+                    BytecodeCompiler.COMPILED_CODE,
+                    "initLocal",
+                    "(L" + BytecodeCompiler.CONTEXT + ";[L" + BytecodeCompiler.STORE + ";III)Z"
+                );
+                code.branch(ClassWriter.IFEQ, stopped);
+                this.emitReload(code);
+                return;
+
+            case NOP:
+                return;
+
+            case JUMP:
+                this.emitTickIfBackward(code, position, op.target);
+                code.branch(ClassWriter.GOTO, positions[op.target]);
+                return;
+
+            case RETURN:
+                code.branch(ClassWriter.GOTO, returned);
+                return;
+
+            default:
+                break;
+        }
+
+        // Guards: Local variables must be initialized, and some values are
+        // left to the interpreter (as they raise an error)
+        ClassWriter.Label slow = null;
+        List<Integer> locals   = new ArrayList<>(3);
+        for (int slot : new int[] {op.dst, op.a == null ? -1 : op.a.slot, op.b == null ? -1 : op.b.slot}) {
+            if (slot >= this.lowering.plan.sharedSlots && !locals.contains(slot)) {
+                locals.add(slot);
+            }
+        }
+        boolean zeroGuard = op.kind == Lowering.Kind.DIVIDE && op.b.slot != -1;
+        boolean signGuard = op.kind == Lowering.Kind.NOT;
+        if (!locals.isEmpty() || zeroGuard || signGuard) {
+            slow = code.newLabel();
+        }
+        for (int slot : locals) {
+            code.aload(2);
+            code.iconst(slot);
+            code.op(ClassWriter.AALOAD);
+            code.branch(ClassWriter.IFNULL, slow);
+        }
+        if (zeroGuard) {
+            this.emitLoad(code, op.b);
+            code.op(ClassWriter.LCONST_0);
+            code.op(ClassWriter.LCMP);
+            code.branch(ClassWriter.IFEQ, slow);
+        }
+        if (signGuard) {
+            this.emitLoad(code, op.a);
+            code.lconst(1L << (op.length - 1));
+            code.op(ClassWriter.LAND);
+            code.op(ClassWriter.LCONST_0);
+            code.op(ClassWriter.LCMP);
+            code.branch(ClassWriter.IFNE, slow);
+        }
+
+        switch (op.kind) {
+            case MOVE:
+                this.emitLoad(code, op.a);
+                break;
+
+            case BINARY:
+                this.emitLoad(code, op.a);
+                this.emitLoad(code, op.b);
+                code.op(BytecodeCompiler.getOpcode(op.operator));
+                if (op.length > 0 && op.length < 64) {
+                    code.lconst(BytecodeCompiler.mask(op.length));
+                    code.op(ClassWriter.LAND);
+                }
+                break;
+
+            case DIVIDE:
+                this.emitLoad(code, op.a);
+                this.emitLoad(code, op.b);
+                code.invoke(
+                    ClassWriter.INVOKESTATIC,
+                    BytecodeCompiler.LONG,
+                    op.operator == Lowering.Operator.DIV ? "divideUnsigned" : "remainderUnsigned",
+                    "(JJ)J"
+                );
+                break;
+
+            case NOT:
+                this.emitLoad(code, op.a);
+                code.lconst(BytecodeCompiler.mask(op.length));
+                code.op(ClassWriter.LXOR);
+                break;
+
+            case SHIFT:
+                this.emitLoad(code, op.a);
+                this.emitLoad(code, op.b);
+                code.iconst(op.length);
+                code.invoke(
+                    ClassWriter.INVOKESTATIC,
+                    BytecodeCompiler.COMPILED_CODE,
+                    BytecodeCompiler.getShiftMethod(op.operator),
+                    "(JJI)J"
+                );
+                break;
+
+            case BRANCH:
+                this.emitTickIfBackward(code, position, op.target);
+                this.emitLoad(code, op.a);
+                this.emitLoad(code, op.b);
+                if (op.comparison.signed) {
+                    code.op(ClassWriter.LCMP);
+                } else {
+                    code.invoke(ClassWriter.INVOKESTATIC, BytecodeCompiler.LONG, "compareUnsigned", "(JJ)I");
+                }
+                code.branch(BytecodeCompiler.getBranchOpcode(op.comparison), positions[op.target]);
+                break;
+
+            default:
+                throw new IllegalStateException("Unexpected op " + op.kind);
+        }
+        if (op.dst != -1) {
+            code.lstore(BytecodeCompiler.local(this.lowering.slotClass[op.dst]));
+        }
+
+        if (slow != null) {
+            code.branch(ClassWriter.GOTO, positions[position + 1]);
+            code.bind(slow);
+            this.emitFallback(code, position, stopped);
+        }
+    }
+
+    /**
+     * Interprets the Invocation at the given position.
+     *
+     * @param code
+     * @param position
+     * @param stopped  Where to go if the program counter has been changed
+     */
+    private void emitFallback(ClassWriter.Code code, int position, ClassWriter.Label stopped)
+    {
+        this.emitFlush(code);
+        code.aload(0);
+        code.aload(1);
+        code.iconst(position);
+        code.invoke(
+            ClassWriter.INVOKEVIRTUAL,
+            BytecodeCompiler.COMPILED_CODE,
+            "fallback",
+            "(L" + BytecodeCompiler.CONTEXT + ";I)I"
+        );
+        code.iconst(position + 1);
+        code.branch(ClassWriter.IF_ICMPNE, stopped);
+        this.emitReload(code);
+    }
+
+    /**
+     * Writes back all values and sets the program counter.
+     *
+     * @param code
+     * @param programCounter
+     */
+    private void emitEnd(ClassWriter.Code code, int programCounter)
+    {
+        this.emitFlush(code);
+        code.aload(1);
+        code.field(ClassWriter.GETFIELD, BytecodeCompiler.CONTEXT, "frame", "L" + BytecodeCompiler.FRAME + ";");
+        code.iconst(programCounter);
+        code.field(ClassWriter.PUTFIELD, BytecodeCompiler.FRAME, "programCounter", "I");
+        code.op(ClassWriter.RETURN);
+    }
+
+    private void emitTickIfBackward(ClassWriter.Code code, int position, int target)
+    {
+        if (target > position) {
+            return;
+        }
+        ClassWriter.Label counted = code.newLabel();
+        code.aload(1);
+        code.invoke(
+            ClassWriter.INVOKESTATIC,
+            BytecodeCompiler.COMPILED_CODE,
+            "tick",
+            "(L" + BytecodeCompiler.CONTEXT + ";)Z"
+        );
+        code.branch(ClassWriter.IFEQ, counted);
+
+        // The budget may stop the program here, so the stores must be up to
+        // date
+        this.emitFlush(code);
+        code.aload(1);
+        code.invoke(
+            ClassWriter.INVOKESTATIC,
+            BytecodeCompiler.COMPILED_CODE,
+            "checkBudget",
+            "(L" + BytecodeCompiler.CONTEXT + ";)V"
+        );
+        code.bind(counted);
+    }
+
+    /**
+     * Writes the values of all classes that the generated code writes to back
+     * into their stores.
+     *
+     * @param code
+     */
+    private void emitFlush(ClassWriter.Code code)
+    {
+        for (int c = 0; c < this.lowering.classSlot.length; c++) {
+            if (!this.lowering.written[c]) {
+                continue;
+            }
+            code.aload(2);
+            code.iconst(this.lowering.classSlot[c]);
+            code.op(ClassWriter.AALOAD);
+            code.lload(BytecodeCompiler.local(c));
+            code.invoke(
+                ClassWriter.INVOKESTATIC,
+                BytecodeCompiler.COMPILED_CODE,
+                "store",
+                "(L" + BytecodeCompiler.STORE + ";J)V"
+            );
+        }
+    }
+
+    /**
+     * Reads the values of all classes from their stores.
+     *
+     * @param code
+     */
+    private void emitReload(ClassWriter.Code code)
+    {
+        for (int c = 0; c < this.lowering.classSlot.length; c++) {
+            code.aload(2);
+            code.iconst(this.lowering.classSlot[c]);
+            code.op(ClassWriter.AALOAD);
+            code.invoke(
+                ClassWriter.INVOKESTATIC,
+                BytecodeCompiler.COMPILED_CODE,
+                "load",
+                "(L" + BytecodeCompiler.STORE + ";)J"
+            );
+            code.lstore(BytecodeCompiler.local(c));
+        }
+    }
+
+    private void emitLoad(ClassWriter.Code code, Lowering.Operand operand)
+    {
+        if (operand.slot == -1) {
+            code.lconst(operand.constant);
+            return;
+        }
+        code.lload(BytecodeCompiler.local(this.lowering.slotClass[operand.slot]));
+        if (operand.signExtendFrom != 0) {
+            code.iconst(64 - operand.signExtendFrom);
+            code.op(ClassWriter.LSHL);
+            code.iconst(64 - operand.signExtendFrom);
+            code.op(ClassWriter.LSHR);
+        }
+    }
+
+    /**
+     * @param operator A BINARY operator
+     * @return The JVM opcode that executes the given operator
+     */
+    private static int getOpcode(Lowering.Operator operator)
+    {
+        return switch (operator) {
+            case ADD -> ClassWriter.LADD;
+            case SUB -> ClassWriter.LSUB;
+            case MUL -> ClassWriter.LMUL;
+            case AND -> ClassWriter.LAND;
+            case OR  -> ClassWriter.LOR;
+            case XOR -> ClassWriter.LXOR;
+            default  -> throw new IllegalArgumentException("Unexpected operator " + operator);
+        };
+    }
+
+    /**
+     * @param operator A SHIFT operator
+     * @return The name of the {@link CompiledCode} helper that executes the
+     *         given operator
+     */
+    private static String getShiftMethod(Lowering.Operator operator)
+    {
+        return switch (operator) {
+            case SHIFT_LEFT             -> "shiftLeft";
+            case SHIFT_RIGHT            -> "shiftRight";
+            case SHIFT_RIGHT_ARITHMETIC -> "shiftRightArithmetic";
+            case ROTATE_LEFT            -> "rotateLeft";
+            case ROTATE_RIGHT           -> "rotateRight";
+            default                     -> throw new IllegalArgumentException("Unexpected operator " + operator);
+        };
+    }
+
+    /**
+     * @param comparison
+     * @return The JVM opcode that branches if the result of comparing (lcmp)
+     *         satisfies the given comparison
+     */
+    private static int getBranchOpcode(Compare.Operator comparison)
+    {
+        return switch (comparison) {
+            case EQUALS                                                -> ClassWriter.IFEQ;
+            case GREATER_THAN, GREATER_THAN_SIGNED                     -> ClassWriter.IFGT;
+            case GREATER_THAN_OR_EQUALS, GREATER_THAN_OR_EQUALS_SIGNED -> ClassWriter.IFGE;
+            case LESS_THAN, LESS_THAN_SIGNED                           -> ClassWriter.IFLT;
+            case LESS_THAN_OR_EQUALS, LESS_THAN_OR_EQUALS_SIGNED       -> ClassWriter.IFLE;
+            case NOT_EQUALS                                            -> ClassWriter.IFNE;
+        };
+    }
+
+    /**
+     * @param c A class
+     * @return The index of the JVM local variable that holds the given class
+     */
+    private static int local(int c)
+    {
+        return 3 + 2 * c;
+    }
+
+    /**
+     * @param length
+     * @return A mask covering the given amount of lower bits
+     */
+    private static long mask(int length)
+    {
+        return length >= 64 ? -1L : (1L << length) - 1;
+    }
+}
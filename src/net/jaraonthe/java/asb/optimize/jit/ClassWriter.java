@@ -0,0 +1,553 @@
+package net.jaraonthe.java.asb.optimize.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Writes a minimal JVM class file: a final class with a no-args constructor
+ * and methods whose code is assembled via {@link ClassWriter.Code}.<br>
+ *
+ * This only supports what {@link BytecodeCompiler} needs. Most notably, all
+ * branch targets within a method must have the same frame (the same local
+ * variable types and an empty operand stack), which is given once per method
+ * and written as a full frame for every branch target.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+class ClassWriter
+{
+    private static final int MAGIC   = 0xCAFEBABE;
+    private static final int VERSION = 61; // Java 17
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL  = 0x0010;
+    private static final int ACC_SUPER  = 0x0020;
+
+    private static final byte CONSTANT_UTF8        = 1;
+    private static final byte CONSTANT_LONG        = 5;
+    private static final byte CONSTANT_CLASS       = 7;
+    private static final byte CONSTANT_FIELDREF    = 9;
+    private static final byte CONSTANT_METHODREF   = 10;
+    private static final byte CONSTANT_NAMEANDTYPE = 12;
+
+    private static final byte ITEM_LONG   = 4;
+    private static final byte ITEM_OBJECT = 7;
+
+    private static final int FULL_FRAME = 255;
+
+    /**
+     * The maximum size of a method's code, in bytes.
+     */
+    static final int MAX_CODE_LENGTH = 65535;
+
+    // Opcodes
+    static final int LCONST_0      = 0x09;
+    static final int LCONST_1      = 0x0A;
+    static final int BIPUSH        = 0x10;
+    static final int SIPUSH        = 0x11;
+    static final int LDC2_W        = 0x14;
+    static final int LLOAD         = 0x16;
+    static final int ALOAD         = 0x19;
+    static final int AALOAD        = 0x32;
+    static final int LSTORE        = 0x37;
+    static final int LADD          = 0x61;
+    static final int LSUB          = 0x65;
+    static final int LMUL          = 0x69;
+    static final int LSHL          = 0x79;
+    static final int LSHR          = 0x7B;
+    static final int LAND          = 0x7F;
+    static final int LOR           = 0x81;
+    static final int LXOR          = 0x83;
+    static final int LCMP          = 0x94;
+    static final int IFEQ          = 0x99;
+    static final int IFNE          = 0x9A;
+    static final int IFLT          = 0x9B;
+    static final int IFGE          = 0x9C;
+    static final int IFGT          = 0x9D;
+    static final int IFLE          = 0x9E;
+    static final int IF_ICMPNE     = 0xA0;
+    static final int GOTO          = 0xA7;
+    static final int RETURN        = 0xB1;
+    static final int GETFIELD      = 0xB4;
+    static final int PUTFIELD      = 0xB5;
+    static final int INVOKEVIRTUAL = 0xB6;
+    static final int INVOKESPECIAL = 0xB7;
+    static final int INVOKESTATIC  = 0xB8;
+    static final int IFNULL        = 0xC6;
+
+    private final String className;
+    private final String superClassName;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool           = new DataOutputStream(this.poolBytes);
+    private int poolCount                         = 1;
+
+    /**
+     * Constant pool entry (encoded as a unique string) => index
+     */
+    private final Map<String, Integer> poolIndices = new HashMap<>();
+
+    private final List<byte[]> methods = new ArrayList<>();
+
+
+    /**
+     * @param className      The internal name of the class (e.g.
+     *                       "net/jaraonthe/java/asb/optimize/jit/Compiled")
+     * @param superClassName The internal name of the superclass, which must
+     *                       have an accessible no-args constructor
+     */
+    public ClassWriter(String className, String superClassName)
+    {
+        this.className      = className;
+        this.superClassName = superClassName;
+
+        Code constructor = new Code(1, 1, List.of());
+        constructor.aload(0);
+        constructor.invoke(ClassWriter.INVOKESPECIAL, superClassName, "<init>", "()V");
+        constructor.op(ClassWriter.RETURN);
+        this.addMethod(ClassWriter.ACC_PUBLIC, "<init>", "()V", constructor);
+    }
+
+    /**
+     * @param access
+     * @param name
+     * @param descriptor
+     * @param code       Must be complete
+     */
+    public void addMethod(int access, String name, String descriptor, Code code)
+    {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out        = new DataOutputStream(bytes);
+            out.writeShort(access);
+            out.writeShort(this.utf8(name));
+            out.writeShort(this.utf8(descriptor));
+            out.writeShort(1);
+            code.write(out);
+            this.methods.add(bytes.toByteArray());
+        } catch (IOException e) {
+            // Converting exception, as this cannot happen when writing to a
+            // byte array
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Adds a public method.
+     *
+     * @param name
+     * @param descriptor
+     * @param code       Must be complete
+     */
+    public void addMethod(String name, String descriptor, Code code)
+    {
+        this.addMethod(ClassWriter.ACC_PUBLIC, name, descriptor, code);
+    }
+
+    /**
+     * @return The class file
+     */
+    public byte[] toByteArray()
+    {
+        try {
+            int thisClass  = this.classRef(this.className);
+            int superClass = this.classRef(this.superClassName);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out        = new DataOutputStream(bytes);
+            out.writeInt(ClassWriter.MAGIC);
+            out.writeShort(0);
+            out.writeShort(ClassWriter.VERSION);
+            out.writeShort(this.poolCount);
+            this.pool.flush();
+            this.poolBytes.writeTo(out);
+            out.writeShort(ClassWriter.ACC_PUBLIC | ClassWriter.ACC_FINAL | ClassWriter.ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfaces
+            out.writeShort(0); // fields
+            out.writeShort(this.methods.size());
+            for (byte[] method : this.methods) {
+                out.write(method);
+            }
+            out.writeShort(0); // attributes
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // Converting exception, as this cannot happen when writing to a
+            // byte array
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    private int utf8(String text) throws IOException
+    {
+        Integer index = this.poolIndices.get("U" + text);
+        if (index != null) {
+            return index;
+        }
+        this.pool.writeByte(ClassWriter.CONSTANT_UTF8);
+        this.pool.writeUTF(text);
+        return this.addPoolEntry("U" + text, 1);
+    }
+
+    private int classRef(String internalName) throws IOException
+    {
+        Integer index = this.poolIndices.get("C" + internalName);
+        if (index != null) {
+            return index;
+        }
+        int name = this.utf8(internalName);
+        this.pool.writeByte(ClassWriter.CONSTANT_CLASS);
+        this.pool.writeShort(name);
+        return this.addPoolEntry("C" + internalName, 1);
+    }
+
+    private int memberRef(byte tag, String owner, String name, String descriptor) throws IOException
+    {
+        String key    = tag + owner + "." + name + ":" + descriptor;
+        Integer index = this.poolIndices.get(key);
+        if (index != null) {
+            return index;
+        }
+        int ownerIndex = this.classRef(owner);
+        int nameIndex  = this.utf8(name);
+        int descIndex  = this.utf8(descriptor);
+
+        Integer nameAndType = this.poolIndices.get("N" + name + ":" + descriptor);
+        if (nameAndType == null) {
+            this.pool.writeByte(ClassWriter.CONSTANT_NAMEANDTYPE);
+            this.pool.writeShort(nameIndex);
+            this.pool.writeShort(descIndex);
+            nameAndType = this.addPoolEntry("N" + name + ":" + descriptor, 1);
+        }
+
+        this.pool.writeByte(tag);
+        this.pool.writeShort(ownerIndex);
+        this.pool.writeShort(nameAndType);
+        return this.addPoolEntry(key, 1);
+    }
+
+    private int longConstant(long value) throws IOException
+    {
+        Integer index = this.poolIndices.get("J" + value);
+        if (index != null) {
+            return index;
+        }
+        this.pool.writeByte(ClassWriter.CONSTANT_LONG);
+        this.pool.writeLong(value);
+        // Long constants take up two entries
+        return this.addPoolEntry("J" + value, 2);
+    }
+
+    private int addPoolEntry(String key, int size)
+    {
+        int index = this.poolCount;
+        this.poolCount += size;
+        if (this.poolCount > 0xFFFF) {
+            throw new IllegalStateException("Constant pool is too big");
+        }
+        this.poolIndices.put(key, index);
+        return index;
+    }
+
+
+    /**
+     * A branch target within a {@link ClassWriter.Code}.
+     */
+    static class Label
+    {
+        /**
+         * The code offset this label points to, -1 while not bound yet.
+         */
+        private int offset = -1;
+
+        /**
+         * Offsets of the branch instructions that refer to this label
+         */
+        private final List<Integer> branches = new ArrayList<>(2);
+    }
+
+
+    /**
+     * The code of one method.
+     */
+    class Code
+    {
+        private byte[] code = new byte[256];
+        private int length  = 0;
+
+        private final int maxStack;
+        private final int maxLocals;
+
+        /**
+         * The types of all local variables at every branch target: a class
+         * name (object) or null (long, which takes up two variables).
+         */
+        private final List<String> frameLocals;
+
+        private final List<Label> labels = new ArrayList<>();
+
+        /**
+         * Offsets directly after unconditional branches and returns. These
+         * need a frame if any code follows.
+         */
+        private final TreeSet<Integer> afterJumps = new TreeSet<>();
+
+
+        /**
+         * @param maxStack
+         * @param maxLocals
+         * @param frameLocals The types of all local variables at every branch
+         *                    target: an internal class name (object) or null
+         *                    (long)
+         */
+        public Code(int maxStack, int maxLocals, List<String> frameLocals)
+        {
+            this.maxStack    = maxStack;
+            this.maxLocals   = maxLocals;
+            this.frameLocals = frameLocals;
+        }
+
+        public Label newLabel()
+        {
+            Label label = new Label();
+            this.labels.add(label);
+            return label;
+        }
+
+        /**
+         * Binds the label to the current code offset.
+         *
+         * @param label
+         */
+        public void bind(Label label)
+        {
+            if (label.offset != -1) {
+                throw new IllegalStateException("Cannot bind label more than once");
+            }
+            label.offset = this.length;
+        }
+
+        /**
+         * @return The current code size in bytes
+         */
+        public int length()
+        {
+            return this.length;
+        }
+
+        public void op(int opcode)
+        {
+            this.u1(opcode);
+            if (opcode == ClassWriter.RETURN || opcode == ClassWriter.GOTO) {
+                this.afterJumps.add(this.length);
+            }
+        }
+
+        public void aload(int index)
+        {
+            this.u1(ClassWriter.ALOAD);
+            this.u1(index);
+        }
+
+        public void lload(int index)
+        {
+            this.u1(ClassWriter.LLOAD);
+            this.u1(index);
+        }
+
+        public void lstore(int index)
+        {
+            this.u1(ClassWriter.LSTORE);
+            this.u1(index);
+        }
+
+        /**
+         * Pushes the given int constant.
+         *
+         * @param value Must fit into a short
+         */
+        public void iconst(int value)
+        {
+            if (value >= -1 && value <= 5) {
+                this.u1(0x03 + value); // iconst_<n>
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                this.u1(ClassWriter.BIPUSH);
+                this.u1(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                this.u1(ClassWriter.SIPUSH);
+                this.u2(value);
+            } else {
+                throw new IllegalArgumentException("Int constant is too big: " + value);
+            }
+        }
+
+        /**
+         * Pushes the given long constant.
+         *
+         * @param value
+         */
+        public void lconst(long value)
+        {
+            if (value == 0) {
+                this.u1(ClassWriter.LCONST_0);
+            } else if (value == 1) {
+                this.u1(ClassWriter.LCONST_1);
+            } else {
+                try {
+                    int index = ClassWriter.this.longConstant(value);
+                    this.u1(ClassWriter.LDC2_W);
+                    this.u2(index);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+
+        /**
+         * @param opcode     INVOKESTATIC, INVOKEVIRTUAL, or INVOKESPECIAL
+         * @param owner
+         * @param name
+         * @param descriptor
+         */
+        public void invoke(int opcode, String owner, String name, String descriptor)
+        {
+            this.memberInstruction(opcode, ClassWriter.CONSTANT_METHODREF, owner, name, descriptor);
+        }
+
+        /**
+         * @param opcode     GETFIELD or PUTFIELD
+         * @param owner
+         * @param name
+         * @param descriptor
+         */
+        public void field(int opcode, String owner, String name, String descriptor)
+        {
+            this.memberInstruction(opcode, ClassWriter.CONSTANT_FIELDREF, owner, name, descriptor);
+        }
+
+        /**
+         * Writes a branch instruction (IF*, IF_ICMP*, IFNULL or GOTO).
+         *
+         * @param opcode
+         * @param target
+         */
+        public void branch(int opcode, Label target)
+        {
+            target.branches.add(this.length);
+            this.u1(opcode);
+            this.u2(0); // patched in write()
+            if (opcode == ClassWriter.GOTO) {
+                this.afterJumps.add(this.length);
+            }
+        }
+
+
+        private void memberInstruction(int opcode, byte tag, String owner, String name, String descriptor)
+        {
+            try {
+                int index = ClassWriter.this.memberRef(tag, owner, name, descriptor);
+                this.u1(opcode);
+                this.u2(index);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private void u1(int value)
+        {
+            if (this.length == this.code.length) {
+                this.code = Arrays.copyOf(this.code, this.code.length * 2);
+            }
+            this.code[this.length++] = (byte) value;
+        }
+
+        private void u2(int value)
+        {
+            this.u1(value >> 8);
+            this.u1(value);
+        }
+
+        /**
+         * Patches all branches and writes the Code attribute.
+         *
+         * @param out
+         * @throws IOException
+         */
+        private void write(DataOutputStream out) throws IOException
+        {
+            if (this.length > ClassWriter.MAX_CODE_LENGTH) {
+                throw new IllegalStateException("Method code is too big");
+            }
+
+            TreeSet<Integer> frames = new TreeSet<>();
+            for (Label label : this.labels) {
+                if (label.branches.isEmpty()) {
+                    continue;
+                }
+                if (label.offset == -1) {
+                    throw new IllegalStateException("Label is not bound");
+                }
+                frames.add(label.offset);
+                for (int branch : label.branches) {
+                    int delta = label.offset - branch;
+                    if (delta < Short.MIN_VALUE || delta > Short.MAX_VALUE) {
+                        throw new IllegalStateException("Branch offset is too big");
+                    }
+                    this.code[branch + 1] = (byte) (delta >> 8);
+                    this.code[branch + 2] = (byte) delta;
+                }
+            }
+            for (int offset : this.afterJumps) {
+                if (offset < this.length) {
+                    frames.add(offset);
+                }
+            }
+
+            ByteArrayOutputStream stackMap = new ByteArrayOutputStream();
+            DataOutputStream map           = new DataOutputStream(stackMap);
+            int previous = -1;
+            for (int offset : frames) {
+                map.writeByte(ClassWriter.FULL_FRAME);
+                map.writeShort(offset - previous - 1);
+                map.writeShort(this.frameLocals.size());
+                for (String type : this.frameLocals) {
+                    if (type == null) {
+                        map.writeByte(ClassWriter.ITEM_LONG);
+                    } else {
+                        map.writeByte(ClassWriter.ITEM_OBJECT);
+                        map.writeShort(ClassWriter.this.classRef(type));
+                    }
+                }
+                map.writeShort(0); // stack items
+                previous = offset;
+            }
+
+            int stackMapLength = frames.isEmpty() ? 0 : 6 + 2 + stackMap.size();
+            out.writeShort(ClassWriter.this.utf8("Code"));
+            out.writeInt(2 + 2 + 4 + this.length + 2 + 2 + stackMapLength);
+            out.writeShort(this.maxStack);
+            out.writeShort(this.maxLocals);
+            out.writeInt(this.length);
+            out.write(this.code, 0, this.length);
+            out.writeShort(0); // exception table
+            if (frames.isEmpty()) {
+                out.writeShort(0);
+                return;
+            }
+            out.writeShort(1);
+            out.writeShort(ClassWriter.this.utf8("StackMapTable"));
+            out.writeInt(2 + stackMap.size());
+            out.writeShort(frames.size());
+            stackMap.writeTo(out);
+        }
+    }
+}
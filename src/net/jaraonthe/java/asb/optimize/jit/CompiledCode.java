@@ -0,0 +1,240 @@
+package net.jaraonthe.java.asb.optimize.jit;
+
+import java.math.BigInteger;
+
+import net.jaraonthe.java.asb.ast.invocation.Invocation;
+import net.jaraonthe.java.asb.ast.invocation.LocalVariableInitialization;
+import net.jaraonthe.java.asb.exception.ConstraintException;
+import net.jaraonthe.java.asb.exception.RuntimeError;
+import net.jaraonthe.java.asb.interpret.Context;
+import net.jaraonthe.java.asb.interpret.value.NumericValueStore;
+
+/**
+ * Executes one lowered implementation program (for one
+ * {@link CompiledImplementation.Variant}, see {@link Lowering}). This is the
+ * superclass of {@link VmCode} and of all classes generated by
+ * {@link BytecodeCompiler}, which use the helpers provided here.<br>
+ *
+ * The code keeps the values of all variables it operates on in longs. Before
+ * anything else may observe these variables (i.e. before an Invocation is
+ * executed via {@link #fallback()}, and at the end) they are written back
+ * into their stores.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public abstract class CompiledCode
+{
+    private static final BigInteger TWO_TO_THE_64 = BigInteger.ONE.shiftLeft(64);
+
+    /**
+     * The Invocations of the compiled program, as they have been when
+     * compiling. Superinstructions are replaced by the Invocation they
+     * replace at their position.
+     */
+    private Invocation[] program;
+
+
+    /**
+     * @param program
+     */
+    void init(Invocation[] program)
+    {
+        this.program = program;
+    }
+
+    /**
+     * Executes the compiled program, starting at program position 0. When
+     * this returns, the frame's program counter is set to where
+     * interpretation has to continue (which is beyond the program if it has
+     * been executed completely).
+     *
+     * @param context
+     * @param stores  The store of every slot. The stores of local variables
+     *                are null while they are not initialized (this is updated
+     *                by the code)
+     *
+     * @throws RuntimeError
+     */
+    public abstract void run(Context context, NumericValueStore[] stores) throws RuntimeError;
+
+
+    /**
+     * Interprets the Invocation at the given program position, just like
+     * {@link net.jaraonthe.java.asb.ast.command.Implementation#interpret(Context)}
+     * would.
+     *
+     * @param context
+     * @param position
+     *
+     * @return The program counter afterwards. If this isn't position + 1, the
+     *         code stops and leaves the rest to the interpreter
+     *
+     * @throws RuntimeError
+     */
+    protected final int fallback(Context context, int position) throws RuntimeError
+    {
+        if (context.budget != null) {
+            context.budget.tick();
+        }
+        context.frame.programCounter = position + 1;
+        this.program[position].interpret(context);
+        return context.frame.programCounter;
+    }
+
+    /**
+     * Interprets the LocalVariableInitialization at the given program
+     * position and registers the store of the local variable.
+     *
+     * @param context
+     * @param stores
+     * @param position
+     * @param slot     The slot of the local variable
+     * @param length   The length the code expects the local variable to have
+     *
+     * @return False if the code cannot continue (the local variable
+     *         doesn't have the expected length, or the program counter has been
+     *         changed)
+     *
+     * @throws RuntimeError
+     */
+    protected final boolean initLocal(
+        Context context,
+        NumericValueStore[] stores,
+        int position,
+        int slot,
+        int length
+    ) throws RuntimeError {
+        if (this.fallback(context, position) != position + 1) {
+            return false;
+        }
+        String name = ((LocalVariableInitialization) this.program[position]).localVariable.name;
+        try {
+            stores[slot] = (NumericValueStore) context.frame.getValue(name);
+        } catch (ConstraintException e) {
+            // Converting exception, as this cannot happen right after the
+            // local variable has been initialized
+            throw new RuntimeException(e);
+        }
+        return stores[slot].length == length;
+    }
+
+    /**
+     * Increments the budget's tick counter (if any). This is invoked on every
+     * backward branch.<br>
+     *
+     * If this returns true, the caller has to write back all values it holds
+     * in local variables and then call {@link #checkBudget(Context)}, so that
+     * the stores are up to date if the budget stops the program.
+     *
+     * @param context
+     * @return True if the budget has to be checked now
+     */
+    protected static boolean tick(Context context)
+    {
+        return context.budget != null && context.budget.countTick();
+    }
+
+    /**
+     * @param context
+     * @throws RuntimeError if the budget has run out
+     */
+    protected static void checkBudget(Context context) throws RuntimeError
+    {
+        context.budget.checkTick();
+    }
+
+    /**
+     * @param store May be null
+     * @return The value of the given store as an unsigned long. 0 if store is
+     *         null
+     */
+    protected static long load(NumericValueStore store)
+    {
+        if (store == null) {
+            return 0;
+        }
+        return store.read(null).longValue();
+    }
+
+    /**
+     * Writes the given value (an unsigned long) into the given store, unless
+     * the store already contains it.
+     *
+     * @param store May be null (then this does nothing)
+     * @param value
+     */
+    protected static void store(NumericValueStore store, long value)
+    {
+        if (store == null) {
+            return;
+        }
+        BigInteger old = store.read(null);
+        if (old.longValue() == value) {
+            return;
+        }
+        BigInteger newValue = BigInteger.valueOf(value);
+        if (value < 0) {
+            newValue = newValue.add(CompiledCode.TWO_TO_THE_64);
+        }
+        store.write(newValue, null);
+    }
+
+    /**
+     * @param amount An unsigned long
+     * @param length
+     * @return The amount of bits to shift by (amounts of at least length are
+     *         capped to length)
+     */
+    private static int shiftBits(long amount, int length)
+    {
+        return Long.compareUnsigned(amount, length) >= 0 ? length : (int) amount;
+    }
+
+    /**
+     * @param length
+     * @return A mask covering the given amount of lower bits
+     */
+    private static long mask(int length)
+    {
+        return length >= 64 ? -1L : (1L << length) - 1;
+    }
+
+    protected static long shiftLeft(long value, long amount, int length)
+    {
+        int bits = CompiledCode.shiftBits(amount, length);
+        return bits >= 64 ? 0 : (value << bits) & CompiledCode.mask(length);
+    }
+
+    protected static long shiftRight(long value, long amount, int length)
+    {
+        int bits = CompiledCode.shiftBits(amount, length);
+        return bits >= 64 ? 0 : value >>> bits;
+    }
+
+    protected static long shiftRightArithmetic(long value, long amount, int length)
+    {
+        int bits    = CompiledCode.shiftBits(amount, length);
+        long result = bits >= 64 ? 0 : value >>> bits;
+        if (((value >>> (length - 1)) & 1) != 0) {
+            // Fill up with the sign bit
+            long mask = CompiledCode.mask(length);
+            result |= mask ^ (bits >= 64 ? 0 : mask >>> bits);
+        }
+        return result;
+    }
+
+    protected static long rotateLeft(long value, long amount, int length)
+    {
+        int bits = (int) Long.remainderUnsigned(amount, length);
+        if (bits == 0) {
+            return value;
+        }
+        return ((value << bits) & CompiledCode.mask(length)) | (value >>> (length - bits));
+    }
+
+    protected static long rotateRight(long value, long amount, int length)
+    {
+        int bits = (int) Long.remainderUnsigned(amount, length);
+        return CompiledCode.rotateLeft(value, (length - bits) % length, length);
+    }
+}
@@ -0,0 +1,329 @@
+package net.jaraonthe.java.asb.optimize.jit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jaraonthe.java.asb.ast.command.Command;
+import net.jaraonthe.java.asb.ast.command.Implementation;
+import net.jaraonthe.java.asb.ast.invocation.Argument;
+import net.jaraonthe.java.asb.ast.invocation.CommandInvocation;
+import net.jaraonthe.java.asb.ast.invocation.Invocation;
+import net.jaraonthe.java.asb.ast.invocation.VariableArgument;
+import net.jaraonthe.java.asb.ast.variable.LocalVariable;
+import net.jaraonthe.java.asb.ast.variable.Parameter;
+import net.jaraonthe.java.asb.ast.variable.Variable;
+import net.jaraonthe.java.asb.built_in.BuiltInFunction;
+import net.jaraonthe.java.asb.exception.ConstraintException;
+import net.jaraonthe.java.asb.exception.RuntimeError;
+import net.jaraonthe.java.asb.interpret.Context;
+import net.jaraonthe.java.asb.interpret.value.NumericValue;
+import net.jaraonthe.java.asb.interpret.value.NumericValueStore;
+import net.jaraonthe.java.asb.interpret.value.Value;
+import net.jaraonthe.java.asb.optimize.Superinstruction;
+
+/**
+ * The compiled form of an implementation program, which is used once the
+ * command has become hot: Whenever the implementation is invoked, this checks
+ * which stores the program's variables refer to, and executes the code for
+ * this combination of variable lengths and aliasing (a variant). Variants are
+ * lowered (see {@link Lowering}) when they are needed first, up to
+ * {@link #MAX_VARIANTS}; other combinations are interpreted.<br>
+ *
+ * A variant is executed by the {@link VmCode} VM at first. Once it has been
+ * executed {@link #BYTECODE_THRESHOLD} times, it is compiled to JVM bytecode
+ * (see {@link BytecodeCompiler}), unless this is disabled via
+ * --no-bytecode.<br>
+ *
+ * The variables the compiled code operates on (slots) are the command
+ * parameters and registers used by the program (shared slots, as they refer
+ * to stores outside of the command's frame), followed by its local
+ * variables.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class CompiledImplementation
+{
+    /**
+     * How often a command has to be invoked (in userland) before it is
+     * compiled, along with all commands it invokes.
+     */
+    public static final int COMPILE_THRESHOLD = 256;
+
+    /**
+     * How often a variant has to be executed before it is compiled to JVM
+     * bytecode.
+     */
+    private static final int BYTECODE_THRESHOLD = 1024;
+
+    private static final int MAX_VARIANTS = 4;
+
+    /**
+     * The compiled code only keeps variables of at most this length in long
+     * locals.
+     */
+    private static final int MAX_LENGTH = 64;
+
+    /**
+     * A combination of variable lengths and aliasing, and the code executing
+     * it.
+     */
+    static class Variant
+    {
+        /**
+         * For each shared slot: length * 2 + 1 if the store is the value of an
+         * /immediate parameter (-1 if the slot is not available to the
+         * compiled code), followed by the first slot referring to the same
+         * store.
+         */
+        final int[] key;
+
+        /**
+         * Null if this variant is interpreted.
+         */
+        CompiledCode code;
+
+        /**
+         * Null once the code has been compiled to bytecode (or this has
+         * failed).
+         */
+        Lowering lowering;
+
+        /**
+         * How often the VM code has been executed.
+         */
+        int runs = 0;
+
+        Variant(int[] key, Lowering lowering)
+        {
+            this.key      = key;
+            this.lowering = lowering;
+            this.code     = lowering == null ? null : VmCode.encode(lowering);
+        }
+    }
+
+    /**
+     * The program, as it has been when this was created. Superinstructions
+     * are replaced by the Invocation they replace at their position.
+     */
+    final Invocation[] program;
+
+    /**
+     * The names of all slots: first the shared slots, then the local
+     * variables.
+     */
+    final String[] slotNames;
+
+    final int sharedSlots;
+
+    /**
+     * The length of each local variable slot.
+     */
+    final int[] localLengths;
+
+    /**
+     * Variable name => slot
+     */
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    private final List<Variant> variants = new ArrayList<>(CompiledImplementation.MAX_VARIANTS);
+
+
+    /**
+     * @param implementation
+     */
+    public CompiledImplementation(Implementation implementation)
+    {
+        this.program = new Invocation[implementation.size()];
+        for (int p = 0; p < this.program.length; p++) {
+            Invocation invocation = implementation.get(p);
+            if (invocation instanceof Superinstruction) {
+                invocation = ((Superinstruction) invocation).replaced.getFirst();
+            }
+            this.program[p] = invocation;
+        }
+
+        // Variables passed to built-in functions
+        List<String> shared     = new ArrayList<>();
+        List<String> locals     = new ArrayList<>();
+        List<Integer> lengths   = new ArrayList<>();
+        for (Invocation invocation : this.program) {
+            if (
+                !(invocation instanceof CommandInvocation)
+                || !invocation.isResolved()
+                || !(((CommandInvocation) invocation).getInvokedCommand() instanceof BuiltInFunction)
+            ) {
+                continue;
+            }
+            for (Argument argument : ((CommandInvocation) invocation).getArguments()) {
+                if (!(argument instanceof VariableArgument)) {
+                    continue;
+                }
+                String name = ((VariableArgument) argument).variable.name;
+                if (shared.contains(name) || locals.contains(name)) {
+                    continue;
+                }
+                Variable variable = implementation.getVariable(name);
+                if (variable instanceof LocalVariable) {
+                    // Only locals with a fixed length
+                    if (variable.maxLength >= 1 && variable.maxLength <= CompiledImplementation.MAX_LENGTH) {
+                        locals.add(name);
+                        lengths.add(variable.maxLength);
+                    }
+                } else if (
+                    variable == null
+                    || ((Parameter) variable).type == Parameter.Type.REGISTER
+                    || ((Parameter) variable).type == Parameter.Type.IMMEDIATE
+                ) {
+                    shared.add(name);
+                }
+            }
+        }
+
+        this.sharedSlots = shared.size();
+        this.slotNames   = new String[shared.size() + locals.size()];
+        for (String name : shared) {
+            this.slots.put(name, this.slots.size());
+        }
+        for (String name : locals) {
+            this.slots.put(name, this.slots.size());
+        }
+        for (Map.Entry<String, Integer> entry : this.slots.entrySet()) {
+            this.slotNames[entry.getValue()] = entry.getKey();
+        }
+        this.localLengths = lengths.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Compiles the given command's implementation (and its specialized
+     * copies) from now on, as well as the implementations of all commands it
+     * invokes.
+     *
+     * @param command
+     */
+    public static void enable(Command command)
+    {
+        if (!(command.getInterpretable() instanceof Implementation)) {
+            // Built-in function or native override
+            return;
+        }
+        Implementation implementation = (Implementation) command.getInterpretable();
+        if (implementation.isCompiled()) {
+            return;
+        }
+        implementation.setCompiled(new CompiledImplementation(implementation));
+        for (Implementation specialization : implementation.getSpecializations()) {
+            specialization.setCompiled(new CompiledImplementation(specialization));
+        }
+
+        for (Invocation invocation : implementation) {
+            if (invocation instanceof CommandInvocation && invocation.isResolved()) {
+                CompiledImplementation.enable(((CommandInvocation) invocation).getInvokedCommand());
+            }
+        }
+    }
+
+    /**
+     * @param name
+     * @return The slot of the variable with the given name, -1 if there is
+     *         none
+     */
+    int getSlot(String name)
+    {
+        return this.slots.getOrDefault(name, -1);
+    }
+
+    /**
+     * Executes the compiled program (if possible) from program position 0.
+     * Afterwards the frame's program counter points to where interpretation
+     * has to continue - this is position 0 if the compiled program could not
+     * be executed.
+     *
+     * @param context
+     * @throws RuntimeError
+     */
+    public void run(Context context) throws RuntimeError
+    {
+        NumericValueStore[] stores = new NumericValueStore[this.slotNames.length];
+        int[] key                  = new int[this.sharedSlots * 2];
+        try {
+            for (int s = 0; s < this.sharedSlots; s++) {
+                key[2 * s]     = -1;
+                key[2 * s + 1] = s;
+
+                Value value = context.frame.getValue(this.slotNames[s]);
+                if (!(value instanceof NumericValue)) {
+                    continue;
+                }
+                value = ((NumericValue) value).getReferenced();
+                if (!(value instanceof NumericValueStore)) {
+                    // E.g. virtual register or bitwise access
+                    continue;
+                }
+                NumericValueStore store = (NumericValueStore) value;
+                if (store.length > CompiledImplementation.MAX_LENGTH || store.read(context).signum() < 0) {
+                    continue;
+                }
+
+                stores[s]  = store;
+                key[2 * s] = store.length * 2 + (store.isImmediate() ? 1 : 0);
+                for (int t = 0; t < s; t++) {
+                    if (stores[t] == store) {
+                        key[2 * s + 1] = t;
+                        break;
+                    }
+                }
+            }
+            for (int s = this.sharedSlots; s < this.slotNames.length; s++) {
+                if (context.frame.valueExistsLocally(this.slotNames[s])) {
+                    // Not the usual case, as the frame is new
+                    return;
+                }
+            }
+        } catch (ConstraintException e) {
+            // Let the interpreter report this
+            return;
+        }
+
+        CompiledCode code = this.getCode(key, context.settings.bytecode());
+        if (code != null) {
+            code.run(context, stores);
+        }
+    }
+
+    /**
+     * @param key
+     * @param bytecode False: the code is not compiled to JVM bytecode
+     *
+     * @return The code for the given variant key, lowered or compiled if
+     *         needed. Null if this variant is interpreted
+     */
+    private CompiledCode getCode(int[] key, boolean bytecode)
+    {
+        Variant variant = null;
+        for (Variant v : this.variants) {
+            if (Arrays.equals(v.key, key)) {
+                variant = v;
+                break;
+            }
+        }
+        if (variant == null) {
+            if (this.variants.size() >= CompiledImplementation.MAX_VARIANTS) {
+                return null;
+            }
+            variant = new Variant(key, Lowering.lower(this, key));
+            this.variants.add(variant);
+        }
+
+        if (bytecode && variant.lowering != null && ++variant.runs >= CompiledImplementation.BYTECODE_THRESHOLD) {
+            CompiledCode compiled = BytecodeCompiler.compile(variant.lowering);
+            if (compiled != null) {
+                variant.code = compiled;
+            }
+            variant.lowering = null;
+        }
+        return variant.code;
+    }
+}
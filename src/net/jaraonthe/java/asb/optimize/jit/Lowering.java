@@ -0,0 +1,710 @@
+package net.jaraonthe.java.asb.optimize.jit;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import net.jaraonthe.java.asb.ast.invocation.Argument;
+import net.jaraonthe.java.asb.ast.invocation.CommandInvocation;
+import net.jaraonthe.java.asb.ast.invocation.ImmediateArgument;
+import net.jaraonthe.java.asb.ast.invocation.Invocation;
+import net.jaraonthe.java.asb.ast.invocation.LabelArgument;
+import net.jaraonthe.java.asb.ast.invocation.LocalVariableInitialization;
+import net.jaraonthe.java.asb.ast.invocation.VariableArgument;
+import net.jaraonthe.java.asb.built_in.Arithmetic;
+import net.jaraonthe.java.asb.built_in.BuiltInFunction;
+import net.jaraonthe.java.asb.built_in.Compare;
+import net.jaraonthe.java.asb.built_in.Jump;
+import net.jaraonthe.java.asb.built_in.Jumpif;
+import net.jaraonthe.java.asb.built_in.Logical;
+import net.jaraonthe.java.asb.built_in.Mov;
+import net.jaraonthe.java.asb.built_in.Not;
+import net.jaraonthe.java.asb.built_in.Return;
+import net.jaraonthe.java.asb.built_in.Shift;
+import net.jaraonthe.java.asb.exception.ConstraintException;
+import net.jaraonthe.java.asb.interpret.Interpretable;
+import net.jaraonthe.java.asb.interpret.value.NumericValue;
+import net.jaraonthe.java.asb.interpret.value.NumericValueStore;
+
+/**
+ * Lowers an implementation program for one
+ * {@link CompiledImplementation.Variant} (i.e. for given variable lengths and
+ * a given aliasing of variables) into one {@link Op} per Invocation, which is
+ * then executed by {@link VmCode} or translated by {@link BytecodeCompiler}.<br>
+ *
+ * Every variable (slot) the program operates on that is at most 64 bits long
+ * is assigned a class; variables that refer to the same store share one
+ * class. The executing code keeps the value of each class in a long. The
+ * following built-in functions are lowered into native operations, as long
+ * as all their operands are such variables or immediates: {@code &mov}
+ * (between variables), {@code &add}, {@code &addc}, {@code &sub},
+ * {@code &subc}, {@code &mul}, {@code &div}, {@code &rem}, {@code &and},
+ * {@code &or}, {@code &xor}, {@code &not}, {@code &shl}, {@code &shr},
+ * {@code &sar}, {@code &rol}, {@code &ror}, {@code &jump}, {@code &jumpif},
+ * and {@code &return}.<br>
+ *
+ * Every other Invocation - and every Invocation whose operands don't satisfy
+ * the function's length requirements, so that it will raise an error - is
+ * interpreted by the executing code (see {@link CompiledCode#fallback()}).
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+class Lowering
+{
+    enum Kind
+    {
+        FALLBACK,
+        INIT_LOCAL,
+        NOP,
+        MOVE,
+        BINARY,
+        DIVIDE,
+        NOT,
+        SHIFT,
+        JUMP,
+        BRANCH,
+        RETURN,
+    }
+
+    /**
+     * The operations of BINARY, DIVIDE, and SHIFT ops.
+     */
+    enum Operator
+    {
+        ADD,
+        SUB,
+        MUL,
+        AND,
+        OR,
+        XOR,
+        DIV,
+        REM,
+        SHIFT_LEFT,
+        SHIFT_RIGHT,
+        SHIFT_RIGHT_ARITHMETIC,
+        ROTATE_LEFT,
+        ROTATE_RIGHT,
+    }
+
+    /**
+     * A variable (slot) or a constant.
+     */
+    static class Operand
+    {
+        /**
+         * -1 if this is a constant.
+         */
+        final int slot;
+
+        final long constant;
+
+        /**
+         * If not 0, the variable's value is sign-extended from this length.
+         */
+        int signExtendFrom = 0;
+
+        Operand(int slot, long constant)
+        {
+            this.slot     = slot;
+            this.constant = constant;
+        }
+    }
+
+    /**
+     * What is done for one Invocation.
+     */
+    static class Op
+    {
+        final Kind kind;
+
+        /**
+         * The destination slot, -1 if none.
+         */
+        int dst = -1;
+
+        Operand a = null;
+        Operand b = null;
+
+        /**
+         * The length the result is masked to (0: no masking), or the length
+         * of the shifted value
+         */
+        int length = 0;
+
+        /**
+         * The operation (BINARY, DIVIDE, SHIFT).
+         */
+        Operator operator = null;
+
+        /**
+         * The comparison (BRANCH).
+         */
+        Compare.Operator comparison = null;
+
+        /**
+         * The program position to jump to, -1 if none.
+         */
+        int target = -1;
+
+        Op(Kind kind)
+        {
+            this.kind = kind;
+        }
+    }
+
+    final CompiledImplementation plan;
+
+    final Invocation[] program;
+
+    /**
+     * The length of each slot. 0 if the slot is not available (it is not a
+     * store or too long) - Invocations using such a slot are interpreted.
+     */
+    final int[] slotLength;
+
+    /**
+     * True if the slot is the value of an /immediate parameter.
+     */
+    final boolean[] slotImmediate;
+
+    /**
+     * The class (i.e. long local) of each slot, -1 if not available.
+     */
+    final int[] slotClass;
+
+    /**
+     * The slot that represents each class, i.e. the store that is read and
+     * written for it.
+     */
+    final int[] classSlot;
+
+    /**
+     * True for each class that is written by native operations (so that its
+     * value has to be written back into its store).
+     */
+    final boolean[] written;
+
+    /**
+     * The op of each program position.
+     */
+    final Op[] ops;
+
+
+    /**
+     * @param plan
+     * @param key  The variant key, see {@link CompiledImplementation}
+     */
+    private Lowering(CompiledImplementation plan, int[] key)
+    {
+        this.plan    = plan;
+        this.program = plan.program;
+
+        int slotCount      = plan.slotNames.length;
+        this.slotLength    = new int[slotCount];
+        this.slotImmediate = new boolean[slotCount];
+        this.slotClass     = new int[slotCount];
+
+        int[] firstSlot = new int[slotCount];
+        int classCount  = 0;
+        for (int s = 0; s < slotCount; s++) {
+            this.slotClass[s] = -1;
+            if (s < plan.sharedSlots) {
+                if (key[2 * s] == -1) {
+                    continue;
+                }
+                this.slotLength[s]    = key[2 * s] / 2;
+                this.slotImmediate[s] = key[2 * s] % 2 == 1;
+                if (key[2 * s + 1] != s) {
+                    // Aliases a previous slot
+                    this.slotClass[s] = this.slotClass[key[2 * s + 1]];
+                    continue;
+                }
+            } else {
+                this.slotLength[s] = plan.localLengths[s - plan.sharedSlots];
+            }
+            this.slotClass[s]       = classCount;
+            firstSlot[classCount++] = s;
+        }
+        this.classSlot = Arrays.copyOf(firstSlot, classCount);
+        this.written   = new boolean[classCount];
+        this.ops       = new Op[this.program.length];
+    }
+
+    /**
+     * Lowers the given program for the given variant key.
+     *
+     * @param plan
+     * @param key
+     *
+     * @return Null if nothing would be executed natively
+     */
+    static Lowering lower(CompiledImplementation plan, int[] key)
+    {
+        Lowering lowering = new Lowering(plan, key);
+        boolean isNative  = false;
+        for (int p = 0; p < plan.program.length; p++) {
+            Op op = lowering.analyze(p);
+            if (op == null) {
+                op = new Op(Kind.FALLBACK);
+            }
+            if (op.dst != -1 && op.kind != Kind.INIT_LOCAL) {
+                lowering.written[lowering.slotClass[op.dst]] = true;
+            }
+            isNative = isNative || (op.kind != Kind.FALLBACK && op.kind != Kind.INIT_LOCAL);
+            lowering.ops[p] = op;
+        }
+        if (!isNative) {
+            // Nothing to gain
+            return null;
+        }
+        return lowering;
+    }
+
+    /**
+     * @param position
+     * @return What to do for the Invocation at the given program position. Null
+     *         if it is to be interpreted
+     */
+    private Op analyze(int position)
+    {
+        Invocation invocation = this.program[position];
+        if (invocation instanceof LocalVariableInitialization) {
+            int slot = this.plan.getSlot(((LocalVariableInitialization) invocation).localVariable.name);
+            if (slot == -1 || this.slotClass[slot] == -1) {
+                return null;
+            }
+            Op op  = new Op(Kind.INIT_LOCAL);
+            op.dst = slot;
+            return op;
+        }
+
+        if (
+            !(invocation instanceof CommandInvocation)
+            || !invocation.isResolved()
+            || !(((CommandInvocation) invocation).getInvokedCommand() instanceof BuiltInFunction)
+        ) {
+            return null;
+        }
+        CommandInvocation ci        = (CommandInvocation) invocation;
+        Interpretable interpretable = ci.getInvokedCommand().getInterpretable();
+
+        if (interpretable instanceof Mov) {
+            return this.analyzeMov(ci, (Mov) interpretable);
+        }
+        if (interpretable instanceof Arithmetic) {
+            return this.analyzeArithmetic(ci, ((Arithmetic) interpretable).getType());
+        }
+        if (interpretable instanceof Logical) {
+            return this.analyzeLogical(ci, ((Logical) interpretable).getType());
+        }
+        if (interpretable instanceof Not) {
+            return this.analyzeNot(ci);
+        }
+        if (interpretable instanceof Shift) {
+            return this.analyzeShift(ci, ((Shift) interpretable).getType());
+        }
+        if (interpretable instanceof Jump) {
+            return this.jumpTo(this.getTarget(ci, 0));
+        }
+        if (interpretable instanceof Jumpif) {
+            return this.analyzeJumpif(ci, ((Jumpif) interpretable).getOperator());
+        }
+        if (interpretable instanceof Return) {
+            return new Op(Kind.RETURN);
+        }
+        return null;
+    }
+
+    private Op analyzeMov(CommandInvocation ci, Mov mov)
+    {
+        if (mov.getDstType() != Mov.OperandType.REGISTER || mov.getSrcType() == Mov.OperandType.ADDRESS) {
+            return null;
+        }
+        int dst = this.getSlot(ci, 0);
+        if (dst == -1) {
+            return null;
+        }
+        int length = this.slotLength[dst];
+
+        Op op  = new Op(Kind.MOVE);
+        op.dst = dst;
+        if (mov.getSrcType() == Mov.OperandType.REGISTER) {
+            int src = this.getSlot(ci, 1);
+            if (src == -1 || this.slotLength[src] != length) {
+                return null;
+            }
+            op.a = new Operand(src, 0);
+            return op;
+        }
+
+        BigInteger immediate = this.getImmediate(ci, 1);
+        if (
+            immediate == null
+            || NumericValue.bitLength(immediate) > length
+            // The value of an /immediate parameter isn't normalized
+            || (immediate.signum() < 0 && this.slotImmediate[dst])
+        ) {
+            return null;
+        }
+        op.a = this.constant(NumericValueStore.normalizeBigInteger(immediate, length));
+        return op;
+    }
+
+    private Op analyzeArithmetic(CommandInvocation ci, Arithmetic.Type type)
+    {
+        int dst = this.getSlot(ci, 0);
+        if (dst == -1) {
+            return null;
+        }
+
+        // One of the sources is a register, the other one may be an immediate
+        boolean src1Immediate = ci.getArguments().get(1) instanceof ImmediateArgument;
+        int regIndex          = src1Immediate ? 2 : 1;
+        int otherIndex        = src1Immediate ? 1 : 2;
+        int reg               = this.getSlot(ci, regIndex);
+        if (reg == -1) {
+            return null;
+        }
+        int length = this.slotLength[reg];
+
+        Operand other;
+        if (ci.getArguments().get(otherIndex) instanceof ImmediateArgument) {
+            BigInteger immediate = this.getImmediate(ci, otherIndex);
+            if (immediate == null || NumericValue.bitLength(immediate) > length) {
+                return null;
+            }
+            other = this.constant(NumericValueStore.normalizeBigInteger(immediate, length));
+        } else {
+            int slot = this.getSlot(ci, otherIndex);
+            if (slot == -1 || this.slotLength[slot] != length) {
+                return null;
+            }
+            other = new Operand(slot, 0);
+        }
+
+        int expectedDstLength = switch (type) {
+            case ADDC, SUBC -> length + 1;
+            case MUL        -> length * 2;
+            default         -> length;
+        };
+        if (this.slotLength[dst] != expectedDstLength) {
+            return null;
+        }
+
+        Op op;
+        switch (type) {
+            case DIV:
+            case REM:
+                op          = new Op(Kind.DIVIDE);
+                op.operator = type == Arithmetic.Type.DIV ? Operator.DIV : Operator.REM;
+                break;
+
+            default:
+                op          = new Op(Kind.BINARY);
+                op.operator = switch (type) {
+                    case ADD, ADDC -> Operator.ADD;
+                    case SUB, SUBC -> Operator.SUB;
+                    default        -> Operator.MUL;
+                };
+                // The sum of two values fits into length + 1 bits; the
+                // product fits into length * 2 bits
+                op.length = switch (type) {
+                    case ADD, SUB -> length;
+                    case SUBC     -> length + 1;
+                    default       -> 0;
+                };
+                break;
+        }
+        op.dst = dst;
+        op.a   = src1Immediate ? other : new Operand(reg, 0);
+        op.b   = src1Immediate ? new Operand(reg, 0) : other;
+
+        if (op.kind == Kind.DIVIDE && op.b.slot == -1 && op.b.constant == 0) {
+            // Division by 0 error
+            return null;
+        }
+        return op;
+    }
+
+    private Op analyzeLogical(CommandInvocation ci, Logical.Type type)
+    {
+        int dst  = this.getSlot(ci, 0);
+        int src1 = this.getSlot(ci, 1);
+        if (dst == -1 || src1 == -1 || this.slotLength[src1] != this.slotLength[dst]) {
+            return null;
+        }
+        Operand src2 = this.getOperand(ci, 2, this.slotLength[dst]);
+        if (src2 == null) {
+            return null;
+        }
+
+        Op op       = new Op(Kind.BINARY);
+        op.dst      = dst;
+        op.a        = new Operand(src1, 0);
+        op.b        = src2;
+        op.operator = switch (type) {
+            case AND -> Operator.AND;
+            case OR  -> Operator.OR;
+            case XOR -> Operator.XOR;
+        };
+        return op;
+    }
+
+    private Op analyzeNot(CommandInvocation ci)
+    {
+        int dst = this.getSlot(ci, 0);
+        if (dst == -1) {
+            return null;
+        }
+        int length = this.slotLength[dst];
+
+        if (ci.getArguments().get(1) instanceof ImmediateArgument) {
+            BigInteger immediate = this.getImmediate(ci, 1);
+            if (
+                immediate == null
+                || NumericValue.bitLength(immediate) > length
+                // Interpreting this fails when normalizing the result
+                || NumericValue.bitLength(immediate.not()) > length
+            ) {
+                return null;
+            }
+            Op op  = new Op(Kind.MOVE);
+            op.dst = dst;
+            op.a   = this.constant(NumericValueStore.normalizeBigInteger(immediate.not(), length));
+            return op;
+        }
+
+        int src = this.getSlot(ci, 1);
+        if (src == -1 || this.slotLength[src] != length) {
+            return null;
+        }
+        // Note: &not fails for a value with the most significant bit set (as
+        // the result cannot be normalized), this is guarded against by the
+        // executing code (which interprets it then)
+        Op op     = new Op(Kind.NOT);
+        op.dst    = dst;
+        op.a      = new Operand(src, 0);
+        op.length = length;
+        return op;
+    }
+
+    private Op analyzeShift(CommandInvocation ci, Shift.Type type)
+    {
+        int dst = this.getSlot(ci, 0);
+        int src = this.getSlot(ci, 1);
+        if (dst == -1 || src == -1 || this.slotLength[src] != this.slotLength[dst]) {
+            return null;
+        }
+        int length = this.slotLength[dst];
+
+        Operand amount;
+        if (ci.getArguments().get(2) instanceof ImmediateArgument) {
+            BigInteger immediate = this.getImmediate(ci, 2);
+            if (immediate == null) {
+                return null;
+            }
+            if (type == Shift.Type.ROTATE_LEFT || type == Shift.Type.ROTATE_RIGHT) {
+                immediate = immediate.mod(BigInteger.valueOf(length));
+            } else if (immediate.signum() < 0) {
+                return null;
+            } else {
+                immediate = immediate.min(BigInteger.valueOf(length));
+            }
+            amount = this.constant(immediate);
+        } else {
+            int slot = this.getSlot(ci, 2);
+            if (slot == -1) {
+                return null;
+            }
+            amount = new Operand(slot, 0);
+        }
+
+        Op op       = new Op(Kind.SHIFT);
+        op.dst      = dst;
+        op.a        = new Operand(src, 0);
+        op.b        = amount;
+        op.length   = length;
+        op.operator = switch (type) {
+            case SHIFT_LEFT             -> Operator.SHIFT_LEFT;
+            case SHIFT_RIGHT            -> Operator.SHIFT_RIGHT;
+            case SHIFT_RIGHT_ARITHMETIC -> Operator.SHIFT_RIGHT_ARITHMETIC;
+            case ROTATE_LEFT            -> Operator.ROTATE_LEFT;
+            case ROTATE_RIGHT           -> Operator.ROTATE_RIGHT;
+        };
+        return op;
+    }
+
+    private Op analyzeJumpif(CommandInvocation ci, Compare.Operator operator)
+    {
+        int target = this.getTarget(ci, 2);
+        if (target == -1) {
+            return null;
+        }
+
+        Operand[] operands = new Operand[2];
+        BigInteger[] immediates = new BigInteger[2];
+        for (int i = 0; i < 2; i++) {
+            if (ci.getArguments().get(i) instanceof ImmediateArgument) {
+                immediates[i] = this.getImmediate(ci, i);
+                if (immediates[i] == null) {
+                    return null;
+                }
+            } else {
+                int slot = this.getSlot(ci, i);
+                if (slot == -1) {
+                    return null;
+                }
+                operands[i] = new Operand(slot, 0);
+                if (operator.signed && this.slotLength[slot] < 64) {
+                    operands[i].signExtendFrom = this.slotLength[slot];
+                }
+            }
+        }
+
+        // At most one of the operands is an immediate
+        int cmp = 0;
+        for (int i = 0; i < 2; i++) {
+            if (immediates[i] == null) {
+                continue;
+            }
+            BigInteger immediate = immediates[i];
+            int otherLength      = this.slotLength[operands[1 - i].slot];
+            if (operator.signed) {
+                // Immediates are compared as they are
+                if (immediate.bitLength() > 63) {
+                    return null;
+                }
+                operands[i] = this.constant(immediate);
+            } else if (
+                immediate.signum() < 0 ? NumericValue.bitLength(immediate) > otherLength
+                    : immediate.bitLength() > 64
+            ) {
+                // The immediate is greater than the other operand can be
+                cmp = i == 0 ? 1 : -1;
+            } else {
+                operands[i] = this.constant(NumericValueStore.normalizeBigInteger(immediate, otherLength));
+            }
+        }
+        if (cmp != 0) {
+            boolean jumps = switch (operator) {
+                case EQUALS                                                -> false;
+                case NOT_EQUALS                                            -> true;
+                case GREATER_THAN, GREATER_THAN_SIGNED                     -> cmp > 0;
+                case GREATER_THAN_OR_EQUALS, GREATER_THAN_OR_EQUALS_SIGNED -> cmp > 0;
+                case LESS_THAN, LESS_THAN_SIGNED                           -> cmp < 0;
+                case LESS_THAN_OR_EQUALS, LESS_THAN_OR_EQUALS_SIGNED       -> cmp < 0;
+            };
+            return jumps ? this.jumpTo(target) : new Op(Kind.NOP);
+        }
+
+        Op op         = new Op(Kind.BRANCH);
+        op.a          = operands[0];
+        op.b          = operands[1];
+        op.target     = target;
+        op.comparison = operator;
+        return op;
+    }
+
+    /**
+     * @param target
+     * @return A jump to the given program position. Null if target is -1
+     */
+    private Op jumpTo(int target)
+    {
+        if (target == -1) {
+            return null;
+        }
+        Op op     = new Op(Kind.JUMP);
+        op.target = target;
+        return op;
+    }
+
+    /**
+     * @param ci
+     * @param index
+     * @return The slot of the argument at the given index. -1 if the argument
+     *         isn't a variable that is available to native operations
+     */
+    private int getSlot(CommandInvocation ci, int index)
+    {
+        Argument argument = ci.getArguments().get(index);
+        if (!(argument instanceof VariableArgument) || ((VariableArgument) argument).hasPosition()) {
+            return -1;
+        }
+        int slot = this.plan.getSlot(((VariableArgument) argument).variable.name);
+        if (slot == -1 || this.slotClass[slot] == -1) {
+            return -1;
+        }
+        return slot;
+    }
+
+    /**
+     * @param ci
+     * @param index
+     * @param length The length of the destination
+     *
+     * @return The argument at the given index as an operand of a logical
+     *         operation with the given length. Null if this operand doesn't
+     *         satisfy the length requirements or isn't available
+     */
+    private Operand getOperand(CommandInvocation ci, int index, int length)
+    {
+        if (ci.getArguments().get(index) instanceof ImmediateArgument) {
+            BigInteger immediate = this.getImmediate(ci, index);
+            if (immediate == null || NumericValue.bitLength(immediate) > length) {
+                return null;
+            }
+            return this.constant(NumericValueStore.normalizeBigInteger(immediate, length));
+        }
+        int slot = this.getSlot(ci, index);
+        if (slot == -1 || this.slotLength[slot] != length) {
+            return null;
+        }
+        return new Operand(slot, 0);
+    }
+
+    /**
+     * @param ci
+     * @param index
+     * @return The value the invoked function receives for the immediate
+     *         argument at the given index. Null if this fails
+     */
+    private BigInteger getImmediate(CommandInvocation ci, int index)
+    {
+        try {
+            return new NumericValueStore(
+                ci.getInvokedCommand().getParameterAt(index),
+                (ImmediateArgument) ci.getArguments().get(index)
+            ).read(null);
+        } catch (ConstraintException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param ci
+     * @param index
+     * @return The program position given by the label argument at the given
+     *         index. -1 if it is no label or out of range
+     */
+    private int getTarget(CommandInvocation ci, int index)
+    {
+        Argument argument = ci.getArguments().get(index);
+        if (!(argument instanceof LabelArgument)) {
+            return -1;
+        }
+        int target = ((LabelArgument) argument).getLabelPosition();
+        if (target < 0 || target > this.program.length) {
+            return -1;
+        }
+        return target;
+    }
+
+    /**
+     * @param value Must not be negative and must fit into 64 bits
+     * @return
+     */
+    private Operand constant(BigInteger value)
+    {
+        return new Operand(-1, value.longValue());
+    }
+}
@@ -0,0 +1,632 @@
+package net.jaraonthe.java.asb.optimize.jit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jaraonthe.java.asb.exception.RuntimeError;
+import net.jaraonthe.java.asb.interpret.Context;
+import net.jaraonthe.java.asb.interpret.value.NumericValueStore;
+
+/**
+ * Executes a lowered implementation program (see {@link Lowering}) without
+ * generating a JVM class: The program is encoded into a compact int[]
+ * instruction stream, which is executed by a register machine with a single
+ * switch dispatch.<br>
+ *
+ * The registers hold the values of all classes of variables, followed by all
+ * constants the program uses (which are never written). Each instruction is
+ * an opcode followed by its operands, which are register indices, lengths,
+ * program positions, or code offsets. Invocations that are left to the
+ * interpreter, and operations whose guard fails, interpret the Invocation at
+ * their program position - just like the code generated by
+ * {@link BytecodeCompiler} does.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+final class VmCode extends CompiledCode
+{
+    // Opcodes; the operands are given in brackets. r: register, p: program
+    // position, o: code offset, t: 1 if the budget ticks (backward branch)
+
+    /** [p] */
+    private static final int FALLBACK   = 0;
+    /** [p, slot, length] */
+    private static final int INIT_LOCAL = 1;
+    /** [slot, p]: Interprets p if the local variable isn't initialized */
+    private static final int GUARD      = 2;
+    /** [r dst, r src] */
+    private static final int MOVE       = 3;
+    /** [r dst, r a, r b, r mask] */
+    private static final int ADD        = 4;
+    /** [r dst, r a, r b, r mask] */
+    private static final int SUB        = 5;
+    /** [r dst, r a, r b] */
+    private static final int MUL        = 6;
+    /** [r dst, r a, r b] */
+    private static final int AND        = 7;
+    /** [r dst, r a, r b] */
+    private static final int OR         = 8;
+    /** [r dst, r a, r b] */
+    private static final int XOR        = 9;
+    /** [r dst, r a, r b, p]: Interprets p if b is 0 */
+    private static final int DIV        = 10;
+    /** [r dst, r a, r b, p]: Interprets p if b is 0 */
+    private static final int REM        = 11;
+    /**
+     * [r dst, r a, r mask, r sign, p]: Interprets p if a has the sign bit set
+     */
+    private static final int NOT        = 12;
+    /** [r dst, r a, r b, length] */
+    private static final int SHL        = 13;
+    /** [r dst, r a, r b, length] */
+    private static final int SHR        = 14;
+    /** [r dst, r a, r b, length] */
+    private static final int SAR        = 15;
+    /** [r dst, r a, r b, length] */
+    private static final int ROL        = 16;
+    /** [r dst, r a, r b, length] */
+    private static final int ROR        = 17;
+    /** [o, t] */
+    private static final int JUMP       = 18;
+    /**
+     * [r a, shift a, r b, shift b, o, t]: The operands are shifted left and
+     * then right arithmetically by the given amounts (sign extension).
+     */
+    private static final int BRANCH_EQ  = 19;
+    private static final int BRANCH_NE  = 20;
+    private static final int BRANCH_LT  = 21;
+    private static final int BRANCH_LE  = 22;
+    private static final int BRANCH_GT  = 23;
+    private static final int BRANCH_GE  = 24;
+    private static final int BRANCH_LTS = 25;
+    private static final int BRANCH_LES = 26;
+    private static final int BRANCH_GTS = 27;
+    private static final int BRANCH_GES = 28;
+    /** [] */
+    private static final int RETURN     = 29;
+    /** []: The end of the program */
+    private static final int END        = 30;
+
+    private final int[] code;
+
+    /**
+     * The code offset of each program position, and of the end.
+     */
+    private final int[] offsets;
+
+    /**
+     * The constants, which are copied into the registers following the
+     * classes.
+     */
+    private final long[] constants;
+
+    /**
+     * The slot that represents each class (see {@link Lowering#classSlot}).
+     */
+    private final int[] classSlot;
+
+    /**
+     * The classes that have to be written back into their stores.
+     */
+    private final int[] writtenClasses;
+
+    private final int programLength;
+
+
+    /**
+     * @param code
+     * @param offsets
+     * @param constants
+     * @param lowering
+     */
+    private VmCode(int[] code, int[] offsets, long[] constants, Lowering lowering)
+    {
+        this.code          = code;
+        this.offsets       = offsets;
+        this.constants     = constants;
+        this.classSlot     = lowering.classSlot;
+        this.programLength = lowering.program.length;
+        this.init(lowering.program);
+
+        List<Integer> written = new ArrayList<>();
+        for (int c = 0; c < lowering.written.length; c++) {
+            if (lowering.written[c]) {
+                written.add(c);
+            }
+        }
+        this.writtenClasses = written.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Encodes the given lowered program.
+     *
+     * @param lowering
+     * @return
+     */
+    static VmCode encode(Lowering lowering)
+    {
+        return new Encoder(lowering).encode();
+    }
+
+    @Override
+    public void run(Context context, NumericValueStore[] stores) throws RuntimeError
+    {
+        int[] code  = this.code;
+        long[] regs = new long[this.classSlot.length + this.constants.length];
+        System.arraycopy(this.constants, 0, regs, this.classSlot.length, this.constants.length);
+        this.reload(stores, regs);
+
+        int pc = 0;
+        while (true) {
+            switch (code[pc]) {
+                case VmCode.FALLBACK:
+                    pc = this.interpret(context, stores, regs, code[pc + 1]);
+                    break;
+
+                case VmCode.INIT_LOCAL:
+                    this.flush(stores, regs);
+                    if (!this.initLocal(context, stores, code[pc + 1], code[pc + 2], code[pc + 3])) {
+                        return;
+                    }
+                    this.reload(stores, regs);
+                    pc += 4;
+                    break;
+
+                case VmCode.GUARD:
+                    if (stores[code[pc + 1]] == null) {
+                        pc = this.interpret(context, stores, regs, code[pc + 2]);
+                    } else {
+                        pc += 3;
+                    }
+                    break;
+
+                case VmCode.MOVE:
+                    regs[code[pc + 1]] = regs[code[pc + 2]];
+                    pc += 3;
+                    break;
+
+                case VmCode.ADD:
+                    regs[code[pc + 1]] = (regs[code[pc + 2]] + regs[code[pc + 3]]) & regs[code[pc + 4]];
+                    pc += 5;
+                    break;
+
+                case VmCode.SUB:
+                    regs[code[pc + 1]] = (regs[code[pc + 2]] - regs[code[pc + 3]]) & regs[code[pc + 4]];
+                    pc += 5;
+                    break;
+
+                case VmCode.MUL:
+                    regs[code[pc + 1]] = regs[code[pc + 2]] * regs[code[pc + 3]];
+                    pc += 4;
+                    break;
+
+                case VmCode.AND:
+                    regs[code[pc + 1]] = regs[code[pc + 2]] & regs[code[pc + 3]];
+                    pc += 4;
+                    break;
+
+                case VmCode.OR:
+                    regs[code[pc + 1]] = regs[code[pc + 2]] | regs[code[pc + 3]];
+                    pc += 4;
+                    break;
+
+                case VmCode.XOR:
+                    regs[code[pc + 1]] = regs[code[pc + 2]] ^ regs[code[pc + 3]];
+                    pc += 4;
+                    break;
+
+                case VmCode.DIV:
+                    if (regs[code[pc + 3]] == 0) {
+                        pc = this.interpret(context, stores, regs, code[pc + 4]);
+                        break;
+                    }
+                    regs[code[pc + 1]] = Long.divideUnsigned(regs[code[pc + 2]], regs[code[pc + 3]]);
+                    pc += 5;
+                    break;
+
+                case VmCode.REM:
+                    if (regs[code[pc + 3]] == 0) {
+                        pc = this.interpret(context, stores, regs, code[pc + 4]);
+                        break;
+                    }
+                    regs[code[pc + 1]] = Long.remainderUnsigned(regs[code[pc + 2]], regs[code[pc + 3]]);
+                    pc += 5;
+                    break;
+
+                case VmCode.NOT:
+                    if ((regs[code[pc + 2]] & regs[code[pc + 4]]) != 0) {
+                        pc = this.interpret(context, stores, regs, code[pc + 5]);
+                        break;
+                    }
+                    regs[code[pc + 1]] = regs[code[pc + 2]] ^ regs[code[pc + 3]];
+                    pc += 6;
+                    break;
+
+                case VmCode.SHL:
+                    regs[code[pc + 1]] = CompiledCode.shiftLeft(regs[code[pc + 2]], regs[code[pc + 3]], code[pc + 4]);
+                    pc += 5;
+                    break;
+
+                case VmCode.SHR:
+                    regs[code[pc + 1]] = CompiledCode.shiftRight(regs[code[pc + 2]], regs[code[pc + 3]], code[pc + 4]);
+                    pc += 5;
+                    break;
+
+                case VmCode.SAR:
+                    regs[code[pc + 1]] = CompiledCode.shiftRightArithmetic(
+                        regs[code[pc + 2]],
+                        regs[code[pc + 3]],
+                        code[pc + 4]
+                    );
+                    pc += 5;
+                    break;
+
+                case VmCode.ROL:
+                    regs[code[pc + 1]] = CompiledCode.rotateLeft(regs[code[pc + 2]], regs[code[pc + 3]], code[pc + 4]);
+                    pc += 5;
+                    break;
+
+                case VmCode.ROR:
+                    regs[code[pc + 1]] = CompiledCode.rotateRight(regs[code[pc + 2]], regs[code[pc + 3]], code[pc + 4]);
+                    pc += 5;
+                    break;
+
+                case VmCode.JUMP:
+                    if (code[pc + 2] != 0 && CompiledCode.tick(context)) {
+                        this.flush(stores, regs);
+                        CompiledCode.checkBudget(context);
+                    }
+                    pc = code[pc + 1];
+                    break;
+
+                case VmCode.BRANCH_EQ:
+                case VmCode.BRANCH_NE:
+                case VmCode.BRANCH_LT:
+                case VmCode.BRANCH_LE:
+                case VmCode.BRANCH_GT:
+                case VmCode.BRANCH_GE:
+                case VmCode.BRANCH_LTS:
+                case VmCode.BRANCH_LES:
+                case VmCode.BRANCH_GTS:
+                case VmCode.BRANCH_GES:
+                    if (code[pc + 6] != 0 && CompiledCode.tick(context)) {
+                        this.flush(stores, regs);
+                        CompiledCode.checkBudget(context);
+                    }
+                    long a = (regs[code[pc + 1]] << code[pc + 2]) >> code[pc + 2];
+                    long b = (regs[code[pc + 3]] << code[pc + 4]) >> code[pc + 4];
+                    int cmp = code[pc] >= VmCode.BRANCH_LTS ? Long.compare(a, b) : Long.compareUnsigned(a, b);
+                    boolean taken = switch (code[pc]) {
+                        case VmCode.BRANCH_EQ                   -> cmp == 0;
+                        case VmCode.BRANCH_NE                   -> cmp != 0;
+                        case VmCode.BRANCH_LT, VmCode.BRANCH_LTS -> cmp < 0;
+                        case VmCode.BRANCH_LE, VmCode.BRANCH_LES -> cmp <= 0;
+                        case VmCode.BRANCH_GT, VmCode.BRANCH_GTS -> cmp > 0;
+                        default                                  -> cmp >= 0;
+                    };
+                    pc = taken ? code[pc + 5] : pc + 7;
+                    break;
+
+                case VmCode.RETURN:
+                    this.flush(stores, regs);
+                    context.frame.programCounter = -1;
+                    return;
+
+                case VmCode.END:
+                    this.flush(stores, regs);
+                    context.frame.programCounter = this.programLength;
+                    return;
+
+                default:
+                    throw new IllegalStateException("Unknown opcode " + code[pc]);
+            }
+            if (pc == -1) {
+                // The interpreter takes over
+                return;
+            }
+        }
+    }
+
+    /**
+     * Interprets the Invocation at the given program position.
+     *
+     * @param context
+     * @param stores
+     * @param regs
+     * @param position
+     *
+     * @return The code offset to continue at, -1 if the program counter has
+     *         been changed
+     *
+     * @throws RuntimeError
+     */
+    private int interpret(Context context, NumericValueStore[] stores, long[] regs, int position) throws RuntimeError
+    {
+        this.flush(stores, regs);
+        if (this.fallback(context, position) != position + 1) {
+            return -1;
+        }
+        this.reload(stores, regs);
+        return this.offsets[position + 1];
+    }
+
+    /**
+     * Writes the values of all written classes back into their stores.
+     *
+     * @param stores
+     * @param regs
+     */
+    private void flush(NumericValueStore[] stores, long[] regs)
+    {
+        for (int c : this.writtenClasses) {
+            CompiledCode.store(stores[this.classSlot[c]], regs[c]);
+        }
+    }
+
+    /**
+     * Reads the values of all classes from their stores.
+     *
+     * @param stores
+     * @param regs
+     */
+    private void reload(NumericValueStore[] stores, long[] regs)
+    {
+        for (int c = 0; c < this.classSlot.length; c++) {
+            regs[c] = CompiledCode.load(stores[this.classSlot[c]]);
+        }
+    }
+
+
+    /**
+     * Encodes a lowered program into VM code.
+     */
+    private static class Encoder
+    {
+        private final Lowering lowering;
+
+        private final List<Integer> code = new ArrayList<>();
+
+        /**
+         * The code indices that contain a program position which has to be
+         * replaced by its code offset.
+         */
+        private final List<Integer> targets = new ArrayList<>();
+
+        /**
+         * Constant => register
+         */
+        private final Map<Long, Integer> constants = new HashMap<>();
+
+        Encoder(Lowering lowering)
+        {
+            this.lowering = lowering;
+        }
+
+        VmCode encode()
+        {
+            int length    = this.lowering.program.length;
+            int[] offsets = new int[length + 1];
+            for (int p = 0; p < length; p++) {
+                offsets[p] = this.code.size();
+                this.encode(p);
+            }
+            offsets[length] = this.code.size();
+            this.code.add(VmCode.END);
+
+            int[] code = this.code.stream().mapToInt(Integer::intValue).toArray();
+            for (int index : this.targets) {
+                code[index] = offsets[code[index]];
+            }
+
+            int classCount   = this.lowering.classSlot.length;
+            long[] constants = new long[this.constants.size()];
+            for (Map.Entry<Long, Integer> entry : this.constants.entrySet()) {
+                constants[entry.getValue() - classCount] = entry.getKey();
+            }
+            return new VmCode(code, offsets, constants, this.lowering);
+        }
+
+        /**
+         * @param position
+         */
+        private void encode(int position)
+        {
+            Lowering.Op op = this.lowering.ops[position];
+            switch (op.kind) {
+                case FALLBACK:
+                    this.add(VmCode.FALLBACK, position);
+                    return;
+
+                case INIT_LOCAL:
+                    this.add(VmCode.INIT_LOCAL, position, op.dst, this.lowering.slotLength[op.dst]);
+                    return;
+
+                case NOP:
+                    return;
+
+                case JUMP:
+                    this.add(VmCode.JUMP);
+                    this.addTarget(op.target);
+                    this.add(op.target <= position ? 1 : 0);
+                    return;
+
+                case RETURN:
+                    this.add(VmCode.RETURN);
+                    return;
+
+                default:
+                    break;
+            }
+
+            // Local variables must be initialized
+            List<Integer> locals = new ArrayList<>(3);
+            for (Lowering.Operand operand : new Lowering.Operand[] {op.a, op.b}) {
+                if (operand != null && operand.slot >= this.lowering.plan.sharedSlots && !locals.contains(operand.slot)) {
+                    locals.add(operand.slot);
+                }
+            }
+            if (op.dst >= this.lowering.plan.sharedSlots && !locals.contains(op.dst)) {
+                locals.add(op.dst);
+            }
+            for (int slot : locals) {
+                this.add(VmCode.GUARD, slot, position);
+            }
+
+            switch (op.kind) {
+                case MOVE:
+                    this.add(VmCode.MOVE, this.dst(op), this.register(op.a));
+                    return;
+
+                case BINARY:
+                    switch (op.operator) {
+                        case ADD:
+                        case SUB:
+                            this.add(
+                                op.operator == Lowering.Operator.ADD ? VmCode.ADD : VmCode.SUB,
+                                this.dst(op),
+                                this.register(op.a),
+                                this.register(op.b),
+                                this.constant(Encoder.mask(op.length))
+                            );
+                            return;
+
+                        default:
+                            int opcode = switch (op.operator) {
+                                case MUL -> VmCode.MUL;
+                                case AND -> VmCode.AND;
+                                case OR  -> VmCode.OR;
+                                case XOR -> VmCode.XOR;
+                                default  -> throw new IllegalStateException("Unexpected operator " + op.operator);
+                            };
+                            this.add(opcode, this.dst(op), this.register(op.a), this.register(op.b));
+                            return;
+                    }
+
+                case DIVIDE:
+                    this.add(
+                        op.operator == Lowering.Operator.DIV ? VmCode.DIV : VmCode.REM,
+                        this.dst(op),
+                        this.register(op.a),
+                        this.register(op.b),
+                        position
+                    );
+                    return;
+
+                case NOT:
+                    this.add(
+                        VmCode.NOT,
+                        this.dst(op),
+                        this.register(op.a),
+                        this.constant(Encoder.mask(op.length)),
+                        this.constant(1L << (op.length - 1)),
+                        position
+                    );
+                    return;
+
+                case SHIFT:
+                    int opcode = switch (op.operator) {
+                        case SHIFT_LEFT             -> VmCode.SHL;
+                        case SHIFT_RIGHT            -> VmCode.SHR;
+                        case SHIFT_RIGHT_ARITHMETIC -> VmCode.SAR;
+                        case ROTATE_LEFT            -> VmCode.ROL;
+                        case ROTATE_RIGHT           -> VmCode.ROR;
+                        default                     -> throw new IllegalStateException("Unexpected operator " + op.operator);
+                    };
+                    this.add(opcode, this.dst(op), this.register(op.a), this.register(op.b), op.length);
+                    return;
+
+                case BRANCH:
+                    this.add(
+                        switch (op.comparison) {
+                            case EQUALS                        -> VmCode.BRANCH_EQ;
+                            case NOT_EQUALS                    -> VmCode.BRANCH_NE;
+                            case LESS_THAN                     -> VmCode.BRANCH_LT;
+                            case LESS_THAN_OR_EQUALS           -> VmCode.BRANCH_LE;
+                            case GREATER_THAN                  -> VmCode.BRANCH_GT;
+                            case GREATER_THAN_OR_EQUALS        -> VmCode.BRANCH_GE;
+                            case LESS_THAN_SIGNED              -> VmCode.BRANCH_LTS;
+                            case LESS_THAN_OR_EQUALS_SIGNED    -> VmCode.BRANCH_LES;
+                            case GREATER_THAN_SIGNED           -> VmCode.BRANCH_GTS;
+                            case GREATER_THAN_OR_EQUALS_SIGNED -> VmCode.BRANCH_GES;
+                        },
+                        this.register(op.a),
+                        Encoder.shift(op.a),
+                        this.register(op.b),
+                        Encoder.shift(op.b)
+                    );
+                    this.addTarget(op.target);
+                    this.add(op.target <= position ? 1 : 0);
+                    return;
+
+                default:
+                    throw new IllegalStateException("Unexpected op " + op.kind);
+            }
+        }
+
+        private void add(int... values)
+        {
+            for (int value : values) {
+                this.code.add(value);
+            }
+        }
+
+        /**
+         * @param position A program position, which is replaced by its code
+         *                 offset
+         */
+        private void addTarget(int position)
+        {
+            this.targets.add(this.code.size());
+            this.code.add(position);
+        }
+
+        private int dst(Lowering.Op op)
+        {
+            return this.lowering.slotClass[op.dst];
+        }
+
+        /**
+         * @param operand
+         * @return The register that holds the given operand
+         */
+        private int register(Lowering.Operand operand)
+        {
+            if (operand.slot == -1) {
+                return this.constant(operand.constant);
+            }
+            return this.lowering.slotClass[operand.slot];
+        }
+
+        /**
+         * @param value
+         * @return The register that holds the given constant
+         */
+        private int constant(long value)
+        {
+            return this.constants.computeIfAbsent(
+                value,
+                v -> this.lowering.classSlot.length + this.constants.size()
+            );
+        }
+
+        /**
+         * @param operand
+         * @return The amount to shift the operand by for sign extension
+         */
+        private static int shift(Lowering.Operand operand)
+        {
+            return operand.signExtendFrom == 0 ? 0 : 64 - operand.signExtendFrom;
+        }
+
+        /**
+         * @param length 0 for no masking
+         * @return A mask covering the given amount of lower bits
+         */
+        private static long mask(int length)
+        {
+            return length == 0 || length >= 64 ? -1L : (1L << length) - 1;
+        }
+    }
+}
@@ -2,10 +2,12 @@ package net.jaraonthe.java.asb.parse;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import net.jaraonthe.java.asb.ast.AST;
@@ -26,10 +28,16 @@ import net.jaraonthe.java.asb.ast.variable.RegisterLike;
 import net.jaraonthe.java.asb.ast.variable.Variable;
 import net.jaraonthe.java.asb.ast.variable.VirtualRegister;
 import net.jaraonthe.java.asb.built_in.BuiltInFunction;
+import net.jaraonthe.java.asb.built_in.NativeExtension;
+import net.jaraonthe.java.asb.built_in.NativeOverride;
 import net.jaraonthe.java.asb.exception.ConstraintException;
 import net.jaraonthe.java.asb.exception.LexicalError;
 import net.jaraonthe.java.asb.exception.ParseError;
+import net.jaraonthe.java.asb.interpret.Interpretable;
 import net.jaraonthe.java.asb.interpret.Interpreter;
+import net.jaraonthe.java.asb.interpret.MemoryImage;
+import net.jaraonthe.java.asb.interpret.cache.CacheConfig;
+import net.jaraonthe.java.asb.interpret.device.DeviceConfig;
 
 /**
  * Parses ASB source code into AST.<br>
@@ -74,6 +82,10 @@ public class Parser
     {
         AST ast = new AST();
         BuiltInFunction.initBuiltInFunctions(ast);
+        List<NativeExtension> extensions = NativeExtension.load();
+        for (NativeExtension extension : extensions) {
+            extension.addBuiltInFunctions(ast);
+        }
         
         for (String filePath : filePaths) {
             SourceFile file;
@@ -90,6 +102,7 @@ public class Parser
         
         Parser.resolveImplementationInvocations(ast);
         Parser.resolveLabelNamesInUserland(ast);
+        Parser.bindNativeOverrides(ast, extensions);
         
         return ast;
     }
@@ -238,6 +251,38 @@ public class Parser
                 this.expectStatementSeparator();
                 break;
 
+            case ".data":
+                this.parseData(directive.origin);
+                break;
+                
+            case ".incbin":
+                // .incbin <address> "<file>"
+                if (!this.ast.hasMemory()) {
+                    throw new ParseError("Cannot use .incbin without memory configuration at " + directive.origin);
+                }
+                BigInteger address = this.expectAddress(directive.content);
+                t = this.expect(Token.Type.STRING, "file path");
+                this.expectStatementSeparator();
+                
+                // Resolve given path relatively against directory of current file
+                Path binaryPath = this.tokenizer.file.filePath.getParent().resolve(t.content);
+                if (!Files.isReadable(binaryPath)) {
+                    throw new ParseError(
+                        "Cannot open file " + binaryPath + " for loading into memory, included at "
+                        + directive.origin
+                    );
+                }
+                this.ast.addMemoryImage(MemoryImage.fromFile(
+                    address,
+                    binaryPath,
+                    ".incbin at " + directive.origin
+                ));
+                break;
+            
+            case ".device":
+                this.parseDevice(directive.origin);
+                break;
+            
             case ".program_counter":
             case ".pc":
                 if (this.ast.hasProgram()) {
@@ -257,6 +302,10 @@ public class Parser
                 this.expectStatementSeparator();
                 break;
             
+            case ".cache":
+                this.parseCache(directive.origin);
+                break;
+            
             case ".register":
             case ".reg":
                 this.parseRegister(Parser.RegisterType.REGULAR, directive.origin);
@@ -290,6 +339,213 @@ public class Parser
         this.tokenizer.setMode(Tokenizer.Mode.MAIN);
     }
     
+    /**
+     * Parses initial memory contents given as values.
+     * 
+     * Starts consuming AFTER the starting DIRECTIVE Token.
+     * 
+     * @param directiveOrigin The origin of the directive Token
+     * 
+     * @throws LexicalError
+     * @throws ParseError
+     */
+    private void parseData(Origin directiveOrigin) throws LexicalError, ParseError
+    {
+        // .data <address> <value> [, <value> ...]
+        if (!this.ast.hasMemory()) {
+            throw new ParseError("Cannot use .data without memory configuration at " + directiveOrigin);
+        }
+        BigInteger address = this.expectAddress(".data");
+        boolean isMultiLine = this.consumeOpeningBraces();
+        
+        List<BigInteger> values = new ArrayList<>();
+        Token t;
+        while (true) {
+            t = this.tokenizer.peek();
+            Token.Type type = Token.getType(t);
+            if (type == Token.Type.NUMBER) {
+                values.add(Token.number2BigInteger(t));
+            } else if (type == Token.Type.COMMAND_SYMBOLS && t.content.equals(",") && !values.isEmpty()) {
+                // Values may be separated by commas
+            } else if (!isMultiLine || type != Token.Type.STATEMENT_SEPARATOR) {
+                break;
+            }
+            this.tokenizer.next();
+        }
+        this.expectClosingBracesIfMultiLine(isMultiLine);
+        this.expectStatementSeparator();
+        
+        if (values.isEmpty()) {
+            throw new ParseError("Expected at least one value after .data at " + directiveOrigin);
+        }
+        this.ast.addMemoryImage(MemoryImage.fromValues(address, values, ".data at " + directiveOrigin));
+    }
+    
+    /**
+     * Parses a device definition.
+     * 
+     * Starts consuming AFTER the starting DIRECTIVE Token.
+     * 
+     * @param directiveOrigin The origin of the directive Token
+     * 
+     * @throws LexicalError
+     * @throws ParseError
+     */
+    private void parseDevice(Origin directiveOrigin) throws LexicalError, ParseError
+    {
+        // .device <type> <address>
+        if (!this.ast.hasMemory()) {
+            throw new ParseError("Cannot use .device without memory configuration at " + directiveOrigin);
+        }
+        Token typeToken = this.tokenizer.peek();
+        String typeName = this.expectName();
+        DeviceConfig.Type type = DeviceConfig.Type.fromString(typeName);
+        if (type == null) {
+            throw new ParseError(
+                "Unknown device type \"" + typeName + "\" (expected uart, counter, or halt) at "
+                + typeToken.origin
+            );
+        }
+        if (type == DeviceConfig.Type.HALT) {
+            for (DeviceConfig device : this.ast.getDevices()) {
+                if (device.type == DeviceConfig.Type.HALT) {
+                    throw new ParseError("Cannot define more than one halt device at " + directiveOrigin);
+                }
+            }
+        }
+        BigInteger address = this.expectAddress(".device " + typeName);
+        this.expectStatementSeparator();
+        
+        this.ast.addDevice(new DeviceConfig(type, address, ".device at " + directiveOrigin));
+    }
+    
+    /**
+     * Expects a NUMBER token that is a memory address.
+     * 
+     * @param directive The directive the address belongs to. Used in error
+     *                  messages
+     * @return
+     * 
+     * @throws LexicalError
+     * @throws ParseError   if the address is negative or too big for the
+     *                      configured memory
+     */
+    private BigInteger expectAddress(String directive) throws LexicalError, ParseError
+    {
+        Token t = this.expect(Token.Type.NUMBER, "memory address (after " + directive + ")");
+        BigInteger address = Token.number2BigInteger(t);
+        if (address.signum() < 0 || address.bitLength() > this.ast.getMemoryAddressLength()) {
+            throw new ParseError("Invalid memory address " + t.content + " at " + t.origin);
+        }
+        return address;
+    }
+    
+    /**
+     * Parses a cache configuration.
+     * 
+     * Starts consuming AFTER the starting DIRECTIVE Token.
+     * 
+     * @param directiveOrigin The origin of the directive Token
+     * 
+     * @throws LexicalError
+     * @throws ParseError
+     */
+    private void parseCache(Origin directiveOrigin) throws LexicalError, ParseError
+    {
+        // .cache <level> .size <n> .line <n> .ways <n> [.policy <policy>]
+        Token levelToken = this.tokenizer.peek();
+        String levelName = this.expectName();
+        boolean isMultiLine = this.consumeOpeningBraces();
+        
+        int size     = -1;
+        int lineSize = -1;
+        int ways     = -1;
+        CacheConfig.Policy policy = null;
+        
+        Token t;
+        while (Token.getType(t = this.tokenizer.peek()) == Token.Type.DIRECTIVE) {
+            this.tokenizer.next();
+            switch (t.content) {
+                case ".size":
+                    if (size != -1) {
+                        throw new ParseError("Cannot use .size more than once at " + t.origin);
+                    }
+                    size = this.expectCacheNumber(t.content);
+                    break;
+                case ".line":
+                    if (lineSize != -1) {
+                        throw new ParseError("Cannot use .line more than once at " + t.origin);
+                    }
+                    lineSize = this.expectCacheNumber(t.content);
+                    break;
+                case ".ways":
+                    if (ways != -1) {
+                        throw new ParseError("Cannot use .ways more than once at " + t.origin);
+                    }
+                    ways = this.expectCacheNumber(t.content);
+                    break;
+                case ".policy":
+                    if (policy != null) {
+                        throw new ParseError("Cannot use .policy more than once at " + t.origin);
+                    }
+                    String policyName = this.expectName();
+                    policy = CacheConfig.Policy.fromString(policyName);
+                    if (policy == null) {
+                        throw new ParseError(
+                            "Unknown cache replacement policy \"" + policyName
+                            + "\" (expected lru, fifo, or random) at " + t.origin
+                        );
+                    }
+                    break;
+                default:
+                    throw new ParseError(
+                        "Unexpected " + t.content + " directive in cache definition at " + t.origin
+                    );
+            }
+            this.skipIfMultiLine(isMultiLine);
+        }
+        this.expectClosingBracesIfMultiLine(isMultiLine);
+        this.expectStatementSeparator();
+        
+        if (size == -1 || lineSize == -1 || ways == -1) {
+            throw new ParseError(
+                "Cache definition must contain .size, .line, and .ways at " + directiveOrigin
+            );
+        }
+        
+        try {
+            this.ast.setCache(new CacheConfig(
+                CacheConfig.parseLevel(levelName),
+                size,
+                lineSize,
+                ways,
+                policy == null ? CacheConfig.Policy.LRU : policy
+            ));
+        } catch (ConstraintException e) {
+            throw new ParseError(e.getMessage() + " at " + levelToken.origin);
+        }
+    }
+    
+    /**
+     * Expects a NUMBER token that is a size value of a cache definition.
+     * 
+     * @param subDirective The sub-directive the number belongs to. Used in
+     *                     error messages
+     * @return
+     * 
+     * @throws LexicalError
+     * @throws ParseError
+     */
+    private int expectCacheNumber(String subDirective) throws LexicalError, ParseError
+    {
+        Token t = this.expect(Token.Type.NUMBER, "number (after " + subDirective + ")");
+        try {
+            return Token.number2Int(t);
+        } catch (ConstraintException e) {
+            throw new ParseError(e.getMessage() + " at " + t.origin);
+        }
+    }
+    
     /**
      * Used for {@link #parseRegister()}. Decides whether .register,
      * .register_alias, or a .virtual_register directive is being parsed.
@@ -529,13 +785,12 @@ public class Parser
                     } else {
                         parameter = new Parameter(type, name);
                     }
-                    if (type.supportsGroup && this.peekedIsType(Token.Type.DIRECTIVE)) {
-                        t = this.tokenizer.next();
-                        if (!t.content.equals(".group")) {
-                            throw new ParseError(
-                                "Unexpected " + t.content + " directive, expected .group at " + t.origin
-                            );
-                        }
+                    if (
+                        type.supportsGroup
+                        && this.peekedIsType(Token.Type.DIRECTIVE)
+                        && this.tokenizer.peek().content.equals(".group")
+                    ) {
+                        this.tokenizer.next();
                         parameter.setGroup(this.expectName());
                     }
                     command.addParameter(parameter);
@@ -546,6 +801,32 @@ public class Parser
                     }
                     break;
                     
+                case DIRECTIVE:
+                    if (!t.content.equals(".cost")) {
+                        throw new ParseError("Unexpected " + t.content + " directive at " + t.origin);
+                    }
+                    if (!command.isUserlandInvokable()) {
+                        throw new ParseError(
+                            "Cannot declare .cost for function " + command.name
+                            + " (only for commands) at " + t.origin
+                        );
+                    }
+                    if (command.hasCost()) {
+                        throw new ParseError("Cannot use .cost more than once at " + t.origin);
+                    }
+                    Token cost = this.expect(Token.Type.NUMBER, "cost (number of cycles)");
+                    int cycles;
+                    try {
+                        cycles = Token.number2Int(cost);
+                    } catch (ConstraintException e) {
+                        throw new ParseError(e.getMessage() + " at " + cost.origin);
+                    }
+                    if (cycles < 0) {
+                        throw new ParseError("Cost must not be negative at " + cost.origin);
+                    }
+                    command.setCost(cycles);
+                    break;
+                    
                 case OPENING_BRACES:
                     break head;
                     
@@ -1383,6 +1664,49 @@ public class Parser
     }
     
     
+    /**
+     * Binds the native overrides provided by the given extensions to their
+     * commands.<br>
+     * 
+     * This is called once after all parsing is done.
+     * 
+     * @param ast
+     * @param extensions
+     * 
+     * @throws ParseError if an overridden command doesn't exist or has no
+     *                    implementation (i.e. is a built-in function)
+     */
+    private static void bindNativeOverrides(AST ast, List<NativeExtension> extensions) throws ParseError
+    {
+        for (NativeExtension extension : extensions) {
+            String provider = extension.getClass().getName();
+            for (Map.Entry<String, Interpretable> entry : extension.getNativeOverrides().entrySet()) {
+                Command command = ast.getCommand(entry.getKey());
+                if (command == null) {
+                    for (Command c : ast.getCommands()) {
+                        if (c.getReadableIdentity().strip().equals(entry.getKey().strip())) {
+                            command = c;
+                            break;
+                        }
+                    }
+                }
+                if (command == null) {
+                    throw new ParseError(
+                        "Cannot override command " + entry.getKey() + " (" + provider + ") as it doesn't exist"
+                    );
+                }
+                if (!(command.getInterpretable() instanceof Implementation)) {
+                    throw new ParseError(
+                        "Cannot override " + command.getReadableIdentity() + " (" + provider + ") as it"
+                        + (command.getInterpretable() instanceof NativeOverride ? " is overridden already" : " is built-in")
+                    );
+                }
+                command.overrideInterpretable(new NativeOverride(command, entry.getValue(), provider));
+            }
+        }
+    }
+    
+    
     /**
      * Resolves label names that are used as arguments within invocations that
      * are part of userland code.<br>
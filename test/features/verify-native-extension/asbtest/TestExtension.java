@@ -0,0 +1,38 @@
+package asbtest;
+
+import java.math.BigInteger;
+import java.util.Map;
+
+import net.jaraonthe.java.asb.exception.ConstraintException;
+import net.jaraonthe.java.asb.exception.RuntimeError;
+import net.jaraonthe.java.asb.interpret.Context;
+import net.jaraonthe.java.asb.interpret.Interpretable;
+import net.jaraonthe.java.asb.interpret.value.NumericValue;
+import net.jaraonthe.java.asb.interpret.value.NumericValueStore;
+
+/**
+ * Native overrides for test/features/verify-native.asb: The override of
+ * double is correct, the one of triple is not.
+ *
+ * @author Jakob Rathbauer <jakob@jaraonthe.net>
+ */
+public class TestExtension implements net.jaraonthe.java.asb.built_in.NativeExtension
+{
+    @Override
+    public Map<String, Interpretable> getNativeOverrides()
+    {
+        return Map.of(
+            "double /register''8", context -> TestExtension.multiply(context, 2),
+            "triple /register''8", context -> TestExtension.multiply(context, 4)
+        );
+    }
+
+    private static void multiply(Context context, int factor) throws ConstraintException, RuntimeError
+    {
+        NumericValue r = context.frame.getNumericValue("r");
+        r.write(
+            NumericValueStore.normalizeBigInteger(r.read(context).multiply(BigInteger.valueOf(factor)), r.length),
+            context
+        );
+    }
+}